@@ -2,19 +2,25 @@
 package jetbrains.communicator.commands;
 
 import jetbrains.communicator.core.commands.UserCommand;
+import jetbrains.communicator.core.dispatcher.FoundMessage;
+import jetbrains.communicator.core.dispatcher.HistorySearchListener;
 import jetbrains.communicator.core.dispatcher.LocalMessage;
 import jetbrains.communicator.core.dispatcher.LocalMessageDispatcher;
 import jetbrains.communicator.core.users.User;
+import jetbrains.communicator.ide.CanceledException;
 import jetbrains.communicator.ide.IDEFacade;
 import jetbrains.communicator.util.CommunicatorStrings;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
  * @author Kir
  */
 public class SearchHistoryCommand implements UserCommand {
+  private static final int PAGE_SIZE = 100;
+
   private final LocalMessageDispatcher myMessageDispatcher;
   private final IDEFacade myIdeFacade;
   private User myUser;
@@ -32,17 +38,25 @@ public class SearchHistoryCommand implements UserCommand {
       CommunicatorStrings.getMsg("search"));
 
     if (searchString != null) {
-      LocalMessage[] localMessages = myMessageDispatcher.getHistory(myUser, null);
+      String title = CommunicatorStrings.getMsg("SearchHistoryCommand.search.history", myUser.getDisplayName());
       List<LocalMessage> result = new ArrayList<>();
-      for (LocalMessage message : localMessages) {
-        if (message.containsString(searchString)) {
-          result.add(message);
+      HistorySearchListener collector = page -> {
+        for (FoundMessage foundMessage : page) {
+          result.add(foundMessage.getMessage());
         }
+        return true;
+      };
+      try {
+        myIdeFacade.runLongProcess(title, indicator -> myMessageDispatcher.searchHistory(myUser, searchString, PAGE_SIZE, indicator, collector));
+      }
+      catch (CanceledException e) {
+        return;
       }
+      // the results are shown day by day
+      result.sort(Comparator.comparing(LocalMessage::getWhen));
 
       if (result.size() == 0) {
-        myIdeFacade.showMessage(CommunicatorStrings.getMsg("SearchHistoryCommand.search.history", myUser.getDisplayName()),
-                                CommunicatorStrings.getMsg("SearchHistoryCommand.no.results"));
+        myIdeFacade.showMessage(title, CommunicatorStrings.getMsg("SearchHistoryCommand.no.results"));
       }
       else {
         myIdeFacade.showSearchHistoryResults(result, myUser);
@@ -0,0 +1,30 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package jetbrains.communicator.core.dispatcher;
+
+import jetbrains.communicator.core.users.User;
+
+/**
+ * A message found by {@link LocalMessageDispatcher#searchHistory}, together with the user whose history it belongs to.
+ */
+public final class FoundMessage {
+  private final User myUser;
+  private final LocalMessage myMessage;
+
+  public FoundMessage(User user, LocalMessage message) {
+    myUser = user;
+    myMessage = message;
+  }
+
+  public User getUser() {
+    return myUser;
+  }
+
+  public LocalMessage getMessage() {
+    return myMessage;
+  }
+
+  public String toString() {
+    return myUser + ": " + myMessage;
+  }
+}
@@ -0,0 +1,17 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+
+package jetbrains.communicator.core.dispatcher;
+
+import java.util.List;
+
+/**
+ * Receives the results of {@link LocalMessageDispatcher#searchHistory} page by page.
+ */
+public interface HistorySearchListener {
+
+  /**
+   * @param page the next found messages; earlier pages contain better matches
+   * @return false if no more results are needed
+   */
+  boolean pageFound(List<FoundMessage> page);
+}
@@ -3,6 +3,8 @@
 package jetbrains.communicator.core.dispatcher;
 
 import jetbrains.communicator.core.users.User;
+import jetbrains.communicator.ide.TalkProgressIndicator;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.util.Date;
@@ -23,6 +25,14 @@ public interface LocalMessageDispatcher extends MessageDispatcher {
   /** Oldest messages go first */
   LocalMessage[] getHistory(User user, Date since);
 
+  /** Searches the history of the user, or of all users if user is null, for messages containing the search string
+   * (see {@link LocalMessage#containsString}). Messages having the words of the search string as whole words go first,
+   * newer messages go first among equally good matches.
+   * Found messages are passed to the listener in pages of pageSize messages as they are read from the history.
+   * The search stops when the listener returns false or the indicator is canceled. */
+  void searchHistory(@Nullable User user, String searchString, int pageSize,
+                     TalkProgressIndicator indicator, HistorySearchListener listener);
+
   void clearHistory();
   boolean isHistoryEmpty();
 }
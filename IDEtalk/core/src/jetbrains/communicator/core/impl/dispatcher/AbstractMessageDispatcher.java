@@ -15,10 +15,18 @@ import jetbrains.communicator.util.XStreamUtil;
 import org.apache.log4j.Logger;
 import org.picocontainer.Disposable;
 
-import java.io.File;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
+ * Keeps the queue of messages waiting for delivery. Changes of the queue are collected in memory and appended to
+ * a {@link PendingMessagesJournal} on {@link #save()}: concurrent saves are committed to the journal together,
+ * and the queue is serialized without holding its lock. The XML snapshot of the queue is only rewritten when the
+ * journal outgrows it.
+ *
  * @author Kir
  */
 public abstract class AbstractMessageDispatcher implements MessageDispatcher, Disposable {
@@ -30,8 +38,14 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
 
   private final Object myUser2MessagesLock = new Object();
   private final Map<User, List<Message>> myUser2Messages = new HashMap<>();
+  /** Changes of the queue which are not in the journal yet, guarded by myUser2MessagesLock */
+  private final List<PendingMessagesJournal.Record> myUnsavedRecords = new ArrayList<>();
   private final EventBroadcaster myEventBroadcaster;
 
+  /** Serializes the writers of the journal and the snapshot */
+  private final Object mySaveLock = new Object();
+  private PendingMessagesJournal myJournal;
+
   protected AbstractMessageDispatcher(EventBroadcaster eventBroadcaster, File dataDir) {
     myDataDir = dataDir;
     myEventListener = new MyEventListener(eventBroadcaster);
@@ -41,6 +55,7 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
 
   @Override
   public void dispose() {
+    save();
     myEventListener.dispose();
     LOG.debug("Disposed.");
   }
@@ -56,13 +71,18 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
     synchronized (myUser2MessagesLock) {
       List<Message> userMessages = getMessages(user);
       if (result) {
-        userMessages.remove(message);
+        int index = userMessages.indexOf(message);
+        if (index >= 0) {
+          userMessages.remove(index);
+          myUnsavedRecords.add(PendingMessagesJournal.Record.removed(user, index));
+        }
         if (userMessages.size() == 0) {
           myUser2Messages.remove(user);
         }
       }
       else if (!userMessages.contains(message)) {
         userMessages.add(message);
+        myUnsavedRecords.add(PendingMessagesJournal.Record.added(user, message));
       }
     }
 
@@ -99,6 +119,12 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
     }
   }
 
+  public int countPendingMessages() {
+    synchronized (myUser2MessagesLock) {
+      return PendingMessagesJournal.countMessages(myUser2Messages);
+    }
+  }
+
   @Override
   public EventBroadcaster getBroadcaster() {
     return myEventBroadcaster;
@@ -107,9 +133,7 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
   @Override
   public boolean sendNow(User user, Message message) {
     boolean result = performDispatch(user, message);
-    if (result) {
-      save();
-    }
+    save();
     return result;
   }
 
@@ -123,9 +147,10 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
           LOG.debug("Added pending message " + message + "\nfor user " + user);
         }
         userMessages.add(message);
-        save();
+        myUnsavedRecords.add(PendingMessagesJournal.Record.added(user, message));
       }
     }
+    save();
   }
 
   private List<Message> getMessages(User user) {
@@ -140,10 +165,19 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
   }
 
   protected final void load() {
-    synchronized (myUser2MessagesLock) {
+    synchronized (mySaveLock) {
       Object pendingEventsStorable = XStreamUtil.fromXml(getXStream(), getFileName(), false);
-      if (pendingEventsStorable instanceof MessagesStorable) {
-        loadFromStorableMessages((MessagesStorable)pendingEventsStorable);
+      synchronized (myUser2MessagesLock) {
+        myUser2Messages.clear();
+        myUnsavedRecords.clear();
+        long generation = 0;
+        if (pendingEventsStorable instanceof MessagesStorable) {
+          loadFromStorableMessages((MessagesStorable)pendingEventsStorable);
+          generation = ((MessagesStorable)pendingEventsStorable).getJournalGeneration();
+        }
+
+        myJournal = new PendingMessagesJournal(new File(getFileName() + PendingMessagesJournal.JOURNAL_SUFFIX), getXStream());
+        myJournal.replay(generation, myUser2Messages);
       }
     }
   }
@@ -159,23 +193,65 @@ public abstract class AbstractMessageDispatcher implements MessageDispatcher, Di
 
   private void removeUser(User user) {
     synchronized (myUser2MessagesLock) {
-      myUser2Messages.remove(user);
-      save();
+      if (myUser2Messages.remove(user) != null) {
+        myUnsavedRecords.add(PendingMessagesJournal.Record.userRemoved(user));
+      }
     }
+    save();
   }
 
+  /**
+   * Appends the changes of the queue made since the last save to the journal. A thread which finds the journal busy
+   * waits for it and usually finds its changes already committed by the previous writer.
+   */
   protected void save() {
-    if (myDataDir == null || !myDataDir.exists()) return;
+    synchronized (mySaveLock) {
+      List<PendingMessagesJournal.Record> records;
+      Map<User, List<Message>> snapshot = null;
+      synchronized (myUser2MessagesLock) {
+        if (myDataDir == null || !myDataDir.exists()) {
+          myUnsavedRecords.clear();
+          myJournal.markBroken();
+          return;
+        }
+        if (myUnsavedRecords.isEmpty() && !myJournal.needsCompaction(0)) return;
+
+        records = new ArrayList<>(myUnsavedRecords);
+        myUnsavedRecords.clear();
+        if (myJournal.needsCompaction(records.size())) {
+          snapshot = new HashMap<>();
+          for (Map.Entry<User, List<Message>> entry : myUser2Messages.entrySet()) {
+            snapshot.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+          }
+        }
+      }
 
-    LOG.debug("Save start");
-    synchronized (myUser2MessagesLock) {
-      XStreamUtil.toXml(getXStream(), getFileName(), createStorableMessages());
+      LOG.debug("Save start");
+      try {
+        if (snapshot != null) {
+          writeSnapshot(snapshot);
+        }
+        else {
+          myJournal.append(records);
+        }
+      }
+      catch (IOException | RuntimeException e) {
+        LOG.warn("Unable to save pending messages to " + getFileName(), e);
+        myJournal.markBroken();
+      }
+      LOG.debug("Save finish");
     }
-    LOG.debug("Save finish");
   }
 
-  protected MessagesStorable createStorableMessages() {
-    return new MessagesStorable(myUser2Messages);
+  private void writeSnapshot(Map<User, List<Message>> user2Messages) throws IOException {
+    long generation = myJournal.getGeneration() + 1;
+    File file = new File(getFileName());
+    File tempFile = new File(file.getPath() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(tempFile)), StandardCharsets.UTF_8)) {
+      getXStream().toXML(new MessagesStorable(user2Messages, generation), writer);
+    }
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    myJournal.reset(generation, PendingMessagesJournal.countMessages(user2Messages));
   }
 
   private XStream getXStream() {
@@ -10,108 +10,80 @@ import jetbrains.communicator.core.dispatcher.Message;
 import jetbrains.communicator.core.users.User;
 import jetbrains.communicator.core.users.UserEvent;
 import jetbrains.communicator.ide.IDEFacade;
-import jetbrains.communicator.util.WaitFor;
 import org.apache.log4j.Logger;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
+ * Delivers network messages in the background. Users are served by a small pool of workers, so an unreachable user
+ * with a long network timeout does not hold up the others. Messages to one user are sent one at a time, in the order
+ * they were queued: a failed message stops the delivery to its user, which is retried later with a growing delay.
+ *
  * @author Kir
  */
-public class AsyncMessageDispatcherImpl extends AbstractMessageDispatcher implements AsyncMessageDispatcher, Runnable {
+public class AsyncMessageDispatcherImpl extends AbstractMessageDispatcher implements AsyncMessageDispatcher {
   private static final Logger LOG = Logger.getLogger(AsyncMessageDispatcherImpl.class);
 
   private static final String FILE_NAME = "pendingNetworkMessages.xml";
+  private static final int WORKER_COUNT = 4;
+  private static final long FIRST_RETRY_DELAY = TimeUnit.SECONDS.toMillis(5);
+  private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(10);
+
   private final MyEventListener myEventListener;
   private final IDEFacade myIdeFacade;
+  private final DeliveryStatistics myStatistics = new DeliveryStatistics();
 
-  private final Object myWorkingThreadLock = new Object();
-  private Thread myWorkingThread;
-  private Thread myThread;
-
-  private boolean myShouldDeliverNow;
+  private final Object myDeliveryLock = new Object();
+  private final Map<User, UserDelivery> myDeliveries = new HashMap<>();
+  private final ScheduledThreadPoolExecutor myExecutor;
 
   public AsyncMessageDispatcherImpl(EventBroadcaster broadcaster, IDEFacade ideFacade) {
     super(broadcaster, ideFacade.getCacheDir());
 
     myIdeFacade = ideFacade;
+    myExecutor = new ScheduledThreadPoolExecutor(WORKER_COUNT, new DeliveryThreadFactory());
     myEventListener = new MyEventListener(broadcaster);
-
-    start();
-  }
-
-  private void start() {
-    assert !isRunning(): "Already started";
-    Thread t = new Thread(this, "Network Message Dispatcher");
-    t.setDaemon(true);
-    t.start();
   }
 
   public boolean isRunning() {
-    return myThread != null && myThread.isAlive();
+    return !myExecutor.isTerminated();
   }
 
-  @Override
-  public void run() {
-    LOG.debug("Starting " + Thread.currentThread().getName());
-
-    synchronized (myWorkingThreadLock) {
-      myWorkingThread = Thread.currentThread();
-      myThread = Thread.currentThread();
-    }
-    try {
-      LOG.debug("Started Network Message Dispatcher thread");
-      while (notDisposed()) {
-        synchronized(myWorkingThreadLock) {
-          while (!myShouldDeliverNow && notDisposed()) {
-            myWorkingThreadLock.wait();
-          }
-          myShouldDeliverNow = false;
-        }
-        LOG.debug("Process pending network messages");
-
-        if (notDisposed()) {
-          dispatchAllMessages();
-        }
-      }
-    } catch (InterruptedException e) {
-      LOG.warn(e.getMessage(), e);
-    }
-    finally {
-      synchronized(myWorkingThreadLock) {
-        myWorkingThread = null;
-      }
-    }
-  }
-
-  private boolean notDisposed() {
-    return myWorkingThread != null;
+  public DeliveryStatistics getStatistics() {
+    return myStatistics;
   }
 
-  private void dispatchAllMessages() {
-    User[] usersWithMessages = getUsersWithMessages();
-    for (int i = 0; i < usersWithMessages.length && isRunning(); i++) {
-      User user = usersWithMessages[i];
-      Message[] pendingMessages = getPendingMessages(user);
-      for (int j = 0; j < pendingMessages.length && isRunning(); j++) {
-        performDispatch(user, pendingMessages[j]);
+  /**
+   * @return the number of users whose delivery failed and will be retried later
+   */
+  public int countRetryingUsers() {
+    synchronized (myDeliveryLock) {
+      int result = 0;
+      for (UserDelivery delivery : myDeliveries.values()) {
+        if (delivery.myFailures > 0) result++;
       }
+      return result;
     }
-    save();
   }
 
   @Override
   public void dispose() {
     myEventListener.dispose();
 
-    synchronized(myWorkingThreadLock) {
-      myWorkingThread = null;
-      myWorkingThreadLock.notifyAll();
+    synchronized (myDeliveryLock) {
+      myExecutor.shutdownNow();
+      myDeliveries.clear();
     }
-    new WaitFor(10000){
-      @Override
-      protected boolean condition() {
-        return !isRunning();
-      }
-    };
+    try {
+      myExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      LOG.warn(e.getMessage(), e);
+    }
+    LOG.debug("Network messages: " + myStatistics + ", " + countPendingMessages() + " pending");
 
     super.dispose();
   }
@@ -123,10 +95,8 @@ public class AsyncMessageDispatcherImpl extends AbstractMessageDispatcher implem
 
   @Override
   public void sendLater(User user, Message message) {
-    synchronized(myWorkingThreadLock) {
-      addPendingMessage(user, message);
-      triggerDelivery();
-    }
+    addPendingMessage(user, message);
+    scheduleDelivery(user, false);
   }
 
   @Override
@@ -134,10 +104,105 @@ public class AsyncMessageDispatcherImpl extends AbstractMessageDispatcher implem
     return myIdeFacade;
   }
 
-  void triggerDelivery() {
-    synchronized(myWorkingThreadLock) {
-      myShouldDeliverNow = true;
-      myWorkingThreadLock.notifyAll();
+  /**
+   * @param now when true, a retry the user waits for is started at once: the user has come online
+   */
+  private void scheduleDelivery(User user, boolean now) {
+    synchronized (myDeliveryLock) {
+      if (myExecutor.isShutdown()) return;
+
+      UserDelivery delivery = myDeliveries.computeIfAbsent(user, UserDelivery::new);
+      if (delivery.myRunning) {
+        delivery.myRepeat = true;
+      }
+      else if (delivery.myScheduled == null) {
+        delivery.myScheduled = myExecutor.submit(delivery);
+      }
+      else if (now && delivery.myFailures > 0 && delivery.myScheduled.cancel(false)) {
+        delivery.myFailures = 0;
+        delivery.myScheduled = myExecutor.submit(delivery);
+      }
+    }
+  }
+
+  private class UserDelivery implements Runnable {
+    private final User myUser;
+    private Future<?> myScheduled;
+    private boolean myRunning;
+    /** Messages were queued while the worker was sending */
+    private boolean myRepeat;
+    private int myFailures;
+
+    UserDelivery(User user) {
+      myUser = user;
+    }
+
+    @Override
+    public void run() {
+      synchronized (myDeliveryLock) {
+        myScheduled = null;
+        myRunning = true;
+        myRepeat = false;
+      }
+
+      boolean delivered = false;
+      try {
+        delivered = sendPendingMessages();
+      }
+      catch (RuntimeException e) {
+        LOG.warn("Unable to deliver messages to " + myUser, e);
+      }
+      finally {
+        save();
+        finish(delivered);
+      }
+    }
+
+    private boolean sendPendingMessages() {
+      for (Message message : getPendingMessages(myUser)) {
+        if (Thread.currentThread().isInterrupted()) return true;
+
+        long start = System.nanoTime();
+        boolean sent = performDispatch(myUser, message);
+        myStatistics.messageSent(sent, System.nanoTime() - start);
+        if (!sent) return false;
+      }
+      return true;
+    }
+
+    private void finish(boolean delivered) {
+      synchronized (myDeliveryLock) {
+        myRunning = false;
+        if (myExecutor.isShutdown()) return;
+
+        if (!delivered) {
+          myFailures++;
+          long delay = Math.min(MAX_RETRY_DELAY, FIRST_RETRY_DELAY << Math.min(myFailures - 1, 20));
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Delivery to " + myUser + " failed " + myFailures + " times, retry in " + delay + " ms");
+          }
+          myScheduled = myExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+          myStatistics.retryScheduled();
+        }
+        else if (myRepeat) {
+          myFailures = 0;
+          myScheduled = myExecutor.submit(this);
+        }
+        else {
+          myDeliveries.remove(myUser);
+        }
+      }
+    }
+  }
+
+  private static class DeliveryThreadFactory implements ThreadFactory {
+    private final AtomicInteger myCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "Network Message Dispatcher " + myCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
     }
   }
 
@@ -157,7 +222,9 @@ public class AsyncMessageDispatcherImpl extends AbstractMessageDispatcher implem
     public void afterChange(IDEtalkEvent event) {
       event.accept(new EventVisitor(){
         @Override public void visitUserOnline(UserEvent.Online online) {
-          triggerDelivery();
+          if (getPendingMessages(online.getUser()).length > 0) {
+            scheduleDelivery(online.getUser(), true);
+          }
         }
       });
     }
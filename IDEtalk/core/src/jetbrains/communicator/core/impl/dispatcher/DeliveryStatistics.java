@@ -0,0 +1,57 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package jetbrains.communicator.core.impl.dispatcher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the network message delivery: sent and failed messages, the time sending them took and the retries
+ * scheduled for unreachable users.
+ */
+public final class DeliveryStatistics {
+  private final AtomicLong myDeliveredCount = new AtomicLong();
+  private final AtomicLong myFailedCount = new AtomicLong();
+  private final AtomicLong myRetryCount = new AtomicLong();
+  private final AtomicLong mySendNanos = new AtomicLong();
+  private final AtomicLong myMaxSendNanos = new AtomicLong();
+
+  public long getDeliveredCount() {
+    return myDeliveredCount.get();
+  }
+
+  public long getFailedCount() {
+    return myFailedCount.get();
+  }
+
+  /**
+   * @return the number of delivery attempts postponed because the previous attempt failed
+   */
+  public long getRetryCount() {
+    return myRetryCount.get();
+  }
+
+  public long getAverageSendTime(TimeUnit unit) {
+    long count = getDeliveredCount() + getFailedCount();
+    return count == 0 ? 0 : unit.convert(mySendNanos.get() / count, TimeUnit.NANOSECONDS);
+  }
+
+  public long getMaxSendTime(TimeUnit unit) {
+    return unit.convert(myMaxSendNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  void messageSent(boolean delivered, long nanos) {
+    (delivered ? myDeliveredCount : myFailedCount).incrementAndGet();
+    mySendNanos.addAndGet(nanos);
+    myMaxSendNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  void retryScheduled() {
+    myRetryCount.incrementAndGet();
+  }
+
+  public String toString() {
+    return "delivered " + getDeliveredCount() + ", failed " + getFailedCount() + ", retries " + getRetryCount() +
+           ", send time " + getAverageSendTime(TimeUnit.MILLISECONDS) + " ms average, " +
+           getMaxSendTime(TimeUnit.MILLISECONDS) + " ms max";
+  }
+}
@@ -0,0 +1,448 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package jetbrains.communicator.core.impl.dispatcher;
+
+import com.thoughtworks.xstream.XStream;
+import jetbrains.communicator.core.dispatcher.LocalMessage;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Message history of a single user.
+ * <p>
+ * Messages are appended to a log file as XStream XML; they are never rewritten. An index file next to the log holds the
+ * time, position and words of every message, in the order of the log. The index is read when the history is opened,
+ * while the messages are read from the log only when they are requested.
+ * <p>
+ * Messages which reached the log but not the index (the IDE was killed in between) are indexed again on opening.
+ */
+class HistoryLog {
+  @NonNls
+  private static final Logger LOG = Logger.getLogger(HistoryLog.class);
+
+  @NonNls static final String LOG_SUFFIX = ".log";
+  @NonNls static final String INDEX_SUFFIX = ".idx";
+
+  private static final int LOG_MAGIC = 0x4944544C;
+  private static final int INDEX_MAGIC = 0x49445449;
+  private static final int VERSION = 1;
+  /** Length and time of a message precede its XML in the log */
+  private static final int RECORD_HEADER_LENGTH = 12;
+
+  private final File myLogFile;
+  private final File myIndexFile;
+  private final String myUserKey;
+  private final XStream myXStream;
+
+  /** The date index: all messages ordered by time */
+  private final List<Entry> myEntries = new ArrayList<>();
+  /** The text index: the saved messages containing each word */
+  private final NavigableMap<String, List<Entry>> myWords = new TreeMap<>();
+  private final List<Entry> myUnsaved = new ArrayList<>();
+
+  private static final class Entry {
+    private final long myWhen;
+    private long myOffset = -1;
+    private int myLength;
+    private String[] myWords;
+    private LocalMessage myMessage;
+    private boolean myUnreadable;
+
+    Entry(long when) {
+      myWhen = when;
+    }
+  }
+
+  HistoryLog(File dir, String userKey, XStream xStream) {
+    String fileName = getFileName(userKey);
+    myLogFile = new File(dir, fileName + LOG_SUFFIX);
+    myIndexFile = new File(dir, fileName + INDEX_SUFFIX);
+    myUserKey = userKey;
+    myXStream = xStream;
+
+    if (myLogFile.exists()) {
+      try {
+        load();
+      }
+      catch (IOException e) {
+        LOG.warn("Unable to read history " + myLogFile + ", starting a new one", e);
+        myEntries.clear();
+        myWords.clear();
+        myLogFile.renameTo(new File(dir, myLogFile.getName() + ".bak"));
+        myIndexFile.delete();
+      }
+    }
+  }
+
+  /**
+   * @return the key of the user the log belongs to, or null if the file is not a readable log
+   */
+  @Nullable
+  static String readUserKey(File logFile) {
+    try (DataInputStream log = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+      return log.readInt() == LOG_MAGIC && log.readInt() == VERSION ? log.readUTF() : null;
+    }
+    catch (IOException e) {
+      LOG.info("Unable to read history " + logFile, e);
+      return null;
+    }
+  }
+
+  @NonNls
+  private static String getFileName(String userKey) {
+    StringBuilder result = new StringBuilder();
+    for (char c : userKey.toCharArray()) {
+      result.append(c < 128 && (Character.isLetterOrDigit(c) || c == '.' || c == '-') ? c : '_');
+    }
+    return result.append('-').append(Integer.toHexString(userKey.hashCode())).toString();
+  }
+
+  private void load() throws IOException {
+    boolean indexComplete;
+    try (RandomAccessFile log = new RandomAccessFile(myLogFile, "rw")) {
+      if (log.readInt() != LOG_MAGIC || log.readInt() != VERSION || !myUserKey.equals(log.readUTF())) {
+        throw new IOException("Unknown history format");
+      }
+
+      indexComplete = loadIndex(log.length());
+      long position = myEntries.isEmpty() ? log.getFilePointer() : recordEnd(myEntries.get(myEntries.size() - 1));
+      while (position + RECORD_HEADER_LENGTH <= log.length()) {
+        log.seek(position);
+        int length = log.readInt();
+        long when = log.readLong();
+        if (length < 0 || position + RECORD_HEADER_LENGTH + length > log.length()) break;
+
+        byte[] xml = new byte[length];
+        log.readFully(xml);
+        Entry entry = new Entry(when);
+        entry.myOffset = position;
+        entry.myLength = length;
+        entry.myWords = toArray(HistoryWords.ofXml(new String(xml, StandardCharsets.UTF_8)));
+        myEntries.add(entry);
+        indexComplete = false;
+        position = recordEnd(entry);
+      }
+
+      if (position < log.length()) {
+        LOG.info("Dropping incomplete message at the end of " + myLogFile);
+        log.setLength(position);
+      }
+    }
+
+    // the index is rewritten in log order, which differs from time order when the clock of a sender is off
+    if (!indexComplete) {
+      writeIndex(myEntries, false);
+    }
+    myEntries.sort(Comparator.comparingLong(entry -> entry.myWhen));
+    for (Entry entry : myEntries) {
+      addToWordIndex(entry);
+    }
+  }
+
+  /**
+   * @return false if the index is missing or was not completely written
+   */
+  private boolean loadIndex(long logLength) throws IOException {
+    if (!myIndexFile.exists()) return false;
+
+    try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(myIndexFile)))) {
+      if (index.readInt() != INDEX_MAGIC || index.readInt() != VERSION) return false;
+
+      long indexedEnd = 0;
+      while (true) {
+        long when;
+        try {
+          when = index.readLong();
+        }
+        catch (EOFException e) {
+          return true;
+        }
+        Entry entry = new Entry(when);
+        entry.myOffset = index.readLong();
+        entry.myLength = index.readInt();
+        entry.myWords = new String[index.readInt()];
+        for (int i = 0; i < entry.myWords.length; i++) {
+          entry.myWords[i] = index.readUTF();
+        }
+        if (entry.myOffset < indexedEnd || recordEnd(entry) > logLength) return false;
+
+        myEntries.add(entry);
+        indexedEnd = recordEnd(entry);
+      }
+    }
+    catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static long recordEnd(Entry entry) {
+    return entry.myOffset + RECORD_HEADER_LENGTH + entry.myLength;
+  }
+
+  private void writeIndex(Collection<Entry> entries, boolean append) throws IOException {
+    boolean writeHeader = !append || !myIndexFile.exists();
+    try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myIndexFile, append)))) {
+      if (writeHeader) {
+        index.writeInt(INDEX_MAGIC);
+        index.writeInt(VERSION);
+      }
+      for (Entry entry : entries) {
+        index.writeLong(entry.myWhen);
+        index.writeLong(entry.myOffset);
+        index.writeInt(entry.myLength);
+        index.writeInt(entry.myWords.length);
+        for (String word : entry.myWords) {
+          index.writeUTF(word);
+        }
+      }
+    }
+  }
+
+  private void addToWordIndex(Entry entry) {
+    for (String word : entry.myWords) {
+      myWords.computeIfAbsent(word, key -> new ArrayList<>()).add(entry);
+    }
+    // the words are kept by the text index from now on
+    entry.myWords = null;
+  }
+
+  private static String[] toArray(Set<String> words) {
+    return words.toArray(new String[0]);
+  }
+
+  void addMessage(LocalMessage message) {
+    Entry entry = new Entry(message.getWhen().getTime());
+    entry.myMessage = message;
+    myEntries.add(firstAfter(entry.myWhen), entry);
+    myUnsaved.add(entry);
+  }
+
+  /**
+   * Adds the message unless the log has a message of the same time and content, so that history imported again after an
+   * interrupted import is not duplicated.
+   *
+   * @return true if the message was added
+   */
+  boolean addMessageIfAbsent(LocalMessage message) {
+    long when = message.getWhen().getTime();
+    int end = firstAfter(when);
+    int start = end;
+    while (start > 0 && myEntries.get(start - 1).myWhen == when) {
+      start--;
+    }
+    if (start < end) {
+      List<Entry> sameTime = myEntries.subList(start, end);
+      readEntries(sameTime);
+      String xml = myXStream.toXML(message);
+      for (Entry entry : sameTime) {
+        if (entry.myMessage != null && xml.equals(myXStream.toXML(entry.myMessage))) return false;
+      }
+    }
+    addMessage(message);
+    return true;
+  }
+
+  boolean hasUnsavedMessages() {
+    return !myUnsaved.isEmpty();
+  }
+
+  void save() throws IOException {
+    if (myUnsaved.isEmpty()) return;
+
+    List<Entry> saved = new ArrayList<>(myUnsaved.size());
+    long offset = myLogFile.length();
+    try (DataOutputStream log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myLogFile, true)))) {
+      if (offset == 0) {
+        log.writeInt(LOG_MAGIC);
+        log.writeInt(VERSION);
+        log.writeUTF(myUserKey);
+        offset = log.size();
+      }
+
+      for (Entry entry : myUnsaved) {
+        String xml;
+        try {
+          xml = myXStream.toXML(entry.myMessage);
+        }
+        catch (RuntimeException e) {
+          LOG.error("Unable to save message " + entry.myMessage + " to " + myLogFile, e);
+          continue;
+        }
+
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        log.writeInt(bytes.length);
+        log.writeLong(entry.myWhen);
+        log.write(bytes);
+
+        entry.myOffset = offset;
+        entry.myLength = bytes.length;
+        entry.myWords = toArray(HistoryWords.ofXml(xml));
+        offset = recordEnd(entry);
+        saved.add(entry);
+      }
+    }
+    finally {
+      myUnsaved.clear();
+    }
+
+    writeIndex(saved, true);
+    for (Entry entry : saved) {
+      addToWordIndex(entry);
+    }
+  }
+
+  /**
+   * @return messages newer than the given date, oldest first
+   */
+  List<LocalMessage> getMessages(@Nullable Date since) {
+    int from = since == null ? 0 : firstAfter(since.getTime());
+    List<Entry> entries = myEntries.subList(from, myEntries.size());
+    readEntries(entries);
+    return collectMessages(entries);
+  }
+
+  /**
+   * @return messages which may contain the search string, oldest first. Only the messages having all words of the search
+   * string are matched, they are scored by the number of words they contain as whole words.
+   * The messages are not read from the log, see {@link #readMessages(Collection)}.
+   */
+  List<Match> findMatches(String searchString) {
+    Map<Entry, Integer> scores = null;
+    for (HistoryWords.Word word : HistoryWords.ofSearchString(searchString)) {
+      Map<Entry, Integer> wordScores = new HashMap<>();
+      Map<String, List<Entry>> lookIn =
+        word.isPrefix() ? myWords.subMap(word.getText(), true, word.getText() + Character.MAX_VALUE, false) : myWords;
+      for (Map.Entry<String, List<Entry>> indexed : lookIn.entrySet()) {
+        if (word.matches(indexed.getKey())) {
+          int score = indexed.getKey().equals(word.getText()) ? 2 : 1;
+          for (Entry entry : indexed.getValue()) {
+            wordScores.merge(entry, score, Math::max);
+          }
+        }
+      }
+
+      if (scores == null) {
+        scores = wordScores;
+      }
+      else {
+        scores.keySet().retainAll(wordScores.keySet());
+        scores.replaceAll((entry, score) -> score + wordScores.get(entry));
+      }
+    }
+
+    List<Match> result = new ArrayList<>();
+    for (Entry entry : myEntries) {
+      Integer score = scores == null ? Integer.valueOf(0) : scores.get(entry);
+      if (score != null) {
+        result.add(new Match(this, entry, score));
+      }
+      else if (entry.myOffset < 0) {
+        // not indexed before it is saved
+        result.add(new Match(this, entry, 0));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A message of the log which may contain the searched string.
+   */
+  static final class Match {
+    private final HistoryLog myLog;
+    private final Entry myEntry;
+    private final int myScore;
+
+    private Match(HistoryLog log, Entry entry, int score) {
+      myLog = log;
+      myEntry = entry;
+      myScore = score;
+    }
+
+    HistoryLog getLog() {
+      return myLog;
+    }
+
+    int getScore() {
+      return myScore;
+    }
+
+    long getWhen() {
+      return myEntry.myWhen;
+    }
+
+    /**
+     * @return the message, or null if it was not read from the log or could not be read
+     */
+    @Nullable
+    LocalMessage getMessage() {
+      return myEntry.myMessage;
+    }
+  }
+
+  void readMessages(Collection<Match> matches) {
+    List<Entry> entries = new ArrayList<>(matches.size());
+    for (Match match : matches) {
+      assert match.myLog == this;
+      entries.add(match.myEntry);
+    }
+    readEntries(entries);
+  }
+
+  private int firstAfter(long when) {
+    int low = 0;
+    int high = myEntries.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (myEntries.get(middle).myWhen <= when) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private void readEntries(List<Entry> entries) {
+    List<Entry> toRead = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (entry.myMessage == null && !entry.myUnreadable) {
+        toRead.add(entry);
+      }
+    }
+    if (toRead.isEmpty()) return;
+
+    toRead.sort(Comparator.comparingLong(entry -> entry.myOffset));
+    try (RandomAccessFile log = new RandomAccessFile(myLogFile, "r")) {
+      for (Entry entry : toRead) {
+        byte[] xml = new byte[entry.myLength];
+        log.seek(entry.myOffset + RECORD_HEADER_LENGTH);
+        log.readFully(xml);
+        try {
+          entry.myMessage = (LocalMessage)myXStream.fromXML(new String(xml, StandardCharsets.UTF_8));
+        }
+        catch (RuntimeException e) {
+          LOG.info("Unable to read message at " + entry.myOffset + " in " + myLogFile, e);
+          entry.myUnreadable = true;
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to read history " + myLogFile, e);
+    }
+  }
+
+  private static List<LocalMessage> collectMessages(List<Entry> entries) {
+    List<LocalMessage> result = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      if (entry.myMessage != null) {
+        result.add(entry.myMessage);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,139 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package jetbrains.communicator.core.impl.dispatcher;
+
+import org.jetbrains.annotations.NonNls;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits messages into the lower-cased words the history index consists of.
+ * Messages are indexed in their serialized form: markup is skipped, so the words come from the message text, code pointers
+ * and stack traces.
+ */
+final class HistoryWords {
+  /** Longer words are indexed by their beginning */
+  private static final int MAX_LENGTH = 100;
+
+  private HistoryWords() {
+  }
+
+  static Set<String> ofXml(String xml) {
+    Set<String> result = new HashSet<>();
+    StringBuilder word = new StringBuilder();
+    int i = 0;
+    while (i < xml.length()) {
+      char c = xml.charAt(i);
+      if (c == '<') {
+        addWord(result, word);
+        int end = xml.indexOf('>', i);
+        i = end < 0 ? xml.length() : end + 1;
+        continue;
+      }
+
+      int end = c == '&' ? xml.indexOf(';', i) : -1;
+      if (end > i) {
+        c = decodeEntity(xml.substring(i + 1, end));
+        i = end + 1;
+      }
+      else {
+        i++;
+      }
+
+      if (Character.isLetterOrDigit(c)) {
+        word.append(Character.toLowerCase(c));
+      }
+      else {
+        addWord(result, word);
+      }
+    }
+    addWord(result, word);
+    return result;
+  }
+
+  private static void addWord(Set<String> result, StringBuilder word) {
+    if (word.length() > 0) {
+      result.add(word.length() > MAX_LENGTH ? word.substring(0, MAX_LENGTH) : word.toString());
+      word.setLength(0);
+    }
+  }
+
+  private static char decodeEntity(@NonNls String entity) {
+    switch (entity) {
+      case "lt": return '<';
+      case "gt": return '>';
+      case "amp": return '&';
+      case "quot": return '"';
+      case "apos": return '\'';
+    }
+    try {
+      if (entity.startsWith("#x")) return (char)Integer.parseInt(entity.substring(2), 16);
+      if (entity.startsWith("#")) return (char)Integer.parseInt(entity.substring(1));
+    }
+    catch (NumberFormatException ignored) {
+    }
+    return ' ';
+  }
+
+  /**
+   * @return the words a message has to contain if it contains the search string. A word of the search string which is
+   * not delimited on both sides may be a part of a longer word in the message.
+   */
+  static List<Word> ofSearchString(String searchString) {
+    List<Word> result = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= searchString.length(); i++) {
+      boolean letter = i < searchString.length() && Character.isLetterOrDigit(searchString.charAt(i));
+      if (letter && start < 0) {
+        start = i;
+      }
+      else if (!letter && start >= 0) {
+        result.add(new Word(toLowerCase(searchString.substring(start, i)), start > 0, i < searchString.length()));
+        start = -1;
+      }
+    }
+    return result;
+  }
+
+  private static String toLowerCase(String s) {
+    StringBuilder result = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      result.append(Character.toLowerCase(s.charAt(i)));
+    }
+    return result.toString();
+  }
+
+  static final class Word {
+    private final String myText;
+    private final boolean myWholeStart;
+    private final boolean myWholeEnd;
+
+    Word(String text, boolean wholeStart, boolean wholeEnd) {
+      myText = text.length() > MAX_LENGTH ? text.substring(0, MAX_LENGTH) : text;
+      myWholeStart = wholeStart;
+      myWholeEnd = wholeEnd && text.length() <= MAX_LENGTH;
+    }
+
+    /** Words which start with the text of this word can be looked up in a sorted dictionary */
+    boolean isPrefix() {
+      return myWholeStart;
+    }
+
+    String getText() {
+      return myText;
+    }
+
+    boolean matches(String indexedWord) {
+      if (myWholeStart && myWholeEnd) return indexedWord.equals(myText);
+      if (myWholeStart) return indexedWord.startsWith(myText);
+      if (myWholeEnd) return indexedWord.endsWith(myText);
+      return indexedWord.contains(myText);
+    }
+
+    public String toString() {
+      return myText;
+    }
+  }
+}
@@ -5,6 +5,7 @@ import jetbrains.communicator.core.EventBroadcaster;
 import jetbrains.communicator.core.EventVisitor;
 import jetbrains.communicator.core.IDEtalkAdapter;
 import jetbrains.communicator.core.IDEtalkEvent;
+import jetbrains.communicator.core.dispatcher.HistorySearchListener;
 import jetbrains.communicator.core.dispatcher.LocalMessage;
 import jetbrains.communicator.core.dispatcher.LocalMessageDispatcher;
 import jetbrains.communicator.core.dispatcher.Message;
@@ -13,7 +14,9 @@ import jetbrains.communicator.core.users.User;
 import jetbrains.communicator.core.users.UserModel;
 import jetbrains.communicator.ide.IDEFacade;
 import jetbrains.communicator.ide.OwnMessageEvent;
+import jetbrains.communicator.ide.TalkProgressIndicator;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 import org.picocontainer.Disposable;
 
 import javax.swing.*;
@@ -68,15 +71,6 @@ public class LocalMessageDispatcherImpl extends AbstractMessageDispatcher implem
     return null;
   }
 
-  @Override
-  public int countPendingMessages() {
-    int result = 0;
-    for (User usersWithMessage : getUsersWithMessages()) {
-      result += getPendingMessages(usersWithMessage).length;
-    }
-    return result;
-  }
-
   private LocalMessage getMessageWhichRequireIconBlinking() {
     User[] usersWithMessages = getUsersWithMessages();
     if (usersWithMessages.length > 0) {
@@ -100,6 +94,12 @@ public class LocalMessageDispatcherImpl extends AbstractMessageDispatcher implem
     return myHistory.getHistory(user, since);
   }
 
+  @Override
+  public void searchHistory(@Nullable User user, String searchString, int pageSize,
+                            TalkProgressIndicator indicator, HistorySearchListener listener) {
+    myHistory.search(user, searchString, pageSize, indicator, listener);
+  }
+
   @Override
   public void clearHistory() {
     myHistory.clear();
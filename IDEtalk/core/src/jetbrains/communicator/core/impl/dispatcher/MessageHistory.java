@@ -2,24 +2,29 @@
 package jetbrains.communicator.core.impl.dispatcher;
 
 import com.thoughtworks.xstream.XStream;
+import jetbrains.communicator.core.dispatcher.FoundMessage;
+import jetbrains.communicator.core.dispatcher.HistorySearchListener;
 import jetbrains.communicator.core.dispatcher.LocalMessage;
 import jetbrains.communicator.core.impl.users.UserImpl;
 import jetbrains.communicator.core.users.User;
 import jetbrains.communicator.core.users.UserModel;
 import jetbrains.communicator.ide.IDEFacade;
-import jetbrains.communicator.util.TimeUtil;
+import jetbrains.communicator.ide.TalkProgressIndicator;
 import jetbrains.communicator.util.XStreamUtil;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Future;
 
 /**
+ * Keeps the message history of every user in a {@link HistoryLog}. Logs are opened on first access, and messages are
+ * read from them when requested. History saved by older versions, one XML file per day, is imported into the logs
+ * when the history is created.
+ *
  * @author Kir
  */
 class MessageHistory {
@@ -30,7 +35,7 @@ class MessageHistory {
   @NonNls
   private static final String HISTORY = "history";
 
-  private final DayHistory myHistory = new DayHistory();
+  private final Map<String, HistoryLog> myLogs = new HashMap<>();
   @NonNls
   private final XStream myXStream;
   private final UserModel myUserModel;
@@ -38,19 +43,15 @@ class MessageHistory {
 
   private Future<?> myPendingSave;
 
-  @NonNls
-  private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-
   MessageHistory(IDEFacade facade, UserModel userModel) {
     myFacade = facade;
     myUserModel = userModel;
 
     getHistoryDir().mkdir();
 
-    myXStream = XStreamUtil.createXStream();
-    setupXStream();
+    myXStream = createXStream(userModel);
 
-    loadHistorySince(new Date());
+    importXmlHistory();
   }
 
   public synchronized void dispose() {
@@ -59,24 +60,65 @@ class MessageHistory {
       myPendingSave = null;
     }
 
-    myHistory.clear();
+    saveHistory();
+    myLogs.clear();
   }
 
-  private void setupXStream() {
-    myXStream.alias("user", UserImpl.class);
-    myXStream.alias("dayHistory", DayHistory.class);
-    myXStream.aliasField("historyEntries", DayHistory.class, "myData");
+  static XStream createXStream(UserModel userModel) {
+    XStream xStream = XStreamUtil.createXStream();
+    xStream.alias("user", UserImpl.class);
+    xStream.alias("dayHistory", DayHistory.class);
+    xStream.aliasField("historyEntries", DayHistory.class, "myData");
+
+    xStream.registerConverter(new UserConverter(userModel));
+    return xStream;
+  }
+
+  private void importXmlHistory() {
+    File[] dayFiles = getHistoryDir().listFiles((dir, name) -> name.endsWith(".xml"));
+    if (dayFiles == null || dayFiles.length == 0) return;
+
+    LOG.info("Importing " + dayFiles.length + " history files");
+    Arrays.sort(dayFiles);
+    int skipped = 0;
+    for (File dayFile : dayFiles) {
+      DayHistory dayHistory = (DayHistory)XStreamUtil.fromXml(myXStream, dayFile.getAbsolutePath(), false);
+      if (dayHistory != null) {
+        for (User user : dayHistory.keySet()) {
+          HistoryLog log = getLog(user);
+          for (LocalMessage message : dayHistory.readMessages(user)) {
+            // the files of an import that was interrupted, or failed to delete them, are imported again
+            if (!log.addMessageIfAbsent(message)) {
+              skipped++;
+            }
+          }
+        }
+      }
+    }
+    if (skipped > 0) {
+      LOG.info("Skipped " + skipped + " messages imported before");
+    }
 
-    myXStream.registerConverter(new UserConverter(myUserModel));
+    if (saveHistory()) {
+      for (File dayFile : dayFiles) {
+        dayFile.delete();
+      }
+    }
+    // imported messages are read from the logs again when requested
+    myLogs.clear();
   }
 
   public synchronized void addMessage(User user, LocalMessage message) {
-    myHistory.addMessage(user, message);
+    getLog(user).addMessage(message);
     triggerSave();
   }
 
   public synchronized void clear() {
-    myHistory.clear();
+    if (myPendingSave != null) {
+      myPendingSave.cancel(true);
+      myPendingSave = null;
+    }
+    myLogs.clear();
 
     deleteAllHistoryFiles();
   }
@@ -95,69 +137,108 @@ class MessageHistory {
     return new File(myFacade.getCacheDir(), HISTORY);
   }
 
-  public synchronized LocalMessage[] getHistory(User user, @Nullable Date since) {
-    loadHistorySince(since);
+  private HistoryLog getLog(User user) {
+    return getLog(user.getTransportCode() + ':' + user.getName());
+  }
 
-    List<LocalMessage> list = filterHistoryByDate(user, since);
-    return list.toArray(new LocalMessage[0]);
+  private HistoryLog getLog(String userKey) {
+    return myLogs.computeIfAbsent(userKey, key -> new HistoryLog(getHistoryDir(), key, myXStream));
   }
 
-  private List<LocalMessage> filterHistoryByDate(User user, Date since) {
-    List<LocalMessage> list = myHistory.readMessages(user);
-    if (since != null) {
-      List<LocalMessage> result = new ArrayList<>(list.size());
-      for (LocalMessage message : list) {
-        if (message.getWhen().after(since)) {
-          result.add(message);
+  private Map<HistoryLog, User> getLogs(@Nullable User user) {
+    Map<HistoryLog, User> result = new HashMap<>();
+    if (user != null) {
+      result.put(getLog(user), user);
+      return result;
+    }
+
+    Set<String> userKeys = new HashSet<>(myLogs.keySet());
+    File[] logFiles = getHistoryDir().listFiles((dir, name) -> name.endsWith(HistoryLog.LOG_SUFFIX));
+    if (logFiles != null) {
+      for (File logFile : logFiles) {
+        String userKey = HistoryLog.readUserKey(logFile);
+        if (userKey != null) {
+          userKeys.add(userKey);
         }
       }
-      list = result;
     }
-    return list;
+    UserConverter userConverter = new UserConverter(myUserModel);
+    for (String userKey : userKeys) {
+      result.put(getLog(userKey), (User)userConverter.fromString(userKey));
+    }
+    return result;
   }
 
-  private void loadHistorySince(@Nullable Date since) {
-    if (since != null) {
-      since = TimeUtil.getDay(since);
-    }
+  public synchronized LocalMessage[] getHistory(User user, @Nullable Date since) {
+    return getLog(user).getMessages(since).toArray(new LocalMessage[0]);
+  }
 
-    if (!myHistory.hasHistorySince(since)) {
-      if (since == null) {
-        doLoadHistorySince(new Date(0));
-        myHistory.setHasFullHistory();
-      }
-      else {
-        doLoadHistorySince(since);
+  /**
+   * @return messages of the user containing the search string, oldest first
+   */
+  public synchronized LocalMessage[] findMessages(User user, String searchString) {
+    HistoryLog log = getLog(user);
+    List<HistoryLog.Match> matches = log.findMatches(searchString);
+    log.readMessages(matches);
+
+    List<LocalMessage> result = new ArrayList<>();
+    for (HistoryLog.Match match : matches) {
+      LocalMessage message = match.getMessage();
+      if (message != null && message.containsString(searchString)) {
+        result.add(message);
       }
     }
+    return result.toArray(new LocalMessage[0]);
   }
 
-  private void doLoadHistorySince(Date since) {
-    File historyDir = getHistoryDir();
-
-    String[] historyFiles = historyDir.list((dir, name) -> name.endsWith(".xml"));
-
-    Arrays.sort(historyFiles);
-    for (int i = historyFiles.length - 1; i >= 0; i--) {
-      String historyFile = historyFiles[i];
-      try {
-        Date date = DATE_FORMAT.parse(historyFile);
-        if (!date.before(since) && !myHistory.hasHistorySince(date)) {
-          DayHistory dayHistory = (DayHistory)XStreamUtil.fromXml(myXStream, myFacade.getCacheDir(), getFileNameForDate(date), false);
-          if (dayHistory != null) {
-            dayHistory.copyTo(myHistory);
+  /**
+   * See {@link jetbrains.communicator.core.dispatcher.LocalMessageDispatcher#searchHistory}. The history is not locked
+   * while the listener processes a page.
+   */
+  public void search(@Nullable User user, String searchString, int pageSize,
+                     TalkProgressIndicator indicator, HistorySearchListener listener) {
+    List<HistoryLog.Match> matches = new ArrayList<>();
+    Map<HistoryLog, User> users;
+    synchronized (this) {
+      users = getLogs(user);
+      for (HistoryLog log : users.keySet()) {
+        matches.addAll(log.findMatches(searchString));
+      }
+    }
+    matches.sort(Comparator.comparingInt(HistoryLog.Match::getScore).thenComparingLong(HistoryLog.Match::getWhen).reversed());
+
+    List<FoundMessage> page = new ArrayList<>(pageSize);
+    for (int start = 0; start < matches.size(); start += pageSize) {
+      indicator.checkCanceled();
+      indicator.setFraction((double)start / matches.size());
+
+      List<HistoryLog.Match> chunk = matches.subList(start, Math.min(start + pageSize, matches.size()));
+      readMessages(chunk);
+      for (HistoryLog.Match match : chunk) {
+        LocalMessage message = match.getMessage();
+        if (message != null && message.containsString(searchString)) {
+          page.add(new FoundMessage(users.get(match.getLog()), message));
+          if (page.size() == pageSize) {
+            if (!listener.pageFound(page)) return;
+            page = new ArrayList<>(pageSize);
           }
         }
       }
-      catch (ParseException e) {
-        // ignore file of wrong format
-      }
-      catch (NumberFormatException e) {
-        // ignore file of wrong format
-      }
     }
 
-    myHistory.resort();
+    if (!page.isEmpty()) {
+      listener.pageFound(page);
+    }
+  }
+
+  private synchronized void readMessages(List<HistoryLog.Match> matches) {
+    Map<HistoryLog, List<HistoryLog.Match>> byLog = new HashMap<>();
+    for (HistoryLog.Match match : matches) {
+      byLog.computeIfAbsent(match.getLog(), log -> new ArrayList<>()).add(match);
+    }
+    for (Map.Entry<HistoryLog, List<HistoryLog.Match>> entry : byLog.entrySet()) {
+      entry.getKey().readMessages(entry.getValue());
+    }
   }
 
   private void triggerSave() {
@@ -169,58 +250,37 @@ class MessageHistory {
           // Ignore here.
         }
         finally {
-          saveHistory();
-          myPendingSave = null;
+          synchronized (this) {
+            myPendingSave = null;
+            saveHistory();
+          }
         }
       });
     }
   }
 
-  private synchronized void saveHistory() {
+  /**
+   * @return true if all messages were saved
+   */
+  private synchronized boolean saveHistory() {
     LOG.debug("Start history save");
-    Map<Date, DayHistory> map = getHistory();
-    for (Date date : map.keySet()) {
-      DayHistory dayHistory = map.get(date);
-      try {
-        XStreamUtil.toXml(myXStream, myFacade.getCacheDir(), getFileNameForDate(date), dayHistory);
-      } catch (RuntimeException e) {
-        LOG.error("Unable to save dayHistory for " + date + ": " + dayHistory, e);
+    boolean result = true;
+    for (HistoryLog log : myLogs.values()) {
+      if (log.hasUnsavedMessages()) {
+        try {
+          log.save();
+        }
+        catch (IOException e) {
+          LOG.error("Unable to save history: " + e.getMessage(), e);
+          result = false;
+        }
       }
     }
 
     LOG.debug("Done history save");
-  }
-
-  private synchronized Map<Date, DayHistory> getHistory() {
-    Map<Date, DayHistory> result = new HashMap<>();
-
-    for (User user : myHistory.keySet()) {
-      List<LocalMessage> messages = myHistory.get(user);
-      for (LocalMessage message : messages) {
-        DayHistory dayHistory = getDayHistoryFor(message, result);
-
-        dayHistory.addMessage(user, message);
-      }
-    }
-
     return result;
   }
 
-  private static DayHistory getDayHistoryFor(LocalMessage message, Map<Date, DayHistory> result) {
-    Date day = TimeUtil.getDay(message.getWhen());
-    DayHistory dayHistory = result.get(day);
-    if (dayHistory == null) {
-      dayHistory = new DayHistory();
-      result.put(day, dayHistory);
-    }
-    return dayHistory;
-  }
-
-  @NonNls
-  private static String getFileNameForDate(Date date) {
-    return HISTORY + '/' + DATE_FORMAT.format(date) + ".xml";
-  }
-
   public boolean isEmpty() {
     File historyDir = getHistoryDir();
     return !(historyDir.isDirectory() && historyDir.list().length > 0);
@@ -12,12 +12,23 @@ import java.util.Map;
  */
 public class MessagesStorable {
   private final Map<User, List<Message>> myUser2Messages;
+  /** The generation of the journal which continues this snapshot */
+  private long myJournalGeneration;
 
   public MessagesStorable(Map<User,List<Message>> user2Messages) {
     myUser2Messages = user2Messages;
   }
 
+  public MessagesStorable(Map<User,List<Message>> user2Messages, long journalGeneration) {
+    myUser2Messages = user2Messages;
+    myJournalGeneration = journalGeneration;
+  }
+
   public Map<User,List<Message>> getUser2Messages() {
     return myUser2Messages;
   }
+
+  public long getJournalGeneration() {
+    return myJournalGeneration;
+  }
 }
@@ -0,0 +1,252 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package jetbrains.communicator.core.impl.dispatcher;
+
+import com.thoughtworks.xstream.XStream;
+import jetbrains.communicator.core.dispatcher.Message;
+import jetbrains.communicator.core.users.User;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NonNls;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The write-ahead journal of a pending messages queue. Every change of the queue is appended to the journal, so saving
+ * the queue takes time proportional to the change rather than to the queue. On start, the journal is replayed over the
+ * snapshot of the queue it continues.
+ * <p>
+ * Snapshot and journal carry a generation number which grows with every new snapshot. A journal of an older generation
+ * was already compacted into the snapshot (the IDE was killed before the journal was reset) and is ignored.
+ */
+class PendingMessagesJournal {
+  @NonNls
+  private static final Logger LOG = Logger.getLogger(PendingMessagesJournal.class);
+
+  @NonNls static final String JOURNAL_SUFFIX = ".journal";
+
+  private static final int MAGIC = 0x4944544A;
+  private static final int VERSION = 1;
+  /** Magic, version and generation */
+  private static final int HEADER_LENGTH = 16;
+  /**
+   * The queue is written to a new snapshot when the journal has more records than the snapshot has messages, but not
+   * before the journal has this many records
+   */
+  private static final int MIN_RECORDS_TO_COMPACT = 100;
+
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+  private static final byte REMOVE_USER = 3;
+
+  private final File myFile;
+  private final XStream myXStream;
+
+  private long myGeneration;
+  private int mySnapshotSize;
+  private int myRecordCount;
+  /** The journal file has the header of the current generation */
+  private boolean myStarted;
+  /** Some records did not reach the journal, only a new snapshot can save the queue */
+  private boolean myBroken;
+
+  PendingMessagesJournal(File file, XStream xStream) {
+    myFile = file;
+    myXStream = xStream;
+  }
+
+  long getGeneration() {
+    return myGeneration;
+  }
+
+  int getRecordCount() {
+    return myRecordCount;
+  }
+
+  /**
+   * Makes the next save write a snapshot, as the journal misses some changes of the queue.
+   */
+  void markBroken() {
+    myBroken = true;
+  }
+
+  boolean needsCompaction(int recordsToAppend) {
+    return myBroken || myRecordCount + recordsToAppend > Math.max(MIN_RECORDS_TO_COMPACT, mySnapshotSize);
+  }
+
+  /**
+   * Applies the journal to a queue just loaded from the snapshot of the given generation. Records which follow
+   * an incomplete or unreadable record are dropped.
+   */
+  void replay(long generation, Map<User, List<Message>> user2Messages) {
+    myGeneration = generation;
+    mySnapshotSize = countMessages(user2Messages);
+    myRecordCount = 0;
+    myStarted = false;
+    myBroken = false;
+    if (!myFile.exists()) return;
+
+    try (RandomAccessFile journal = new RandomAccessFile(myFile, "rw")) {
+      if (journal.length() < HEADER_LENGTH || journal.readInt() != MAGIC || journal.readInt() != VERSION || journal.readLong() != generation) {
+        LOG.info("Ignoring outdated journal " + myFile);
+        return;
+      }
+
+      long position = journal.getFilePointer();
+      while (position + 4 <= journal.length()) {
+        journal.seek(position);
+        int length = journal.readInt();
+        if (length < 0 || position + 4 + length > journal.length()) break;
+
+        byte[] record = new byte[length];
+        journal.readFully(record);
+        try {
+          apply(new DataInputStream(new ByteArrayInputStream(record)), user2Messages);
+        }
+        catch (IOException | RuntimeException e) {
+          LOG.warn("Unable to replay record at " + position + " in " + myFile, e);
+          break;
+        }
+        position += 4 + length;
+        myRecordCount++;
+      }
+
+      if (position < journal.length()) {
+        LOG.info("Dropping records after " + position + " in " + myFile);
+        journal.setLength(position);
+      }
+      myStarted = true;
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to read journal " + myFile, e);
+      myBroken = myRecordCount > 0;
+    }
+  }
+
+  private void apply(DataInputStream record, Map<User, List<Message>> user2Messages) throws IOException {
+    byte type = record.readByte();
+    User user = (User)myXStream.fromXML(readString(record));
+    switch (type) {
+      case ADD:
+        Message message = (Message)myXStream.fromXML(readString(record));
+        user2Messages.computeIfAbsent(user, u -> new ArrayList<>(5)).add(message);
+        break;
+      case REMOVE:
+        int index = record.readInt();
+        List<Message> messages = user2Messages.get(user);
+        if (messages == null || index >= messages.size()) throw new IOException("No message " + index + " for " + user);
+        messages.remove(index);
+        if (messages.isEmpty()) {
+          user2Messages.remove(user);
+        }
+        break;
+      case REMOVE_USER:
+        user2Messages.remove(user);
+        break;
+      default:
+        throw new IOException("Unknown record type " + type);
+    }
+  }
+
+  void append(List<Record> records) throws IOException {
+    try (DataOutputStream journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile, myStarted)))) {
+      if (!myStarted) {
+        writeHeader(journal);
+        myStarted = true;
+      }
+
+      for (Record record : records) {
+        byte[] bytes = toBytes(record);
+        journal.writeInt(bytes.length);
+        journal.write(bytes);
+        myRecordCount++;
+      }
+    }
+  }
+
+  /**
+   * Starts an empty journal after a snapshot of the given generation was written.
+   */
+  void reset(long generation, int snapshotSize) throws IOException {
+    myGeneration = generation;
+    mySnapshotSize = snapshotSize;
+    myRecordCount = 0;
+    myBroken = false;
+    myStarted = false;
+    try (DataOutputStream journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+      writeHeader(journal);
+      myStarted = true;
+    }
+  }
+
+  private void writeHeader(DataOutputStream journal) throws IOException {
+    journal.writeInt(MAGIC);
+    journal.writeInt(VERSION);
+    journal.writeLong(myGeneration);
+  }
+
+  private byte[] toBytes(Record record) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(record.myType);
+    writeString(out, myXStream.toXML(record.myUser));
+    if (record.myType == ADD) {
+      writeString(out, myXStream.toXML(record.myMessage));
+    }
+    else if (record.myType == REMOVE) {
+      out.writeInt(record.myIndex);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static int countMessages(Map<User, List<Message>> user2Messages) {
+    int result = 0;
+    for (List<Message> messages : user2Messages.values()) {
+      result += messages.size();
+    }
+    return result;
+  }
+
+  /**
+   * A change of the queue. Records are created when the queue changes and serialized later, when they are appended.
+   */
+  static final class Record {
+    private final byte myType;
+    private final User myUser;
+    private final Message myMessage;
+    private final int myIndex;
+
+    private Record(byte type, User user, Message message, int index) {
+      myType = type;
+      myUser = user;
+      myMessage = message;
+      myIndex = index;
+    }
+
+    static Record added(User user, Message message) {
+      return new Record(ADD, user, message, -1);
+    }
+
+    static Record removed(User user, int index) {
+      return new Record(REMOVE, user, null, index);
+    }
+
+    static Record userRemoved(User user) {
+      return new Record(REMOVE_USER, user, null, -1);
+    }
+  }
+}
@@ -26,13 +26,22 @@ import org.jivesoftware.smack.packet.Packet;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Writes packets to a XMPP server. Packets are sent using a dedicated thread. Packet
  * interceptors can be registered to dynamically modify packets before they're actually
- * sent. Packet listeners can be registered to listen for all outgoing packets.
+ * sent. Packet listeners can be registered to listen for all outgoing packets.<p>
+ *
+ * Packets are queued without locking. The writer thread drains the queue in batches
+ * and sends every batch to the server with a single flush. The size of a batch and
+ * the time to wait for more packets of a batch are set by
+ * {@link SmackConfiguration#getPacketWriterBatchSize()} and
+ * {@link SmackConfiguration#getPacketWriterBatchLatency()}.
  *
  * @author Matt Tucker
  */
@@ -41,8 +50,8 @@ class PacketWriter {
     private Thread writerThread;
     private Writer writer;
     private XMPPConnection connection;
-    final private LinkedList<Packet> queue;
-    private boolean done = false;
+    final private Queue<Packet> queue;
+    private volatile boolean done = false;
     
     final private List<ListenerWrapper> listeners = new ArrayList<ListenerWrapper>();
     private boolean listenersDeleted = false;
@@ -53,6 +62,13 @@ class PacketWriter {
      */
     private long lastActive = System.currentTimeMillis();
 
+    /**
+     * Throughput counters. They are only updated by the writer thread.
+     */
+    private volatile long packetsWritten = 0;
+    private volatile long batchesWritten = 0;
+    private volatile long charactersWritten = 0;
+
     /**
      * List of PacketInterceptor that will be notified when a new packet is about to be
      * sent to the server. These interceptors may modify the packet before it is being
@@ -72,7 +88,7 @@ class PacketWriter {
     protected PacketWriter(XMPPConnection connection) {
         this.connection = connection;
         this.writer = connection.writer;
-        this.queue = new LinkedList<Packet>();
+        this.queue = new ConcurrentLinkedQueue<Packet>();
 
         writerThread = new Thread() {
             public void run() {
@@ -94,10 +110,8 @@ class PacketWriter {
             // may modify the content of the packet.
             processInterceptors(packet);
 
-            synchronized(queue) {
-                queue.addFirst(packet);
-                queue.notifyAll();
-            }
+            queue.add(packet);
+            LockSupport.unpark(writerThread);
 
             // Process packet writer listeners. Note that we're using the sending
             // thread so it's expected that listeners are fast.
@@ -221,46 +235,107 @@ class PacketWriter {
      */
     public void shutdown() {
         done = true;
+        LockSupport.unpark(writerThread);
+    }
+
+    /**
+     * Returns the number of packets written to the server.
+     *
+     * @return the number of packets written.
+     */
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+
+    /**
+     * Returns the number of times packets were flushed to the server. Every flush
+     * sends a batch of one or more packets.
+     *
+     * @return the number of batches written.
+     */
+    public long getBatchesWritten() {
+        return batchesWritten;
+    }
+
+    /**
+     * Returns the number of characters of the packets written to the server.
+     *
+     * @return the number of characters written.
+     */
+    public long getCharactersWritten() {
+        return charactersWritten;
     }
 
     /**
      * Returns the next available packet from the queue for writing.
      *
-     * @return the next packet for writing.
+     * @return the next packet for writing, or null if the writer was shut down.
      */
     private Packet nextPacket() {
-        synchronized(queue) {
-            while (!done && queue.size() == 0) {
-                try {
-                    queue.wait(2000);
-                }
-                catch (InterruptedException ie) {
-                    // Do nothing
-                }
-            }
-            if (queue.size() > 0) {
-                return queue.removeLast();
+        Packet packet = queue.poll();
+        while (packet == null && !done) {
+            LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(2));
+            packet = queue.poll();
+        }
+        return packet;
+    }
+
+    /**
+     * Adds the queued packets to a batch until it is full or no more packets arrive
+     * within the batch latency.
+     *
+     * @param batch the packets to write, with the first packet of the batch.
+     * @param maxSize the maximum number of packets in a batch.
+     * @param latency the nanoseconds to wait for more packets.
+     */
+    private void fillBatch(List<Packet> batch, int maxSize, long latency) {
+        long deadline = System.nanoTime() + latency;
+        while (batch.size() < maxSize && !done) {
+            Packet packet = queue.poll();
+            if (packet != null) {
+                batch.add(packet);
+                continue;
             }
-            else {
-                return null;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
             }
+            LockSupport.parkNanos(this, remaining);
         }
     }
 
+    private void writeBatch(List<Packet> batch) throws IOException {
+        StringBuilder xml = new StringBuilder();
+        for (Packet packet : batch) {
+            xml.append(packet.toXML());
+        }
+        synchronized (writer) {
+            writer.write(xml.toString());
+            writer.flush();
+            // Keep track of the last time a stanza was sent to the server
+            lastActive = System.currentTimeMillis();
+        }
+        packetsWritten += batch.size();
+        batchesWritten++;
+        charactersWritten += xml.length();
+    }
+
     private void writePackets() {
         try {
             // Open the stream.
             openStream();
+            int maxBatchSize = SmackConfiguration.getPacketWriterBatchSize();
+            long batchLatency =
+                    TimeUnit.MILLISECONDS.toNanos(SmackConfiguration.getPacketWriterBatchLatency());
+            List<Packet> batch = new ArrayList<Packet>(maxBatchSize);
             // Write out packets from the queue.
             while (!done) {
                 Packet packet = nextPacket();
                 if (packet != null) {
-                    synchronized (writer) {
-                        writer.write(packet.toXML());
-                        writer.flush();
-                        // Keep track of the last time a stanza was sent to the server
-                        lastActive = System.currentTimeMillis();
-                    }
+                    batch.add(packet);
+                    fillBatch(batch, maxBatchSize, batchLatency);
+                    writeBatch(batch);
+                    batch.clear();
                 }
             }
             // Close the stream.
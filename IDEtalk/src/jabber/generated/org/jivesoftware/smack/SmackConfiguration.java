@@ -48,6 +48,8 @@ public final class SmackConfiguration {
 
     private static int packetReplyTimeout = 5000;
     private static int keepAliveInterval = 30000;
+    private static int packetWriterBatchSize = 100;
+    private static int packetWriterBatchLatency = 0;
 
     private SmackConfiguration() {
     }
@@ -87,6 +89,14 @@ public final class SmackConfiguration {
                                 else if (parser.getName().equals("keepAliveInterval")) {
                                     keepAliveInterval = parseIntProperty(parser, keepAliveInterval);
                                 }
+                                else if (parser.getName().equals("packetWriterBatchSize")) {
+                                    packetWriterBatchSize =
+                                            parseIntProperty(parser, packetWriterBatchSize);
+                                }
+                                else if (parser.getName().equals("packetWriterBatchLatency")) {
+                                    packetWriterBatchLatency =
+                                            parseIntProperty(parser, packetWriterBatchLatency);
+                                }
                             }
                             eventType = parser.next();
                         }
@@ -171,6 +181,57 @@ public final class SmackConfiguration {
         keepAliveInterval = interval;
     }
 
+    /**
+     * Returns the maximum number of packets the packet writer sends to the server
+     * with a single flush. The default value is 100.
+     *
+     * @return the maximum number of packets written in one batch.
+     */
+    public static int getPacketWriterBatchSize() {
+        // The batch size must be greater than 0 otherwise we will answer the default value
+        if (packetWriterBatchSize <= 0) {
+            packetWriterBatchSize = 100;
+        }
+        return packetWriterBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of packets the packet writer sends to the server
+     * with a single flush.
+     *
+     * @param size the maximum number of packets written in one batch.
+     */
+    public static void setPacketWriterBatchSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException();
+        }
+        packetWriterBatchSize = size;
+    }
+
+    /**
+     * Returns the number of milliseconds the packet writer waits for more packets
+     * before it flushes a batch that is not full. The default value is 0 ms, which
+     * means that a batch is flushed as soon as no more packets are queued.
+     *
+     * @return the milliseconds to wait for more packets of a batch.
+     */
+    public static int getPacketWriterBatchLatency() {
+        return packetWriterBatchLatency < 0 ? 0 : packetWriterBatchLatency;
+    }
+
+    /**
+     * Sets the number of milliseconds the packet writer waits for more packets
+     * before it flushes a batch that is not full.
+     *
+     * @param latency the milliseconds to wait for more packets of a batch.
+     */
+    public static void setPacketWriterBatchLatency(int latency) {
+        if (latency < 0) {
+            throw new IllegalArgumentException();
+        }
+        packetWriterBatchLatency = latency;
+    }
+
     private static void parseClassToLoad(XmlPullParser parser) throws Exception {
         String className = parser.nextText();
         // Attempt to load the class so that the class can get initialized
@@ -16,18 +16,27 @@
 package jetbrains.communicator.commands;
 
 import jetbrains.communicator.LightTestCase;
+import jetbrains.communicator.core.dispatcher.FoundMessage;
+import jetbrains.communicator.core.dispatcher.HistorySearchListener;
 import jetbrains.communicator.core.dispatcher.LocalMessage;
 import jetbrains.communicator.core.dispatcher.LocalMessageDispatcher;
 import jetbrains.communicator.core.impl.users.UserImpl;
 import jetbrains.communicator.core.users.User;
+import jetbrains.communicator.ide.CanceledException;
 import jetbrains.communicator.ide.IDEFacade;
+import jetbrains.communicator.ide.NullProgressIndicator;
+import jetbrains.communicator.ide.TalkProgressIndicator;
 import jetbrains.communicator.mock.MockMessage;
 import jetbrains.communicator.mock.MockTransport;
 import jetbrains.communicator.util.CommunicatorStrings;
 import org.jmock.Mock;
+import org.jmock.core.Constraint;
+import org.jmock.core.Invocation;
+import org.jmock.core.stub.CustomStub;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 
 /**
@@ -75,7 +84,7 @@ public class SearchHistoryCommandTest extends LightTestCase {
   public void testSearchHistory_NoResults() {
     query("");
 
-    myDispatcherMock.expects(once()).method("getHistory").with(eq(myUser), eq(null)).will(returnValue(new LocalMessage[0]));
+    expectSearch("");
 
     myIdeMock.expects(once()).method("showMessage").with(
         eq(CommunicatorStrings.getMsg("SearchHistoryCommand.search.history", myUser.getDisplayName())),
@@ -86,13 +95,11 @@ public class SearchHistoryCommandTest extends LightTestCase {
   }
 
   public void testSearchHistory_WithResult() {
-    MockMessage m1 = new MockMessage(new Date(), "some text1");
-    MockMessage m2 = new MockMessage(new Date(), "some text2");
+    MockMessage m2 = new MockMessage(new Date(System.currentTimeMillis() - 1000), "some text2");
     MockMessage m3 = new MockMessage(new Date(), "some text2 ataing");
 
     query("text2");
-    myDispatcherMock.expects(once()).method("getHistory").with(eq(myUser), eq(null)).will(
-        returnValue(new LocalMessage[]{m1, m2, m3}));
+    expectSearch("text2", m3, m2);
 
     myIdeMock.expects(once()).method("showSearchHistoryResults").with(
         eq(new ArrayList<LocalMessage>(Arrays.asList(m2, m3))),
@@ -102,6 +109,35 @@ public class SearchHistoryCommandTest extends LightTestCase {
     myCommand.execute();
   }
 
+  public void testSearchHistory_Canceled() {
+    query("text");
+    myIdeMock.expects(once()).method("runLongProcess").will(throwException(new CanceledException()));
+
+    myCommand.execute();
+  }
+
+  private void expectSearch(String searchString, MockMessage... found) {
+    myIdeMock.expects(once()).method("runLongProcess").will(new CustomStub("runner") {
+      @Override
+      public Object invoke(Invocation invocation) {
+        ((IDEFacade.Process) invocation.parameterValues.get(1)).run(new NullProgressIndicator());
+        return null;
+      }
+    });
+    myDispatcherMock.expects(once()).method("searchHistory").with(new Constraint[]{
+        eq(myUser), eq(searchString), ANYTHING, isA(TalkProgressIndicator.class), isA(HistorySearchListener.class)
+    }).will(new CustomStub("search") {
+      @Override
+      public Object invoke(Invocation invocation) {
+        HistorySearchListener listener = (HistorySearchListener)invocation.parameterValues.get(4);
+        for (MockMessage message : found) {
+          listener.pageFound(Collections.singletonList(new FoundMessage(myUser, message)));
+        }
+        return null;
+      }
+    });
+  }
+
   private void query(String s) {
     myIdeMock.expects(once()).method("getMessage").with(
         eq(CommunicatorStrings.getMsg("SearchHistoryCommand.enter.query.string")),
@@ -23,6 +23,11 @@ import jetbrains.communicator.mock.MockMessage;
 import jetbrains.communicator.mock.MockUser;
 import jetbrains.communicator.p2p.commands.P2PNetworkMessage;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Date;
+
 /**
  * @author kir
  */
@@ -146,4 +151,87 @@ public class AbstractMessageDispatcherTest extends BaseTestCase {
     dispatcher.dispose();
   }
 
+  public void testJournalReplay() {
+    MockMessage message1 = new MockMessage(new Date(), "message1");
+    MockMessage message2 = new MockMessage(new Date(), "message2");
+    myDispatcher.addPendingMessage(myUser, message1);
+    myDispatcher.addPendingMessage(myUser, message2);
+    myDispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message3"));
+    myDispatcher.performDispatch(myUser, message2);
+    myDispatcher.save();
+
+    assertFalse("Snapshot is not written for a few changes", getFile("test.xml").exists());
+    AbstractMessageDispatcher dispatcher = createDispatcher();
+    assertEquals("message1 message3", getText(dispatcher.getPendingMessages(myUser)));
+    dispatcher.dispose();
+  }
+
+  public void testJournalCompaction() {
+    for (int i = 0; i < 150; i++) {
+      myDispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message" + i));
+    }
+
+    assertTrue("Snapshot should be written when the journal grows", getFile("test.xml").exists());
+    long journalLength = getFile("test.xml" + PendingMessagesJournal.JOURNAL_SUFFIX).length();
+    assertTrue(journalLength < getFile("test.xml").length());
+
+    AbstractMessageDispatcher dispatcher = createDispatcher();
+    Message[] messages = dispatcher.getPendingMessages(myUser);
+    assertEquals(150, messages.length);
+    assertEquals("message149", ((MockMessage)messages[149]).getMessage());
+    dispatcher.dispose();
+  }
+
+  public void testTornJournalRecordIsDropped() throws Exception {
+    myDispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message1"));
+    File journal = getFile("test.xml" + PendingMessagesJournal.JOURNAL_SUFFIX);
+    long length = journal.length();
+    myDispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message2"));
+    // the IDE was killed while the second record was being written
+    try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+      file.setLength(journal.length() - 3);
+    }
+
+    AbstractMessageDispatcher dispatcher = createDispatcher();
+    assertEquals("message1", getText(dispatcher.getPendingMessages(myUser)));
+    assertEquals(length, journal.length());
+    dispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message3"));
+    dispatcher.dispose();
+
+    dispatcher = createDispatcher();
+    assertEquals("message1 message3", getText(dispatcher.getPendingMessages(myUser)));
+    dispatcher.dispose();
+  }
+
+  public void testCompactedJournalIsIgnored() throws Exception {
+    myDispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message0"));
+    File journal = getFile("test.xml" + PendingMessagesJournal.JOURNAL_SUFFIX);
+    byte[] compactedJournal = null;
+    int count = 1;
+    while (!getFile("test.xml").exists()) {
+      compactedJournal = Files.readAllBytes(journal.toPath());
+      myDispatcher.addPendingMessage(myUser, new MockMessage(new Date(), "message" + count++));
+    }
+    // the IDE was killed after the snapshot was written, before the journal was started over
+    Files.write(journal.toPath(), compactedJournal);
+
+    AbstractMessageDispatcher dispatcher = createDispatcher();
+    Message[] messages = dispatcher.getPendingMessages(myUser);
+    assertEquals(count, messages.length);
+    assertEquals("message" + (count - 1), ((MockMessage)messages[count - 1]).getMessage());
+    dispatcher.dispose();
+  }
+
+  private File getFile(String name) {
+    return new File(myIdeFacade.getCacheDir(), name);
+  }
+
+  private static String getText(Message[] messages) {
+    StringBuilder result = new StringBuilder();
+    for (Message message : messages) {
+      if (result.length() > 0) result.append(' ');
+      result.append(((MockMessage)message).getMessage());
+    }
+    return result.toString();
+  }
 }
\ No newline at end of file
@@ -108,6 +108,35 @@ public class AsyncMessageDispatcherTest extends BaseTestCase {
         "ReturnedProcessed", myLog[0]);
     assertEquals("Messages should not be delivered", 1,
         myDispatcher.getUsersWithMessages().length);
+    new WaitFor(1000) {
+      @Override
+      protected boolean condition() {
+        return myDispatcher.countRetryingUsers() > 0;
+      }
+    };
+    assertEquals(1, myDispatcher.getStatistics().getFailedCount());
+    assertEquals("Delivery should be retried later", 1, myDispatcher.countRetryingUsers());
+  }
+
+  public void testBlockedUserDoesNotDelayOthers() {
+    NotifyableMessage mockMessage = new NotifyableMessage(true, myLog);
+    MockUser user1 = new MockUser("user1", null);
+    MockUser user2 = new MockUser("user2", null);
+
+    myDispatcher.sendLater(user1, mockMessage);
+    mockMessage.waitUntilDispatchingStarted();
+    myDispatcher.sendLater(user2, new MockMessage(true));
+
+    new WaitFor(1000) {
+      @Override
+      protected boolean condition() {
+        return myDispatcher.getPendingMessages(user2).length == 0;
+      }
+    };
+    assertEquals("Message to user2 should be delivered while user1 is busy", 0, myDispatcher.getPendingMessages(user2).length);
+    assertEquals(1, myDispatcher.getPendingMessages(user1).length);
+
+    triggerMessageProcessing(mockMessage);
   }
 
   public void testAddMessagesWhileDispatching() {
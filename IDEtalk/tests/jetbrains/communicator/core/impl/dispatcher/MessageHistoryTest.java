@@ -0,0 +1,251 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package jetbrains.communicator.core.impl.dispatcher;
+
+import jetbrains.communicator.core.dispatcher.FoundMessage;
+import jetbrains.communicator.core.dispatcher.LocalMessage;
+import jetbrains.communicator.core.impl.BaseTestCase;
+import jetbrains.communicator.core.impl.users.UserImpl;
+import jetbrains.communicator.core.impl.users.UserModelImpl;
+import jetbrains.communicator.core.users.User;
+import jetbrains.communicator.ide.NullProgressIndicator;
+import jetbrains.communicator.ide.TalkProgressIndicator;
+import jetbrains.communicator.mock.MockIDEFacade;
+import jetbrains.communicator.mock.MockMessage;
+import jetbrains.communicator.mock.MockTransport;
+import jetbrains.communicator.util.XStreamUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+@SuppressWarnings({"HardCodedStringLiteral"})
+public class MessageHistoryTest extends BaseTestCase {
+  private MockIDEFacade myIdeFacade;
+  private UserModelImpl myUserModel;
+  private User myUser;
+  private MessageHistory myHistory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    myUserModel = new UserModelImpl(getBroadcaster());
+    disposeOnTearDown(myUserModel);
+    myIdeFacade = new MockIDEFacade(getClass());
+    myUser = UserImpl.create("user", MockTransport.NAME);
+    myHistory = createHistory();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myHistory.clear();
+    myHistory.dispose();
+    super.tearDown();
+  }
+
+  private MessageHistory createHistory() {
+    return new MessageHistory(myIdeFacade, myUserModel);
+  }
+
+  private MessageHistory reopen() {
+    myHistory.dispose();
+    myHistory = createHistory();
+    return myHistory;
+  }
+
+  public void testFindMessages() {
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "some text1"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "some text2"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "some text2 ataing"));
+
+    assertEquals("Not saved messages should be found", 2, myHistory.findMessages(myUser, "text2").length);
+
+    reopen();
+    assertEquals(2, myHistory.findMessages(myUser, "text2").length);
+    assertEquals("Substring of a word", 3, myHistory.findMessages(myUser, "ext").length);
+    assertEquals(1, myHistory.findMessages(myUser, "text2 ata").length);
+    assertEquals("Search is case sensitive", 0, myHistory.findMessages(myUser, "Text2").length);
+    assertEquals(0, myHistory.findMessages(myUser, "text3").length);
+    assertEquals(3, myHistory.findMessages(myUser, " ").length);
+  }
+
+  public void testMessagesOfOtherUsers() {
+    User user2 = UserImpl.create("user2", MockTransport.NAME);
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "text"));
+    myHistory.addMessage(user2, new MockMessage(new Date(), "text"));
+
+    reopen();
+    assertEquals(1, myHistory.getHistory(myUser, null).length);
+    assertEquals(1, myHistory.findMessages(user2, "text").length);
+  }
+
+  public void testSearchRanking() {
+    myHistory.addMessage(myUser, new MockMessage(yesterday(), "NullPointerException at Foo.java"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "Exceptions happen"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "an Exception in Bar.java"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "no match"));
+
+    reopen();
+    List<FoundMessage> found = search(null, "Exception", 10, new NullProgressIndicator());
+    assertEquals(3, found.size());
+    assertEquals("Whole word matches first", "an Exception in Bar.java", getText(found.get(0)));
+    assertEquals("Exceptions happen", getText(found.get(1)));
+    assertEquals("NullPointerException at Foo.java", getText(found.get(2)));
+    assertEquals(myUser, found.get(0).getUser());
+  }
+
+  public void testSearchAllUsersInPages() {
+    User user2 = UserImpl.create("user2", MockTransport.NAME);
+    for (int i = 0; i < 5; i++) {
+      myHistory.addMessage(myUser, new MockMessage(new Date(), "message " + i));
+      myHistory.addMessage(user2, new MockMessage(new Date(), "message " + i));
+    }
+
+    reopen();
+    List<Integer> pageSizes = new ArrayList<>();
+    myHistory.search(null, "message", 3, new NullProgressIndicator(), page -> {
+      pageSizes.add(page.size());
+      return true;
+    });
+    assertEquals(Arrays.asList(3, 3, 3, 1), pageSizes);
+
+    pageSizes.clear();
+    myHistory.search(null, "message", 3, new NullProgressIndicator(), page -> {
+      pageSizes.add(page.size());
+      return false;
+    });
+    assertEquals("Listener stops the search", Collections.singletonList(3), pageSizes);
+
+    assertEquals(5, search(user2, "message", 10, new NullProgressIndicator()).size());
+  }
+
+  public void testSearchCanceled() {
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "text"));
+    try {
+      search(myUser, "text", 10, new NullProgressIndicator() {
+        @Override
+        public void checkCanceled() {
+          throw new CancellationException();
+        }
+      });
+      fail("Search should be canceled");
+    }
+    catch (CancellationException ignored) {
+    }
+  }
+
+  private List<FoundMessage> search(User user, String searchString, int pageSize, TalkProgressIndicator indicator) {
+    List<FoundMessage> result = new ArrayList<>();
+    myHistory.search(user, searchString, pageSize, indicator, page -> result.addAll(page));
+    return result;
+  }
+
+  private static String getText(FoundMessage foundMessage) {
+    return ((MockMessage)foundMessage.getMessage()).getMessage();
+  }
+
+  public void testLostIndex() throws Exception {
+    myHistory.addMessage(myUser, new MockMessage(yesterday(), "first"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "second"));
+    myHistory.dispose();
+
+    for (File file : getHistoryFiles(HistoryLog.INDEX_SUFFIX)) {
+      assertTrue(file.delete());
+    }
+
+    reopen();
+    assertEquals(1, myHistory.findMessages(myUser, "second").length);
+    assertEquals("Index should be restored", 1, getHistoryFiles(HistoryLog.INDEX_SUFFIX).length);
+    LocalMessage[] messages = myHistory.getHistory(myUser, null);
+    assertEquals(2, messages.length);
+    assertEquals("first", ((MockMessage)messages[0]).getMessage());
+  }
+
+  public void testLostIndexOfMessagesOutOfTimeOrder() throws Exception {
+    // the time of a received message comes from the clock of its sender
+    long now = System.currentTimeMillis();
+    myHistory.addMessage(myUser, new MockMessage(new Date(now - 2000), "middle"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(now - 3000), "earliest"));
+    myHistory.addMessage(myUser, new MockMessage(new Date(now - 1000), "latest"));
+    myHistory.dispose();
+
+    for (File file : getHistoryFiles(HistoryLog.INDEX_SUFFIX)) {
+      assertTrue(file.delete());
+    }
+
+    reopen();
+    assertEquals(3, myHistory.getHistory(myUser, null).length);
+    reopen();
+    LocalMessage[] messages = myHistory.getHistory(myUser, null);
+    assertEquals(3, messages.length);
+    assertEquals("earliest", ((MockMessage)messages[0]).getMessage());
+    assertEquals("middle", ((MockMessage)messages[1]).getMessage());
+    assertEquals("latest", ((MockMessage)messages[2]).getMessage());
+    assertEquals(1, myHistory.findMessages(myUser, "middle").length);
+  }
+
+  public void testIncompleteMessageIsDropped() throws Exception {
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "first"));
+    myHistory.dispose();
+
+    File log = getHistoryFiles(HistoryLog.LOG_SUFFIX)[0];
+    long length = log.length();
+    appendGarbage(log);
+
+    reopen();
+    assertEquals(1, myHistory.getHistory(myUser, null).length);
+    assertEquals(length, log.length());
+    myHistory.addMessage(myUser, new MockMessage(new Date(), "second"));
+
+    reopen();
+    assertEquals(2, myHistory.getHistory(myUser, null).length);
+    assertEquals(1, myHistory.findMessages(myUser, "second").length);
+  }
+
+  public void testImportXmlHistory() {
+    DayHistory dayHistory = new DayHistory();
+    dayHistory.addMessage(myUser, new MockMessage(yesterday(), "imported"));
+    XStreamUtil.toXml(MessageHistory.createXStream(myUserModel), myIdeFacade.getCacheDir(), "history/2006-01-01.xml", dayHistory);
+
+    reopen();
+    assertEquals("XML files should be removed after import", 0, getHistoryFiles(".xml").length);
+    LocalMessage[] messages = myHistory.getHistory(myUser, null);
+    assertEquals(1, messages.length);
+    assertEquals("imported", ((MockMessage)messages[0]).getMessage());
+    assertEquals(1, myHistory.findMessages(myUser, "imported").length);
+  }
+
+  public void testRepeatedImportDoesNotDuplicateMessages() {
+    Date when = yesterday();
+    DayHistory dayHistory = new DayHistory();
+    dayHistory.addMessage(myUser, new MockMessage(when, "imported"));
+    XStreamUtil.toXml(MessageHistory.createXStream(myUserModel), myIdeFacade.getCacheDir(), "history/2006-01-01.xml", dayHistory);
+    reopen();
+
+    // the file is found again, as if it could not be deleted, with a message of the same time added
+    dayHistory.addMessage(myUser, new MockMessage(when, "same time"));
+    XStreamUtil.toXml(MessageHistory.createXStream(myUserModel), myIdeFacade.getCacheDir(), "history/2006-01-01.xml", dayHistory);
+    reopen();
+
+    LocalMessage[] messages = myHistory.getHistory(myUser, null);
+    assertEquals(2, messages.length);
+    assertEquals(1, myHistory.findMessages(myUser, "imported").length);
+    assertEquals(1, myHistory.findMessages(myUser, "same").length);
+  }
+
+  private File[] getHistoryFiles(String suffix) {
+    return new File(myIdeFacade.getCacheDir(), "history").listFiles((dir, name) -> name.endsWith(suffix));
+  }
+
+  private static void appendGarbage(File file) throws IOException {
+    try (FileOutputStream stream = new FileOutputStream(file, true)) {
+      stream.write(new byte[]{0, 0, 1, 0, 0, 0});
+    }
+  }
+
+  private static Date yesterday() {
+    return new Date(System.currentTimeMillis() - 1000 * 3600 * 24);
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package org.jivesoftware.smack;
+
+import junit.framework.TestCase;
+import org.jivesoftware.smack.packet.Message;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PacketWriterTest extends TestCase {
+  private int myBatchSize;
+  private int myBatchLatency;
+  private StringWriter myOutput;
+  private AtomicInteger myFlushCount;
+  private PacketWriter myWriter;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myBatchSize = SmackConfiguration.getPacketWriterBatchSize();
+    myBatchLatency = SmackConfiguration.getPacketWriterBatchLatency();
+
+    myOutput = new StringWriter();
+    myFlushCount = new AtomicInteger();
+    XMPPConnection connection = new XMPPConnection();
+    connection.serviceName = "localhost";
+    connection.writer = new FilterWriter(myOutput) {
+      @Override
+      public void flush() throws IOException {
+        myFlushCount.incrementAndGet();
+        super.flush();
+      }
+    };
+    myWriter = new PacketWriter(connection);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myWriter.shutdown();
+    SmackConfiguration.setPacketWriterBatchSize(myBatchSize);
+    SmackConfiguration.setPacketWriterBatchLatency(myBatchLatency);
+    super.tearDown();
+  }
+
+  public void testPacketsAreSentInBatches() throws Exception {
+    SmackConfiguration.setPacketWriterBatchSize(10);
+    // long enough for the sender to fill every batch
+    SmackConfiguration.setPacketWriterBatchLatency(5000);
+    myWriter.startup();
+
+    for (int i = 0; i < 100; i++) {
+      myWriter.sendPacket(createMessage(0, i));
+    }
+    waitForPackets(100);
+
+    assertEquals(10, myWriter.getBatchesWritten());
+    assertEquals("Stream header and one flush per batch", 11, myFlushCount.get());
+    assertEquals(myOutput.toString().length() - getStreamHeaderLength(), myWriter.getCharactersWritten());
+    assertOrder(0, 100);
+  }
+
+  public void testPacketsOfEverySenderKeepTheirOrder() throws Exception {
+    SmackConfiguration.setPacketWriterBatchSize(50);
+    SmackConfiguration.setPacketWriterBatchLatency(0);
+    myWriter.startup();
+
+    Thread[] senders = new Thread[4];
+    for (int i = 0; i < senders.length; i++) {
+      final int sender = i;
+      senders[i] = new Thread(() -> {
+        for (int j = 0; j < 2000; j++) {
+          myWriter.sendPacket(createMessage(sender, j));
+        }
+      });
+      senders[i].start();
+    }
+    for (Thread sender : senders) {
+      sender.join();
+    }
+    waitForPackets(senders.length * 2000);
+
+    assertTrue(myWriter.getBatchesWritten() <= myWriter.getPacketsWritten());
+    for (int i = 0; i < senders.length; i++) {
+      assertOrder(i, 2000);
+    }
+  }
+
+  private static Message createMessage(int sender, int number) {
+    Message message = new Message("user" + sender + "@localhost");
+    message.setBody(sender + ":" + number);
+    return message;
+  }
+
+  private void waitForPackets(long count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (myWriter.getPacketsWritten() < count && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, myWriter.getPacketsWritten());
+  }
+
+  private int getStreamHeaderLength() {
+    String output = myOutput.toString();
+    return output.indexOf("<message");
+  }
+
+  private void assertOrder(int sender, int count) {
+    String output = myOutput.toString();
+    String prefix = "<body>" + sender + ":";
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      position = output.indexOf(prefix, position);
+      assertTrue("Message " + i + " of sender " + sender + " is missing", position >= 0);
+      position += prefix.length();
+      assertEquals(String.valueOf(i), output.substring(position, output.indexOf('<', position)));
+    }
+    assertEquals("Unexpected messages of sender " + sender, -1, output.indexOf(prefix, position));
+  }
+}
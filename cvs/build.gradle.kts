@@ -1,6 +1,6 @@
 sourceSets {
     main {
-        java.srcDirs(listOf("cvs-core/src", "cvs-plugin/src", "javacvs-src", "smartcvs-src"))
+        java.srcDirs(listOf("cvs-core/src", "cvs-plugin/src", "javacvs-src", "smartcvs-src", "trilead-ssh2-build213/src"))
         resources.srcDirs( listOf("cvs-core/resources", "cvs-plugin/resources", "javacvs-src", "smartcvs-src"))
     }
 
@@ -9,10 +9,6 @@ sourceSets {
     }
 }
 
-dependencies {
-    implementation(files("lib/trilead-ssh2-build213.jar"))
-}
-
 version = "223.0"
 
 intellij {
@@ -26,6 +26,8 @@ public class SshConnectionUtils {
     if (proxy != null) {
       connection.setProxyData(proxy);
     }
+    // CVS traffic is mostly text; the server decides whether zlib is actually used
+    connection.setCompression(true);
     connection.connect(null, connectionSettings.getConnectionTimeout(), connectionSettings.getConnectionTimeout());
     authentication.authenticate(connection);
     //HTTPProxyException
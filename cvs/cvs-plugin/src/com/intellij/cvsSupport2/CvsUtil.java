@@ -3,6 +3,8 @@ package com.intellij.cvsSupport2;
 
 import com.intellij.CvsBundle;
 import com.intellij.application.options.CodeStyle;
+import com.intellij.cvsSupport2.application.CvsBaseRevisionStore;
+import com.intellij.cvsSupport2.application.CvsEntriesFileCache;
 import com.intellij.cvsSupport2.application.CvsEntriesManager;
 import com.intellij.cvsSupport2.application.CvsInfo;
 import com.intellij.cvsSupport2.config.CvsApplicationLevelConfiguration;
@@ -214,6 +216,18 @@ public class CvsUtil {
   }
 
   public static Entries getEntriesIn(File dir) {
+    return CvsEntriesFileCache.getInstance().getEntries(dir, CvsUtil::readEntriesIn);
+  }
+
+  /**
+   * Loads the entries of {@code root} and of its registered subdirectories in parallel, so that following
+   * {@link #getEntriesIn(File)} calls are served from the cache.
+   */
+  public static void preloadEntriesUnder(File root) {
+    CvsEntriesFileCache.getInstance().preload(root, CvsUtil::readEntriesIn);
+  }
+
+  private static Entries readEntriesIn(File dir) {
     return getEntriesHandlerIn(dir).getEntries();
   }
 
@@ -472,40 +486,39 @@ public class CvsUtil {
   }
 
   public static boolean haveCachedContent(final VirtualFile file, final String revision) {
-    final File storedRevisionFile = createFromRevisionAndPath(file, revision);
-    return (storedRevisionFile != null) && storedRevisionFile.isFile();
-  }
-
-  @Nullable
-  private static File createFromRevisionAndPath(final VirtualFile file, final String revision) {
-    File ioFile = CvsVfsUtil.getFileFor(file);
-    final File parent = new File(getAdminDir(ioFile.getParentFile()), BASE_REVISIONS_DIR);
-    if (! parent.exists()) {
-      if (! parent.mkdirs()) {
-        return null;
-      }
-    } else if (parent.isFile()) {
-      return null;
-    }
-    return new File(parent, ".#" + ioFile.getName() + "." + revision);
+    final VirtualFile parent = file.getParent();
+    if (parent == null) return false;
+    if (getCachedContentFile(parent, file.getName(), revision) != null) return true;
+    final String repository = CvsEntriesManager.getInstance().getRepositoryFor(parent);
+    return repository != null &&
+           CvsBaseRevisionStore.getInstance().contains(getCvsRootFor(parent), repository + "/" + file.getName(), revision);
   }
 
   private static File getCachedContentFile(final VirtualFile parent, String name, String revision) {
     final File parentFile = new File(getAdminDir(new File(parent.getPath())), BASE_REVISIONS_DIR);
-    final File storedRevisionFile;
-    if (revision.startsWith("-")) {
-      storedRevisionFile = new File(parentFile, ".#" + name + '.' + revision.substring(1));
-    } else {
-      storedRevisionFile = new File(parentFile, ".#" + name + '.' + revision);
-    }
+    final File storedRevisionFile = new File(parentFile, ".#" + name + '.' + stripRemovedMark(revision));
     if ((! storedRevisionFile.exists()) || (! storedRevisionFile.isFile())) return null;
     return storedRevisionFile;
   }
 
+  private static String stripRemovedMark(String revision) {
+    return revision.startsWith("-") ? revision.substring(1) : revision;
+  }
+
+  private static String getCvsRootFor(VirtualFile parent) {
+    return CvsEntriesManager.getInstance().getCvsConnectionSettingsFor(parent).getCvsRootAsString();
+  }
+
+  private static byte @Nullable [] getContentFromBaseRevisionStore(VirtualFile parent, String name, String revision) {
+    final String repository = CvsEntriesManager.getInstance().getRepositoryFor(parent);
+    if (repository == null) return null;
+    return CvsBaseRevisionStore.getInstance().get(getCvsRootFor(parent), repository + "/" + name, revision);
+  }
+
   public static byte @Nullable [] getCachedStoredContent(final VirtualFile parent, final String name, final String revision) {
     try {
       File storedRevisionFile = getCachedContentFile(parent, name, revision);
-      if (storedRevisionFile == null) return null;
+      if (storedRevisionFile == null) return getContentFromBaseRevisionStore(parent, name, revision);
       return FileUtil.loadFileBytes(storedRevisionFile);
     }
     catch (IOException e) {
@@ -520,14 +533,25 @@ public class CvsUtil {
                                                      boolean makeReadOnly) {
     try {
       final File cachedContentFile = getCachedContentFile(parent, name, revision);
-      if (cachedContentFile == null) return false;
-      final byte[] content = FileUtil.loadFileBytes(cachedContentFile);
+      final byte[] content;
+      final long timeStamp;
+      if (cachedContentFile != null) {
+        content = FileUtil.loadFileBytes(cachedContentFile);
+        timeStamp = cachedContentFile.lastModified();
+      }
+      else {
+        content = getContentFromBaseRevisionStore(parent, name, revision);
+        final Entry entry = CvsEntriesManager.getInstance().getEntryFor(parent, name);
+        final Date lastModified = entry == null ? null : entry.getLastModified();
+        if (content == null || lastModified == null) return false;
+        timeStamp = lastModified.getTime();
+      }
       final File file = new File(parent.getPath(), name);
       FileUtil.createIfDoesntExist(file);
       if (!file.canWrite() && !file.setWritable(true)) return false;
       FileUtil.writeToFile(file, content);
       if (makeReadOnly && !file.setWritable(false)) return false;
-      return file.setLastModified(cachedContentFile.lastModified());
+      return file.setLastModified(timeStamp);
     }
     catch (IOException e) {
       LOG.error(e);
@@ -535,21 +559,17 @@ public class CvsUtil {
     }
   }
 
+  /**
+   * Stores the content in the {@link CvsBaseRevisionStore}; the caller is responsible for flushing the store.
+   */
   public static void storeContentForRevision(final VirtualFile file, final String revision, final byte[] bytes) {
-    final File storedRevisionFile = createFromRevisionAndPath(file, revision);
-    if (storedRevisionFile == null) {
-      return;
-    }
-    // already exists
-    if (storedRevisionFile.isFile()) return;
-    try {
-      FileUtil.writeToFile(storedRevisionFile, bytes);
-      storedRevisionFile.setLastModified(file.getTimeStamp());
-    }
-    catch (IOException e) {
-      LOG.info(e);
-    }
-    deleteAllOtherRevisions(file, storedRevisionFile.getName());
+    final VirtualFile parent = file.getParent();
+    if (parent == null) return;
+    final String repository = CvsEntriesManager.getInstance().getRepositoryFor(parent);
+    if (repository == null) return;
+    CvsBaseRevisionStore.getInstance().put(getCvsRootFor(parent), repository + "/" + file.getName(), revision, bytes);
+    // copies stored in the CVS admin area by earlier versions are superseded
+    deleteAllOtherRevisions(file, ".#" + file.getName() + "." + revision);
   }
 
   private static void deleteAllOtherRevisions(final VirtualFile file, final String storedFilename) {
@@ -0,0 +1,331 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.annotate;
+
+import com.intellij.cvsSupport2.cvsoperations.cvsAnnotate.Annotation;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.diff.Diff;
+import com.intellij.util.diff.FilesTooBigForDiffException;
+import com.intellij.util.io.DataInputOutputUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * On-disk cache of {@code cvs annotate} results. The annotation of a fixed revision never changes, so results are keyed by
+ * (cvs root, repository path, revision, binary mode) and kept until evicted. Each result is one deflated file: a table of the
+ * distinct revisions, users and dates followed by the table indices of every line and the annotated content.
+ */
+public final class CvsAnnotationCache {
+  private static final Logger LOG = Logger.getInstance(CvsAnnotationCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+  private static final int DEFAULT_MAX_ENTRIES = 2000;
+  private static final int CLEANUP_INTERVAL = 100;
+
+  private static final class Holder {
+    private static final CvsAnnotationCache ourInstance =
+      new CvsAnnotationCache(new File(PathManager.getSystemPath(), "cvs" + File.separator + "annotations"), DEFAULT_MAX_ENTRIES);
+  }
+
+  private final File myDirectory;
+  private final int myMaxEntries;
+  private final AtomicInteger myPutsSinceCleanup = new AtomicInteger();
+
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+
+  public static CvsAnnotationCache getInstance() {
+    return Holder.ourInstance;
+  }
+
+  public CvsAnnotationCache(@NotNull File directory, int maxEntries) {
+    myDirectory = directory;
+    myMaxEntries = maxEntries;
+  }
+
+  public static final class CachedAnnotation {
+    private final String myContent;
+    private final Annotation[] myAnnotations;
+
+    public CachedAnnotation(@NotNull String content, Annotation @NotNull [] annotations) {
+      myContent = content;
+      myAnnotations = annotations;
+    }
+
+    @NotNull
+    public String getContent() {
+      return myContent;
+    }
+
+    public Annotation @NotNull [] getLineAnnotations() {
+      return myAnnotations;
+    }
+  }
+
+  @Nullable
+  public CachedAnnotation get(@NotNull String cvsRoot, @NotNull String repositoryPath, @NotNull String revision, boolean binary) {
+    final String key = createKey(cvsRoot, repositoryPath, revision, binary);
+    final File file = getFile(key);
+    if (!file.isFile()) {
+      myMisses.incrementAndGet();
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+      final CachedAnnotation annotation = read(in, key);
+      if (annotation == null) {
+        FileUtil.delete(file);
+        myMisses.incrementAndGet();
+        return null;
+      }
+      // the modification time orders the entries for eviction
+      file.setLastModified(System.currentTimeMillis());
+      myHits.incrementAndGet();
+      return annotation;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read cached annotation of " + repositoryPath + " " + revision, e);
+      FileUtil.delete(file);
+      myMisses.incrementAndGet();
+      return null;
+    }
+  }
+
+  public void put(@NotNull String cvsRoot, @NotNull String repositoryPath, @NotNull String revision, boolean binary,
+                  @NotNull CachedAnnotation annotation) {
+    final String key = createKey(cvsRoot, repositoryPath, revision, binary);
+    final File file = getFile(key);
+    final File tempFile = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+    try {
+      FileUtil.createParentDirs(tempFile);
+      try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+        write(out, key, annotation);
+      }
+      FileUtil.rename(tempFile, file);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot cache annotation of " + repositoryPath + " " + revision, e);
+      FileUtil.delete(tempFile);
+      return;
+    }
+    if (myPutsSinceCleanup.incrementAndGet() >= CLEANUP_INTERVAL) {
+      myPutsSinceCleanup.set(0);
+      evictOldEntries();
+    }
+  }
+
+  public void clear() {
+    FileUtil.delete(myDirectory);
+  }
+
+  public long getHitCount() {
+    return myHits.get();
+  }
+
+  public long getMissCount() {
+    return myMisses.get();
+  }
+
+  /**
+   * An annotation is cached only for a revision number (not a tag, date or branch), which always denotes the same content.
+   */
+  public static boolean isFixedRevision(@Nullable String revision) {
+    if (revision == null || !revision.matches("\\d+(\\.\\d+)+")) return false;
+    final List<String> parts = StringUtil.split(revision, ".");
+    return parts.size() % 2 == 0 && !parts.contains("0");
+  }
+
+  /**
+   * @return the revision the given one was derived from: 1.4 for 1.5 and 1.2 for 1.2.2.1, or null for the first revision of a trunk
+   */
+  @Nullable
+  public static String getParentRevision(@NotNull String revision) {
+    if (!isFixedRevision(revision)) return null;
+    final List<String> parts = new ArrayList<>(StringUtil.split(revision, "."));
+    final int last = Integer.parseInt(parts.get(parts.size() - 1));
+    if (last > 1) {
+      parts.set(parts.size() - 1, String.valueOf(last - 1));
+    }
+    else if (parts.size() > 2) {
+      parts.subList(parts.size() - 2, parts.size()).clear();
+    }
+    else {
+      return null;
+    }
+    return StringUtil.join(parts, ".");
+  }
+
+  /**
+   * Builds the annotation of a revision from the annotation of its parent revision: lines kept from the parent keep their
+   * annotation and all other lines are attributed to the new revision.
+   *
+   * @param content the content of the new revision without keyword expansion, as {@code cvs annotate} shows it
+   * @return null if the contents are too big to compare
+   */
+  @Nullable
+  public static CachedAnnotation deriveFromParent(@NotNull CachedAnnotation parent, @NotNull String content,
+                                                  @NotNull String revision, @NotNull String user, @NotNull Date date) {
+    final String[] parentLines = splitLines(parent.getContent());
+    final String[] lines = splitLines(StringUtil.convertLineSeparators(content));
+    final Annotation[] parentAnnotations = parent.getLineAnnotations();
+    if (parentLines.length != parentAnnotations.length) return null;
+
+    final Diff.Change change;
+    try {
+      change = Diff.buildChanges(parentLines, lines);
+    }
+    catch (FilesTooBigForDiffException e) {
+      return null;
+    }
+    final Annotation[] annotations = new Annotation[lines.length];
+    int parentLine = 0;
+    int line = 0;
+    for (Diff.Change c = change; c != null; c = c.link) {
+      while (line < c.line1) {
+        annotations[line++] = copyOf(parentAnnotations[parentLine++]);
+      }
+      for (int i = 0; i < c.inserted; i++) {
+        annotations[line++] = new Annotation(revision, user, date);
+      }
+      parentLine += c.deleted;
+    }
+    while (line < lines.length) {
+      annotations[line++] = copyOf(parentAnnotations[parentLine++]);
+    }
+
+    final StringBuilder result = new StringBuilder(content.length() + 1);
+    for (String l : lines) {
+      result.append(l).append('\n');
+    }
+    return new CachedAnnotation(result.toString(), annotations);
+  }
+
+  private static String[] splitLines(String content) {
+    if (content.isEmpty()) return new String[0];
+    final String[] lines = content.split("\n", -1);
+    // annotated content ends every line, including the last one, with a line feed
+    return content.endsWith("\n") ? Arrays.copyOf(lines, lines.length - 1) : lines;
+  }
+
+  private static Annotation copyOf(Annotation annotation) {
+    return new Annotation(annotation.getRevision(), annotation.getUserName(), annotation.getDate());
+  }
+
+  private static void write(DataOutputStream out, String key, CachedAnnotation annotation) throws IOException {
+    final Annotation[] annotations = annotation.getLineAnnotations();
+    final Map<String, Integer> strings = new LinkedHashMap<>();
+    final Map<Long, Integer> dates = new LinkedHashMap<>();
+    final int[] indices = new int[annotations.length * 3];
+    for (int i = 0; i < annotations.length; i++) {
+      indices[3 * i] = intern(strings, annotations[i].getRevision());
+      indices[3 * i + 1] = intern(strings, annotations[i].getUserName());
+      indices[3 * i + 2] = intern(dates, annotations[i].getDate().getTime());
+    }
+
+    out.writeInt(FORMAT_VERSION);
+    out.writeUTF(key);
+    DataInputOutputUtil.writeINT(out, strings.size());
+    for (String s : strings.keySet()) {
+      out.writeUTF(s);
+    }
+    DataInputOutputUtil.writeINT(out, dates.size());
+    for (Long date : dates.keySet()) {
+      DataInputOutputUtil.writeLONG(out, date);
+    }
+    DataInputOutputUtil.writeINT(out, annotations.length);
+    for (int index : indices) {
+      DataInputOutputUtil.writeINT(out, index);
+    }
+    final byte[] content = annotation.getContent().getBytes(StandardCharsets.UTF_8);
+    DataInputOutputUtil.writeINT(out, content.length);
+    out.write(content);
+  }
+
+  @Nullable
+  private static CachedAnnotation read(DataInputStream in, String key) throws IOException {
+    if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) return null;
+    final String[] strings = new String[DataInputOutputUtil.readINT(in)];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+    final Date[] dates = new Date[DataInputOutputUtil.readINT(in)];
+    for (int i = 0; i < dates.length; i++) {
+      dates[i] = new Date(DataInputOutputUtil.readLONG(in));
+    }
+    final Annotation[] annotations = new Annotation[DataInputOutputUtil.readINT(in)];
+    for (int i = 0; i < annotations.length; i++) {
+      final String revision = strings[DataInputOutputUtil.readINT(in)];
+      final String user = strings[DataInputOutputUtil.readINT(in)];
+      // every line gets its own Date since annotations may be adjusted later
+      annotations[i] = new Annotation(revision, user, (Date)dates[DataInputOutputUtil.readINT(in)].clone());
+    }
+    final byte[] content = new byte[DataInputOutputUtil.readINT(in)];
+    in.readFully(content);
+    return new CachedAnnotation(new String(content, StandardCharsets.UTF_8), annotations);
+  }
+
+  private static <T> int intern(Map<T, Integer> table, T value) {
+    Integer index = table.get(value);
+    if (index == null) {
+      index = table.size();
+      table.put(value, index);
+    }
+    return index;
+  }
+
+  private void evictOldEntries() {
+    final List<File> files = new ArrayList<>();
+    final File[] dirs = myDirectory.listFiles(File::isDirectory);
+    if (dirs == null) return;
+    for (File dir : dirs) {
+      final File[] children = dir.listFiles();
+      if (children != null) {
+        Collections.addAll(files, children);
+      }
+    }
+    if (files.size() <= myMaxEntries) return;
+    files.sort(Comparator.comparingLong(File::lastModified));
+    for (File file : files.subList(0, files.size() - myMaxEntries)) {
+      FileUtil.delete(file);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Evicted " + (files.size() - myMaxEntries) + " cached annotations");
+    }
+  }
+
+  private File getFile(String key) {
+    final String hash = hashOf(key);
+    return new File(new File(myDirectory, hash.substring(0, 2)), hash.substring(2));
+  }
+
+  private static String createKey(String cvsRoot, String repositoryPath, String revision, boolean binary) {
+    return cvsRoot + '\n' + repositoryPath + '\n' + revision + (binary ? "\nbinary" : "");
+  }
+
+  private static String hashOf(String key) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+    final byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+    final StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return result.toString();
+  }
+}
@@ -3,7 +3,9 @@ package com.intellij.cvsSupport2.annotate;
 
 import com.intellij.CvsBundle;
 import com.intellij.cvsSupport2.CvsUtil;
+import com.intellij.cvsSupport2.CvsVcs2;
 import com.intellij.cvsSupport2.application.CvsEntriesManager;
+import com.intellij.cvsSupport2.config.CvsApplicationLevelConfiguration;
 import com.intellij.cvsSupport2.connections.CvsConnectionSettings;
 import com.intellij.cvsSupport2.connections.CvsEnvironment;
 import com.intellij.cvsSupport2.cvsExecution.CvsOperationExecutor;
@@ -11,10 +13,13 @@ import com.intellij.cvsSupport2.cvsExecution.CvsOperationExecutorCallback;
 import com.intellij.cvsSupport2.cvshandlers.CommandCvsHandler;
 import com.intellij.cvsSupport2.cvsoperations.cvsAnnotate.AnnotateOperation;
 import com.intellij.cvsSupport2.cvsoperations.cvsAnnotate.Annotation;
+import com.intellij.cvsSupport2.cvsoperations.cvsContent.GetFileContentOperation;
+import com.intellij.cvsSupport2.cvsoperations.dateOrRevision.SimpleRevision;
 import com.intellij.cvsSupport2.history.CvsHistoryProvider;
 import com.intellij.cvsSupport2.history.CvsRevisionNumber;
 import com.intellij.openapi.cvsIntegration.CvsResult;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.RepositoryLocation;
 import com.intellij.openapi.vcs.VcsException;
@@ -29,9 +34,11 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.netbeans.lib.cvsclient.admin.Entry;
+import org.netbeans.lib.cvsclient.command.KeywordSubstitution;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.*;
 
 public class CvsAnnotationProvider implements AnnotationProvider{
@@ -56,13 +63,13 @@ public class CvsAnnotationProvider implements AnnotationProvider{
     final CvsEntriesManager entriesManager = CvsEntriesManager.getInstance();
     final CvsConnectionSettings root = entriesManager.getCvsConnectionSettingsFor(file.getParentFile());
     final boolean binary = annotateBinary(virtualFile, root);
-    final AnnotateOperation operation = executeOperation(cvsLightweightFile, revision, root, binary, true);
 
     final FilePath filePath = VcsContextFactory.SERVICE.getInstance().createFilePathOn(virtualFile);
     final List<VcsFileRevision> revisions = myCvsHistoryProvider.createRevisions(filePath);
-    final Annotation[] lineAnnotations = operation.getLineAnnotations();
+    final CvsAnnotationCache.CachedAnnotation annotation = getAnnotation(cvsLightweightFile, revision, root, binary, revisions);
+    final Annotation[] lineAnnotations = annotation.getLineAnnotations();
     adjustAnnotation(revisions, lineAnnotations);
-    return new CvsFileAnnotation(operation.getContent(), lineAnnotations, revisions, virtualFile, revision, myProject);
+    return new CvsFileAnnotation(annotation.getContent(), lineAnnotations, revisions, virtualFile, revision, myProject);
   }
 
   @Override
@@ -82,12 +89,14 @@ public class CvsAnnotationProvider implements AnnotationProvider{
       cvsFile = new File(CvsUtil.getModuleName(cvsVirtualFile));
     }
     final boolean binary = annotateBinary(cvsVirtualFile, environment);
-    final AnnotateOperation annotateOperation = executeOperation(cvsFile, revision, environment, binary, true);
-    final Annotation[] lineAnnotations = annotateOperation.getLineAnnotations();
-    final List<VcsFileRevision> revisions;
+    List<VcsFileRevision> revisions = null;
     if (hasLocalFile) {
       final FilePath filePath = VcsContextFactory.SERVICE.getInstance().createFilePathOn(cvsVirtualFile);
       revisions = myCvsHistoryProvider.createRevisions(filePath);
+    }
+    final CvsAnnotationCache.CachedAnnotation annotation = getAnnotation(cvsFile, revision, environment, binary, revisions);
+    final Annotation[] lineAnnotations = annotation.getLineAnnotations();
+    if (hasLocalFile) {
       // in annotation cvs returns only 8 symbols of username
       // try to find usernames in history and use them
       adjustAnnotation(revisions, lineAnnotations);
@@ -103,7 +112,74 @@ public class CvsAnnotationProvider implements AnnotationProvider{
         }
       }
     }
-    return new CvsFileAnnotation(annotateOperation.getContent(), lineAnnotations, revisions, cvsVirtualFile, revision, myProject);
+    return new CvsFileAnnotation(annotation.getContent(), lineAnnotations, revisions, cvsVirtualFile, revision, myProject);
+  }
+
+  /**
+   * Annotations of revision numbers are taken from the {@link CvsAnnotationCache} when possible. If only the annotation of the
+   * parent revision is cached, the annotation is derived from it and the content of the revision, which is much smaller to
+   * transfer than a complete annotation.
+   */
+  private CvsAnnotationCache.CachedAnnotation getAnnotation(File cvsFile, String revision, CvsEnvironment environment, boolean binary,
+                                                            @Nullable List<VcsFileRevision> revisions) throws VcsException {
+    final CvsAnnotationCache cache = CvsAnnotationCache.getInstance();
+    final String cvsRoot = environment.getCvsRootAsString();
+    final String path = FileUtil.toSystemIndependentName(cvsFile.getPath());
+    final boolean cacheable = CvsAnnotationCache.isFixedRevision(revision);
+    if (cacheable) {
+      final CvsAnnotationCache.CachedAnnotation cached = cache.get(cvsRoot, path, revision, binary);
+      if (cached != null) {
+        return cached;
+      }
+      if (!binary && revisions != null) {
+        final CvsAnnotationCache.CachedAnnotation derived = deriveFromParentRevision(cvsFile, revision, environment, revisions);
+        if (derived != null) {
+          cache.put(cvsRoot, path, revision, false, derived);
+          return derived;
+        }
+      }
+    }
+    final AnnotateOperation operation = executeOperation(cvsFile, revision, environment, binary, true);
+    final CvsAnnotationCache.CachedAnnotation result =
+      new CvsAnnotationCache.CachedAnnotation(operation.getContent(), operation.getLineAnnotations());
+    if (cacheable) {
+      cache.put(cvsRoot, path, revision, binary, result);
+    }
+    return result;
+  }
+
+  @Nullable
+  private CvsAnnotationCache.CachedAnnotation deriveFromParentRevision(File cvsFile, String revision, CvsEnvironment environment,
+                                                                       List<VcsFileRevision> revisions) {
+    final String parentRevision = CvsAnnotationCache.getParentRevision(revision);
+    if (parentRevision == null) return null;
+    final CvsAnnotationCache.CachedAnnotation parent = CvsAnnotationCache.getInstance()
+      .get(environment.getCvsRootAsString(), FileUtil.toSystemIndependentName(cvsFile.getPath()), parentRevision, false);
+    if (parent == null) return null;
+    VcsFileRevision fileRevision = null;
+    for (VcsFileRevision r : revisions) {
+      if (revision.equals(r.getRevisionNumber().asString())) {
+        fileRevision = r;
+        break;
+      }
+    }
+    if (fileRevision == null || fileRevision.getAuthor() == null || fileRevision.getRevisionDate() == null) return null;
+
+    final GetFileContentOperation operation = new GetFileContentOperation(cvsFile, environment, new SimpleRevision(revision));
+    // annotate shows the content without keyword expansion
+    operation.setKeywordSubstitution(KeywordSubstitution.NO_SUBSTITUTION);
+    final CvsOperationExecutor executor = CvsVcs2.executeQuietOperation(CvsBundle.getAnnotateOperationName(), operation, myProject);
+    if (executor.getResult().hasErrors()) return null;
+    final byte[] bytes = operation.tryGetFileBytes();
+    if (bytes == null || operation.isDeleted()) return null;
+    final String content;
+    try {
+      content = new String(bytes, CvsApplicationLevelConfiguration.getCharset());
+    }
+    catch (UnsupportedEncodingException e) {
+      return null;
+    }
+    return CvsAnnotationCache.deriveFromParent(parent, content, revision, fileRevision.getAuthor(), fileRevision.getRevisionDate());
   }
 
   private static boolean annotateBinary(VirtualFile cvsVirtualFile, CvsEnvironment environment) {
@@ -0,0 +1,337 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.application;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Local store for the content of CVS base revisions, keyed by (cvs root, repository path, revision). Content is stored once per
+ * distinct SHA-1 in a deflated blob file, so identical revisions of different files share storage. The index is kept in LRU order
+ * and the least recently used revisions are evicted once the compressed size of all blobs exceeds the configured limit.
+ * Revisions of removed files may be passed with the leading "-" of the CVS/Entries file, they are stored without it.
+ * Call {@link #flush()} after a batch of {@link #put} calls to persist the index.
+ */
+public final class CvsBaseRevisionStore {
+  private static final Logger LOG = Logger.getInstance(CvsBaseRevisionStore.class);
+
+  private static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+  private static final String INDEX_FILE_NAME = "index";
+  private static final int INDEX_VERSION = 1;
+
+  private static final class Holder {
+    private static final CvsBaseRevisionStore ourInstance =
+      new CvsBaseRevisionStore(new File(PathManager.getSystemPath(), "cvs" + File.separator + "baseRevisions"), DEFAULT_MAX_SIZE);
+  }
+
+  private final File myDirectory;
+  private final long myMaxSize;
+
+  private final Object myLock = new Object();
+  private final LinkedHashMap<String, String> myKeyToHash = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<String, Blob> myBlobs = new HashMap<>();
+  private long myTotalSize;
+  private boolean myLoaded;
+  private boolean myDirty;
+
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+  private final AtomicLong myEvictions = new AtomicLong();
+
+  public static CvsBaseRevisionStore getInstance() {
+    return Holder.ourInstance;
+  }
+
+  public CvsBaseRevisionStore(@NotNull File directory, long maxSize) {
+    myDirectory = directory;
+    myMaxSize = maxSize;
+  }
+
+  private static final class Blob {
+    private final long mySize;
+    private int myReferences;
+
+    Blob(long size) {
+      mySize = size;
+    }
+  }
+
+  public byte @Nullable [] get(@NotNull String cvsRoot, @NotNull String repositoryPath, @NotNull String revision) {
+    final String key = createKey(cvsRoot, repositoryPath, revision);
+    final String hash;
+    synchronized (myLock) {
+      ensureLoaded();
+      hash = myKeyToHash.get(key);
+    }
+    if (hash == null) {
+      myMisses.incrementAndGet();
+      return null;
+    }
+    try {
+      final byte[] content = readBlob(hash);
+      myHits.incrementAndGet();
+      return content;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read stored content of " + repositoryPath + " " + revision, e);
+      synchronized (myLock) {
+        if (hash.equals(myKeyToHash.get(key))) {
+          removeKey(key);
+        }
+      }
+      myMisses.incrementAndGet();
+      return null;
+    }
+  }
+
+  public boolean contains(@NotNull String cvsRoot, @NotNull String repositoryPath, @NotNull String revision) {
+    synchronized (myLock) {
+      ensureLoaded();
+      return myKeyToHash.containsKey(createKey(cvsRoot, repositoryPath, revision));
+    }
+  }
+
+  public void put(@NotNull String cvsRoot, @NotNull String repositoryPath, @NotNull String revision, byte @NotNull [] content) {
+    final String key = createKey(cvsRoot, repositoryPath, revision);
+    final String hash = hashOf(content);
+    synchronized (myLock) {
+      ensureLoaded();
+      if (hash.equals(myKeyToHash.get(key))) return;
+      Blob blob = myBlobs.get(hash);
+      if (blob == null) {
+        try {
+          blob = new Blob(writeBlob(hash, content));
+        }
+        catch (IOException e) {
+          LOG.info("Cannot store content of " + repositoryPath + " " + revision, e);
+          return;
+        }
+        myBlobs.put(hash, blob);
+        myTotalSize += blob.mySize;
+      }
+      removeKey(key);
+      blob.myReferences++;
+      myKeyToHash.put(key, hash);
+      myDirty = true;
+      evictIfNeeded();
+    }
+  }
+
+  /**
+   * Writes the index if it was changed since it was loaded or last flushed.
+   */
+  public void flush() {
+    synchronized (myLock) {
+      if (!myDirty) return;
+      try {
+        saveIndex();
+        myDirty = false;
+      }
+      catch (IOException e) {
+        LOG.info("Cannot save base revision index", e);
+      }
+    }
+  }
+
+  public void clear() {
+    synchronized (myLock) {
+      myKeyToHash.clear();
+      myBlobs.clear();
+      myTotalSize = 0;
+      myLoaded = true;
+      myDirty = false;
+      FileUtil.delete(myDirectory);
+    }
+  }
+
+  public long getHitCount() {
+    return myHits.get();
+  }
+
+  public long getMissCount() {
+    return myMisses.get();
+  }
+
+  public long getEvictionCount() {
+    return myEvictions.get();
+  }
+
+  public long getStoredSize() {
+    synchronized (myLock) {
+      return myTotalSize;
+    }
+  }
+
+  public int getRevisionCount() {
+    synchronized (myLock) {
+      ensureLoaded();
+      return myKeyToHash.size();
+    }
+  }
+
+  public String getStatistics() {
+    return "base revision store: " + getRevisionCount() + " revisions, " + getStoredSize() + " bytes, " + getHitCount() + " hits, " +
+           getMissCount() + " misses, " + getEvictionCount() + " evictions";
+  }
+
+  private void evictIfNeeded() {
+    final Iterator<Map.Entry<String, String>> iterator = myKeyToHash.entrySet().iterator();
+    // the most recently added revision is kept even if it alone exceeds the limit
+    while (myTotalSize > myMaxSize && myKeyToHash.size() > 1 && iterator.hasNext()) {
+      final String hash = iterator.next().getValue();
+      iterator.remove();
+      release(hash);
+      myEvictions.incrementAndGet();
+    }
+  }
+
+  private void removeKey(String key) {
+    final String hash = myKeyToHash.remove(key);
+    if (hash != null) {
+      release(hash);
+      myDirty = true;
+    }
+  }
+
+  private void release(String hash) {
+    final Blob blob = myBlobs.get(hash);
+    if (blob == null || --blob.myReferences > 0) return;
+    myBlobs.remove(hash);
+    myTotalSize -= blob.mySize;
+    FileUtil.delete(getBlobFile(hash));
+  }
+
+  private void ensureLoaded() {
+    if (myLoaded) return;
+    myLoaded = true;
+    final File indexFile = new File(myDirectory, INDEX_FILE_NAME);
+    if (indexFile.isFile() && !loadIndex(indexFile)) return;
+    deleteUnreferencedBlobs();
+  }
+
+  /**
+   * @return false if the index could not be read and the store was reset
+   */
+  private boolean loadIndex(File indexFile) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != INDEX_VERSION) {
+        clear();
+        return false;
+      }
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final String key = in.readUTF();
+        final String hash = in.readUTF();
+        Blob blob = myBlobs.get(hash);
+        if (blob == null) {
+          final File blobFile = getBlobFile(hash);
+          if (!blobFile.isFile()) continue;
+          blob = new Blob(blobFile.length());
+          myBlobs.put(hash, blob);
+          myTotalSize += blob.mySize;
+        }
+        blob.myReferences++;
+        myKeyToHash.put(key, hash);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot load base revision index, the store is reset", e);
+      clear();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Deletes blobs missing from the index: they were stored or evicted after the index was last flushed, or their deletion failed.
+   */
+  private void deleteUnreferencedBlobs() {
+    final File[] directories = myDirectory.listFiles(File::isDirectory);
+    if (directories == null) return;
+    for (File directory : directories) {
+      final File[] files = directory.listFiles();
+      if (files == null) continue;
+      for (File file : files) {
+        if (!myBlobs.containsKey(directory.getName() + file.getName())) {
+          FileUtil.delete(file);
+        }
+      }
+    }
+  }
+
+  private void saveIndex() throws IOException {
+    final File indexFile = new File(myDirectory, INDEX_FILE_NAME);
+    final File tempFile = new File(myDirectory, INDEX_FILE_NAME + ".tmp");
+    FileUtil.createParentDirs(tempFile);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(INDEX_VERSION);
+      out.writeInt(myKeyToHash.size());
+      // iteration order is the LRU order, so it survives a restart
+      for (Map.Entry<String, String> entry : myKeyToHash.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getValue());
+      }
+    }
+    FileUtil.rename(tempFile, indexFile);
+  }
+
+  private File getBlobFile(String hash) {
+    return new File(new File(myDirectory, hash.substring(0, 2)), hash.substring(2));
+  }
+
+  private long writeBlob(String hash, byte[] content) throws IOException {
+    final File blobFile = getBlobFile(hash);
+    final File tempFile = new File(blobFile.getPath() + ".tmp");
+    FileUtil.createParentDirs(tempFile);
+    try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(tempFile))) {
+      out.write(content);
+    }
+    FileUtil.rename(tempFile, blobFile);
+    return blobFile.length();
+  }
+
+  private byte[] readBlob(String hash) throws IOException {
+    final File blobFile = getBlobFile(hash);
+    try (InputStream in = new InflaterInputStream(new BufferedInputStream(new FileInputStream(blobFile)))) {
+      final byte[] content = FileUtil.loadBytes(in);
+      if (!hash.equals(hashOf(content))) {
+        throw new IOException("Checksum mismatch in " + blobFile);
+      }
+      return content;
+    }
+  }
+
+  private static String createKey(String cvsRoot, String repositoryPath, String revision) {
+    final String normalizedRevision = revision.startsWith("-") ? revision.substring(1) : revision;
+    return cvsRoot + '\n' + repositoryPath + '\n' + normalizedRevision;
+  }
+
+  private static String hashOf(byte[] content) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+    final byte[] bytes = digest.digest(content);
+    final StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return result.toString();
+  }
+}
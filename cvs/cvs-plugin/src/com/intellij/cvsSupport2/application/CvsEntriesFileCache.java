@@ -0,0 +1,209 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.application;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.netbeans.lib.cvsclient.admin.AdminUtils;
+import org.netbeans.lib.cvsclient.admin.Entries;
+import org.netbeans.lib.cvsclient.admin.Entry;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caches the parsed contents of {@code CVS/Entries} (plus {@code CVS/Entries.Log}) per directory. A cached value is used as long
+ * as both files keep their modification time and length; files modified during the last {@link #RACY_INTERVAL} ms are not cached
+ * because a rewrite within the timestamp granularity could go unnoticed. Every caller gets its own copy of the entries.
+ */
+public final class CvsEntriesFileCache {
+  private static final Logger LOG = Logger.getInstance(CvsEntriesFileCache.class);
+
+  private static final long RACY_INTERVAL = 2000;
+  private static final int MAX_CONCURRENT_PRELOADS = 4;
+
+  private static final CvsEntriesFileCache ourInstance = new CvsEntriesFileCache();
+
+  private final ConcurrentMap<String, CachedEntries> myCache = ContainerUtil.createConcurrentSoftValueMap();
+  private final ExecutorService myPreloadExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("CVS Entries Preload", MAX_CONCURRENT_PRELOADS);
+
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+  private final AtomicLong myInvalidations = new AtomicLong();
+  private final AtomicLong myLoadNanos = new AtomicLong();
+
+  public static CvsEntriesFileCache getInstance() {
+    return ourInstance;
+  }
+
+  private CvsEntriesFileCache() {
+  }
+
+  private static final class CachedEntries {
+    private final long myEntriesStamp;
+    private final long myEntriesLength;
+    private final long myLogStamp;
+    private final long myLogLength;
+    private final Entry[] myEntries;
+
+    CachedEntries(long entriesStamp, long entriesLength, long logStamp, long logLength, Entry[] entries) {
+      myEntriesStamp = entriesStamp;
+      myEntriesLength = entriesLength;
+      myLogStamp = logStamp;
+      myLogLength = logLength;
+      myEntries = entries;
+    }
+
+    boolean isUpToDate(long entriesStamp, long entriesLength, long logStamp, long logLength) {
+      return myEntriesStamp == entriesStamp && myEntriesLength == entriesLength && myLogStamp == logStamp && myLogLength == logLength;
+    }
+  }
+
+  @NotNull
+  public Entries getEntries(@NotNull File directory, @NotNull Function<? super File, ? extends Entries> loader) {
+    final File entriesFile = AdminUtils.createEntriesFile(directory);
+    final File logFile = AdminUtils.createEntriesDotLogFile(directory);
+    final long entriesStamp = entriesFile.lastModified();
+    final long entriesLength = entriesFile.length();
+    final long logStamp = logFile.lastModified();
+    final long logLength = logFile.length();
+
+    final String key = directory.getAbsolutePath();
+    final CachedEntries cached = myCache.get(key);
+    if (cached != null) {
+      if (cached.isUpToDate(entriesStamp, entriesLength, logStamp, logLength)) {
+        myHits.incrementAndGet();
+        return copyOf(cached.myEntries);
+      }
+      myInvalidations.incrementAndGet();
+      myCache.remove(key, cached);
+    }
+
+    myMisses.incrementAndGet();
+    final long start = System.nanoTime();
+    final Entries entries = loader.apply(directory);
+    myLoadNanos.addAndGet(System.nanoTime() - start);
+
+    final long racyLimit = System.currentTimeMillis() - RACY_INTERVAL;
+    if (entriesStamp < racyLimit && logStamp < racyLimit) {
+      myCache.put(key, new CachedEntries(entriesStamp, entriesLength, logStamp, logLength, snapshotOf(entries.getEntries())));
+    }
+    return entries;
+  }
+
+  public void invalidate(@NotNull File directory) {
+    if (myCache.remove(directory.getAbsolutePath()) != null) {
+      myInvalidations.incrementAndGet();
+    }
+  }
+
+  public void clear() {
+    myCache.clear();
+  }
+
+  /**
+   * Loads the entries of {@code root} and of all directories registered in them as subdirectories, in parallel. Reading
+   * the files blocks, so they are read by a few threads of their own rather than by the common pool.
+   */
+  public void preload(@NotNull File root, @NotNull Function<? super File, ? extends Entries> loader) {
+    final long start = System.currentTimeMillis();
+    final long misses = myMisses.get();
+    final CompletionService<List<File>> completionService = new ExecutorCompletionService<>(myPreloadExecutor);
+    completionService.submit(() -> preloadDirectory(root, loader));
+    int pending = 1;
+    try {
+      while (pending > 0) {
+        final Future<List<File>> done = completionService.take();
+        pending--;
+        final List<File> subdirectories;
+        try {
+          subdirectories = done.get();
+        }
+        catch (ExecutionException e) {
+          LOG.info("Cannot preload entries under " + root, e.getCause());
+          continue;
+        }
+        for (File subdirectory : subdirectories) {
+          completionService.submit(() -> preloadDirectory(subdirectory, loader));
+          pending++;
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Preloaded entries under " + root + " in " + (System.currentTimeMillis() - start) + " ms, " +
+                (myMisses.get() - misses) + " files parsed; " + getStatistics());
+    }
+  }
+
+  /**
+   * @return the subdirectories registered in the entries of the directory
+   */
+  private List<File> preloadDirectory(File directory, Function<? super File, ? extends Entries> loader) {
+    final List<File> result = new ArrayList<>();
+    if (!AdminUtils.createEntriesFile(directory).isFile()) return result;
+    for (Entry entry : getEntries(directory, loader).getEntries()) {
+      if (entry.isDirectory()) {
+        result.add(new File(directory, entry.getFileName()));
+      }
+    }
+    return result;
+  }
+
+  public long getHitCount() {
+    return myHits.get();
+  }
+
+  public long getMissCount() {
+    return myMisses.get();
+  }
+
+  public long getInvalidationCount() {
+    return myInvalidations.get();
+  }
+
+  public long getLoadTimeMillis() {
+    return myLoadNanos.get() / 1000000;
+  }
+
+  public String getStatistics() {
+    return "entries cache: " + myCache.size() + " directories, " + getHitCount() + " hits, " + getMissCount() + " misses, " +
+           getInvalidationCount() + " invalidations, " + getLoadTimeMillis() + " ms loading";
+  }
+
+  private static Entry[] snapshotOf(Collection<Entry> entries) {
+    final Entry[] result = new Entry[entries.size()];
+    int i = 0;
+    for (Entry entry : entries) {
+      result[i++] = copyOf(entry);
+    }
+    return result;
+  }
+
+  private static Entries copyOf(Entry[] entries) {
+    final Entries result = new Entries();
+    for (Entry entry : entries) {
+      result.addEntry(copyOf(entry));
+    }
+    return result;
+  }
+
+  private static Entry copyOf(Entry entry) {
+    try {
+      return (Entry)entry.clone();
+    }
+    catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
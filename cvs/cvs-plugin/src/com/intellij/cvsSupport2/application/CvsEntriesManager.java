@@ -32,6 +32,7 @@ import org.netbeans.lib.cvsclient.admin.Entry;
 import java.io.File;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * author: lesya
@@ -40,7 +41,8 @@ import java.util.Map;
 public class CvsEntriesManager implements VirtualFileListener {
   private static final Logger LOG = Logger.getInstance(CvsEntriesManager.class);
 
-  private final Map<VirtualFile, CvsInfo> myInfoByParentDirectoryPath = new THashMap<>();
+  // lookups must not serialize on the manager: status refresh asks for the info of every directory
+  private final Map<VirtualFile, CvsInfo> myInfoByParentDirectoryPath = new ConcurrentHashMap<>();
 
   private static final String CVS_ADMIN_DIRECTORY_NAME = CvsUtil.CVS;
 
@@ -77,6 +79,7 @@ public class CvsEntriesManager implements VirtualFileListener {
     myIsActive--;
     if (myIsActive == 0) {
       myInfoByParentDirectoryPath.clear();
+      CvsEntriesFileCache.getInstance().clear();
       Disposer.dispose(listenerDisposable);
       listenerDisposable = null;
     }
@@ -99,21 +102,18 @@ public class CvsEntriesManager implements VirtualFileListener {
 
 
   @NotNull
-  private synchronized CvsInfo getInfoFor(VirtualFile parent) {
+  private CvsInfo getInfoFor(VirtualFile parent) {
     if (parent == null) return CvsInfo.getDummyCvsInfo();
-    if (!myInfoByParentDirectoryPath.containsKey(parent)) {
-      CvsInfo cvsInfo = new CvsInfo(parent);
-      myInfoByParentDirectoryPath.put(cvsInfo.getKey(), cvsInfo);
-    }
-    return myInfoByParentDirectoryPath.get(parent);
+    return myInfoByParentDirectoryPath.computeIfAbsent(parent, CvsInfo::new);
   }
 
-  public synchronized void clearCachedFiltersFor(final VirtualFile parent) {
+  public void clearCachedFiltersFor(final VirtualFile parent) {
     for (final VirtualFile file : myInfoByParentDirectoryPath.keySet()) {
       if (file == null) continue;
       if (!file.isValid()) continue;
       if (VfsUtilCore.isAncestor(parent, file, false)) {
-        myInfoByParentDirectoryPath.get(file).clearFilter();
+        final CvsInfo cvsInfo = myInfoByParentDirectoryPath.get(file);
+        if (cvsInfo != null) cvsInfo.clearFilter();
       }
     }
     fileStatusesChanged();
@@ -184,7 +184,7 @@ public class CvsEntriesManager implements VirtualFileListener {
     return file.isDirectory() && CVS_ADMIN_DIRECTORY_NAME.equals(file.getName());
   }
 
-  private synchronized void clearCachedEntriesRecursive(VirtualFile parent) {
+  private void clearCachedEntriesRecursive(VirtualFile parent) {
     if (!parent.isDirectory()) return;
 
     for (final VirtualFile file : myInfoByParentDirectoryPath.keySet()) {
@@ -207,6 +207,7 @@ public class CvsEntriesManager implements VirtualFileListener {
   public void clearCachedEntriesFor(final VirtualFile parent) {
     if (parent == null) return;
 
+    CvsEntriesFileCache.getInstance().invalidate(new File(parent.getPath()));
     CvsInfo cvsInfo = getInfoFor(parent);
     cvsInfo.clearFilter();
     if (cvsInfo.isLoaded()) {
@@ -305,8 +306,17 @@ public class CvsEntriesManager implements VirtualFileListener {
     myEntriesListeners.remove(listener);
   }
 
-  public synchronized void clearAll() {
+  public void clearAll() {
     myInfoByParentDirectoryPath.clear();
+    CvsEntriesFileCache.getInstance().clear();
+  }
+
+  /**
+   * Reads the entries of all directories under {@code root} in parallel ahead of a status refresh.
+   */
+  public void preloadEntries(@NotNull VirtualFile root) {
+    if (!isActive()) return;
+    CvsUtil.preloadEntriesUnder(new File(root.getPath()));
   }
 
   public boolean fileIsIgnored(VirtualFile file) {
@@ -342,7 +352,7 @@ public class CvsEntriesManager implements VirtualFileListener {
     return getInfoFor(directory);
   }
 
-  CvsConnectionSettings createConnectionSettingsOn(String cvsRoot) {
+  synchronized CvsConnectionSettings createConnectionSettingsOn(String cvsRoot) {
     if (!myStringToSettingsMap.containsKey(cvsRoot)) {
       final CvsRootConfiguration rootConfiguration = CvsApplicationLevelConfiguration.getInstance().getConfigurationForCvsRoot(cvsRoot);
       CvsConnectionSettings settings = new IDEARootFormatter(rootConfiguration).createConfiguration();
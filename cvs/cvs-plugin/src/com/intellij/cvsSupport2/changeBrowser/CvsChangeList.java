@@ -89,6 +89,13 @@ public class CvsChangeList implements CommittedChangeList {
     return new Date(myDate);
   }
 
+  /**
+   * @return the time of the latest revision of the change list
+   */
+  public long getFinishTime() {
+    return myFinishDate;
+  }
+
   @Override
   public long getNumber() {
     return myNumber;
@@ -13,9 +13,12 @@ import org.netbeans.lib.cvsclient.command.log.Revision;
 import org.netbeans.lib.cvsclient.command.log.SymbolicName;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class CvsChangeListsBuilder {
 
@@ -29,17 +32,48 @@ public class CvsChangeListsBuilder {
 
   private final Map<ChangeListKey, List<CvsChangeList>> myCache = new HashMap<>();
 
+  /**
+   * Numbers of the change lists which may still receive revisions, least recently extended first. Only maintained
+   * when the number of retained change lists is limited.
+   */
+  private final LinkedHashMap<Long, ChangeListKey> myRetained = new LinkedHashMap<>(16, 0.75f, true);
+
   private long myLastNumber = 0;
   private final String myRootPath;
   private final CvsEnvironment myEnvironment;
   private final Project myProject;
   private final VirtualFile myRootFile;
+  private final int myMaxRetainedChangeLists;
+  @Nullable private Consumer<? super CvsChangeList> myEvictionListener;
 
   public CvsChangeListsBuilder(final String rootPath, final CvsEnvironment environment, final Project project, final VirtualFile rootFile) {
+    this(rootPath, environment, project, rootFile, -1);
+  }
+
+  /**
+   * Creates a builder that only remembers the {@code maxRetainedChangeLists} most recently extended change lists, for
+   * merging revisions that are streamed to it. A revision belonging to a forgotten change list starts a new one, and
+   * {@link #getVersions()} only returns the retained lists, so the caller has to pick up the lists returned by
+   * {@link #addRevision(RevisionWrapper)} itself.
+   */
+  public CvsChangeListsBuilder(final String rootPath,
+                               final CvsEnvironment environment,
+                               final Project project,
+                               final VirtualFile rootFile,
+                               final int maxRetainedChangeLists) {
     myRootPath = rootPath;
     myEnvironment = environment;
     myProject = project;
     myRootFile = rootFile;
+    myMaxRetainedChangeLists = maxRetainedChangeLists;
+  }
+
+  /**
+   * Sets the listener notified of the change lists a builder with a limited number of retained lists forgets. A forgotten
+   * change list does not receive any more revisions.
+   */
+  public void setEvictionListener(@Nullable Consumer<? super CvsChangeList> listener) {
+    myEvictionListener = listener;
   }
 
   @NotNull
@@ -59,9 +93,80 @@ public class CvsChangeListsBuilder {
                                                          revisionWrapper.getBranch(),
                                                          revisionWrapper.getFile());
     version.addFileRevision(revisionWrapper);
+    if (myMaxRetainedChangeLists > 0) {
+      retain(version, new ChangeListKey(revisionWrapper.getBranch(), revision.getAuthor(), revision.getMessage()));
+    }
     return version;
   }
 
+  /**
+   * Registers change lists built earlier from the same log, so that further revisions of their commits are merged into them
+   * and new change lists are numbered after them.
+   */
+  public void addChangeLists(@NotNull Collection<CvsChangeList> changeLists) {
+    for (CvsChangeList changeList : changeLists) {
+      final ChangeListKey key = new ChangeListKey(changeList.getBranch(), changeList.getCommitterName(), changeList.getComment());
+      myCache.computeIfAbsent(key, k -> new ArrayList<>()).add(changeList);
+      myLastNumber = Math.max(myLastNumber, changeList.getNumber() + 1);
+      if (myMaxRetainedChangeLists > 0) {
+        retain(changeList, key);
+      }
+    }
+  }
+
+  /**
+   * Makes new change lists numbered from {@code number} on, after change lists built earlier that are not registered.
+   */
+  public void setNextNumber(long number) {
+    myLastNumber = Math.max(myLastNumber, number);
+  }
+
+  public boolean containsRevision(@NotNull RevisionWrapper revisionWrapper) {
+    final Revision revision = revisionWrapper.getRevision();
+    final List<CvsChangeList> versions =
+      myCache.get(new ChangeListKey(revisionWrapper.getBranch(), revision.getAuthor(), revision.getMessage()));
+    if (versions != null) {
+      for (CvsChangeList version : versions) {
+        if (version.containsFileRevision(revisionWrapper)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the number the next created change list will get; lists with a smaller number have already been returned
+   * by {@link #addRevision(RevisionWrapper)}
+   */
+  public long getNextNumber() {
+    return myLastNumber;
+  }
+
+  private void retain(final CvsChangeList version, final ChangeListKey key) {
+    myRetained.put(version.getNumber(), key);
+    if (myRetained.size() <= myMaxRetainedChangeLists) {
+      return;
+    }
+    final Map.Entry<Long, ChangeListKey> eldest = myRetained.entrySet().iterator().next();
+    myRetained.remove(eldest.getKey());
+    final List<CvsChangeList> versions = myCache.get(eldest.getValue());
+    if (versions != null) {
+      for (int i = 0; i < versions.size(); i++) {
+        if (versions.get(i).getNumber() == eldest.getKey().longValue()) {
+          final CvsChangeList evicted = versions.remove(i);
+          if (myEvictionListener != null) {
+            myEvictionListener.accept(evicted);
+          }
+          break;
+        }
+      }
+      if (versions.isEmpty()) {
+        myCache.remove(eldest.getValue());
+      }
+    }
+  }
+
   private CvsChangeList findOrCreateVersionFor(final String message, final long date, final String author,
                                                final String branch, final String path) {
     final ChangeListKey key = new ChangeListKey(branch, author, message);
@@ -0,0 +1,326 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.changeBrowser;
+
+import com.intellij.cvsSupport2.connections.CvsEnvironment;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persists the change lists built from the log of a module, per (cvs root, module). Besides the change lists, an entry records
+ * the date from which the log was loaded and the time of the latest revision seen, so a refresh only needs the log of the
+ * revisions committed since then.
+ * <p>
+ * Change lists which can no longer receive revisions are appended to a list file in deflated segments, and are read back one
+ * segment at a time. The recent change lists, which a refresh may still extend, are kept in a small header file together with
+ * the length of the list file. The header file is replaced after the list file was appended to, so bytes of an update that
+ * was not completed are cut off when the entry is loaded.
+ */
+public final class CvsCommittedChangesCache {
+  private static final Logger LOG = Logger.getInstance(CvsCommittedChangesCache.class);
+
+  private static final int FORMAT_VERSION = 2;
+  private static final String LISTS_SUFFIX = ".lists";
+  private static final int SEGMENT_SIZE = 500;
+
+  private static final class Holder {
+    private static final CvsCommittedChangesCache ourInstance =
+      new CvsCommittedChangesCache(new File(PathManager.getSystemPath(), "cvs" + File.separator + "committedChanges"));
+  }
+
+  private final File myDirectory;
+  private final Object myLock = new Object();
+
+  public static CvsCommittedChangesCache getInstance() {
+    return Holder.ourInstance;
+  }
+
+  public CvsCommittedChangesCache(@NotNull File directory) {
+    myDirectory = directory;
+  }
+
+  public static final class CachedChanges {
+    private final long myLoadedFrom;
+    private final long myLastRevisionTime;
+    private final long myNextNumber;
+    private final long myListsLength;
+    private final List<CvsChangeList> myRecentChangeLists;
+
+    private CachedChanges(long loadedFrom, long lastRevisionTime, long nextNumber, long listsLength,
+                          @NotNull List<CvsChangeList> recentChangeLists) {
+      myLoadedFrom = loadedFrom;
+      myLastRevisionTime = lastRevisionTime;
+      myNextNumber = nextNumber;
+      myListsLength = listsLength;
+      myRecentChangeLists = recentChangeLists;
+    }
+
+    /**
+     * @return the lower bound of the date filter the log was loaded with
+     */
+    public long getLoadedFrom() {
+      return myLoadedFrom;
+    }
+
+    public long getLastRevisionTime() {
+      return myLastRevisionTime;
+    }
+
+    /**
+     * @return the number after the numbers of all cached change lists
+     */
+    public long getNextNumber() {
+      return myNextNumber;
+    }
+
+    /**
+     * @return the change lists that may still receive revisions; the others are read by {@link #readChangeLists}
+     */
+    @NotNull
+    public List<CvsChangeList> getRecentChangeLists() {
+      return myRecentChangeLists;
+    }
+  }
+
+  /**
+   * Loads the header of the cached entry of the module; the change lists which are not recent are not loaded.
+   */
+  @Nullable
+  public CachedChanges load(@NotNull Project project, @NotNull CvsEnvironment environment, @Nullable VirtualFile rootFile,
+                            @NotNull String module) {
+    final String key = createKey(environment, module);
+    final File file = getFile(key);
+    final File listsFile = getListsFile(key);
+    synchronized (myLock) {
+      if (!file.isFile()) return null;
+      try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+        if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+          delete(key);
+          return null;
+        }
+        final long loadedFrom = in.readLong();
+        final long lastRevisionTime = in.readLong();
+        final long nextNumber = in.readLong();
+        final long listsLength = in.readLong();
+        final int count = in.readInt();
+        final List<CvsChangeList> changeLists = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          changeLists.add(new CvsChangeList(project, environment, rootFile, in));
+        }
+
+        final long actualLength = listsFile.length();
+        if (actualLength < listsLength) {
+          LOG.info("Cached changes of " + module + " are incomplete");
+          delete(key);
+          return null;
+        }
+        if (actualLength > listsLength) {
+          // an update was interrupted before its header was written
+          try (RandomAccessFile lists = new RandomAccessFile(listsFile, "rw")) {
+            lists.setLength(listsLength);
+          }
+        }
+        return new CachedChanges(loadedFrom, lastRevisionTime, nextNumber, listsLength, changeLists);
+      }
+      catch (IOException e) {
+        LOG.info("Cannot read cached changes of " + module, e);
+        delete(key);
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Passes the change lists of the entry that are not recent to the consumer, reading one segment of the list file at a time.
+   */
+  public void readChangeLists(@NotNull Project project, @NotNull CvsEnvironment environment, @Nullable VirtualFile rootFile,
+                              @NotNull String module, @NotNull CachedChanges cached, @NotNull Consumer<? super CvsChangeList> consumer)
+    throws IOException {
+    if (cached.myListsLength == 0) return;
+    // appends go past the length of the loaded entry, so the file is read without holding the lock
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(getListsFile(createKey(environment, module)))))) {
+      long position = 0;
+      while (position < cached.myListsLength) {
+        final byte[] segment = new byte[in.readInt()];
+        in.readFully(segment);
+        position += 4 + segment.length;
+
+        final DataInputStream segmentIn = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(segment)));
+        final int count = segmentIn.readInt();
+        for (int i = 0; i < count; i++) {
+          consumer.accept(new CvsChangeList(project, environment, rootFile, segmentIn));
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts an update of the entry of the module. Without the entry it was loaded from, the update replaces the entry.
+   */
+  @NotNull
+  public Update startUpdate(@NotNull CvsEnvironment environment, @NotNull String module, @Nullable CachedChanges cached) {
+    final String key = createKey(environment, module);
+    synchronized (myLock) {
+      if (cached == null) {
+        delete(key);
+      }
+    }
+    return new Update(key, module, cached == null ? 0 : cached.myListsLength);
+  }
+
+  /**
+   * Collects the change lists which can no longer receive revisions and appends them to the list file in segments. The entry
+   * is changed when the update is committed.
+   */
+  public final class Update {
+    private final String myKey;
+    private final String myModule;
+    private final List<CvsChangeList> mySegment = new ArrayList<>(SEGMENT_SIZE);
+    private long myListsLength;
+    private boolean myFailed;
+
+    private Update(String key, String module, long listsLength) {
+      myKey = key;
+      myModule = module;
+      myListsLength = listsLength;
+    }
+
+    public void append(@NotNull CvsChangeList changeList) {
+      mySegment.add(changeList);
+      if (mySegment.size() >= SEGMENT_SIZE) {
+        flushSegment();
+      }
+    }
+
+    public void commit(long loadedFrom, long lastRevisionTime, long nextNumber, @NotNull Collection<CvsChangeList> recentChangeLists) {
+      flushSegment();
+      if (myFailed) return;
+      final List<CvsChangeList> recent = new ArrayList<>(recentChangeLists);
+      // the least recently extended lists are the first to be forgotten when the entry is loaded into a builder again
+      recent.sort(Comparator.comparingLong(CvsChangeList::getFinishTime));
+
+      final File file = getFile(myKey);
+      final File tempFile = new File(file.getPath() + ".tmp");
+      synchronized (myLock) {
+        if (getListsFile(myKey).length() != myListsLength) {
+          LOG.info("Cached changes of " + myModule + " were updated concurrently");
+          return;
+        }
+        try {
+          FileUtil.createParentDirs(tempFile);
+          try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(myKey);
+            out.writeLong(loadedFrom);
+            out.writeLong(lastRevisionTime);
+            out.writeLong(nextNumber);
+            out.writeLong(myListsLength);
+            out.writeInt(recent.size());
+            for (CvsChangeList changeList : recent) {
+              changeList.writeToStream(out);
+            }
+          }
+          FileUtil.rename(tempFile, file);
+        }
+        catch (IOException e) {
+          LOG.info("Cannot cache changes of " + myModule, e);
+          FileUtil.delete(tempFile);
+        }
+      }
+    }
+
+    private void flushSegment() {
+      if (mySegment.isEmpty() || myFailed) {
+        mySegment.clear();
+        return;
+      }
+      final File listsFile = getListsFile(myKey);
+      synchronized (myLock) {
+        try {
+          if (listsFile.length() != myListsLength) {
+            throw new IOException("The cached changes were updated concurrently");
+          }
+          final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(mySegment.size());
+            for (CvsChangeList changeList : mySegment) {
+              changeList.writeToStream(out);
+            }
+          }
+          FileUtil.createParentDirs(listsFile);
+          try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(listsFile, true)))) {
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+          }
+          myListsLength += 4 + bytes.size();
+        }
+        catch (IOException e) {
+          LOG.info("Cannot cache changes of " + myModule, e);
+          myFailed = true;
+        }
+      }
+      mySegment.clear();
+    }
+  }
+
+  public void remove(@NotNull CvsEnvironment environment, @NotNull String module) {
+    synchronized (myLock) {
+      delete(createKey(environment, module));
+    }
+  }
+
+  public void clear() {
+    synchronized (myLock) {
+      FileUtil.delete(myDirectory);
+    }
+  }
+
+  private void delete(String key) {
+    FileUtil.delete(getFile(key));
+    FileUtil.delete(getListsFile(key));
+  }
+
+  private File getFile(String key) {
+    return new File(myDirectory, hashOf(key));
+  }
+
+  private File getListsFile(String key) {
+    return new File(myDirectory, hashOf(key) + LISTS_SUFFIX);
+  }
+
+  private static String createKey(CvsEnvironment environment, String module) {
+    return environment.getCvsRootAsString() + '\n' + module;
+  }
+
+  private static String hashOf(String key) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+    final byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+    final StringBuilder result = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return result.toString();
+  }
+}
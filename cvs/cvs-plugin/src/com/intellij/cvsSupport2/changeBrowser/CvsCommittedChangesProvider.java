@@ -35,14 +35,14 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.netbeans.lib.cvsclient.admin.Entry;
@@ -51,6 +51,12 @@ import org.netbeans.lib.cvsclient.command.log.Revision;
 public class CvsCommittedChangesProvider implements CachingCommittedChangesProvider<CvsChangeList, ChangeBrowserSettings> {
   private static final Logger LOG = Logger.getInstance(CvsCommittedChangesProvider.class);
 
+  /**
+   * Change lists kept open for merging while streaming a log; revisions of a commit that are further apart in the log
+   * than this many change lists end up in separate change lists.
+   */
+  private static final int MAX_RETAINED_CHANGE_LISTS = 5000;
+
   private final Project myProject;
 
   public CvsCommittedChangesProvider(Project project) {
@@ -216,38 +222,36 @@ public class CvsCommittedChangesProvider implements CachingCommittedChangesProvi
       if (connectionSettings.isOffline()) {
         return;
       }
-      final CvsChangeListsBuilder builder = new CvsChangeListsBuilder(module, connectionSettings, myProject, cvsLocation.getRootFile());
+      final VirtualFile rootFile = cvsLocation.getRootFile();
       final Date dateTo = settings.getDateBeforeFilter();
-      Date dateFrom = settings.getDateAfterFilter();
-      if (dateFrom == null) {
-        final Calendar calendar = Calendar.getInstance();
-        calendar.set(1970, Calendar.MARCH, 2);
-        dateFrom = calendar.getTime();
-      }
+      final Date dateFrom = getDateFrom(settings);
       final ChangeBrowserSettings.Filter filter = settings.createFilter();
-      final Set<CvsChangeList> controlSet = new HashSet<>();
+      final CvsCommittedChangesCache.CachedChanges cached = loadCachedChanges(connectionSettings, rootFile, module, dateFrom);
+      if (cached != null || dateTo == null) {
+        loadChangeListsIncrementally(module, connectionSettings, rootFile, cached, dateFrom.getTime(), changeList -> {
+          if (filter.accepts(changeList)) {
+            consumer.consume(changeList);
+          }
+        });
+        return;
+      }
+      final CvsChangeListsBuilder builder =
+        new CvsChangeListsBuilder(module, connectionSettings, myProject, rootFile, MAX_RETAINED_CHANGE_LISTS);
       final LoadHistoryOperation operation =
-        new LoadHistoryOperation(connectionSettings, module, dateFrom, dateTo, wrapper -> {
+        new LoadHistoryOperation(connectionSettings, module, dateFrom, dateTo, true, wrapper -> {
           final List<RevisionWrapper> wrappers = builder.revisionWrappersFromLog(wrapper);
           if (wrappers != null) {
             for (RevisionWrapper revisionWrapper : wrappers) {
+              final long nextNumber = builder.getNextNumber();
               final CvsChangeList changeList = builder.addRevision(revisionWrapper);
-              if (controlSet.contains(changeList)) continue;
-              controlSet.add(changeList);
+              if (changeList.getNumber() < nextNumber) continue; // already passed to the consumer
               if (filter.accepts(changeList)) {
                 consumer.consume(changeList);
               }
             }
           }
         });
-      final CvsResult executionResult = operation.run(myProject);
-
-      if (executionResult.isCanceled()) {
-        throw new ProcessCanceledException();
-      }
-      else if (executionResult.hasErrors()) {
-        throw executionResult.composeError();
-      }
+      checkResult(operation.run(myProject));
     }
     finally {
       consumer.finished();
@@ -262,29 +266,135 @@ public class CvsCommittedChangesProvider implements CachingCommittedChangesProvi
     if (connectionSettings.isOffline()) {
       return Collections.emptyList();
     }
-    final CvsChangeListsBuilder builder = new CvsChangeListsBuilder(module, connectionSettings, myProject, rootFile);
     final Date dateTo = settings.getDateBeforeFilter();
-    Date dateFrom = settings.getDateAfterFilter();
-    if (dateFrom == null) {
-      final Calendar calendar = Calendar.getInstance();
-      calendar.set(1970, Calendar.MARCH, 2);
-      dateFrom = calendar.getTime();
+    final Date dateFrom = getDateFrom(settings);
+    final CvsCommittedChangesCache.CachedChanges cached = loadCachedChanges(connectionSettings, rootFile, module, dateFrom);
+    final List<CvsChangeList> versions;
+    if (cached != null || dateTo == null) {
+      versions = new ArrayList<>();
+      loadChangeListsIncrementally(module, connectionSettings, rootFile, cached, dateFrom.getTime(), versions::add);
+    }
+    else {
+      final CvsChangeListsBuilder builder = new CvsChangeListsBuilder(module, connectionSettings, myProject, rootFile);
+      final LoadHistoryOperation operation =
+        new LoadHistoryOperation(connectionSettings, module, dateFrom, dateTo, true, logInformationWrapper -> builder.add(logInformationWrapper));
+      checkResult(operation.run(myProject));
+      versions = builder.getVersions();
+    }
+    settings.filterChanges(versions);
+    return versions;
+  }
+
+  @NotNull
+  private static Date getDateFrom(ChangeBrowserSettings settings) {
+    final Date dateFrom = settings.getDateAfterFilter();
+    if (dateFrom != null) {
+      return dateFrom;
     }
+    final Calendar calendar = Calendar.getInstance();
+    calendar.set(1970, Calendar.MARCH, 2);
+    return calendar.getTime();
+  }
+
+  /**
+   * @return the cached change lists of the module if they were loaded from a date not after {@code dateFrom}
+   */
+  @Nullable
+  private CvsCommittedChangesCache.CachedChanges loadCachedChanges(CvsEnvironment connectionSettings,
+                                                                   VirtualFile rootFile,
+                                                                   String module,
+                                                                   Date dateFrom) {
+    final CvsCommittedChangesCache.CachedChanges cached =
+      CvsCommittedChangesCache.getInstance().load(myProject, connectionSettings, rootFile, module);
+    if (cached == null || cached.getLoadedFrom() > dateFrom.getTime()) {
+      return null;
+    }
+    return cached;
+  }
+
+  /**
+   * Passes the cached change lists of the module and the ones committed since the latest cached revision to the consumer, and
+   * caches the result. Without cached changes, the log is loaded from {@code loadedFrom} on.
+   * <p>
+   * The older cached change lists are streamed to the consumer as they are read. Only the recent ones, which the new
+   * revisions may belong to, are loaded into a builder that retains at most {@link #MAX_RETAINED_CHANGE_LISTS} lists; the
+   * lists it forgets, and the ones too old to receive further revisions, are appended to the cache. The log is requested
+   * from slightly before the latest cached revision, as the revisions of a commit are not stored at exactly the same time;
+   * revisions that are already cached are skipped.
+   */
+  private void loadChangeListsIncrementally(String module,
+                                            CvsEnvironment connectionSettings,
+                                            VirtualFile rootFile,
+                                            @Nullable CvsCommittedChangesCache.CachedChanges cached,
+                                            long loadedFrom,
+                                            Consumer<? super CvsChangeList> consumer) throws VcsException {
+    final CvsCommittedChangesCache cache = CvsCommittedChangesCache.getInstance();
+    final CvsChangeListsBuilder builder =
+      new CvsChangeListsBuilder(module, connectionSettings, myProject, rootFile, MAX_RETAINED_CHANGE_LISTS);
+    long lastCachedRevisionTime = 0;
+    if (cached != null) {
+      try {
+        cache.readChangeLists(myProject, connectionSettings, rootFile, module, cached, consumer);
+      }
+      catch (IOException e) {
+        cache.remove(connectionSettings, module);
+        throw new VcsException(e);
+      }
+      builder.addChangeLists(cached.getRecentChangeLists());
+      builder.setNextNumber(cached.getNextNumber());
+      cached.getRecentChangeLists().forEach(consumer);
+      loadedFrom = cached.getLoadedFrom();
+      lastCachedRevisionTime = cached.getLastRevisionTime();
+    }
+    final CvsCommittedChangesCache.Update update = cache.startUpdate(connectionSettings, module, cached);
+    builder.setEvictionListener(update::append);
+
+    final long firstNewNumber = builder.getNextNumber();
+    final long[] lastRevisionTime = {lastCachedRevisionTime};
+    final Date dateFrom = lastCachedRevisionTime == 0
+                          ? new Date(loadedFrom)
+                          : new Date(lastCachedRevisionTime - CvsChangeList.SUITABLE_DIFF);
     final LoadHistoryOperation operation =
-      new LoadHistoryOperation(connectionSettings, module, dateFrom, dateTo, logInformationWrapper -> builder.add(logInformationWrapper));
-    final CvsResult executionResult = operation.run(myProject);
+      new LoadHistoryOperation(connectionSettings, module, dateFrom, null, true, wrapper -> {
+        final List<RevisionWrapper> wrappers = builder.revisionWrappersFromLog(wrapper);
+        if (wrappers != null) {
+          for (RevisionWrapper revisionWrapper : wrappers) {
+            if (builder.containsRevision(revisionWrapper)) continue;
+            lastRevisionTime[0] = Math.max(lastRevisionTime[0], revisionWrapper.getTime());
+            final long nextNumber = builder.getNextNumber();
+            final CvsChangeList changeList = builder.addRevision(revisionWrapper);
+            if (changeList.getNumber() >= nextNumber) {
+              consumer.accept(changeList);
+            }
+          }
+        }
+      });
+    checkResult(operation.run(myProject));
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Loaded " + (builder.getNextNumber() - firstNewNumber) + " new change lists of " + module + " since " + dateFrom);
+    }
+
+    // a list whose latest revision is this far before the latest one cannot receive the revisions the next refresh loads
+    final long recentFrom = lastRevisionTime[0] - 2 * CvsChangeList.SUITABLE_DIFF;
+    final List<CvsChangeList> recent = new ArrayList<>();
+    for (CvsChangeList changeList : builder.getVersions()) {
+      if (changeList.getFinishTime() < recentFrom) {
+        update.append(changeList);
+      }
+      else {
+        recent.add(changeList);
+      }
+    }
+    update.commit(loadedFrom, lastRevisionTime[0], builder.getNextNumber(), recent);
+  }
 
+  private static void checkResult(CvsResult executionResult) throws VcsException {
     if (executionResult.isCanceled()) {
       throw new ProcessCanceledException();
     }
     else if (executionResult.hasErrors()) {
       throw executionResult.composeError();
     }
-    else {
-      final List<CvsChangeList> versions = builder.getVersions();
-      settings.filterChanges(versions);
-      return versions;
-    }
   }
 
   @Override
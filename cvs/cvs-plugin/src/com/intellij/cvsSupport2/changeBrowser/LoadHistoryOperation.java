@@ -53,17 +53,31 @@ public class LoadHistoryOperation extends LocalPathIndifferentOperation {
   private final Consumer<LogInformationWrapper> myConsumer;
   private final String[] myRevisions;
   private final boolean myNoTags;
+  private final boolean myStreamRevisions;
 
   public LoadHistoryOperation(CvsEnvironment environment,
                               String module,
                               @Nullable Date dateFrom,
                               @Nullable Date dateTo,
                               @NotNull final Consumer<LogInformationWrapper> consumer) {
-    this(environment, consumer, module, dateFrom, dateTo, false);
+    this(environment, module, dateFrom, dateTo, false, consumer);
+  }
+
+  /**
+   * @param streamRevisions pass every revision to the consumer as soon as it is parsed (wrapped together with the
+   *                        header of its file) instead of collecting all revisions of a file first
+   */
+  public LoadHistoryOperation(CvsEnvironment environment,
+                              String module,
+                              @Nullable Date dateFrom,
+                              @Nullable Date dateTo,
+                              boolean streamRevisions,
+                              @NotNull final Consumer<LogInformationWrapper> consumer) {
+    this(environment, consumer, module, dateFrom, dateTo, false, streamRevisions);
   }
 
   public LoadHistoryOperation(CvsEnvironment environment, Consumer<LogInformationWrapper> consumer, String module, String... revisions) {
-    this(environment, consumer, module, null, null, true, revisions);
+    this(environment, consumer, module, null, null, true, false, revisions);
   }
 
   private LoadHistoryOperation(CvsEnvironment environment,
@@ -72,6 +86,7 @@ public class LoadHistoryOperation extends LocalPathIndifferentOperation {
                               @Nullable Date dateFrom,
                               @Nullable Date dateTo,
                               boolean noTags,
+                              boolean streamRevisions,
                               String @NotNull ... revisions) {
     super(environment);
     myConsumer = consumer;
@@ -79,6 +94,7 @@ public class LoadHistoryOperation extends LocalPathIndifferentOperation {
     myDateFrom = dateFrom;
     myDateTo = dateTo;
     myNoTags = noTags;
+    myStreamRevisions = streamRevisions;
     myRevisions = revisions;
   }
 
@@ -95,6 +111,15 @@ public class LoadHistoryOperation extends LocalPathIndifferentOperation {
       command.setDateTo(DATE_FORMAT.format(myDateTo));
     }
     command.setRevisions(myRevisions);
+    if (myStreamRevisions) {
+      final String repository = myEnvironment.getRepository();
+      command.setRevisionConsumer((logInfo, revision) -> {
+        final LogInformationWrapper wrapper = LogInformationWrapper.wrap(repository, myModule, logInfo, revision);
+        if (wrapper != null) {
+          myConsumer.consume(wrapper);
+        }
+      });
+    }
 
     if (ourDoNotSupportingSOptionServers.contains(root.getCvsRootAsString())) {
       command.setSuppressEmptyHeaders(false);
@@ -23,6 +23,7 @@ import org.netbeans.lib.cvsclient.command.log.LogInformation;
 import org.netbeans.lib.cvsclient.command.log.Revision;
 import org.netbeans.lib.cvsclient.command.log.SymbolicName;
 
+import java.util.Collections;
 import java.util.List;
 
 public class LogInformationWrapper {
@@ -51,24 +52,38 @@ public class LogInformationWrapper {
 
   @Nullable
   public static LogInformationWrapper wrap(final String repository, String module, final LogInformation log) {
-    if (log.getRevisionList().isEmpty()) {
+    return wrap(repository, module, log, log.getRevisionList());
+  }
+
+  /**
+   * Wraps a single revision streamed by the log parser; {@code log} only holds the header of its file.
+   */
+  @Nullable
+  public static LogInformationWrapper wrap(final String repository, String module, final LogInformation log, final Revision revision) {
+    return wrap(repository, module, log, Collections.singletonList(revision));
+  }
+
+  @Nullable
+  private static LogInformationWrapper wrap(final String repository, String module, final LogInformation log,
+                                            final List<Revision> revisions) {
+    if (revisions.isEmpty()) {
       return null;
     }
     final String rcsFileName = log.getRcsFileName();
     if (FileUtil.toSystemIndependentName(rcsFileName).startsWith(FileUtil.toSystemIndependentName(repository))) {
-      return buildWrapper(log, rcsFileName, repository.length());
+      return buildWrapper(log, revisions, rcsFileName, repository.length());
     }
     final int index = rcsFileName.indexOf(module); // hack
     if (index >= 0) {
-      return  buildWrapper(log, rcsFileName, index);
+      return  buildWrapper(log, revisions, rcsFileName, index);
     }
     return null;
   }
 
-  private static LogInformationWrapper buildWrapper(LogInformation log, String rcsFileName, int length) {
+  private static LogInformationWrapper buildWrapper(LogInformation log, List<Revision> revisions, String rcsFileName, int length) {
     String relativePath = rcsFileName.substring(length);
     relativePath = StringUtil.trimStart(relativePath, "/");
     relativePath = StringUtil.trimEnd(relativePath, CVS_REPOSITORY_FILE_POSTFIX);
-    return new LogInformationWrapper(relativePath, log.getRevisionList(), log.getAllSymbolicNames());
+    return new LogInformationWrapper(relativePath, revisions, log.getAllSymbolicNames());
   }
 }
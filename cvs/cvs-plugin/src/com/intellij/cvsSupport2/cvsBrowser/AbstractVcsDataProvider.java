@@ -16,17 +16,21 @@
 package com.intellij.cvsSupport2.cvsBrowser;
 
 import com.intellij.CvsBundle;
+import com.intellij.cvsSupport2.CvsVcs2;
 import com.intellij.cvsSupport2.connections.CvsEnvironment;
 import com.intellij.cvsSupport2.cvsExecution.CvsOperationExecutor;
 import com.intellij.cvsSupport2.cvsExecution.DefaultCvsOperationExecutorCallback;
 import com.intellij.cvsSupport2.cvshandlers.CommandCvsHandler;
 import com.intellij.cvsSupport2.cvsoperations.common.CvsOperation;
+import com.intellij.cvsSupport2.cvsoperations.cvsContent.DirectoryContent;
 import com.intellij.cvsSupport2.cvsoperations.cvsContent.DirectoryContentProvider;
 import com.intellij.cvsSupport2.cvsoperations.cvsContent.GetDirectoriesListViaUpdateOperation;
 import com.intellij.cvsSupport2.cvsoperations.cvsMessages.CvsListenerWithProgress;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.util.Consumer;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 
@@ -42,12 +46,40 @@ public abstract class AbstractVcsDataProvider implements RemoteResourceDataProvi
   public void fillContentFor(final GetContentCallback callback, Consumer<VcsException> errorCallback) {
     myErrorCallback = errorCallback;
     if (ApplicationManager.getApplication().isUnitTestMode()) {
-      executeCommand(createDirectoryContentProvider(callback.getElementPath()), callback);
+      executeCommand(createDirectoryContentProvider(callback.getElementPath()), callback, null);
     } else {
+      final String cacheKey = getCacheKey(callback.getElementPath());
+      final DirectoryContent cached = RemoteDirectoryCache.getInstance().get(cacheKey);
+      if (cached != null) {
+        callback.appendDirectoryContent(cached);
+        callback.finished();
+        return;
+      }
       final DirectoryContentProvider provider = createDirectoryContentProvider(callback.getElementPath());
-      provider.setStreamingListener(directoryContent -> callback.appendDirectoryContent(directoryContent));
-      executeCommand(provider, callback);
+      final DirectoryContent loaded = new DirectoryContent();
+      provider.setStreamingListener(directoryContent -> {
+        loaded.copyDataFrom(directoryContent);
+        callback.appendDirectoryContent(directoryContent);
+      });
+      executeCommand(provider, callback, () -> RemoteDirectoryCache.getInstance().put(cacheKey, loaded));
+    }
+  }
+
+  @Override
+  public void prefetchContentFor(String path, Project project) {
+    if (ApplicationManager.getApplication().isUnitTestMode()) {
+      return;
     }
+    RemoteDirectoryCache.getInstance().prefetch(getCacheKey(path), () -> {
+      final DirectoryContentProvider provider = createDirectoryContentProvider(path);
+      final CvsOperationExecutor executor =
+        CvsVcs2.executeQuietOperation(CvsBundle.message("browse.repository.operation.name"), (CvsOperation)provider, project);
+      return executor.hasNoErrors() ? provider.getDirectoryContent() : null;
+    });
+  }
+
+  private String getCacheKey(String path) {
+    return getClass().getName() + '\n' + myEnvironment.getCvsRootAsString() + '\n' + path;
   }
 
   public DirectoryContentProvider createDirectoryContentProvider(String path) {
@@ -71,7 +103,7 @@ public abstract class AbstractVcsDataProvider implements RemoteResourceDataProvi
     }
   }
 
-  private void executeCommand(final DirectoryContentProvider command, final GetContentCallback callback) {
+  private void executeCommand(final DirectoryContentProvider command, final GetContentCallback callback, @Nullable Runnable onSuccess) {
     final CvsOperationExecutor executor = new CvsOperationExecutor(false, callback.getProject(), callback.getModalityState());
     executor.setIsQuietOperation(true);
 
@@ -81,7 +113,12 @@ public abstract class AbstractVcsDataProvider implements RemoteResourceDataProvi
     executor.performActionSync(cvsHandler, new DefaultCvsOperationExecutorCallback() {
       @Override
       public void executionFinished(boolean successfully) {
-        if (!successfully) {
+        if (successfully) {
+          if (onSuccess != null) {
+            onSuccess.run();
+          }
+        }
+        else {
           final List<VcsException> errors = cvsHandler.getErrorsExceptAborted();
           if (!errors.isEmpty()) {
             myErrorCallback.consume(errors.get(0));
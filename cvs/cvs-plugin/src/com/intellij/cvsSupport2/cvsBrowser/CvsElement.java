@@ -22,9 +22,11 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
 
 public class CvsElement extends DefaultMutableTreeNode implements Comparable<CvsElement>{
@@ -106,6 +108,22 @@ public class CvsElement extends DefaultMutableTreeNode implements Comparable<Cvs
     return children;
   }
 
+  /**
+   * @return the children loaded so far, without loading them
+   */
+  public List<CvsElement> getLoadedChildren() {
+    if (children == null) {
+      return Collections.emptyList();
+    }
+    final List<CvsElement> result = new ArrayList<>(children.size());
+    for (Object child : children) {
+      if (child instanceof CvsElement) {
+        result.add((CvsElement)child);
+      }
+    }
+    return result;
+  }
+
   public void insertSorted(MutableTreeNode newChild, Comparator comparator) {
     final int insertionPoint;
     if (children == null) {
@@ -61,6 +61,7 @@ public class CvsTree extends JPanel implements CvsTabbedWindow.DeactivateListene
   private final LoadingNode.Manager myLoadingNodeManager = new LoadingNode.Manager();
 
   @NonNls public static final String SELECTION_CHANGED = "Selection Changed";
+  private static final int MAX_PREFETCHED_CHILDREN = 32;
 
   public CvsTree(Project project, boolean allowRootSelection, @JdkConstants.TreeSelectionMode int selectionMode,
                  boolean showModules, boolean showFiles, Consumer<VcsException> errorCallback) {
@@ -201,6 +202,21 @@ public class CvsTree extends JPanel implements CvsTabbedWindow.DeactivateListene
     });
   }
 
+  /**
+   * Loads the content of the first children of a just loaded element in the background, as they are likely to be expanded
+   * next.
+   */
+  private void prefetchChildrenOf(CvsElement element) {
+    int count = 0;
+    for (CvsElement child : element.getLoadedChildren()) {
+      if (count >= MAX_PREFETCHED_CHILDREN) break;
+      final RemoteResourceDataProvider dataProvider = child.getDataProvider();
+      if (dataProvider == RemoteResourceDataProvider.NOT_EXPANDABLE) continue;
+      dataProvider.prefetchContentFor(child.getElementPath(), myProject);
+      count++;
+    }
+  }
+
   private class MyGetContentCallback implements GetContentCallback, CvsTabbedWindow.DeactivateListener {
 
     private final CvsElement myParentNode;
@@ -305,6 +321,7 @@ public class CvsTree extends JPanel implements CvsTabbedWindow.DeactivateListene
             myTree.setSelectionPath(mySelectionPath);
           }
         }
+        prefetchChildrenOf(myParentNode);
       }, myModalityState);
     }
   }
@@ -0,0 +1,160 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.cvsBrowser;
+
+import com.intellij.cvsSupport2.cvsoperations.cvsContent.DirectoryContent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Directory listings of the repository browser, shared by all browser sessions. Listings expire after a while, so that
+ * changes in the repository show up when browsing again later. Listings of directories the user is likely to expand next
+ * are loaded in the background by a few concurrent prefetch tasks.
+ */
+final class RemoteDirectoryCache {
+  private static final Logger LOG = Logger.getInstance(RemoteDirectoryCache.class);
+
+  private static final long TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+  private static final int MAX_ENTRIES = 2000;
+  private static final int MAX_CONCURRENT_PREFETCHES = 3;
+
+  private static final RemoteDirectoryCache ourInstance = new RemoteDirectoryCache(
+    AppExecutorUtil.createBoundedApplicationPoolExecutor("CVS Repository Browser Prefetch", MAX_CONCURRENT_PREFETCHES), TIME_TO_LIVE);
+
+  private final Map<String, Entry> myEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+  private final ConcurrentMap<String, Prefetch> myPrefetches = new ConcurrentHashMap<>();
+  private final Executor myPrefetchExecutor;
+  private final long myTimeToLive;
+
+  private static final class Entry {
+    final DirectoryContent myContent;
+    final long myTimeStamp;
+
+    Entry(DirectoryContent content, long timeStamp) {
+      myContent = content;
+      myTimeStamp = timeStamp;
+    }
+  }
+
+  RemoteDirectoryCache(@NotNull Executor prefetchExecutor, long timeToLive) {
+    myPrefetchExecutor = prefetchExecutor;
+    myTimeToLive = timeToLive;
+  }
+
+  static RemoteDirectoryCache getInstance() {
+    return ourInstance;
+  }
+
+  /**
+   * @return a copy of the cached listing, or null if there is none or it has expired. Waits for a prefetch of the listing
+   * that is already running instead of loading it twice.
+   */
+  @Nullable
+  DirectoryContent get(@NotNull String key) {
+    final Prefetch prefetch = myPrefetches.get(key);
+    if (prefetch != null) {
+      if (prefetch.myStarted.compareAndSet(false, true)) {
+        // still queued behind other prefetches, the caller loads the listing itself
+        myPrefetches.remove(key, prefetch);
+        return null;
+      }
+      try {
+        prefetch.myDone.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      catch (ExecutionException ignored) {
+      }
+    }
+    synchronized (myEntries) {
+      final Entry entry = myEntries.get(key);
+      if (entry == null) {
+        return null;
+      }
+      if (System.currentTimeMillis() - entry.myTimeStamp > myTimeToLive) {
+        myEntries.remove(key);
+        return null;
+      }
+      final DirectoryContent result = new DirectoryContent();
+      result.copyDataFrom(entry.myContent);
+      return result;
+    }
+  }
+
+  void put(@NotNull String key, @NotNull DirectoryContent content) {
+    final DirectoryContent copy = new DirectoryContent();
+    copy.copyDataFrom(content);
+    synchronized (myEntries) {
+      myEntries.put(key, new Entry(copy, System.currentTimeMillis()));
+    }
+  }
+
+  private boolean isFresh(String key) {
+    synchronized (myEntries) {
+      final Entry entry = myEntries.get(key);
+      return entry != null && System.currentTimeMillis() - entry.myTimeStamp <= myTimeToLive;
+    }
+  }
+
+  /**
+   * Loads the listing in the background unless it is cached or already being loaded. The loader returns null if the
+   * listing could not be loaded.
+   */
+  void prefetch(@NotNull String key, @NotNull Supplier<DirectoryContent> loader) {
+    if (isFresh(key)) {
+      return;
+    }
+    final Prefetch prefetch = new Prefetch(key, loader);
+    if (myPrefetches.putIfAbsent(key, prefetch) == null) {
+      myPrefetchExecutor.execute(prefetch);
+    }
+  }
+
+  private final class Prefetch implements Runnable {
+    private final String myKey;
+    private final Supplier<DirectoryContent> myLoader;
+    private final AtomicBoolean myStarted = new AtomicBoolean();
+    private final CompletableFuture<Void> myDone = new CompletableFuture<>();
+
+    Prefetch(String key, Supplier<DirectoryContent> loader) {
+      myKey = key;
+      myLoader = loader;
+    }
+
+    @Override
+    public void run() {
+      if (!myStarted.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        if (!isFresh(myKey)) {
+          final DirectoryContent content = myLoader.get();
+          if (content != null) {
+            put(myKey, content);
+          }
+        }
+      }
+      catch (RuntimeException e) {
+        LOG.debug("Cannot prefetch " + myKey, e);
+      }
+      finally {
+        myPrefetches.remove(myKey, this);
+        myDone.complete(null);
+      }
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.intellij.cvsSupport2.cvsBrowser;
 
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.util.Consumer;
 
@@ -32,5 +33,11 @@ public interface RemoteResourceDataProvider {
 
   void fillContentFor(GetContentCallback callback, Consumer<VcsException> errorCallback);
 
+  /**
+   * Starts loading the content of the element at {@code path} in the background, so that it is at hand when the element
+   * gets expanded.
+   */
+  default void prefetchContentFor(String path, Project project) {}
+
   RemoteResourceDataProvider getChildrenDataProvider();
 }
@@ -38,13 +38,13 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.netbeans.lib.cvsclient.ClientEnvironment;
 import org.netbeans.lib.cvsclient.IClientEnvironment;
-import org.netbeans.lib.cvsclient.IRequestProcessor;
 import org.netbeans.lib.cvsclient.RequestProcessor;
 import org.netbeans.lib.cvsclient.admin.Entry;
 import org.netbeans.lib.cvsclient.admin.IAdminReader;
@@ -224,12 +224,13 @@ public abstract class CvsCommandOperation extends CvsOperation implements IFileI
       final IGlobalOptions globalOptions = command.getGlobalOptions();
 
 
-      final IRequestProcessor requestProcessor = new RequestProcessor(clientEnvironment,
-                                                                      globalOptions,
-                                                                      eventManager,
-                                                                      new StreamLogger(),
-                                                                      executionEnvironment.getCvsCommandStopper(),
-                                                                      PServerCvsSettings.getTimeoutMillis());
+      final RequestProcessor requestProcessor = new RequestProcessor(clientEnvironment,
+                                                                     globalOptions,
+                                                                     eventManager,
+                                                                     new StreamLogger(),
+                                                                     executionEnvironment.getCvsCommandStopper(),
+                                                                     PServerCvsSettings.getTimeoutMillis());
+      requestProcessor.setFullDuplex(Registry.is("cvs.full.duplex.requests"));
 
       eventManager.addFileInfoListener(this);
       eventManager.addEntryListener(this);
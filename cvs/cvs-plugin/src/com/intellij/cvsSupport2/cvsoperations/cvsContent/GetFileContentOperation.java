@@ -20,6 +20,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.netbeans.lib.cvsclient.admin.Entry;
 import org.netbeans.lib.cvsclient.command.Command;
+import org.netbeans.lib.cvsclient.command.KeywordSubstitution;
 import org.netbeans.lib.cvsclient.command.checkout.CheckoutCommand;
 import org.netbeans.lib.cvsclient.file.FileObject;
 
@@ -107,6 +108,7 @@ public class GetFileContentOperation extends LocalPathIndifferentOperation {
   private final CvsRootProvider myRoot;
   private CvsRevisionNumber myCvsRevisionNumber;
   private final RevisionOrDate myRevisionOrDate;
+  private KeywordSubstitution myKeywordSubstitution;
 
   public static GetFileContentOperation createForFile(VirtualFile file, RevisionOrDate revisionOrDate)
     throws CannotFindCvsRootException {
@@ -136,6 +138,10 @@ public class GetFileContentOperation extends LocalPathIndifferentOperation {
     myCvsRevisionNumber = myRevisionOrDate.getCvsRevisionNumber();
   }
 
+  public void setKeywordSubstitution(@Nullable KeywordSubstitution keywordSubstitution) {
+    myKeywordSubstitution = keywordSubstitution;
+  }
+
   private static String getPathInRepository(VirtualFile file) {
     return CvsUtil.getModuleName(file);
   }
@@ -158,6 +164,7 @@ public class GetFileContentOperation extends LocalPathIndifferentOperation {
     command.setRecursive(false);
     command.addModule(myModuleName);
     command.setPrintToOutput(true);
+    command.setKeywordSubstitution(myKeywordSubstitution);
 
     myRevisionOrDate.setForCommand(command);
 
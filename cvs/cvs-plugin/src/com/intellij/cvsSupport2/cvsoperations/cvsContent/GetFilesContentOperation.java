@@ -0,0 +1,108 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.cvsoperations.cvsContent;
+
+import com.intellij.cvsSupport2.connections.CvsEnvironment;
+import com.intellij.cvsSupport2.connections.CvsRootProvider;
+import com.intellij.cvsSupport2.cvsoperations.common.CvsExecutionEnvironment;
+import com.intellij.cvsSupport2.cvsoperations.common.LocalPathIndifferentOperation;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.netbeans.lib.cvsclient.command.Command;
+import org.netbeans.lib.cvsclient.command.checkout.CheckoutCommand;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Fetches the content of several files at the same revision with a single {@code checkout -p} request. The server announces
+ * each file with a "Checking out" line on stderr before printing its content, which is used to split the output.
+ */
+public class GetFilesContentOperation extends LocalPathIndifferentOperation {
+  @NonNls private static final String CHECKING_OUT_PREFIX = "Checking out ";
+
+  private final CvsRootProvider myRoot;
+  private final String myRevision;
+  private final Collection<String> myPaths;
+  private final Map<String, GetFileContentOperation.FileContentReader> myReaders = new LinkedHashMap<>();
+  private GetFileContentOperation.FileContentReader myCurrentReader;
+
+  public GetFilesContentOperation(@NotNull CvsEnvironment environment, @NotNull String revision, @NotNull Collection<String> paths) {
+    super(environment);
+    myRoot = CvsRootProvider.createOn(null, environment);
+    myRevision = revision;
+    myPaths = paths;
+  }
+
+  @Override
+  protected Collection<CvsRootProvider> getAllCvsRoots() {
+    return Collections.singleton(myRoot);
+  }
+
+  public CvsRootProvider getRoot() {
+    return myRoot;
+  }
+
+  @Override
+  protected Command createCommand(CvsRootProvider root, CvsExecutionEnvironment cvsExecutionEnvironment) {
+    myRoot.changeAdminRootTo(new File("."));
+    myRoot.changeLocalRootTo(new File("."));
+    final CheckoutCommand command = new CheckoutCommand(null);
+    command.setRecursive(false);
+    command.setPrintToOutput(true);
+    command.setUpdateByRevisionOrTag(myRevision);
+    for (String path : myPaths) {
+      command.addModule(path.replace(File.separatorChar, '/'));
+    }
+    return command;
+  }
+
+  /**
+   * @return content by repository path, for every requested file the server returned
+   */
+  @NotNull
+  public synchronized Map<String, byte[]> getContents() {
+    final Map<String, byte[]> result = new HashMap<>();
+    for (Map.Entry<String, GetFileContentOperation.FileContentReader> entry : myReaders.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        result.put(entry.getKey(), entry.getValue().getReadContent());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized void messageSent(String message, final byte[] byteMessage, boolean error, boolean tagged) {
+    super.messageSent(message, byteMessage, error, tagged);
+    if (error) {
+      if (message.startsWith(CHECKING_OUT_PREFIX)) {
+        myCurrentReader = new GetFileContentOperation.FileContentReader();
+        myReaders.put(message.substring(CHECKING_OUT_PREFIX.length()).trim(), myCurrentReader);
+      }
+    }
+    else if (myCurrentReader != null) {
+      myCurrentReader.messageSent(byteMessage, tagged);
+    }
+  }
+
+  @Override
+  public synchronized void binaryMessageSent(final byte[] bytes) {
+    super.binaryMessageSent(bytes);
+    if (myCurrentReader != null) {
+      myCurrentReader.binaryMessageSent(bytes);
+    }
+  }
+
+  @Override
+  protected String getOperationName() {
+    return "checkout";
+  }
+
+  @Override public boolean runInReadThread() {
+    return false;
+  }
+
+  @Override
+  protected boolean runInExclusiveLock() {
+    return false;
+  }
+}
@@ -119,7 +119,11 @@ public class GetModuleContentOperation extends CompositeOperation implements Dir
           options.setDoNoChanges(true);
         }
       };
-    operation.addFinishAction(() -> myStreamingListener.consume(myStreamingDirectoryContentListener.getDirectoryContent()));
+    operation.addFinishAction(() -> {
+      if (myStreamingListener != null) {
+        myStreamingListener.consume(myStreamingDirectoryContentListener.getDirectoryContent());
+      }
+    });
     return operation;
   }
 
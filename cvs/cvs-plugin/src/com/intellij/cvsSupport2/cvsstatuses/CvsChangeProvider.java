@@ -6,11 +6,14 @@ import static com.intellij.util.containers.ContainerUtil.map;
 import com.intellij.CvsBundle;
 import com.intellij.cvsSupport2.CvsUtil;
 import com.intellij.cvsSupport2.CvsVcs2;
+import com.intellij.cvsSupport2.application.CvsBaseRevisionStore;
 import com.intellij.cvsSupport2.application.CvsEntriesManager;
 import com.intellij.cvsSupport2.application.CvsInfo;
 import com.intellij.cvsSupport2.checkinProject.DirectoryContent;
 import com.intellij.cvsSupport2.checkinProject.VirtualFileEntry;
+import com.intellij.cvsSupport2.connections.CvsConnectionSettings;
 import com.intellij.cvsSupport2.cvsoperations.cvsContent.GetFileContentOperation;
+import com.intellij.cvsSupport2.cvsoperations.cvsContent.GetFilesContentOperation;
 import com.intellij.cvsSupport2.cvsoperations.dateOrRevision.SimpleRevision;
 import com.intellij.cvsSupport2.errorHandling.CannotFindCvsRootException;
 import com.intellij.cvsSupport2.history.CvsRevisionNumber;
@@ -20,7 +23,10 @@ import com.intellij.history.LocalHistory;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FileStatus;
 import com.intellij.openapi.vcs.ProjectLevelVcsManager;
@@ -42,13 +48,22 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.vcsUtil.VcsUtil;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -56,6 +71,8 @@ import org.netbeans.lib.cvsclient.admin.Entry;
 
 public class CvsChangeProvider implements ChangeProvider {
   private static final Logger LOG = Logger.getInstance(CvsChangeProvider.class);
+  private static final int MAX_FILES_PER_REQUEST = 200;
+  private static final int SCAN_BATCH_SIZE = 64;
 
   private final CvsVcs2 myVcs;
   private final CvsEntriesManager myEntriesManager;
@@ -77,14 +94,23 @@ public class CvsChangeProvider implements ChangeProvider {
     }
     final HashSet<VirtualFile> cvsRoots = ContainerUtil.newHashSet(myVcsManager.getRootsUnderVcs(myVcs));
     showBranchImOn(builder, dirtyScope, cvsRoots);
+    final List<ModifiedFile> modifiedFiles = new ArrayList<>();
+    final boolean parallel = Registry.is("cvs.parallel.status.scan");
+    final long scanStart = System.currentTimeMillis();
 
     for (FilePath path : dirtyScope.getRecursivelyDirtyDirectories()) {
       final VirtualFile dir = path.getVirtualFile();
       if (dir != null) {
-        processEntriesIn(dir, dirtyScope, builder, true, cvsRoots, progress);
+        if (parallel) {
+          processEntriesInParallel(dir, dirtyScope, builder, cvsRoots, modifiedFiles, progress);
+        }
+        else {
+          myEntriesManager.preloadEntries(dir);
+          processEntriesIn(dir, dirtyScope, builder, true, cvsRoots, modifiedFiles, progress);
+        }
       }
       else {
-        processFile(path, builder, progress);
+        processFile(path, builder, modifiedFiles, progress);
       }
     }
 
@@ -92,18 +118,29 @@ public class CvsChangeProvider implements ChangeProvider {
       if (path.isDirectory()) {
         final VirtualFile dir = path.getVirtualFile();
         if (dir != null) {
-          processEntriesIn(dir, dirtyScope, builder, false, cvsRoots, progress);
+          processEntriesIn(dir, dirtyScope, builder, false, cvsRoots, modifiedFiles, progress);
         }
         else {
-          processFile(path, builder, progress);
+          processFile(path, builder, modifiedFiles, progress);
         }
       }
       else {
-        processFile(path, builder, progress);
+        processFile(path, builder, modifiedFiles, progress);
       }
     }
+
+    final long prefetchStart = System.currentTimeMillis();
+    prefetchBaseContent(modifiedFiles, progress);
+    final long compareStart = System.currentTimeMillis();
+    for (ModifiedFile modifiedFile : modifiedFiles) {
+      progress.checkCanceled();
+      processModifiedFile(modifiedFile, builder);
+    }
+    CvsBaseRevisionStore.getInstance().flush();
     if (LOG.isDebugEnabled()) {
-      LOG.debug("Done processing changes");
+      LOG.debug("Done processing changes: " + (parallel ? "parallel" : "sequential") + " scan " + (prefetchStart - scanStart) +
+                " ms, base content prefetch " + (compareStart - prefetchStart) + " ms, comparison of " + modifiedFiles.size() +
+                " modified files " + (System.currentTimeMillis() - compareStart) + " ms");
     }
   }
 
@@ -113,15 +150,155 @@ public class CvsChangeProvider implements ChangeProvider {
   }
 
   private void processEntriesIn(@NotNull VirtualFile dir, VcsDirtyScope scope, ChangelistBuilder builder, boolean recursively,
-                                Collection<VirtualFile> cvsRoots, final ProgressIndicator progress) throws VcsException {
+                                Collection<VirtualFile> cvsRoots, List<ModifiedFile> modifiedFiles,
+                                final ProgressIndicator progress) throws VcsException {
+    final ScannedDirectory scanned = scanDirectory(dir, scope, progress);
+    if (scanned == null) {
+      return;
+    }
+    reportDirectory(scanned, scope, builder, cvsRoots, modifiedFiles, progress);
+
+    if (recursively) {
+      for (VirtualFile file : getSubdirectoriesToScan(dir)) {
+        progress.checkCanceled();
+        processEntriesIn(file, scope, builder, true, cvsRoots, modifiedFiles, progress);
+      }
+    }
+  }
+
+  /**
+   * Scans the directory tree under {@code root} on the fork-join pool while the calling thread reports the scanned directories to
+   * the builder in batches.
+   */
+  private void processEntriesInParallel(@NotNull VirtualFile root, VcsDirtyScope scope, ChangelistBuilder builder,
+                                        Collection<VirtualFile> cvsRoots, List<ModifiedFile> modifiedFiles,
+                                        final ProgressIndicator progress) throws VcsException {
+    final long start = System.currentTimeMillis();
+    final BlockingQueue<ScannedDirectory> scannedDirectories = new LinkedBlockingQueue<>();
+    final ForkJoinTask<Void> task = ForkJoinPool.commonPool().submit(new ScanTask(root, scope, progress, scannedDirectories));
+    final List<ScannedDirectory> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+    int directories = 0;
+    long reportNanos = 0;
+    try {
+      while (true) {
+        progress.checkCanceled();
+        final boolean done = task.isDone();
+        final ScannedDirectory first = done ? scannedDirectories.poll() : scannedDirectories.poll(10, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          if (done) break;
+          continue;
+        }
+        batch.add(first);
+        scannedDirectories.drainTo(batch, SCAN_BATCH_SIZE - 1);
+        final long reportStart = System.nanoTime();
+        for (ScannedDirectory scanned : batch) {
+          reportDirectory(scanned, scope, builder, cvsRoots, modifiedFiles, progress);
+        }
+        reportNanos += System.nanoTime() - reportStart;
+        directories += batch.size();
+        batch.clear();
+      }
+      // rethrows a failure of the scan
+      task.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException(e);
+    }
+    finally {
+      task.cancel(false);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Scanned " + directories + " directories under " + root.getPath() + " in " + (System.currentTimeMillis() - start) +
+                " ms using " + ForkJoinPool.commonPool().getParallelism() + " threads, " + reportNanos / 1000000 + " ms reporting");
+    }
+  }
+
+  private final class ScanTask extends RecursiveAction {
+    private final VirtualFile myDirectory;
+    private final VcsDirtyScope myScope;
+    private final ProgressIndicator myProgress;
+    private final BlockingQueue<ScannedDirectory> myResults;
+
+    ScanTask(VirtualFile directory, VcsDirtyScope scope, ProgressIndicator progress, BlockingQueue<ScannedDirectory> results) {
+      myDirectory = directory;
+      myScope = scope;
+      myProgress = progress;
+      myResults = results;
+    }
+
+    @Override
+    protected void compute() {
+      if (myProgress.isCanceled()) return;
+      final ScannedDirectory scanned = scanDirectory(myDirectory, myScope, myProgress);
+      if (scanned == null) return;
+      myResults.add(scanned);
+      final List<ScanTask> subtasks = new ArrayList<>();
+      for (VirtualFile child : getSubdirectoriesToScan(myDirectory)) {
+        subtasks.add(new ScanTask(child, myScope, myProgress, myResults));
+      }
+      invokeAll(subtasks);
+    }
+  }
+
+  private static final class ScannedDirectory {
+    private final VirtualFile myDirectory;
+    private final FilePath myPath;
+    private final DirectoryContent myContent;
+    private final FileStatus[] myStatuses;
+
+    ScannedDirectory(VirtualFile directory, FilePath path, DirectoryContent content, FileStatus[] statuses) {
+      myDirectory = directory;
+      myPath = path;
+      myContent = content;
+      myStatuses = statuses;
+    }
+  }
+
+  /**
+   * Reads the entries of the directory and computes the status of every file in them. Does not touch the builder, so it may run
+   * on any thread.
+   */
+  @Nullable
+  private static ScannedDirectory scanDirectory(@NotNull VirtualFile dir, VcsDirtyScope scope, final ProgressIndicator progress) {
     final FilePath path = VcsContextFactory.SERVICE.getInstance().createFilePathOn(dir);
     if (!scope.belongsTo(path)) {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Skipping out of scope path " + path);
       }
-      return;
+      return null;
     }
     final DirectoryContent dirContent = getDirectoryContent(dir, progress);
+    final FileStatus[] statuses = new FileStatus[dirContent.getFiles().size()];
+    int i = 0;
+    for (VirtualFileEntry fileEntry : dirContent.getFiles()) {
+      statuses[i++] = CvsStatusProvider.getStatus(fileEntry.getVirtualFile(), fileEntry.getEntry());
+    }
+    return new ScannedDirectory(dir, path, dirContent, statuses);
+  }
+
+  private List<VirtualFile> getSubdirectoriesToScan(VirtualFile dir) {
+    final List<VirtualFile> result = new ArrayList<>();
+    for (VirtualFile file : CvsVfsUtil.getChildrenOf(dir)) {
+      if (file.isDirectory()) {
+        if (!myVcsManager.isIgnored(file)) {
+          result.add(file);
+        }
+        else {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Skipping ignored path " + file.getPath());
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private void reportDirectory(ScannedDirectory scanned, VcsDirtyScope scope, ChangelistBuilder builder, Collection<VirtualFile> cvsRoots,
+                               List<ModifiedFile> modifiedFiles, final ProgressIndicator progress) throws VcsException {
+    final VirtualFile dir = scanned.myDirectory;
+    final FilePath path = scanned.myPath;
+    final DirectoryContent dirContent = scanned.myContent;
 
     for (VirtualFile file : dirContent.getUnknownFiles()) {
       builder.processUnversionedFile(file);
@@ -153,24 +330,9 @@ public class CvsChangeProvider implements ChangeProvider {
       // directory is going to be deleted
       builder.processChange(new Change(CurrentContentRevision.create(path), CurrentContentRevision.create(path), FileStatus.DELETED), CvsVcs2.getKey());
     }
+    int i = 0;
     for (VirtualFileEntry fileEntry : dirContent.getFiles()) {
-      processFile(dir, fileEntry.getVirtualFile(), fileEntry.getEntry(), builder, progress);
-    }
-
-    if (recursively) {
-      for (VirtualFile file : CvsVfsUtil.getChildrenOf(dir)) {
-        progress.checkCanceled();
-        if (file.isDirectory()) {
-          if (!myVcsManager.isIgnored(file)) {
-            processEntriesIn(file, scope, builder, true, cvsRoots, progress);
-          }
-          else {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Skipping ignored path " + file.getPath());
-            }
-          }
-        }
-      }
+      processFile(dir, fileEntry.getVirtualFile(), fileEntry.getEntry(), scanned.myStatuses[i++], builder, modifiedFiles, progress);
     }
   }
 
@@ -183,24 +345,25 @@ public class CvsChangeProvider implements ChangeProvider {
     return false;
   }
 
-  private void processFile(final FilePath filePath, final ChangelistBuilder builder, final ProgressIndicator progress) throws VcsException {
+  private void processFile(final FilePath filePath, final ChangelistBuilder builder, List<ModifiedFile> modifiedFiles,
+                           final ProgressIndicator progress) throws VcsException {
     final VirtualFile dir = filePath.getVirtualFileParent();
     if (dir == null) return;
 
     final Entry entry = myEntriesManager.getEntryFor(dir, filePath.getName());
     final FileStatus status = CvsStatusProvider.getStatus(filePath.getVirtualFile(), entry);
     final VcsRevisionNumber number = entry != null ? createRevisionNumber(entry.getRevision(), status) : VcsRevisionNumber.NULL;
-    processStatus(filePath, dir.findChild(filePath.getName()), status, number, builder);
+    processStatus(filePath, dir.findChild(filePath.getName()), status, number, builder, modifiedFiles);
     progress.checkCanceled();
     checkSwitchedFile(filePath, builder, dir, entry);
   }
 
-  private void processFile(final VirtualFile dir, @Nullable VirtualFile file, Entry entry, final ChangelistBuilder builder,
+  private void processFile(final VirtualFile dir, @Nullable VirtualFile file, Entry entry, FileStatus status,
+                           final ChangelistBuilder builder, List<ModifiedFile> modifiedFiles,
                            final ProgressIndicator progress) throws VcsException {
     final FilePath filePath = VcsUtil.getFilePath(dir, entry.getFileName());
-    final FileStatus status = CvsStatusProvider.getStatus(file, entry);
     final VcsRevisionNumber number = createRevisionNumber(entry.getRevision(), status);
-    processStatus(filePath, file, status, number, builder);
+    processStatus(filePath, file, status, number, builder, modifiedFiles);
     progress.checkCanceled();
     checkSwitchedFile(filePath, builder, dir, entry);
   }
@@ -336,7 +499,8 @@ public class CvsChangeProvider implements ChangeProvider {
                              final VirtualFile file,
                              final FileStatus status,
                              final VcsRevisionNumber number,
-                             final ChangelistBuilder builder) throws VcsException {
+                             final ChangelistBuilder builder,
+                             final List<ModifiedFile> modifiedFiles) throws VcsException {
     if (LOG.isDebugEnabled()) {
       LOG.debug("processStatus: filePath=" + filePath + " status=" + status);
     }
@@ -348,21 +512,8 @@ public class CvsChangeProvider implements ChangeProvider {
       return;
     }
     if (status == FileStatus.MODIFIED || status == FileStatus.MERGE || status == FileStatus.MERGED_WITH_CONFLICTS) {
-      final CvsUpToDateRevision beforeRevision = createCvsRevision(filePath, number);
-      final ContentRevision afterRevision = CurrentContentRevision.create(filePath);
-      if (beforeRevision instanceof BinaryContentRevision) {
-        final byte[] binaryContent = ((BinaryContentRevision)beforeRevision).getBinaryContent();
-        if (binaryContent != null && Arrays.equals(binaryContent, ((BinaryContentRevision)afterRevision).getBinaryContent())) {
-          return;
-        }
-      }
-      else {
-        final String content = beforeRevision.getContent();
-        if (content != null && content.equals(afterRevision.getContent())) {
-          return;
-        }
-      }
-      builder.processChange(new Change(beforeRevision, afterRevision, status), CvsVcs2.getKey());
+      // compared with the base content once it has been prefetched for all modified files
+      modifiedFiles.add(new ModifiedFile(createCvsRevision(filePath, number), status));
     }
     else if (status == FileStatus.ADDED) {
       builder.processChange(new Change(null, CurrentContentRevision.create(filePath), status), CvsVcs2.getKey());
@@ -382,6 +533,83 @@ public class CvsChangeProvider implements ChangeProvider {
     }
   }
 
+  private static void processModifiedFile(ModifiedFile modifiedFile, ChangelistBuilder builder) throws VcsException {
+    final CvsUpToDateRevision beforeRevision = modifiedFile.myBeforeRevision;
+    final ContentRevision afterRevision = CurrentContentRevision.create(beforeRevision.getFile());
+    if (beforeRevision instanceof BinaryContentRevision) {
+      final byte[] binaryContent = ((BinaryContentRevision)beforeRevision).getBinaryContent();
+      if (binaryContent != null && Arrays.equals(binaryContent, ((BinaryContentRevision)afterRevision).getBinaryContent())) {
+        return;
+      }
+    }
+    else {
+      final String content = beforeRevision.getContent();
+      if (content != null && content.equals(afterRevision.getContent())) {
+        return;
+      }
+    }
+    builder.processChange(new Change(beforeRevision, afterRevision, modifiedFile.myStatus), CvsVcs2.getKey());
+  }
+
+  /**
+   * Loads the base content of all modified files that is neither in the local history nor in the {@link CvsBaseRevisionStore}.
+   * Files are grouped by cvs root and revision and each group is fetched with one multi-file checkout.
+   */
+  private void prefetchBaseContent(List<ModifiedFile> modifiedFiles, ProgressIndicator progress) {
+    final Map<Pair<CvsConnectionSettings, String>, Map<String, CvsUpToDateRevision>> groups = new LinkedHashMap<>();
+    for (ModifiedFile modifiedFile : modifiedFiles) {
+      progress.checkCanceled();
+      final CvsUpToDateRevision revision = modifiedFile.myBeforeRevision;
+      final VirtualFile file = revision.getFile().getVirtualFile();
+      if (file == null) continue;
+      final VirtualFile parent = file.getParent();
+      final Entry entry = myEntriesManager.getEntryFor(parent, file.getName());
+      if (entry == null || entry.getRevision() == null) continue;
+      final byte[] content = getLastUpToDateContentFor(file);
+      if (content != null) {
+        revision.myContent = content;
+        continue;
+      }
+      final CvsConnectionSettings settings = myEntriesManager.getCvsConnectionSettingsFor(parent);
+      final String repository = myEntriesManager.getRepositoryFor(parent);
+      if (settings.isOffline() || repository == null) continue;
+      groups.computeIfAbsent(Pair.create(settings, entry.getRevision()), key -> new LinkedHashMap<>())
+        .put(repository + "/" + file.getName(), revision);
+    }
+
+    for (Map.Entry<Pair<CvsConnectionSettings, String>, Map<String, CvsUpToDateRevision>> group : groups.entrySet()) {
+      final String revisionString = group.getKey().second;
+      final List<String> paths = new ArrayList<>(group.getValue().keySet());
+      for (int from = 0; from < paths.size(); from += MAX_FILES_PER_REQUEST) {
+        progress.checkCanceled();
+        final List<String> chunk = paths.subList(from, Math.min(paths.size(), from + MAX_FILES_PER_REQUEST));
+        final GetFilesContentOperation operation = new GetFilesContentOperation(group.getKey().first, revisionString, chunk);
+        CvsVcs2.executeQuietOperation(CvsBundle.message("operation.name.get.file.content"), operation, myVcs.getProject());
+        final Map<String, byte[]> contents = operation.getContents();
+        for (String path : chunk) {
+          final byte[] content = contents.get(path);
+          if (content == null) continue;
+          final CvsUpToDateRevision revision = group.getValue().get(path);
+          revision.myContent = content;
+          CvsUtil.storeContentForRevision(revision.getFile().getVirtualFile(), revisionString, content);
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Prefetched " + contents.size() + " of " + chunk.size() + " files at revision " + revisionString);
+        }
+      }
+    }
+  }
+
+  private static final class ModifiedFile {
+    private final CvsUpToDateRevision myBeforeRevision;
+    private final FileStatus myStatus;
+
+    ModifiedFile(CvsUpToDateRevision beforeRevision, FileStatus status) {
+      myBeforeRevision = beforeRevision;
+      myStatus = status;
+    }
+  }
+
   public byte @Nullable [] getLastUpToDateContentFor(@NotNull final VirtualFile f) {
     final VirtualFile parent = f.getParent();
     final String name = f.getName();
@@ -560,8 +788,9 @@ public class CvsChangeProvider implements ChangeProvider {
         result = operation.tryGetFileBytes();
 
         if (result != null && revision != null) {
-          // cache in CVS area to reduce remote requests number (old revisions are deleted)
+          // keep in the base revision store to reduce remote requests number
           CvsUtil.storeContentForRevision(virtualFile, revision, result);
+          CvsBaseRevisionStore.getInstance().flush();
         }
       }
       return result;
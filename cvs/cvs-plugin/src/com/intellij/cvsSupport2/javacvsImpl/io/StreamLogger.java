@@ -17,9 +17,12 @@ package com.intellij.cvsSupport2.javacvsImpl.io;
 
 import com.intellij.cvsSupport2.config.CvsApplicationLevelConfiguration;
 import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
-import org.netbeans.lib.cvsclient.io.IStreamLogger;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+import org.netbeans.lib.cvsclient.io.CompressionStatistics;
+import org.netbeans.lib.cvsclient.io.IStreamLogger;
 
 import java.io.*;
 
@@ -28,6 +31,7 @@ import java.io.*;
  */
 @SuppressWarnings({"IOResourceOpenedButNotSafelyClosed"})
 public class StreamLogger implements IStreamLogger {
+  private static final Logger LOG = Logger.getInstance(StreamLogger.class);
 
   private int myCloseCount = 0;
 
@@ -37,6 +41,7 @@ public class StreamLogger implements IStreamLogger {
   };
 
   private OutputStream myLogOutput;
+  private volatile CompressionStatistics myCompressionStatistics;
 
   private static final long MAX_OUTPUT_SIZE = 1000000;
   @NonNls private static final String OUTPUT_FILE_NAME = "cvs.log";
@@ -145,4 +150,20 @@ public class StreamLogger implements IStreamLogger {
     }
     return myLogOutput;
   }
+
+  @Override
+  public void compressionFinished(CompressionStatistics statistics) {
+    myCompressionStatistics = statistics;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Compression: " + statistics);
+    }
+  }
+
+  /**
+   * @return the compression counters of the last compressed connection of the command, or null if there was none
+   */
+  @Nullable
+  public CompressionStatistics getCompressionStatistics() {
+    return myCompressionStatistics;
+  }
 }
@@ -21,6 +21,7 @@ import org.netbeans.lib.cvsclient.IRequestProcessor;
 import org.netbeans.lib.cvsclient.admin.Entry;
 import org.netbeans.lib.cvsclient.command.AbstractCommand;
 import org.netbeans.lib.cvsclient.command.CommandException;
+import org.netbeans.lib.cvsclient.command.log.IRevisionConsumer;
 import org.netbeans.lib.cvsclient.command.log.LogMessageParser;
 import org.netbeans.lib.cvsclient.connection.AuthenticationException;
 import org.netbeans.lib.cvsclient.event.ICvsListener;
@@ -45,6 +46,7 @@ public class RlogCommand extends AbstractCommand {
   private String myBranchName = null;
   private boolean myLogDefaultBranch = false;
   private String[] myRevisions = null;
+  private IRevisionConsumer myRevisionConsumer = null;
 
   // Implemented ============================================================
 
@@ -71,7 +73,7 @@ public class RlogCommand extends AbstractCommand {
     requests.addArgumentRequest(myLogDefaultBranch, "-b");
     requests.addArgumentRequest(myModuleName);
 
-    final ICvsListener parser = new LogMessageParser(eventSender, clientEnvironment.getCvsFileSystem());
+    final ICvsListener parser = new LogMessageParser(eventSender, clientEnvironment.getCvsFileSystem(), myRevisionConsumer);
     parser.registerListeners(listenerRegistry);
     try {
       return requestProcessor.processRequests(requests, new DummyRequestsProgressHandler());
@@ -193,4 +195,11 @@ public class RlogCommand extends AbstractCommand {
   public void setRevisions(final String... revisions) {
     myRevisions = revisions;
   }
+
+  /**
+   * Streams the parsed revisions to the given consumer instead of collecting them per file.
+   */
+  public void setRevisionConsumer(@Nullable IRevisionConsumer revisionConsumer) {
+    myRevisionConsumer = revisionConsumer;
+  }
 }
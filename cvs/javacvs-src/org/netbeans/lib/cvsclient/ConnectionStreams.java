@@ -15,14 +15,17 @@ package org.netbeans.lib.cvsclient;
 import org.netbeans.lib.cvsclient.connection.IConnection;
 import org.netbeans.lib.cvsclient.file.IReaderFactory;
 import org.netbeans.lib.cvsclient.file.IWriterFactory;
+import org.netbeans.lib.cvsclient.io.BufferedLineInputStream;
+import org.netbeans.lib.cvsclient.io.CompressionStatistics;
 import org.netbeans.lib.cvsclient.io.IStreamLogger;
+import org.netbeans.lib.cvsclient.io.MeasuredDeflaterOutputStream;
+import org.netbeans.lib.cvsclient.io.MeasuredInflaterInputStream;
 import org.netbeans.lib.cvsclient.util.BugLog;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.Inflater;
 
 /**
  * @author  Thomas Singer
@@ -39,11 +42,16 @@ public final class ConnectionStreams
 	private OutputStream loggedOutputStream;
 	private Reader loggedReader;
 	private Writer loggedWriter;
-	private InputStream inputStream;
+	private BufferedLineInputStream inputStream;
 	private OutputStream outputStream;
-	private DeflaterOutputStream deflaterOutputStream;
+	private MeasuredDeflaterOutputStream deflaterOutputStream;
+	private Deflater deflater;
+	private Inflater inflater;
+	private CompressionStatistics compressionStatistics;
 	private final String myCharset;
 
+	private static final int COMPRESSION_BUFFER_SIZE = 16384;
+
   // Setup ==================================================================
 
 	public ConnectionStreams(IConnection connection, IStreamLogger streamLogger, String charset) {
@@ -110,6 +118,11 @@ public final class ConnectionStreams
 		return inputStream;
 	}
 
+	@Override
+        public BufferedLineInputStream getLineInputStream() {
+		return inputStream;
+	}
+
 	@Override
         public OutputStream getOutputStream() {
 		return outputStream;
@@ -124,6 +137,23 @@ public final class ConnectionStreams
     loggedOutputStream.flush();
   }
 
+	@Override
+	public void setCompressionSuspended(boolean suspended) {
+		if (deflaterOutputStream != null) {
+			deflaterOutputStream.setCompressionSuspended(suspended);
+		}
+	}
+
+	/**
+	 * @return the compression counters of the connection so far, or null if it is not compressed
+	 */
+	public CompressionStatistics getCompressionStatistics() {
+		if (compressionStatistics != null) {
+			compressionStatistics.update(deflater, inflater);
+		}
+		return compressionStatistics;
+	}
+
 	@Override
         public void close() {
 		try {
@@ -152,6 +182,12 @@ public final class ConnectionStreams
 			catch (IOException ex) {
 				BugLog.getInstance().showException(ex);
 			}
+			if (compressionStatistics != null) {
+				streamLogger.compressionFinished(getCompressionStatistics());
+				deflater.end();
+				inflater.end();
+				compressionStatistics = null;
+			}
 		}
 	}
 
@@ -159,22 +195,27 @@ public final class ConnectionStreams
 
 	// Actions ================================================================
 
-	public void setGzipped() throws IOException {
+	public void setGzipped(int compressionLevel) throws IOException {
 		loggedWriter.flush();
 		loggedOutputStream.flush();
 
-		deflaterOutputStream = new DeflaterOutputStream(connection.getOutputStream(), new Deflater(6));
+		compressionStatistics = new CompressionStatistics(compressionLevel);
+		deflater = new Deflater(compressionLevel);
+		inflater = new Inflater();
+		deflaterOutputStream = new MeasuredDeflaterOutputStream(connection.getOutputStream(), deflater, compressionLevel,
+		                                                        COMPRESSION_BUFFER_SIZE, compressionStatistics);
 		setOutputStream(deflaterOutputStream);
 
-		setInputStream(new InflaterInputStream(connection.getInputStream()));
+		// chain through the current buffer, it may already hold compressed data
+		setInputStream(new MeasuredInflaterInputStream(inputStream, inflater, COMPRESSION_BUFFER_SIZE, compressionStatistics));
 	}
 
 	// Utils ==================================================================
 
 	private void setInputStream(InputStream inputStream) {
-		this.inputStream = inputStream;
+		this.inputStream = new BufferedLineInputStream(inputStream, streamLogger);
 
-		this.loggedInputStream = streamLogger.createLoggingInputStream(inputStream);
+		this.loggedInputStream = streamLogger.createLoggingInputStream(this.inputStream);
 		this.loggedReader = createReader(this.loggedInputStream);
 	}
 
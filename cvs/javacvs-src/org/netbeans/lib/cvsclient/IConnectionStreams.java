@@ -2,6 +2,7 @@ package org.netbeans.lib.cvsclient;
 
 import org.netbeans.lib.cvsclient.file.IReaderFactory;
 import org.netbeans.lib.cvsclient.file.IWriterFactory;
+import org.netbeans.lib.cvsclient.io.BufferedLineInputStream;
 
 import java.io.*;
 
@@ -19,6 +20,11 @@ public interface IConnectionStreams {
 
 	InputStream getInputStream();
 
+	/**
+	 * The buffered stream behind {@link #getInputStream()}, for reading response lines.
+	 */
+	BufferedLineInputStream getLineInputStream();
+
 	OutputStream getOutputStream();
 
   IReaderFactory getReaderFactory();
@@ -27,5 +33,10 @@ public interface IConnectionStreams {
 
 	void flushForReading() throws IOException;
 
+	/**
+	 * Sends the data written from now on without compressing it, if the connection is compressed at all.
+	 */
+	void setCompressionSuspended(boolean suspended);
+
 	void close();
 }
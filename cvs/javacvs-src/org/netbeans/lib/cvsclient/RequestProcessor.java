@@ -34,8 +34,16 @@ import org.netbeans.lib.cvsclient.util.BugLog;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 /**
  * @author Thomas Singer
@@ -54,7 +62,16 @@ public final class RequestProcessor implements IRequestProcessor {
   @NonNls private static final String CASE_REQUEST = "Case";
   @NonNls private static final String CVS_PASS_ENV_VARS_PROPERTY = "cvs.pass.env.vars";
   @NonNls private static final String NO = "no";
+  @NonNls private static final Set<String> COMPRESSED_FILE_EXTENSIONS = new HashSet<>(Arrays.asList(
+    "zip", "jar", "war", "ear", "gz", "tgz", "bz2", "xz", "7z", "rar", "png", "jpg", "jpeg", "gif", "mp3", "mp4", "pdf"));
+  private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  private static final long FAST_CONNECTION_ROUND_TRIP_MILLIS = 10;
+  private static final long SLOW_CONNECTION_ROUND_TRIP_MILLIS = 100;
   private final long myTimeout;
+  private boolean myFullDuplex;
+
+  private static final ExecutorService ourRequestSenders =
+    Executors.newCachedThreadPool(ConcurrencyUtil.newNamedThreadFactory("CVS request sender", true, Thread.NORM_PRIORITY));
 
   // Setup ==================================================================
   public RequestProcessor(IClientEnvironment clientEnvironment,
@@ -84,6 +101,15 @@ public final class RequestProcessor implements IRequestProcessor {
     this.commandStopper = commandStopper;
   }
 
+  /**
+   * In full-duplex mode the requests of a command are sent on a separate thread while the calling thread handles the
+   * responses. The server then never waits for the client to finish writing before its replies are read, and an error
+   * it reports while files are still being transmitted stops the transmission.
+   */
+  public void setFullDuplex(boolean fullDuplex) {
+    myFullDuplex = fullDuplex;
+  }
+
   // Implemented ============================================================
 
   @Override
@@ -107,15 +133,18 @@ public final class RequestProcessor implements IRequestProcessor {
       new ConnectionStreams(clientEnvironment.getConnection(), streamLogger, clientEnvironment.getCharset());
     boolean exception = true;
     try {
+      final long start = System.currentTimeMillis();
       updateValidRequests(connectionStreams);
+      final long roundTripMillis = System.currentTimeMillis() - start;
 
       sendRequest(new RootRequest(clientEnvironment.getConnection().getRepository()), connectionStreams);
       sendSetRequests(globalOptions, connectionStreams);
       // Handle gzip-compression
       if (globalOptions.isUseGzip() && isValidRequest(GzipStreamRequest.REQUEST)) {
-        sendRequest(new GzipStreamRequest(), connectionStreams);
+        final int compressionLevel = getCompressionLevel(globalOptions, roundTripMillis);
+        sendRequest(new GzipStreamRequest(compressionLevel), connectionStreams);
 
-        connectionStreams.setGzipped();
+        connectionStreams.setGzipped(compressionLevel);
       }
 
       //TODO: set variables
@@ -143,6 +172,24 @@ public final class RequestProcessor implements IRequestProcessor {
     }
   }
 
+  /**
+   * Compression pays off less the faster the connection is, as then the time spent compressing is not made up for by the
+   * time saved transmitting. The round trip of the valid-requests exchange tells local and remote servers apart.
+   */
+  private static int getCompressionLevel(IGlobalOptions globalOptions, long roundTripMillis) {
+    final int level = globalOptions.getCompressionLevel();
+    if (level != IGlobalOptions.ADAPTIVE_COMPRESSION_LEVEL) {
+      return level;
+    }
+    if (roundTripMillis < FAST_CONNECTION_ROUND_TRIP_MILLIS) {
+      return Deflater.BEST_SPEED;
+    }
+    if (roundTripMillis < SLOW_CONNECTION_ROUND_TRIP_MILLIS) {
+      return 4;
+    }
+    return DEFAULT_COMPRESSION_LEVEL;
+  }
+
   private void sendSetRequests(IGlobalOptions globalOptions, ConnectionStreams connectionStreams)
     throws CommandAbortedException, IOException {
     Map<String, String> envVariables = globalOptions.getEnvVariables();
@@ -164,10 +211,135 @@ public final class RequestProcessor implements IRequestProcessor {
 
     /*final ProcessRequestsHelper helper = (myTimeout == -1) ?
                                          new DirectProcessRequestHelper() : new TimedOutProcessRequestHelper();*/
+    if (myFullDuplex) {
+      return processRequestsFullDuplex(requests, connectionStreams, communicationProgressHandler);
+    }
     final ProcessRequestsHelper helper = new DirectProcessRequestHelper();
     return helper.processRequests(requests, connectionStreams, communicationProgressHandler);
   }
 
+  private boolean processRequestsFullDuplex(final Requests requests,
+                                            final IConnectionStreams connectionStreams,
+                                            final IRequestsProgressHandler communicationProgressHandler)
+    throws CommandException {
+    final RequestSender sender = new RequestSender(requests, connectionStreams, communicationProgressHandler);
+    final Future<?> future = ourRequestSenders.submit(sender);
+    boolean result = false;
+    try {
+      result = handleResponses(connectionStreams, new DefaultResponseHandler());
+    }
+    catch (IOException e) {
+      // a failed sender closes the connection, its failure is the one to report
+      if (!sender.hasFailed()) throw new IOCommandException(e);
+    }
+    catch (CommandException e) {
+      if (!sender.hasFailed()) throw e;
+    }
+    finally {
+      sender.stop();
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        future.cancel(true);
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        BugLog.getInstance().showException(e);
+      }
+    }
+    sender.rethrowFailure();
+    return result;
+  }
+
+  /**
+   * Writes the requests of a command, including the transmitted files, while the responses are read on another thread.
+   * Writing blocks while the server does not keep up with reading, so no more than the stream buffers is held on the
+   * client side.
+   */
+  private final class RequestSender implements Runnable {
+    private final Requests myRequests;
+    private final IConnectionStreams myConnectionStreams;
+    private final IRequestsProgressHandler myProgressHandler;
+    private volatile boolean myStopped;
+    private volatile boolean myDone;
+    private volatile Throwable myFailure;
+
+    private RequestSender(Requests requests, IConnectionStreams connectionStreams, IRequestsProgressHandler progressHandler) {
+      myRequests = requests;
+      myConnectionStreams = connectionStreams;
+      myProgressHandler = progressHandler;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (IRequest request : myRequests.getRequests()) {
+          if (myStopped) return;
+          sendRequest(request, myConnectionStreams);
+
+          final FileDetails fileDetails = request.getFileForTransmission();
+          if (fileDetails != null) {
+            sendFile(fileDetails, myConnectionStreams);
+            // hand the file over to the server now rather than with the next request
+            myConnectionStreams.getLoggedWriter().flush();
+            myConnectionStreams.getLoggedOutputStream().flush();
+          }
+
+          myProgressHandler.requestSent(request);
+        }
+        if (myStopped) return;
+        sendRequest(myRequests.getResponseExpectingRequest(), myConnectionStreams);
+        myConnectionStreams.flushForReading();
+      }
+      catch (IOException | CommandException | RuntimeException e) {
+        if (!myStopped) {
+          myFailure = e;
+          // the server keeps waiting for the rest of the requests, so the reading thread has to be woken up
+          closeConnection();
+        }
+      }
+      finally {
+        myDone = true;
+      }
+    }
+
+    /**
+     * Called once the responses are handled. A sender that is still writing at that point is aborted, as the server has
+     * already given up on the command.
+     */
+    void stop() {
+      myStopped = true;
+      if (!myDone) {
+        closeConnection();
+      }
+    }
+
+    boolean hasFailed() {
+      return myFailure != null;
+    }
+
+    void rethrowFailure() throws CommandException {
+      final Throwable failure = myFailure;
+      if (failure instanceof IOException) throw new IOCommandException((IOException)failure);
+      if (failure instanceof CommandException) throw (CommandException)failure;
+      if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+    }
+
+    /**
+     * Closes the connection rather than the output stream of the command. The streams are owned by the sending thread, and
+     * closing a compressing stream would finish it, which blocks on the socket and uses the deflater of the sender.
+     * A closed connection fails the blocked read or write of either thread.
+     */
+    private void closeConnection() {
+      try {
+        clientEnvironment.getConnection().close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+
   private abstract class ProcessRequestsHelper {
     protected IOException myIOException;
     protected CommandException myCommandException;
@@ -373,10 +545,26 @@ public final class RequestProcessor implements IRequestProcessor {
     final FileObject fileObject = fileDetails.getFileObject();
 
     if (fileDetails.isBinary()) {
-      clientEnvironment.getLocalFileReader().transmitBinaryFile(fileObject, connectionStreams, clientEnvironment.getCvsFileSystem());
+      final boolean compressed = isCompressedFile(fileObject.getName());
+      if (compressed) {
+        connectionStreams.setCompressionSuspended(true);
+      }
+      try {
+        clientEnvironment.getLocalFileReader().transmitBinaryFile(fileObject, connectionStreams, clientEnvironment.getCvsFileSystem());
+      }
+      finally {
+        if (compressed) {
+          connectionStreams.setCompressionSuspended(false);
+        }
+      }
     }
     else {
       clientEnvironment.getLocalFileReader().transmitTextFile(fileObject, connectionStreams, clientEnvironment.getCvsFileSystem());
     }
   }
+
+  private static boolean isCompressedFile(String fileName) {
+    final int dot = fileName.lastIndexOf('.');
+    return dot >= 0 && COMPRESSED_FILE_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+  }
 }
@@ -25,6 +25,7 @@ public final class GlobalOptions
 	private boolean doNoChanges;
 	private boolean checkedOutFilesReadOnly;
 	private boolean useGzip;
+	private int compressionLevel;
 	private boolean noHistoryLogging;
 	private boolean someQuiet;
 	private Map<String, String> myEnvVariables;
@@ -57,6 +58,11 @@ public final class GlobalOptions
 		return useGzip;
 	}
 
+	@Override
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
 	@Override
         public boolean isSomeQuiet() {
 		return someQuiet;
@@ -80,6 +86,10 @@ public final class GlobalOptions
 		this.useGzip = useGzip;
 	}
 
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
 	public void setSomeQuiet(boolean someQuiet) {
 		this.someQuiet = someQuiet;
 	}
@@ -99,6 +109,7 @@ public final class GlobalOptions
 		setDoNoChanges(false);
 		setNoHistoryLogging(false);
 		setUseGzip(true);
+		setCompressionLevel(ADAPTIVE_COMPRESSION_LEVEL);
 		setSomeQuiet(false);
 		setEnvVariables(null);
 	}
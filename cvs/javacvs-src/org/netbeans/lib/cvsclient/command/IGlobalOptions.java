@@ -20,6 +20,8 @@ import java.util.Map;
  */
 public interface IGlobalOptions {
 
+	int ADAPTIVE_COMPRESSION_LEVEL = -1;
+
 	boolean isCheckedOutFilesReadOnly();
 
 	boolean isDoNoChanges();
@@ -28,6 +30,12 @@ public interface IGlobalOptions {
 
 	boolean isUseGzip();
 
+	/**
+	 * @return the gzip compression level for the command, or {@link #ADAPTIVE_COMPRESSION_LEVEL} to choose it by the
+	 * speed of the connection
+	 */
+	int getCompressionLevel();
+
 	boolean isSomeQuiet();
 
 	Map<String, String> getEnvVariables();
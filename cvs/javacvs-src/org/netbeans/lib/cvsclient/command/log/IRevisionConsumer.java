@@ -0,0 +1,23 @@
+/*
+ *                 Sun Public License Notice
+ *
+ * The contents of this file are subject to the Sun Public License
+ * Version 1.0 (the "License"). You may not use this file except in
+ * compliance with the License. A copy of the License is available at
+ * http://www.sun.com/
+ *
+ * The Original Code is NetBeans. The Initial Developer of the Original
+ * Code is Sun Microsystems, Inc. Portions Copyright 1997-2000 Sun
+ * Microsystems, Inc. All Rights Reserved.
+ */
+package org.netbeans.lib.cvsclient.command.log;
+
+/**
+ * Receives the revisions of a log as soon as {@link LogMessageParser} has parsed them.
+ * The passed log information holds the header of the file (rcs file name, symbolic names, ...)
+ * but does not collect the revisions, so the parser keeps at most one revision in memory.
+ */
+public interface IRevisionConsumer {
+
+  void revisionParsed(LogInformation logInformation, Revision revision);
+}
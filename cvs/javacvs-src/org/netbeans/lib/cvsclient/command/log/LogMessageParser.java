@@ -15,6 +15,7 @@ package org.netbeans.lib.cvsclient.command.log;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.text.SyncDateFormat;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 import org.netbeans.lib.cvsclient.JavaCvsSrcBundle;
 import org.netbeans.lib.cvsclient.command.AbstractMessageParser;
 import org.netbeans.lib.cvsclient.command.KeywordSubstitution;
@@ -85,15 +86,25 @@ final public class LogMessageParser extends AbstractMessageParser {
   private boolean processingRevision;
   private List<String> logMessageBuffer;
   private final Pattern myRevisionPattern;
+  @Nullable private final IRevisionConsumer myRevisionConsumer;
 
   // Setup ==================================================================
 
   public LogMessageParser(IEventSender eventSender, ICvsFileSystem cvsFileSystem) {
+    this(eventSender, cvsFileSystem, null);
+  }
+
+  /**
+   * @param revisionConsumer if not null, revisions are passed to it one by one instead of being
+   *                         collected in the {@link LogInformation} sent to the file info listeners
+   */
+  public LogMessageParser(IEventSender eventSender, ICvsFileSystem cvsFileSystem, @Nullable IRevisionConsumer revisionConsumer) {
     BugLog.getInstance().assertNotNull(eventSender);
     BugLog.getInstance().assertNotNull(cvsFileSystem);
 
     this.cvsFileSystem = cvsFileSystem;
     this.eventSender = eventSender;
+    myRevisionConsumer = revisionConsumer;
 
     myRevisionPattern = Pattern.compile("revision \\d+(\\.\\d+){1,3}.*");
   }
@@ -107,7 +118,7 @@ final public class LogMessageParser extends AbstractMessageParser {
     }
     if (processingRevision) {
       revision.setMessage(getMessageFromBuffer());
-      logInfo.addRevision(revision);
+      addRevision(revision);
       revision = null;
       processingRevision = false;
 
@@ -304,6 +315,15 @@ final public class LogMessageParser extends AbstractMessageParser {
       processingRevision = false;
       revision.setMessage(getMessageFromBuffer());
 
+      addRevision(revision);
+    }
+  }
+
+  private void addRevision(Revision revision) {
+    if (myRevisionConsumer != null) {
+      myRevisionConsumer.revisionParsed(logInfo, revision);
+    }
+    else {
       logInfo.addRevision(revision);
     }
   }
@@ -0,0 +1,185 @@
+/*
+ *                 Sun Public License Notice
+ *
+ * The contents of this file are subject to the Sun Public License
+ * Version 1.0 (the "License"). You may not use this file except in
+ * compliance with the License. A copy of the License is available at
+ * http://www.sun.com/
+ *
+ * The Original Code is NetBeans. The Initial Developer of the Original
+ * Code is Sun Microsystems, Inc. Portions Copyright 1997-2000 Sun
+ * Microsystems, Inc. All Rights Reserved.
+ */
+package org.netbeans.lib.cvsclient.io;
+
+import org.netbeans.lib.cvsclient.util.BugLog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Buffers the input stream of a cvs connection. Response lines are located by scanning
+ * the buffer for <code>'\n'</code> and are decoded (or copied) straight out of it; plain
+ * <code>read(byte[], int, int)</code> calls for file contents are served from the same
+ * buffer, so both can be mixed freely on one connection.
+ * <p>
+ * Lines read with {@link #readLine(String)} or {@link #readLineBytes()} are written to the
+ * input log of the stream logger, like the bytes read through its logging input stream.
+ */
+public final class BufferedLineInputStream extends InputStream {
+
+  // Constants ==============================================================
+
+  private static final int BUFFER_SIZE = 8192;
+
+  // Fields =================================================================
+
+  private final InputStream myInputStream;
+  private final IStreamLogger myStreamLogger;
+  private byte[] myBuffer = new byte[BUFFER_SIZE];
+  private int myPosition;
+  private int myLimit;
+
+  // Setup ==================================================================
+
+  public BufferedLineInputStream(InputStream inputStream, IStreamLogger streamLogger) {
+    BugLog.getInstance().assertNotNull(inputStream);
+    BugLog.getInstance().assertNotNull(streamLogger);
+
+    myInputStream = inputStream;
+    myStreamLogger = streamLogger;
+  }
+
+  // Implemented ============================================================
+
+  @Override
+  public int read() throws IOException {
+    if (myPosition == myLimit && !fill()) {
+      return -1;
+    }
+    return myBuffer[myPosition++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    if (myPosition == myLimit) {
+      if (len >= myBuffer.length) {
+        // nothing buffered, no need to copy large file contents twice
+        return myInputStream.read(b, off, len);
+      }
+      if (!fill()) {
+        return -1;
+      }
+    }
+
+    final int count = Math.min(len, myLimit - myPosition);
+    System.arraycopy(myBuffer, myPosition, b, off, count);
+    myPosition += count;
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    if (myPosition == myLimit) {
+      return myInputStream.skip(n);
+    }
+    final int count = (int)Math.min(n, myLimit - myPosition);
+    myPosition += count;
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (myLimit - myPosition) + myInputStream.available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    myInputStream.close();
+  }
+
+  // Actions ================================================================
+
+  /**
+   * Reads the next line without the terminating <code>'\n'</code>. At the end of the stream
+   * the remaining bytes (possibly none) are returned.
+   */
+  public byte[] readLineBytes() throws IOException {
+    final int length = scanLine();
+    final byte[] line = Arrays.copyOfRange(myBuffer, myPosition, myPosition + length);
+    consumeLine(length);
+    return line;
+  }
+
+  public String readLine(String charset) throws IOException {
+    final int length = scanLine();
+    final String line = new String(myBuffer, myPosition, length, charset);
+    consumeLine(length);
+    return line;
+  }
+
+  // Utils ==================================================================
+
+  /**
+   * Makes sure the next line is completely buffered and returns its length.
+   */
+  private int scanLine() throws IOException {
+    int scanPosition = myPosition;
+    while (true) {
+      for (int i = scanPosition; i < myLimit; i++) {
+        if (myBuffer[i] == '\n') {
+          return i - myPosition;
+        }
+      }
+
+      // the line continues beyond the buffered data: move it to the front and read more
+      if (myPosition > 0) {
+        System.arraycopy(myBuffer, myPosition, myBuffer, 0, myLimit - myPosition);
+        myLimit -= myPosition;
+        myPosition = 0;
+      }
+      if (myLimit == myBuffer.length) {
+        myBuffer = Arrays.copyOf(myBuffer, myBuffer.length * 2);
+      }
+      scanPosition = myLimit;
+
+      final int read = myInputStream.read(myBuffer, myLimit, myBuffer.length - myLimit);
+      if (read < 0) {
+        return myLimit - myPosition;
+      }
+      myLimit += read;
+    }
+  }
+
+  private void consumeLine(int length) throws IOException {
+    final int end = myPosition + length;
+    final int consumed = end < myLimit ? length + 1 : length;
+
+    final OutputStream logStream = myStreamLogger.getInputLogStream();
+    logStream.write(myBuffer, myPosition, consumed);
+    logStream.flush();
+
+    myPosition += consumed;
+  }
+
+  private boolean fill() throws IOException {
+    myPosition = 0;
+    myLimit = 0;
+
+    final int read = myInputStream.read(myBuffer, 0, myBuffer.length);
+    if (read <= 0) {
+      return false;
+    }
+    myLimit = read;
+    return true;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ *                 Sun Public License Notice
+ *
+ * The contents of this file are subject to the Sun Public License
+ * Version 1.0 (the "License"). You may not use this file except in
+ * compliance with the License. A copy of the License is available at
+ * http://www.sun.com/
+ *
+ * The Original Code is NetBeans. The Initial Developer of the Original
+ * Code is Sun Microsystems, Inc. Portions Copyright 1997-2000 Sun
+ * Microsystems, Inc. All Rights Reserved.
+ */
+package org.netbeans.lib.cvsclient.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Counters of a gzip-compressed connection: the bytes before and after compression in both directions and the time spent
+ * compressing and decompressing them.
+ */
+public final class CompressionStatistics {
+
+  // Fields =================================================================
+
+  private final int myCompressionLevel;
+  private volatile long myRawBytesSent;
+  private volatile long myCompressedBytesSent;
+  private volatile long myCompressedBytesReceived;
+  private volatile long myRawBytesReceived;
+  private volatile long myCompressionNanos;
+  private volatile long myDecompressionNanos;
+  private volatile int myUncompressedFileCount;
+
+  // Setup ==================================================================
+
+  public CompressionStatistics(int compressionLevel) {
+    myCompressionLevel = compressionLevel;
+  }
+
+  // Accessing ==============================================================
+
+  public int getCompressionLevel() {
+    return myCompressionLevel;
+  }
+
+  public long getRawBytesSent() {
+    return myRawBytesSent;
+  }
+
+  public long getCompressedBytesSent() {
+    return myCompressedBytesSent;
+  }
+
+  public long getCompressedBytesReceived() {
+    return myCompressedBytesReceived;
+  }
+
+  public long getRawBytesReceived() {
+    return myRawBytesReceived;
+  }
+
+  public long getCompressionTime(TimeUnit unit) {
+    return unit.convert(myCompressionNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public long getDecompressionTime(TimeUnit unit) {
+    return unit.convert(myDecompressionNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return the number of files that were sent without compression, as their content is compressed already
+   */
+  public int getUncompressedFileCount() {
+    return myUncompressedFileCount;
+  }
+
+  // Actions ================================================================
+
+  /**
+   * Takes over the byte counts of the deflater and inflater of the connection.
+   */
+  public void update(Deflater deflater, Inflater inflater) {
+    myRawBytesSent = deflater.getBytesRead();
+    myCompressedBytesSent = deflater.getBytesWritten();
+    myCompressedBytesReceived = inflater.getBytesRead();
+    myRawBytesReceived = inflater.getBytesWritten();
+  }
+
+  void addCompressionTime(long nanos) {
+    myCompressionNanos += nanos;
+  }
+
+  void addDecompressionTime(long nanos) {
+    myDecompressionNanos += nanos;
+  }
+
+  void uncompressedFileSent() {
+    myUncompressedFileCount++;
+  }
+
+  public String toString() {
+    return "level " + myCompressionLevel +
+           ", sent " + getRawBytesSent() + " -> " + getCompressedBytesSent() + " bytes in " + getCompressionTime(TimeUnit.MILLISECONDS) + " ms" +
+           (myUncompressedFileCount > 0 ? " (" + myUncompressedFileCount + " files stored)" : "") +
+           ", received " + getCompressedBytesReceived() + " -> " + getRawBytesReceived() + " bytes in " +
+           getDecompressionTime(TimeUnit.MILLISECONDS) + " ms";
+  }
+}
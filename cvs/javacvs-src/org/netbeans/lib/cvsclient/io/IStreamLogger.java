@@ -15,4 +15,10 @@ public interface IStreamLogger {
 	OutputStream getInputLogStream();
 
 	OutputStream getOutputLogStream();
+
+	/**
+	 * Called when a compressed connection is closed.
+	 */
+	default void compressionFinished(CompressionStatistics statistics) {
+	}
 }
@@ -0,0 +1,83 @@
+/*
+ *                 Sun Public License Notice
+ *
+ * The contents of this file are subject to the Sun Public License
+ * Version 1.0 (the "License"). You may not use this file except in
+ * compliance with the License. A copy of the License is available at
+ * http://www.sun.com/
+ *
+ * The Original Code is NetBeans. The Initial Developer of the Original
+ * Code is Sun Microsystems, Inc. Portions Copyright 1997-2000 Sun
+ * Microsystems, Inc. All Rights Reserved.
+ */
+package org.netbeans.lib.cvsclient.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses the output of a connection, adding the time spent in the deflater to the statistics. Flushing performs a
+ * sync flush, so everything written so far reaches the server without finishing the compressed stream.
+ */
+public final class MeasuredDeflaterOutputStream extends DeflaterOutputStream {
+
+  // Fields =================================================================
+
+  private final int myLevel;
+  private final CompressionStatistics myStatistics;
+  private boolean myCompressionSuspended;
+
+  // Setup ==================================================================
+
+  public MeasuredDeflaterOutputStream(OutputStream outputStream, Deflater deflater, int level, int bufferSize,
+                                      CompressionStatistics statistics) {
+    super(outputStream, deflater, bufferSize, true);
+    myLevel = level;
+    myStatistics = statistics;
+  }
+
+  // Actions ================================================================
+
+  /**
+   * Stores the data written from now on without compressing it, until compression is resumed. Compressing data that is
+   * compressed already costs time and does not make it smaller.
+   */
+  public void setCompressionSuspended(boolean suspended) {
+    if (suspended == myCompressionSuspended) {
+      return;
+    }
+    myCompressionSuspended = suspended;
+    // the data written so far is still compressed with the previous level by the next deflate call
+    def.setLevel(suspended ? Deflater.NO_COMPRESSION : myLevel);
+    if (suspended) {
+      myStatistics.uncompressedFileSent();
+    }
+  }
+
+  @Override
+  protected void deflate() throws IOException {
+    final long start = System.nanoTime();
+    final int length = def.deflate(buf, 0, buf.length);
+    myStatistics.addCompressionTime(System.nanoTime() - start);
+    if (length > 0) {
+      out.write(buf, 0, length);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (!def.finished()) {
+      while (true) {
+        final long start = System.nanoTime();
+        final int length = def.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+        myStatistics.addCompressionTime(System.nanoTime() - start);
+        if (length == 0) break;
+        out.write(buf, 0, length);
+        if (length < buf.length) break;
+      }
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ *                 Sun Public License Notice
+ *
+ * The contents of this file are subject to the Sun Public License
+ * Version 1.0 (the "License"). You may not use this file except in
+ * compliance with the License. A copy of the License is available at
+ * http://www.sun.com/
+ *
+ * The Original Code is NetBeans. The Initial Developer of the Original
+ * Code is Sun Microsystems, Inc. Portions Copyright 1997-2000 Sun
+ * Microsystems, Inc. All Rights Reserved.
+ */
+package org.netbeans.lib.cvsclient.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompresses the input of a connection, adding the time spent in the inflater to the statistics. Waiting for the
+ * compressed data to arrive is not counted.
+ */
+public final class MeasuredInflaterInputStream extends InflaterInputStream {
+
+  // Fields =================================================================
+
+  private final CompressionStatistics myStatistics;
+  private long myFillNanos;
+
+  // Setup ==================================================================
+
+  public MeasuredInflaterInputStream(InputStream inputStream, Inflater inflater, int bufferSize, CompressionStatistics statistics) {
+    super(inputStream, inflater, bufferSize);
+    myStatistics = statistics;
+  }
+
+  // Actions ================================================================
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    final long start = System.nanoTime();
+    myFillNanos = 0;
+    try {
+      return super.read(b, off, len);
+    }
+    finally {
+      myStatistics.addDecompressionTime(System.nanoTime() - start - myFillNanos);
+    }
+  }
+
+  @Override
+  protected void fill() throws IOException {
+    final long start = System.nanoTime();
+    try {
+      super.fill();
+    }
+    finally {
+      myFillNanos += System.nanoTime() - start;
+    }
+  }
+}
@@ -29,6 +29,9 @@ public final class StreamUtilities {
   }
 
   public String readLine(InputStream reader) throws IOException {
+    if (reader instanceof BufferedLineInputStream) {
+      return ((BufferedLineInputStream)reader).readLine(myCharset != null ? myCharset : StandardCharsets.UTF_8.name());
+    }
     if (myCharset != null) {
       return new String(readLineBytes(reader), myCharset);
     } else {
@@ -37,6 +40,10 @@ public final class StreamUtilities {
   }
 
   public static byte[] readLineBytes(InputStream reader) throws IOException {
+    if (reader instanceof BufferedLineInputStream) {
+      return ((BufferedLineInputStream)reader).readLineBytes();
+    }
+
     final ByteArrayOutputStream output = new ByteArrayOutputStream();
     for (; ;) {
       int value = reader.read();
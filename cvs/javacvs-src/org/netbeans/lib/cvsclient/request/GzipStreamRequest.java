@@ -22,12 +22,21 @@ public final class GzipStreamRequest extends AbstractRequest {
         // Constants ==============================================================
 
         @NonNls public static final String REQUEST = "Gzip-stream";
-        private static final int COMPRESSION_LEVEL = 6;
+
+        // Fields =================================================================
+
+        private final int compressionLevel;
+
+        // Setup ==================================================================
+
+        public GzipStreamRequest(int compressionLevel) {
+                this.compressionLevel = compressionLevel;
+        }
 
         // Implemented ============================================================
 
         @Override
         public String getRequestString() {
-                return REQUEST + ' ' + COMPRESSION_LEVEL + '\n';
+                return REQUEST + ' ' + compressionLevel + '\n';
         }
 }
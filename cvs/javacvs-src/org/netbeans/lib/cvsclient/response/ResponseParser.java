@@ -38,7 +38,8 @@ public final class ResponseParser {
                                  IConnectionStreams connectionStreams,
                                  IResponseServices responseServices,
                                  IClientEnvironment clientEnvironment) throws IOException {
-    InputStream loggedInputStream = connectionStreams.getLoggedInputStream();
+    // logs the lines itself, see BufferedLineInputStream
+    final InputStream loggedInputStream = connectionStreams.getLineInputStream();
     if (responseName.equalsIgnoreCase("E")) {
       final byte[] line = StreamUtilities.readLineBytes(loggedInputStream);
       responseProcessor.processErrorMessageResponse(prepareMessageAccordingToScr39148(line), responseServices);
@@ -22,11 +22,23 @@ import java.io.IOException;
  */
 public final class EntriesHandler {
 
+	// Constants ==============================================================
+
+	// Reads and writes of the same directory must not interleave; different directories don't have to wait for each other
+	private static final Object[] LOCKS = new Object[64];
+
+	static {
+		for (int i = 0; i < LOCKS.length; i++) {
+			LOCKS[i] = new Object();
+		}
+	}
+
 	// Fields =================================================================
 
 	private final Entries entries = new Entries();
 	private final File entriesFile;
 	private final File entriesDotLogFile;
+	private final Object lock;
 
 	// Setup ==================================================================
 
@@ -35,6 +47,7 @@ public final class EntriesHandler {
 
 		entriesFile = AdminUtils.createEntriesFile(directory);
 		entriesDotLogFile = AdminUtils.createEntriesDotLogFile(directory);
+		lock = LOCKS[(entriesFile.getAbsolutePath().hashCode() & 0x7fffffff) % LOCKS.length];
 	}
 
 	// Accessing ==============================================================
@@ -46,7 +59,7 @@ public final class EntriesHandler {
 	// Actions ================================================================
 
 	public boolean read(String charsetName) throws IOException {
-    synchronized(Entries.class){
+    synchronized(lock){
 		  entries.read(entriesFile, charsetName);
       return new EntriesDotLog().readAndApply(entriesDotLogFile, entries);
     }
@@ -54,7 +67,7 @@ public final class EntriesHandler {
 	}
 
 	public void write(String lineSeparator, final String charsetName) throws IOException {
-    synchronized(Entries.class){
+    synchronized(lock){
 		  entries.write(entriesFile, lineSeparator, charsetName);
       entriesDotLogFile.delete();
     }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.intellij.cvsSupport2;
+
+import junit.framework.TestCase;
+import org.netbeans.lib.cvsclient.io.BufferedLineInputStream;
+import org.netbeans.lib.cvsclient.io.IStreamLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class BufferedLineInputStreamTest extends TestCase {
+  private final ByteArrayOutputStream myLog = new ByteArrayOutputStream();
+
+  public void testReadLines() throws IOException {
+    final BufferedLineInputStream stream = createStream("M first\n\nlast".getBytes(StandardCharsets.UTF_8));
+    assertEquals("M first", stream.readLine("UTF-8"));
+    assertEquals("", stream.readLine("UTF-8"));
+    assertEquals("last", stream.readLine("UTF-8"));
+    assertEquals(0, stream.readLineBytes().length);
+    assertEquals("M first\n\nlast", myLog.toString("UTF-8"));
+  }
+
+  public void testLineLongerThanBuffer() throws IOException {
+    final char[] chars = new char[100000];
+    Arrays.fill(chars, 'x');
+    final String longLine = new String(chars);
+    final BufferedLineInputStream stream = createStream((longLine + "\nshort\n").getBytes(StandardCharsets.UTF_8));
+    assertEquals(longLine, stream.readLine("UTF-8"));
+    assertEquals("short", stream.readLine("UTF-8"));
+  }
+
+  public void testRawContentBetweenLines() throws IOException {
+    final byte[] content = new byte[20000];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte)i;
+    }
+    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    data.write("Updated\n20000\n".getBytes(StandardCharsets.UTF_8));
+    data.write(content);
+    data.write("ok\n".getBytes(StandardCharsets.UTF_8));
+
+    final BufferedLineInputStream stream = createStream(data.toByteArray());
+    assertEquals("Updated", stream.readLine("UTF-8"));
+    assertEquals("20000", stream.readLine("UTF-8"));
+    final byte[] read = new byte[content.length];
+    int count = 0;
+    while (count < read.length) {
+      count += stream.read(read, count, read.length - count);
+    }
+    assertTrue(Arrays.equals(content, read));
+    assertEquals("ok", new String(stream.readLineBytes(), StandardCharsets.UTF_8));
+    assertEquals(-1, stream.read());
+  }
+
+  private BufferedLineInputStream createStream(byte[] data) {
+    return new BufferedLineInputStream(new ByteArrayInputStream(data), new IStreamLogger() {
+      @Override
+      public OutputStream createLoggingOutputStream(OutputStream outputStream) {
+        return outputStream;
+      }
+
+      @Override
+      public InputStream createLoggingInputStream(InputStream inputStream) {
+        return inputStream;
+      }
+
+      @Override
+      public OutputStream getInputLogStream() {
+        return myLog;
+      }
+
+      @Override
+      public OutputStream getOutputLogStream() {
+        return myLog;
+      }
+    });
+  }
+}
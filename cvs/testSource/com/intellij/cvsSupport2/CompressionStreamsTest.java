@@ -0,0 +1,87 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2;
+
+import junit.framework.TestCase;
+import org.netbeans.lib.cvsclient.io.CompressionStatistics;
+import org.netbeans.lib.cvsclient.io.MeasuredDeflaterOutputStream;
+import org.netbeans.lib.cvsclient.io.MeasuredInflaterInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class CompressionStreamsTest extends TestCase {
+  private static final int LEVEL = Deflater.BEST_SPEED;
+
+  public void testFlushSendsDataWithoutFinishing() throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    final Deflater deflater = new Deflater(LEVEL);
+    final MeasuredDeflaterOutputStream output =
+      new MeasuredDeflaterOutputStream(compressed, deflater, LEVEL, 1024, new CompressionStatistics(LEVEL));
+    output.write("Argument -m\n".getBytes("UTF-8"));
+    output.flush();
+
+    assertTrue(compressed.size() > 0);
+    assertFalse(deflater.finished());
+    final Inflater inflater = new Inflater();
+    final byte[] result = new byte[12];
+    new DataInputStream(new MeasuredInflaterInputStream(new ByteArrayInputStream(compressed.toByteArray()), inflater, 1024,
+                                                        new CompressionStatistics(LEVEL))).readFully(result);
+    assertEquals("Argument -m\n", new String(result, "UTF-8"));
+    deflater.end();
+    inflater.end();
+  }
+
+  public void testSuspendedCompressionAndStatistics() throws IOException {
+    final byte[] text = new byte[50000];
+    Arrays.fill(text, (byte)'a');
+    final byte[] random = new byte[50000];
+    new Random(1).nextBytes(random);
+
+    final CompressionStatistics statistics = new CompressionStatistics(LEVEL);
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    final Deflater deflater = new Deflater(LEVEL);
+    final MeasuredDeflaterOutputStream output = new MeasuredDeflaterOutputStream(compressed, deflater, LEVEL, 16384, statistics);
+    output.write(text);
+    output.setCompressionSuspended(true);
+    output.write(random);
+    output.setCompressionSuspended(false);
+    output.write(text);
+    output.finish();
+
+    final Inflater inflater = new Inflater();
+    final byte[] result = inflate(compressed.toByteArray(), inflater, statistics);
+    final byte[] expected = new byte[150000];
+    System.arraycopy(text, 0, expected, 0, 50000);
+    System.arraycopy(random, 0, expected, 50000, 50000);
+    System.arraycopy(text, 0, expected, 100000, 50000);
+    assertTrue(Arrays.equals(expected, result));
+
+    statistics.update(deflater, inflater);
+    assertEquals(150000, statistics.getRawBytesSent());
+    assertEquals(compressed.size(), statistics.getCompressedBytesSent());
+    assertEquals(compressed.size(), statistics.getCompressedBytesReceived());
+    assertEquals(150000, statistics.getRawBytesReceived());
+    assertEquals(1, statistics.getUncompressedFileCount());
+    // the random part is stored, the rest compresses to almost nothing
+    assertTrue(statistics.getCompressedBytesSent() > 50000);
+    assertTrue(statistics.getCompressedBytesSent() < 52000);
+    deflater.end();
+    inflater.end();
+  }
+
+  private static byte[] inflate(byte[] data, Inflater inflater, CompressionStatistics statistics) throws IOException {
+    final MeasuredInflaterInputStream input = new MeasuredInflaterInputStream(new ByteArrayInputStream(data), inflater, 4096, statistics);
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    for (int read = input.read(buffer); read > 0; read = input.read(buffer)) {
+      result.write(buffer, 0, read);
+    }
+    return result.toByteArray();
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2;
+
+import com.intellij.cvsSupport2.annotate.CvsAnnotationCache;
+import com.intellij.cvsSupport2.cvsoperations.cvsAnnotate.Annotation;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+public class CvsAnnotationCacheTest extends CvsDiskCacheTestCase {
+  private static final Date DATE1 = new Date(1000000000000L);
+  private static final Date DATE2 = new Date(1100000000000L);
+
+  public void testLinesSharingRevisionGetTheirOwnDates() {
+    final CvsAnnotationCache cache = new CvsAnnotationCache(myDirectory, 100);
+    cache.put(ROOT, "module/A.java", "1.2", false, new CvsAnnotationCache.CachedAnnotation(
+      "first\nsecond\nthird\n",
+      new Annotation[]{new Annotation("1.1", "alice", DATE1), new Annotation("1.2", "bob", DATE2), new Annotation("1.1", "alice", DATE1)}));
+
+    final Annotation[] loaded = cache.get(ROOT, "module/A.java", "1.2", false).getLineAnnotations();
+    assertEquals("1.2", loaded[1].getRevision());
+    assertEquals("bob", loaded[1].getUserName());
+    assertEquals(DATE1, loaded[2].getDate());
+    // the table of the entry holds a date once, adjusting the date of one line must not move the other
+    loaded[0].getDate().setTime(0);
+    assertEquals(DATE1, loaded[2].getDate());
+  }
+
+  public void testEmptyContent() {
+    final CvsAnnotationCache cache = new CvsAnnotationCache(myDirectory, 100);
+    cache.put(ROOT, "module/Empty.java", "1.1", false, new CvsAnnotationCache.CachedAnnotation("", new Annotation[0]));
+
+    final CvsAnnotationCache.CachedAnnotation loaded = cache.get(ROOT, "module/Empty.java", "1.1", false);
+    assertEquals("", loaded.getContent());
+    assertEquals(0, loaded.getLineAnnotations().length);
+  }
+
+  public void testBinaryAnnotationIsCachedSeparately() {
+    final CvsAnnotationCache cache = new CvsAnnotationCache(myDirectory, 100);
+    cache.put(ROOT, "module/A.java", "1.2", true, new CvsAnnotationCache.CachedAnnotation(
+      "a\n", new Annotation[]{new Annotation("1.2", "bob", DATE2)}));
+
+    assertNull(cache.get(ROOT, "module/A.java", "1.2", false));
+    assertNotNull(cache.get(ROOT, "module/A.java", "1.2", true));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testCorruptedEntryIsDropped() throws IOException {
+    final CvsAnnotationCache cache = new CvsAnnotationCache(myDirectory, 100);
+    cache.put(ROOT, "module/A.java", "1.2", false, new CvsAnnotationCache.CachedAnnotation(
+      "a\n", new Annotation[]{new Annotation("1.2", "bob", DATE2)}));
+    for (File entry : listEntryFiles()) {
+      FileUtil.writeToFile(entry, "garbage");
+    }
+
+    assertNull(cache.get(ROOT, "module/A.java", "1.2", false));
+    assertTrue(listEntryFiles().isEmpty());
+  }
+
+  public void testLeastRecentlyReadEntriesAreEvicted() {
+    final CvsAnnotationCache cache = new CvsAnnotationCache(myDirectory, 10);
+    final CvsAnnotationCache.CachedAnnotation annotation =
+      new CvsAnnotationCache.CachedAnnotation("a\n", new Annotation[]{new Annotation("1.1", "alice", DATE1)});
+    // eviction runs every hundred entries put
+    for (int i = 0; i < 99; i++) {
+      cache.put(ROOT, "module/A" + i + ".java", "1.1", false, annotation);
+    }
+    for (File entry : listEntryFiles()) {
+      entry.setLastModified(DATE1.getTime());
+    }
+    assertNotNull(cache.get(ROOT, "module/A0.java", "1.1", false));
+    cache.put(ROOT, "module/A99.java", "1.1", false, annotation);
+
+    assertEquals(10, listEntryFiles().size());
+    assertNotNull(cache.get(ROOT, "module/A0.java", "1.1", false));
+    assertNotNull(cache.get(ROOT, "module/A99.java", "1.1", false));
+  }
+
+  public void testFixedRevisions() {
+    assertTrue(CvsAnnotationCache.isFixedRevision("1.1"));
+    assertTrue(CvsAnnotationCache.isFixedRevision("1.2.2.5"));
+    assertFalse(CvsAnnotationCache.isFixedRevision(null));
+    assertFalse(CvsAnnotationCache.isFixedRevision("HEAD"));
+    assertFalse(CvsAnnotationCache.isFixedRevision("1.2.2"));
+    assertFalse(CvsAnnotationCache.isFixedRevision("1.2.0.2"));
+  }
+
+  public void testParentRevision() {
+    assertEquals("1.4", CvsAnnotationCache.getParentRevision("1.5"));
+    assertEquals("1.2", CvsAnnotationCache.getParentRevision("1.2.2.1"));
+    assertEquals("1.2.2.1", CvsAnnotationCache.getParentRevision("1.2.2.2"));
+    assertNull(CvsAnnotationCache.getParentRevision("1.1"));
+  }
+
+  public void testDeriveFromParent() {
+    final CvsAnnotationCache.CachedAnnotation parent = new CvsAnnotationCache.CachedAnnotation(
+      "a\nb\nc\n",
+      new Annotation[]{new Annotation("1.1", "alice", DATE1), new Annotation("1.2", "bob", DATE1), new Annotation("1.1", "alice", DATE1)});
+
+    final CvsAnnotationCache.CachedAnnotation derived = CvsAnnotationCache.deriveFromParent(parent, "a\r\nx\r\nc\r\nd", "1.3", "carol", DATE2);
+    assertNotNull(derived);
+    assertEquals("a\nx\nc\nd\n", derived.getContent());
+    final Annotation[] annotations = derived.getLineAnnotations();
+    assertEquals(4, annotations.length);
+    assertEquals("1.1", annotations[0].getRevision());
+    assertEquals("1.3", annotations[1].getRevision());
+    assertEquals("carol", annotations[1].getUserName());
+    assertEquals(DATE2, annotations[1].getDate());
+    assertEquals("1.1", annotations[2].getRevision());
+    assertEquals("1.3", annotations[3].getRevision());
+  }
+}
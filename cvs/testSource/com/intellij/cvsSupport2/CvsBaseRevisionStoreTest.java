@@ -0,0 +1,113 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2;
+
+import com.intellij.cvsSupport2.application.CvsBaseRevisionStore;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CvsBaseRevisionStoreTest extends CvsDiskCacheTestCase {
+  public void testStoreAndLoad() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    final byte[] content = "class A {}\n".getBytes(StandardCharsets.UTF_8);
+    store.put(ROOT, "module/A.java", "1.2", content);
+
+    assertTrue(Arrays.equals(content, store.get(ROOT, "module/A.java", "1.2")));
+    assertNull(store.get(ROOT, "module/A.java", "1.3"));
+    assertNull(store.get(":pserver:user@other:/cvsroot", "module/A.java", "1.2"));
+    assertEquals(1, store.getHitCount());
+    assertEquals(2, store.getMissCount());
+  }
+
+  public void testIdenticalContentIsStoredOnce() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    final byte[] content = randomBytes(4096, 1);
+    store.put(ROOT, "module/A.bin", "1.1", content);
+    final long size = store.getStoredSize();
+    store.put(ROOT, "module/B.bin", "1.5", content);
+
+    assertEquals(size, store.getStoredSize());
+    assertEquals(2, store.getRevisionCount());
+    assertTrue(Arrays.equals(content, store.get(ROOT, "module/B.bin", "1.5")));
+  }
+
+  public void testLeastRecentlyUsedRevisionsAreEvicted() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 10000);
+    // random content does not compress, so every revision takes a bit more than 4000 bytes
+    store.put(ROOT, "module/A.bin", "1.1", randomBytes(4000, 1));
+    store.put(ROOT, "module/B.bin", "1.1", randomBytes(4000, 2));
+    assertNotNull(store.get(ROOT, "module/A.bin", "1.1"));
+    store.put(ROOT, "module/C.bin", "1.1", randomBytes(4000, 3));
+
+    assertEquals(1, store.getEvictionCount());
+    assertFalse(store.contains(ROOT, "module/B.bin", "1.1"));
+    assertTrue(store.contains(ROOT, "module/A.bin", "1.1"));
+    assertTrue(store.contains(ROOT, "module/C.bin", "1.1"));
+    assertTrue(store.getStoredSize() <= 10000);
+  }
+
+  public void testRemovedMarkIsIgnored() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    final byte[] content = "removed\n".getBytes(StandardCharsets.UTF_8);
+    store.put(ROOT, "module/A.txt", "-1.3", content);
+
+    assertTrue(Arrays.equals(content, store.get(ROOT, "module/A.txt", "1.3")));
+    assertTrue(store.contains(ROOT, "module/A.txt", "-1.3"));
+    store.put(ROOT, "module/A.txt", "1.3", content);
+    assertEquals(1, store.getRevisionCount());
+  }
+
+  public void testEvictedBlobsAreDeleted() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 10000);
+    store.put(ROOT, "module/A.bin", "1.1", randomBytes(4000, 1));
+    store.put(ROOT, "module/B.bin", "1.1", randomBytes(4000, 2));
+    store.put(ROOT, "module/C.bin", "1.1", randomBytes(4000, 3));
+
+    assertEquals(1, store.getEvictionCount());
+    assertEquals(2, listEntryFiles().size());
+  }
+
+  public void testUnflushedBlobsAreDeletedOnReopening() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    store.put(ROOT, "module/A.bin", "1.1", randomBytes(100, 1));
+    store.flush();
+    store.put(ROOT, "module/B.bin", "1.1", randomBytes(100, 2));
+    assertEquals(2, listEntryFiles().size());
+
+    final CvsBaseRevisionStore reopened = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    assertEquals(1, reopened.getRevisionCount());
+    assertEquals(1, listEntryFiles().size());
+  }
+
+  public void testIndexSurvivesReopening() {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    final byte[] content = "line\n".getBytes(StandardCharsets.UTF_8);
+    store.put(ROOT, "module/A.txt", "1.4", content);
+    store.flush();
+
+    final CvsBaseRevisionStore reopened = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    assertTrue(Arrays.equals(content, reopened.get(ROOT, "module/A.txt", "1.4")));
+    assertEquals(store.getStoredSize(), reopened.getStoredSize());
+  }
+
+  public void testCorruptedBlobIsDropped() throws IOException {
+    final CvsBaseRevisionStore store = new CvsBaseRevisionStore(myDirectory, 1024 * 1024);
+    store.put(ROOT, "module/A.txt", "1.1", "content".getBytes(StandardCharsets.UTF_8));
+    for (File blob : listEntryFiles()) {
+      FileUtil.writeToFile(blob, "garbage");
+    }
+
+    assertNull(store.get(ROOT, "module/A.txt", "1.1"));
+    assertEquals(0, store.getRevisionCount());
+  }
+
+  private static byte[] randomBytes(int length, long seed) {
+    final byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+}
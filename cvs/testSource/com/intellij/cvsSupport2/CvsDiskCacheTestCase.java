@@ -0,0 +1,40 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base of the tests of the caches the plugin keeps under the system directory, which store their entries in subdirectories
+ * named after the first characters of the entry hash.
+ */
+public abstract class CvsDiskCacheTestCase extends TestCase {
+  protected static final String ROOT = ":pserver:user@host:/cvsroot";
+
+  protected File myDirectory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDirectory = FileUtil.createTempDirectory(getName(), null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDirectory);
+    super.tearDown();
+  }
+
+  protected List<File> listEntryFiles() {
+    final List<File> result = new ArrayList<>();
+    for (File dir : myDirectory.listFiles(File::isDirectory)) {
+      Collections.addAll(result, dir.listFiles());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2;
+
+import com.intellij.cvsSupport2.application.CvsEntriesFileCache;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ref.GCUtil;
+import junit.framework.TestCase;
+import org.netbeans.lib.cvsclient.admin.AdminUtils;
+import org.netbeans.lib.cvsclient.admin.Entries;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+public class CvsEntriesFileCacheTest extends TestCase {
+  private static final long OLD = 10000;
+
+  private File myDirectory;
+  private final CvsEntriesFileCache myCache = CvsEntriesFileCache.getInstance();
+  private final List<File> myLoaded = new CopyOnWriteArrayList<>();
+  private final Function<File, Entries> myLoader = directory -> {
+    myLoaded.add(directory);
+    final Entries entries = new Entries();
+    try {
+      entries.read(AdminUtils.createEntriesFile(directory), "UTF-8");
+      return entries;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  };
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDirectory = FileUtil.createTempDirectory(getName(), null);
+    myCache.clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myCache.clear();
+    FileUtil.delete(myDirectory);
+    super.tearDown();
+  }
+
+  public void testRecentlyWrittenEntriesAreNotCached() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    assertEquals(1, myCache.getEntries(myDirectory, myLoader).size());
+
+    writeEntries(myDirectory, "/A.java/1.2/dummy timestamp//");
+    assertEquals("1.2", myCache.getEntries(myDirectory, myLoader).getEntry("A.java").getRevision());
+    assertEquals(2, myLoaded.size());
+  }
+
+  public void testEntriesOutsideRacyIntervalAreCached() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+
+    myCache.getEntries(myDirectory, myLoader);
+    final long hits = myCache.getHitCount();
+    assertEquals(1, myCache.getEntries(myDirectory, myLoader).size());
+    assertEquals(1, myLoaded.size());
+    assertEquals(hits + 1, myCache.getHitCount());
+  }
+
+  public void testRewriteWithinRacyIntervalIsReparsed() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+    myCache.getEntries(myDirectory, myLoader);
+
+    writeEntries(myDirectory, "/A.java/1.2/dummy timestamp//");
+    assertEquals("1.2", myCache.getEntries(myDirectory, myLoader).getEntry("A.java").getRevision());
+    assertEquals("1.2", myCache.getEntries(myDirectory, myLoader).getEntry("A.java").getRevision());
+    assertEquals(3, myLoaded.size());
+  }
+
+  public void testRewriteOfSameLengthIsReparsed() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+    myCache.getEntries(myDirectory, myLoader);
+
+    writeEntries(myDirectory, "/A.java/1.2/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD / 2);
+    assertEquals("1.2", myCache.getEntries(myDirectory, myLoader).getEntry("A.java").getRevision());
+    assertEquals("1.2", myCache.getEntries(myDirectory, myLoader).getEntry("A.java").getRevision());
+    assertEquals(2, myLoaded.size());
+  }
+
+  public void testRewriteWithSameTimestampIsReparsed() throws IOException {
+    final File entriesFile = AdminUtils.createEntriesFile(myDirectory);
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(entriesFile, OLD);
+    final long stamp = entriesFile.lastModified();
+    myCache.getEntries(myDirectory, myLoader);
+
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//", "/B.java/1.1/dummy timestamp//");
+    assertTrue(entriesFile.setLastModified(stamp));
+    assertEquals(2, myCache.getEntries(myDirectory, myLoader).size());
+    assertEquals(2, myLoaded.size());
+  }
+
+  public void testEntriesLogIsChecked() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+    myCache.getEntries(myDirectory, myLoader);
+
+    final File logFile = AdminUtils.createEntriesDotLogFile(myDirectory);
+    FileUtil.writeToFile(logFile, "A /B.java/1.1/dummy timestamp//\n");
+    makeOld(logFile, OLD);
+    myCache.getEntries(myDirectory, myLoader);
+    myCache.getEntries(myDirectory, myLoader);
+    assertEquals(2, myLoaded.size());
+  }
+
+  public void testCallersGetCopies() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+
+    myCache.getEntries(myDirectory, myLoader).removeEntry("A.java");
+    myCache.getEntries(myDirectory, myLoader).removeEntry("A.java");
+    assertEquals(1, myCache.getEntries(myDirectory, myLoader).size());
+    assertEquals(1, myLoaded.size());
+  }
+
+  public void testInvalidate() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+    myCache.getEntries(myDirectory, myLoader);
+
+    myCache.invalidate(myDirectory);
+    myCache.getEntries(myDirectory, myLoader);
+    assertEquals(2, myLoaded.size());
+  }
+
+  public void testEntriesAreReleasedUnderMemoryPressure() throws IOException {
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+    myCache.getEntries(myDirectory, myLoader);
+
+    GCUtil.tryGcSoftlyReachableObjects();
+    assertEquals(1, myCache.getEntries(myDirectory, myLoader).size());
+    assertEquals(2, myLoaded.size());
+  }
+
+  public void testPreloadLoadsRegisteredSubdirectoriesOnce() throws IOException {
+    final File a = new File(myDirectory, "a");
+    final File b = new File(myDirectory, "b");
+    final File c = new File(a, "c");
+    final File unregistered = new File(myDirectory, "unregistered");
+    writeEntries(myDirectory, "/A.java/1.1/dummy timestamp//", "D/a////", "D/b////");
+    writeEntries(a, "D/c////");
+    writeEntries(b, "/B.java/1.1/dummy timestamp//");
+    writeEntries(c, "/C.java/1.1/dummy timestamp//");
+    writeEntries(unregistered, "/D.java/1.1/dummy timestamp//");
+    for (File directory : new File[]{myDirectory, a, b, c, unregistered}) {
+      makeOld(AdminUtils.createEntriesFile(directory), OLD);
+    }
+
+    myCache.preload(myDirectory, myLoader);
+    assertEquals(4, myLoaded.size());
+    assertTrue(myLoaded.containsAll(Arrays.asList(myDirectory, a, b, c)));
+
+    myCache.getEntries(c, myLoader);
+    assertEquals(4, myLoaded.size());
+  }
+
+  public void testPreloadSkipsDirectoriesWithoutEntries() throws IOException {
+    writeEntries(myDirectory, "D/missing////");
+    makeOld(AdminUtils.createEntriesFile(myDirectory), OLD);
+
+    myCache.preload(myDirectory, myLoader);
+    assertEquals(Collections.singletonList(myDirectory), myLoaded);
+  }
+
+  private static void writeEntries(File directory, String... lines) throws IOException {
+    FileUtil.writeToFile(AdminUtils.createEntriesFile(directory), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void makeOld(File file, long age) {
+    assertTrue(file.setLastModified(System.currentTimeMillis() - age));
+  }
+}
@@ -0,0 +1,323 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2;
+
+import junit.framework.TestCase;
+import org.netbeans.lib.cvsclient.CvsRoot;
+import org.netbeans.lib.cvsclient.IClientEnvironment;
+import org.netbeans.lib.cvsclient.ICvsCommandStopper;
+import org.netbeans.lib.cvsclient.RequestProcessor;
+import org.netbeans.lib.cvsclient.admin.IAdminReader;
+import org.netbeans.lib.cvsclient.admin.IAdminWriter;
+import org.netbeans.lib.cvsclient.command.CommandException;
+import org.netbeans.lib.cvsclient.command.GlobalOptions;
+import org.netbeans.lib.cvsclient.connection.IConnection;
+import org.netbeans.lib.cvsclient.event.EventManager;
+import org.netbeans.lib.cvsclient.file.*;
+import org.netbeans.lib.cvsclient.io.IStreamLogger;
+import org.netbeans.lib.cvsclient.progress.sending.DummyRequestsProgressHandler;
+import org.netbeans.lib.cvsclient.request.CommandRequest;
+import org.netbeans.lib.cvsclient.request.Requests;
+import org.netbeans.lib.cvsclient.util.IIgnoreFileFilter;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Runs {@link RequestProcessor} in full-duplex mode against a server on a local socket.
+ */
+public class FullDuplexRequestsTest extends TestCase {
+  private static final String VALID_REQUESTS = "Root Valid-responses valid-requests UseUnchanged Argument Gzip-stream log";
+  private static final int SOCKET_BUFFER_SIZE = 8192;
+
+  private ServerSocket myServerSocket;
+  private TestConnection myConnection;
+  private ExecutorService myExecutor;
+  private final CountDownLatch myServerDone = new CountDownLatch(1);
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myServerSocket = new ServerSocket();
+    myServerSocket.setReceiveBufferSize(SOCKET_BUFFER_SIZE);
+    myServerSocket.bind(null);
+    myConnection = new TestConnection(myServerSocket.getLocalPort());
+    myExecutor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myServerDone.countDown();
+    myExecutor.shutdownNow();
+    myServerSocket.close();
+    myConnection.close();
+    super.tearDown();
+  }
+
+  public void testRequestsAreSentInOrder() throws Exception {
+    final List<String> arguments = createArguments(1000, 100);
+    final Future<List<String>> server = myExecutor.submit(() -> {
+      try (Socket socket = myServerSocket.accept()) {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        final Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        answerValidRequests(in, out);
+        final List<String> received = new ArrayList<>();
+        for (String line = in.readLine(); !"log".equals(line); line = in.readLine()) {
+          if (line.startsWith("Argument ")) received.add(line.substring("Argument ".length()));
+        }
+        out.write("ok\n");
+        out.flush();
+        return received;
+      }
+    });
+
+    assertTrue(processRequests(arguments, false));
+    assertEquals(arguments, server.get(30, TimeUnit.SECONDS));
+  }
+
+  public void testServerErrorAbortsCompressedTransmission() throws Exception {
+    myExecutor.submit(() -> {
+      try (Socket socket = myServerSocket.accept()) {
+        final InputStream in = socket.getInputStream();
+        final Writer plainOut = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        answerValidRequests(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1), plainOut);
+        // the server gives up while the client is transmitting and stops reading, the client has far more left to send
+        // than the socket buffers hold
+        in.readNBytes(100000);
+        final Writer out = new OutputStreamWriter(new DeflaterOutputStream(socket.getOutputStream(), true), StandardCharsets.UTF_8);
+        out.write("error  Repository is locked\n");
+        out.flush();
+        myServerDone.await();
+      }
+      return null;
+    });
+
+    assertFalse(processRequests(createArguments(5000, 1000), true));
+    assertTrue(myConnection.isClosed());
+  }
+
+  private boolean processRequests(List<String> arguments, boolean gzip) throws Exception {
+    final GlobalOptions globalOptions = new GlobalOptions();
+    globalOptions.setUseGzip(gzip);
+    globalOptions.setCompressionLevel(1);
+    final IClientEnvironment environment = new TestClientEnvironment(myConnection);
+    final RequestProcessor processor =
+      new RequestProcessor(environment, globalOptions, new EventManager("UTF-8"), new TestStreamLogger(), new TestCommandStopper());
+    processor.setFullDuplex(true);
+
+    final Requests requests = new Requests(CommandRequest.LOG, environment);
+    for (String argument : arguments) {
+      requests.addArgumentRequest(argument);
+    }
+    final Future<Boolean> result = myExecutor.submit(() -> processor.processRequests(requests, new DummyRequestsProgressHandler()));
+    try {
+      return result.get(30, TimeUnit.SECONDS);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof CommandException) throw (CommandException)e.getCause();
+      throw e;
+    }
+  }
+
+  private static void answerValidRequests(BufferedReader in, Writer out) throws IOException {
+    assertEquals("valid-requests", in.readLine());
+    out.write("Valid-requests " + VALID_REQUESTS + "\nok\n");
+    out.flush();
+  }
+
+  private static List<String> createArguments(int count, int length) {
+    final Random random = new Random(1);
+    final List<String> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final StringBuilder argument = new StringBuilder(length);
+      for (int j = 0; j < length; j++) {
+        argument.append(Character.forDigit(random.nextInt(36), 36));
+      }
+      result.add(argument.toString());
+    }
+    return result;
+  }
+
+  private static final class TestConnection implements IConnection {
+    private final int myPort;
+    private volatile Socket mySocket;
+
+    private TestConnection(int port) {
+      myPort = port;
+    }
+
+    @Override
+    public void open(IStreamLogger streamLogger) {
+      try {
+        final Socket socket = new Socket();
+        socket.setSendBufferSize(SOCKET_BUFFER_SIZE);
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), myPort));
+        mySocket = socket;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      try {
+        return mySocket.getInputStream();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      try {
+        return mySocket.getOutputStream();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public String getRepository() {
+      return "/cvsroot";
+    }
+
+    @Override
+    public void verify(IStreamLogger streamLogger) {
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (mySocket != null) {
+        mySocket.close();
+      }
+    }
+
+    boolean isClosed() {
+      return mySocket != null && mySocket.isClosed();
+    }
+  }
+
+  private static final class TestClientEnvironment implements IClientEnvironment {
+    private final IConnection myConnection;
+
+    private TestClientEnvironment(IConnection connection) {
+      myConnection = connection;
+    }
+
+    @Override
+    public IConnection getConnection() {
+      return myConnection;
+    }
+
+    @Override
+    public ICvsFileSystem getCvsFileSystem() {
+      return null;
+    }
+
+    @Override
+    public CvsRoot getCvsRoot() {
+      return null;
+    }
+
+    @Override
+    public IAdminReader getAdminReader() {
+      return null;
+    }
+
+    @Override
+    public IAdminWriter getAdminWriter() {
+      return null;
+    }
+
+    @Override
+    public ILocalFileReader getLocalFileReader() {
+      return null;
+    }
+
+    @Override
+    public ILocalFileWriter getLocalFileWriter() {
+      return null;
+    }
+
+    @Override
+    public IIgnoreFileFilter getIgnoreFileFilter() {
+      return null;
+    }
+
+    @Override
+    public IFileReadOnlyHandler getFileReadOnlyHandler() {
+      return null;
+    }
+
+    @Override
+    public String getCharset() {
+      return "UTF-8";
+    }
+  }
+
+  private static final class TestStreamLogger implements IStreamLogger {
+    private final OutputStream myLog = OutputStream.nullOutputStream();
+
+    @Override
+    public OutputStream createLoggingOutputStream(OutputStream outputStream) {
+      return outputStream;
+    }
+
+    @Override
+    public InputStream createLoggingInputStream(InputStream inputStream) {
+      // like the logger of the plugin, hand out single bytes, so the response reader does not read ahead
+      return new InputStream() {
+        @Override
+        public int read() throws IOException {
+          return inputStream.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (len == 0) return 0;
+          final int read = read();
+          if (read == -1) return -1;
+          b[off] = (byte)read;
+          return 1;
+        }
+      };
+    }
+
+    @Override
+    public OutputStream getInputLogStream() {
+      return myLog;
+    }
+
+    @Override
+    public OutputStream getOutputLogStream() {
+      return myLog;
+    }
+  }
+
+  private static final class TestCommandStopper implements ICvsCommandStopper {
+    @Override
+    public boolean isAborted() {
+      return false;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return true;
+    }
+
+    @Override
+    public void resetAlive() {
+    }
+  }
+}
@@ -0,0 +1,31 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.changeBrowser;
+
+import com.intellij.cvsSupport2.config.CvsRootConfiguration;
+import com.intellij.cvsSupport2.connections.CvsEnvironment;
+import org.netbeans.lib.cvsclient.command.log.Revision;
+
+import java.util.Date;
+
+final class ChangeBrowserTestUtil {
+  static final String ROOT_PATH = "module";
+
+  private ChangeBrowserTestUtil() {
+  }
+
+  static CvsEnvironment createEnvironment(String cvsRoot) {
+    final CvsRootConfiguration result = new CvsRootConfiguration();
+    result.CVS_ROOT = cvsRoot;
+    return result;
+  }
+
+  static RevisionWrapper createRevision(String file, String number, String author, String message, long time) {
+    final Revision revision = new Revision(number);
+    revision.setDate(new Date(time));
+    revision.setAuthor(author);
+    revision.setState("Exp");
+    revision.setLines("+1 -1");
+    revision.setMessage(message);
+    return new RevisionWrapper(ROOT_PATH + "/" + file, revision, null);
+  }
+}
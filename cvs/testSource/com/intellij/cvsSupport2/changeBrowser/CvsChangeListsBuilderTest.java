@@ -0,0 +1,108 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.changeBrowser;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.intellij.cvsSupport2.changeBrowser.ChangeBrowserTestUtil.*;
+
+public class CvsChangeListsBuilderTest extends TestCase {
+  private static final long MINUTE = 60 * 1000;
+
+  private final List<CvsChangeList> myEvicted = new ArrayList<>();
+
+  public void testRevisionsOfOneCommitAreMerged() {
+    final CvsChangeListsBuilder builder = createBuilder(-1);
+    final CvsChangeList first = builder.addRevision(createRevision("A.java", "1.2", "alice", "fix", 0));
+    final CvsChangeList second = builder.addRevision(createRevision("B.java", "1.5", "alice", "fix", MINUTE));
+
+    assertSame(first, second);
+    assertEquals(MINUTE, first.getFinishTime());
+    assertNotSame(first, builder.addRevision(createRevision("A.java", "1.3", "alice", "fix", 2 * MINUTE)));
+    assertEquals(2, builder.getNextNumber());
+  }
+
+  public void testLeastRecentlyExtendedListIsEvicted() {
+    final CvsChangeListsBuilder builder = createBuilder(2);
+    final CvsChangeList first = builder.addRevision(createRevision("A.java", "1.2", "alice", "first", 0));
+    final CvsChangeList second = builder.addRevision(createRevision("B.java", "1.2", "bob", "second", 0));
+    builder.addRevision(createRevision("C.java", "1.2", "alice", "first", MINUTE));
+    final CvsChangeList third = builder.addRevision(createRevision("D.java", "1.2", "carol", "third", MINUTE));
+
+    assertEquals(Arrays.asList(second), myEvicted);
+    assertSameElements(builder.getVersions(), first, third);
+  }
+
+  public void testEvictedListIsReportedOnce() {
+    final CvsChangeListsBuilder builder = createBuilder(1);
+    final List<CvsChangeList> created = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      created.add(builder.addRevision(createRevision("A" + i + ".java", "1.2", "alice", "commit " + i, i * 10 * MINUTE)));
+    }
+    builder.addRevision(createRevision("B.java", "1.2", "alice", "commit 4", 40 * MINUTE));
+
+    assertEquals(created.subList(0, 4), myEvicted);
+    assertSameElements(builder.getVersions(), created.get(4));
+  }
+
+  public void testRevisionOfEvictedListStartsNewList() {
+    final CvsChangeListsBuilder builder = createBuilder(1);
+    final CvsChangeList first = builder.addRevision(createRevision("A.java", "1.2", "alice", "first", 0));
+    final CvsChangeList second = builder.addRevision(createRevision("B.java", "1.2", "bob", "second", 0));
+    final CvsChangeList late = builder.addRevision(createRevision("C.java", "1.2", "alice", "first", 0));
+
+    assertNotSame(first, late);
+    assertEquals(2, late.getNumber());
+    assertFalse(late.containsFile(ROOT_PATH + "/A.java"));
+    assertEquals(Arrays.asList(first, second), myEvicted);
+  }
+
+  public void testNumberingAfterRegisteredLists() {
+    final CvsChangeListsBuilder builder = createBuilder(-1);
+    builder.addChangeLists(Arrays.asList(createChangeList(5, "fifth"), createChangeList(7, "seventh")));
+    assertEquals(8, builder.getNextNumber());
+
+    builder.setNextNumber(3);
+    assertEquals(8, builder.getNextNumber());
+    builder.setNextNumber(20);
+    assertEquals(20, builder.addRevision(createRevision("A.java", "1.2", "alice", "new", 0)).getNumber());
+    assertEquals(21, builder.getNextNumber());
+  }
+
+  public void testRegisteredListsAreRetained() {
+    final CvsChangeListsBuilder builder = createBuilder(2);
+    final CvsChangeList fifth = createChangeList(5, "fifth");
+    final CvsChangeList sixth = createChangeList(6, "sixth");
+    final CvsChangeList seventh = createChangeList(7, "seventh");
+    builder.addChangeLists(Arrays.asList(fifth, sixth, seventh));
+    assertEquals(Arrays.asList(fifth), myEvicted);
+
+    final RevisionWrapper revision = createRevision("B.java", "1.3", "alice", "sixth", 0);
+    assertSame(sixth, builder.addRevision(revision));
+    assertTrue(builder.containsRevision(revision));
+  }
+
+  private CvsChangeListsBuilder createBuilder(int maxRetainedChangeLists) {
+    final CvsChangeListsBuilder builder =
+      new CvsChangeListsBuilder(ROOT_PATH, createEnvironment(":pserver:user@host:/cvsroot"), null, null, maxRetainedChangeLists);
+    builder.setEvictionListener(myEvicted::add);
+    return builder;
+  }
+
+  private static CvsChangeList createChangeList(long number, String message) {
+    final CvsChangeList result =
+      new CvsChangeList(null, createEnvironment(":pserver:user@host:/cvsroot"), null, number, message, 0, "alice", ROOT_PATH);
+    result.addFileRevision(createRevision("A" + number + ".java", "1.2", "alice", message, 0));
+    return result;
+  }
+
+  private static void assertSameElements(List<CvsChangeList> actual, CvsChangeList... expected) {
+    assertEquals(expected.length, actual.size());
+    for (CvsChangeList changeList : expected) {
+      assertTrue(changeList + " is missing", actual.contains(changeList));
+    }
+  }
+}
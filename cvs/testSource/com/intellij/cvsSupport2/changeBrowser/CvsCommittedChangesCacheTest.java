@@ -0,0 +1,167 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.changeBrowser;
+
+import com.intellij.cvsSupport2.CvsDiskCacheTestCase;
+import com.intellij.cvsSupport2.connections.CvsEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.intellij.cvsSupport2.changeBrowser.ChangeBrowserTestUtil.*;
+
+public class CvsCommittedChangesCacheTest extends CvsDiskCacheTestCase {
+  private static final String MODULE = "module";
+  private static final long LOADED_FROM = 1000000000000L;
+
+  private CvsCommittedChangesCache myCache;
+  private CvsEnvironment myEnvironment;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new CvsCommittedChangesCache(myDirectory);
+    myEnvironment = createEnvironment(ROOT);
+  }
+
+  public void testStoreAndLoad() throws IOException {
+    // more lists than fit into one segment of the list file
+    final List<CvsChangeList> changeLists = createChangeLists(0, 1200);
+    final CvsChangeList recent1 = createChangeList(1201, 1202);
+    final CvsChangeList recent2 = createChangeList(1200, 1201);
+    store(null, changeLists, 1202, recent1, recent2);
+
+    final CvsCommittedChangesCache.CachedChanges cached = load();
+    assertNotNull(cached);
+    assertEquals(LOADED_FROM, cached.getLoadedFrom());
+    assertEquals(recent1.getFinishTime(), cached.getLastRevisionTime());
+    assertEquals(1202, cached.getNextNumber());
+    assertChangeLists(Arrays.asList(recent2, recent1), cached.getRecentChangeLists());
+    assertChangeLists(changeLists, readChangeLists(cached));
+  }
+
+  public void testUpdateAppendsChangeLists() throws IOException {
+    final List<CvsChangeList> changeLists = createChangeLists(0, 10);
+    store(null, changeLists, 10);
+    final List<CvsChangeList> newChangeLists = createChangeLists(10, 600);
+    store(load(), newChangeLists, 610);
+
+    final CvsCommittedChangesCache.CachedChanges cached = load();
+    assertEquals(610, cached.getNextNumber());
+    changeLists.addAll(newChangeLists);
+    assertChangeLists(changeLists, readChangeLists(cached));
+  }
+
+  public void testInterruptedUpdateIsCutOff() throws IOException {
+    final List<CvsChangeList> changeLists = createChangeLists(0, 10);
+    store(null, changeLists, 10);
+    final long length = getListsFile().length();
+
+    // a full segment reaches the list file before the update is committed
+    final CvsCommittedChangesCache.Update update = myCache.startUpdate(myEnvironment, MODULE, load());
+    for (CvsChangeList changeList : createChangeLists(10, 500)) {
+      update.append(changeList);
+    }
+    assertTrue(getListsFile().length() > length);
+
+    final CvsCommittedChangesCache.CachedChanges cached = load();
+    assertNotNull(cached);
+    assertEquals(length, getListsFile().length());
+    assertEquals(10, cached.getNextNumber());
+    assertChangeLists(changeLists, readChangeLists(cached));
+  }
+
+  public void testIncompleteListFileDropsEntry() throws IOException {
+    store(null, createChangeLists(0, 10), 10);
+    try (RandomAccessFile lists = new RandomAccessFile(getListsFile(), "rw")) {
+      lists.setLength(lists.length() - 1);
+    }
+
+    assertNull(load());
+    assertEquals("The entry should be deleted", 0, myDirectory.listFiles().length);
+  }
+
+  public void testConcurrentUpdateIsRefused() throws IOException {
+    store(null, createChangeLists(0, 10), 10);
+    final CvsCommittedChangesCache.CachedChanges cached = load();
+
+    final CvsCommittedChangesCache.Update update = myCache.startUpdate(myEnvironment, MODULE, cached);
+    update.append(createChangeList(20, 20));
+    store(cached, createChangeLists(10, 10), 20);
+    update.commit(LOADED_FROM, 20, 21, new ArrayList<>());
+
+    final CvsCommittedChangesCache.CachedChanges reloaded = load();
+    assertEquals(20, reloaded.getNextNumber());
+    assertChangeLists(createChangeLists(0, 20), readChangeLists(reloaded));
+  }
+
+  public void testEntriesOfModulesAreSeparate() throws IOException {
+    store(null, createChangeLists(0, 10), 10);
+
+    assertNull(myCache.load(null, myEnvironment, null, "other"));
+    assertNull(myCache.load(null, createEnvironment(":pserver:user@other:/cvsroot"), null, MODULE));
+    myCache.remove(myEnvironment, MODULE);
+    assertNull(load());
+  }
+
+  private void store(CvsCommittedChangesCache.CachedChanges cached, List<CvsChangeList> changeLists, long nextNumber,
+                     CvsChangeList... recent) {
+    final CvsCommittedChangesCache.Update update = myCache.startUpdate(myEnvironment, MODULE, cached);
+    long lastRevisionTime = 0;
+    for (CvsChangeList changeList : changeLists) {
+      update.append(changeList);
+      lastRevisionTime = Math.max(lastRevisionTime, changeList.getFinishTime());
+    }
+    for (CvsChangeList changeList : recent) {
+      lastRevisionTime = Math.max(lastRevisionTime, changeList.getFinishTime());
+    }
+    update.commit(LOADED_FROM, lastRevisionTime, nextNumber, Arrays.asList(recent));
+  }
+
+  private CvsCommittedChangesCache.CachedChanges load() {
+    return myCache.load(null, myEnvironment, null, MODULE);
+  }
+
+  private List<CvsChangeList> readChangeLists(CvsCommittedChangesCache.CachedChanges cached) throws IOException {
+    final List<CvsChangeList> result = new ArrayList<>();
+    myCache.readChangeLists(null, myEnvironment, null, MODULE, cached, result::add);
+    return result;
+  }
+
+  private File getListsFile() {
+    final File[] files = myDirectory.listFiles((dir, name) -> name.endsWith(".lists"));
+    assertEquals(1, files.length);
+    return files[0];
+  }
+
+  private List<CvsChangeList> createChangeLists(int from, int count) {
+    final List<CvsChangeList> result = new ArrayList<>(count);
+    for (int i = from; i < from + count; i++) {
+      result.add(createChangeList(i, i));
+    }
+    return result;
+  }
+
+  private CvsChangeList createChangeList(long number, long minute) {
+    final long time = LOADED_FROM + minute * 60 * 1000;
+    final String message = "commit " + number;
+    final CvsChangeList result = new CvsChangeList(null, myEnvironment, null, number, message, time, "alice", ROOT_PATH);
+    result.addFileRevision(createRevision("A.java", "1." + (number + 1), "alice", message, time));
+    result.addFileRevision(createRevision("B.java", "1." + (number + 1), "alice", message, time + 1000));
+    return result;
+  }
+
+  private static void assertChangeLists(List<CvsChangeList> expected, List<CvsChangeList> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getNumber(), actual.get(i).getNumber());
+      assertEquals(expected.get(i).getComment(), actual.get(i).getComment());
+      assertEquals(expected.get(i).getCommitDate(), actual.get(i).getCommitDate());
+      assertEquals(expected.get(i).getFinishTime(), actual.get(i).getFinishTime());
+      assertEquals(expected.get(i), actual.get(i));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.cvsSupport2.cvsBrowser;
+
+import com.intellij.cvsSupport2.cvsoperations.cvsContent.DirectoryContent;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RemoteDirectoryCacheTest extends TestCase {
+  private static final long TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+
+  private final List<Runnable> myQueuedPrefetches = new ArrayList<>();
+  private final AtomicInteger myLoadCount = new AtomicInteger();
+  private ExecutorService myExecutor;
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (myExecutor != null) {
+      myExecutor.shutdownNow();
+    }
+    super.tearDown();
+  }
+
+  public void testListingIsCopied() {
+    final RemoteDirectoryCache cache = new RemoteDirectoryCache(myQueuedPrefetches::add, TIME_TO_LIVE);
+    final DirectoryContent content = createContent("a.txt");
+    cache.put("module", content);
+    content.addFile("b.txt");
+
+    final DirectoryContent cached = cache.get("module");
+    assertEquals(Collections.singletonList("a.txt"), cached.getFiles());
+    cached.addFile("c.txt");
+    assertEquals(1, cache.get("module").getTotalSize());
+  }
+
+  public void testExpiredListingIsDropped() throws Exception {
+    final RemoteDirectoryCache cache = new RemoteDirectoryCache(myQueuedPrefetches::add, 50);
+    cache.put("module", createContent("a.txt"));
+    assertNotNull(cache.get("module"));
+
+    Thread.sleep(100);
+    assertNull(cache.get("module"));
+    cache.prefetch("module", this::load);
+    assertEquals("An expired listing is prefetched again", 1, myQueuedPrefetches.size());
+  }
+
+  public void testPrefetchIsNotRepeated() {
+    final RemoteDirectoryCache cache = new RemoteDirectoryCache(myQueuedPrefetches::add, TIME_TO_LIVE);
+    cache.prefetch("module", this::load);
+    cache.prefetch("module", this::load);
+    assertEquals(1, myQueuedPrefetches.size());
+
+    myQueuedPrefetches.get(0).run();
+    assertEquals(1, myLoadCount.get());
+    cache.prefetch("module", this::load);
+    assertEquals("A fresh listing is not prefetched", 1, myQueuedPrefetches.size());
+    assertEquals(Collections.singletonList("loaded.txt"), cache.get("module").getFiles());
+  }
+
+  public void testQueuedPrefetchIsTakenOverByGet() {
+    final RemoteDirectoryCache cache = new RemoteDirectoryCache(myQueuedPrefetches::add, TIME_TO_LIVE);
+    cache.prefetch("module", this::load);
+
+    assertNull("The caller loads a listing whose prefetch has not started", cache.get("module"));
+    myQueuedPrefetches.get(0).run();
+    assertEquals(0, myLoadCount.get());
+  }
+
+  public void testGetWaitsForRunningPrefetch() throws Exception {
+    myExecutor = Executors.newCachedThreadPool();
+    final RemoteDirectoryCache cache = new RemoteDirectoryCache(myExecutor, TIME_TO_LIVE);
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    cache.prefetch("module", () -> {
+      loading.countDown();
+      try {
+        release.await();
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return load();
+    });
+    assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+    final Future<DirectoryContent> result = myExecutor.submit(() -> cache.get("module"));
+    try {
+      result.get(100, TimeUnit.MILLISECONDS);
+      fail("The listing should be taken from the prefetch");
+    }
+    catch (TimeoutException ignored) {
+    }
+    release.countDown();
+    assertEquals(Collections.singletonList("loaded.txt"), result.get(10, TimeUnit.SECONDS).getFiles());
+    assertEquals(1, myLoadCount.get());
+  }
+
+  public void testFailedPrefetchIsNotCached() {
+    final RemoteDirectoryCache cache = new RemoteDirectoryCache(myQueuedPrefetches::add, TIME_TO_LIVE);
+    cache.prefetch("module", () -> null);
+    myQueuedPrefetches.get(0).run();
+
+    assertNull(cache.get("module"));
+    cache.prefetch("module", this::load);
+    assertEquals(2, myQueuedPrefetches.size());
+  }
+
+  private DirectoryContent load() {
+    myLoadCount.incrementAndGet();
+    return createContent("loaded.txt");
+  }
+
+  private static DirectoryContent createContent(String file) {
+    final DirectoryContent content = new DirectoryContent();
+    content.addFile(file);
+    return content;
+  }
+}
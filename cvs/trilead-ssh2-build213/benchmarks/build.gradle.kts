@@ -0,0 +1,28 @@
+plugins {
+    id("java")
+}
+
+sourceSets {
+    main {
+        java.srcDirs(project.files("src", "../src"))
+    }
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation("org.openjdk.jmh:jmh-core:1.37")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+tasks {
+    register<JavaExec>("jmh") {
+        description = "Runs the trilead-ssh2 benchmarks, pass JMH options with -PjmhArgs=\"...\""
+        classpath = sourceSets["main"].runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        args = listOf("-prof", "gc", "-rf", "json", "-rff", layout.buildDirectory.file("jmh-result.json").get().asFile.path) +
+            (project.findProperty("jmhArgs")?.toString()?.split(" ")?.filter { it.isNotEmpty() } ?: emptyList())
+    }
+}
@@ -0,0 +1 @@
+rootProject.name = "trilead-ssh2-benchmarks"
@@ -0,0 +1,89 @@
+package com.trilead.ssh2.benchmark;
+
+import com.trilead.ssh2.crypto.cipher.BlockCipher;
+import com.trilead.ssh2.crypto.cipher.BlockCipherFactory;
+import com.trilead.ssh2.crypto.cipher.MultiBlockCipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encryption throughput of the ciphers of {@link BlockCipherFactory} in CBC and CTR mode,
+ * for the pure-Java implementation and the JCE-backed one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockCipherBenchmark
+{
+	@Param({ "aes128-ctr", "aes256-ctr", "aes128-cbc", "blowfish-ctr", "blowfish-cbc", "3des-ctr", "3des-cbc" })
+	public String cipher;
+
+	@Param({ "false", "true" })
+	public boolean jce;
+
+	@Param({ "32768" })
+	public int packetSize;
+
+	BlockCipher bc;
+	int blockSize;
+	byte[] buffer;
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(0);
+
+		byte[] key = new byte[BlockCipherFactory.getKeySize(cipher)];
+		byte[] iv = new byte[BlockCipherFactory.getBlockSize(cipher)];
+		rnd.nextBytes(key);
+		rnd.nextBytes(iv);
+
+		bc = BlockCipherFactory.createCipher(cipher, true, key, iv, jce);
+		blockSize = bc.getBlockSize();
+
+		buffer = new byte[packetSize - (packetSize % blockSize)];
+		rnd.nextBytes(buffer);
+	}
+
+	@Benchmark
+	public byte[] encryptBlockByBlock(ByteCounter counter)
+	{
+		for (int i = 0; i < buffer.length; i += blockSize)
+			bc.transformBlock(buffer, i, buffer, i);
+
+		counter.add(buffer.length);
+		return buffer;
+	}
+
+	@Benchmark
+	public byte[] encryptPacket(ByteCounter counter)
+	{
+		if (bc instanceof MultiBlockCipher)
+		{
+			((MultiBlockCipher) bc).transformBlocks(buffer, 0, buffer, 0, buffer.length);
+		}
+		else
+		{
+			for (int i = 0; i < buffer.length; i += blockSize)
+				bc.transformBlock(buffer, i, buffer, i);
+		}
+
+		counter.add(buffer.length);
+		return buffer;
+	}
+}
@@ -0,0 +1,32 @@
+package com.trilead.ssh2.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the payload processed by a benchmark in megabytes (2^20 bytes). JMH
+ * reports the counter as a rate, so with a time unit of seconds the "megabytes"
+ * row is the throughput in MB/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounter
+{
+	private static final double MEGABYTE = 1024 * 1024;
+
+	public double megabytes;
+
+	@Setup(Level.Iteration)
+	public void clean()
+	{
+		megabytes = 0;
+	}
+
+	void add(int bytes)
+	{
+		megabytes += bytes / MEGABYTE;
+	}
+}
@@ -0,0 +1,69 @@
+package com.trilead.ssh2.benchmark;
+
+import com.trilead.ssh2.crypto.digest.Digest;
+import com.trilead.ssh2.crypto.digest.MD5;
+import com.trilead.ssh2.crypto.digest.SHA1;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link SHA1} and {@link MD5} digests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigestBenchmark
+{
+	@Param({ "32768" })
+	public int packetSize;
+
+	byte[] data;
+	byte[] out = new byte[20];
+
+	Digest sha1 = new SHA1();
+	Digest md5 = new MD5();
+
+	@Setup
+	public void setup()
+	{
+		data = new byte[packetSize];
+		new Random(0).nextBytes(data);
+	}
+
+	@Benchmark
+	public byte[] sha1(ByteCounter counter)
+	{
+		sha1.reset();
+		sha1.update(data, 0, data.length);
+		sha1.digest(out, 0);
+
+		counter.add(data.length);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] md5(ByteCounter counter)
+	{
+		md5.reset();
+		md5.update(data, 0, data.length);
+		md5.digest(out, 0);
+
+		counter.add(data.length);
+		return out;
+	}
+}
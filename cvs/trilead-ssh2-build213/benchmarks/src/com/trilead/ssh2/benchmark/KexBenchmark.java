@@ -0,0 +1,111 @@
+package com.trilead.ssh2.benchmark;
+
+import com.trilead.ssh2.crypto.dh.DhExchange;
+import com.trilead.ssh2.crypto.dh.EcDhExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the key exchange computations per algorithm. "client" is the work of the
+ * client for one handshake (ephemeral key, shared secret and exchange hash H) against
+ * a fixed server key; "handshake" adds the server's share of the work, as if both
+ * ends ran in this JVM. diffie-hellman-group-exchange-sha1 costs about the same as
+ * group14 for a 2048 bit group, plus one more round trip that is not measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KexBenchmark
+{
+	@Param({ "curve25519-sha256", "ecdh-sha2-nistp256", "diffie-hellman-group14-sha1", "diffie-hellman-group1-sha1" })
+	public String kex;
+
+	final SecureRandom rnd = new SecureRandom();
+
+	final byte[] clientVersion = "SSH-2.0-TrileadSSH2Java_213".getBytes();
+	final byte[] serverVersion = "SSH-2.0-OpenSSH_8.0".getBytes();
+	final byte[] clientKexInit = new byte[600];
+	final byte[] serverKexInit = new byte[1000];
+	final byte[] hostKey = new byte[279];
+
+	int dhGroup;
+
+	DhExchange dhServer;
+	EcDhExchange ecdhServer;
+
+	@Setup
+	public void setup()
+	{
+		rnd.nextBytes(clientKexInit);
+		rnd.nextBytes(serverKexInit);
+		rnd.nextBytes(hostKey);
+
+		if (EcDhExchange.isKexAlgorithm(kex))
+		{
+			ecdhServer = new EcDhExchange();
+			ecdhServer.init(kex, rnd);
+		}
+		else
+		{
+			dhGroup = kex.equals("diffie-hellman-group1-sha1") ? 1 : 14;
+			dhServer = new DhExchange();
+			dhServer.init(dhGroup, rnd);
+		}
+	}
+
+	@Benchmark
+	public byte[] client() throws UnsupportedEncodingException
+	{
+		if (ecdhServer != null)
+		{
+			EcDhExchange client = new EcDhExchange();
+			client.init(kex, rnd);
+			client.setF(ecdhServer.getE());
+			return client.calculateH(clientVersion, serverVersion, clientKexInit, serverKexInit, hostKey);
+		}
+
+		DhExchange client = new DhExchange();
+		client.init(dhGroup, rnd);
+		client.setF(dhServer.getE());
+		return client.calculateH(clientVersion, serverVersion, clientKexInit, serverKexInit, hostKey);
+	}
+
+	@Benchmark
+	public byte[] handshake() throws UnsupportedEncodingException
+	{
+		if (ecdhServer != null)
+		{
+			EcDhExchange client = new EcDhExchange();
+			EcDhExchange server = new EcDhExchange();
+			client.init(kex, rnd);
+			server.init(kex, rnd);
+			server.setF(client.getE());
+			client.setF(server.getE());
+			return client.calculateH(clientVersion, serverVersion, clientKexInit, serverKexInit, hostKey);
+		}
+
+		DhExchange client = new DhExchange();
+		DhExchange server = new DhExchange();
+		client.init(dhGroup, rnd);
+		server.init(dhGroup, rnd);
+		server.setF(client.getE());
+		client.setF(server.getE());
+		return client.calculateH(clientVersion, serverVersion, clientKexInit, serverKexInit, hostKey);
+	}
+}
@@ -0,0 +1,75 @@
+package com.trilead.ssh2.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A single-threaded in-memory pipe: whatever is written to {@link #getOutputStream()}
+ * can be read back from {@link #getInputStream()}. The buffer is rewound whenever
+ * it has been drained completely, so a send/receive loop does not allocate.
+ */
+class LoopbackPipe
+{
+	byte[] buffer = new byte[64 * 1024];
+	int readpos = 0;
+	int writepos = 0;
+
+	private final InputStream is = new InputStream()
+	{
+		public int read() throws IOException
+		{
+			if (readpos >= writepos)
+				return -1;
+			return buffer[readpos++] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int avail = writepos - readpos;
+
+			if (avail <= 0)
+				return -1;
+
+			int copy = (len > avail) ? avail : len;
+			System.arraycopy(buffer, readpos, b, off, copy);
+			readpos += copy;
+
+			if (readpos == writepos)
+				readpos = writepos = 0;
+
+			return copy;
+		}
+	};
+
+	private final OutputStream os = new OutputStream()
+	{
+		public void write(int b) throws IOException
+		{
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (writepos + len > buffer.length)
+			{
+				byte[] tmp = new byte[Math.max(buffer.length * 2, writepos + len)];
+				System.arraycopy(buffer, 0, tmp, 0, writepos);
+				buffer = tmp;
+			}
+
+			System.arraycopy(b, off, buffer, writepos, len);
+			writepos += len;
+		}
+	};
+
+	public InputStream getInputStream()
+	{
+		return is;
+	}
+
+	public OutputStream getOutputStream()
+	{
+		return os;
+	}
+}
@@ -0,0 +1,70 @@
+package com.trilead.ssh2.benchmark;
+
+import com.trilead.ssh2.crypto.digest.MAC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the packet {@link MAC}s, pure-Java HMAC and JCE-backed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MacBenchmark
+{
+	@Param({ "hmac-sha1", "hmac-sha1-96", "hmac-md5", "hmac-md5-96" })
+	public String macType;
+
+	@Param({ "false", "true" })
+	public boolean jce;
+
+	@Param({ "32768" })
+	public int packetSize;
+
+	byte[] data;
+	byte[] out = new byte[20];
+
+	MAC mac;
+
+	int seq = 0;
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(0);
+
+		data = new byte[packetSize];
+		rnd.nextBytes(data);
+
+		byte[] key = new byte[MAC.getKeyLen(macType)];
+		rnd.nextBytes(key);
+
+		mac = new MAC(macType, key, jce);
+	}
+
+	@Benchmark
+	public byte[] mac(ByteCounter counter)
+	{
+		mac.initMac(seq++);
+		mac.update(data, 0, data.length);
+		mac.getMac(out, 0);
+
+		counter.add(data.length);
+		return out;
+	}
+}
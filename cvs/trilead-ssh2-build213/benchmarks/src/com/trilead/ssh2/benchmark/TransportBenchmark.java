@@ -0,0 +1,112 @@
+package com.trilead.ssh2.benchmark;
+
+import com.trilead.ssh2.crypto.cipher.BlockCipherFactory;
+import com.trilead.ssh2.crypto.digest.MAC;
+import com.trilead.ssh2.packets.Packets;
+import com.trilead.ssh2.transport.TransportConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end packet layer: a {@link TransportConnection} frames, pads, MACs and encrypts
+ * SSH_MSG_CHANNEL_DATA packets into an in-memory pipe, and a second one decrypts and
+ * verifies them. "copy" builds a fresh message array per packet (the old
+ * ChannelManager.sendData path), "pooled" uses the reusable packet buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark
+{
+	@Param({ "aes128-ctr", "aes128-cbc", "3des-cbc" })
+	public String cipher;
+
+	@Param({ "hmac-sha1" })
+	public String macType;
+
+	@Param({ "false", "true" })
+	public boolean jce;
+
+	@Param({ "copy", "pooled" })
+	public String sendPath;
+
+	@Param({ "32768" })
+	public int payloadSize;
+
+	TransportConnection sender;
+	TransportConnection receiver;
+
+	byte[] header = new byte[9];
+	byte[] data;
+	byte[] receiveBuffer = new byte[35000];
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(0);
+
+		byte[] encKey = new byte[BlockCipherFactory.getKeySize(cipher)];
+		byte[] iv = new byte[BlockCipherFactory.getBlockSize(cipher)];
+		byte[] macKey = new byte[MAC.getKeyLen(macType)];
+		rnd.nextBytes(encKey);
+		rnd.nextBytes(iv);
+		rnd.nextBytes(macKey);
+
+		LoopbackPipe pipe = new LoopbackPipe();
+		SecureRandom srnd = new SecureRandom();
+
+		sender = new TransportConnection(null, pipe.getOutputStream(), srnd);
+		receiver = new TransportConnection(pipe.getInputStream(), null, srnd);
+
+		sender.changeSendCipher(BlockCipherFactory.createCipher(cipher, true, encKey, iv, jce), new MAC(macType,
+				macKey, jce));
+		receiver.changeRecvCipher(BlockCipherFactory.createCipher(cipher, false, encKey, iv, jce), new MAC(macType,
+				macKey, jce));
+
+		data = new byte[payloadSize];
+		rnd.nextBytes(data);
+
+		header[0] = Packets.SSH_MSG_CHANNEL_DATA;
+		header[8] = (byte) payloadSize;
+		header[7] = (byte) (payloadSize >> 8);
+		header[6] = (byte) (payloadSize >> 16);
+	}
+
+	@Benchmark
+	public int sendReceive(ByteCounter counter) throws IOException
+	{
+		if ("pooled".equals(sendPath))
+		{
+			sender.sendMessage(header, header.length, data, 0, data.length);
+		}
+		else
+		{
+			byte[] msg = new byte[header.length + data.length];
+			System.arraycopy(header, 0, msg, 0, header.length);
+			System.arraycopy(data, 0, msg, header.length, data.length);
+			sender.sendMessage(msg);
+		}
+
+		int len = receiver.receiveMessage(receiveBuffer, 0, receiveBuffer.length);
+
+		counter.add(data.length);
+		return len;
+	}
+}
@@ -0,0 +1,89 @@
+package com.trilead.ssh2.benchmark;
+
+import com.trilead.ssh2.packets.TypesReader;
+import com.trilead.ssh2.packets.TypesWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of SSH wire types with {@link TypesWriter} and {@link TypesReader},
+ * using a message shaped like SSH_MSG_CHANNEL_REQUEST / SSH_MSG_KEXDH_REPLY.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypesBenchmark
+{
+	static final String[] NAME_LIST = { "aes128-ctr", "aes256-ctr", "aes128-cbc", "3des-cbc" };
+
+	BigInteger mpint;
+	byte[] blob;
+	byte[] encoded;
+
+	@Setup
+	public void setup()
+	{
+		Random rnd = new Random(0);
+
+		mpint = new BigInteger(2048, rnd);
+		blob = new byte[256];
+		rnd.nextBytes(blob);
+
+		encoded = write();
+	}
+
+	private byte[] write()
+	{
+		TypesWriter tw = new TypesWriter();
+		tw.writeByte(98);
+		tw.writeUINT32(42);
+		tw.writeString("exec");
+		tw.writeBoolean(true);
+		tw.writeUINT64(1234567890123L);
+		tw.writeMPInt(mpint);
+		tw.writeString(blob, 0, blob.length);
+		tw.writeNameList(NAME_LIST);
+		return tw.getBytes();
+	}
+
+	@Benchmark
+	public byte[] encode(ByteCounter counter)
+	{
+		byte[] msg = write();
+		counter.add(msg.length);
+		return msg;
+	}
+
+	@Benchmark
+	public Object decode(ByteCounter counter) throws IOException
+	{
+		TypesReader tr = new TypesReader(encoded);
+		tr.readByte();
+		tr.readUINT32();
+		tr.readString();
+		tr.readBoolean();
+		tr.readUINT64();
+		BigInteger b = tr.readMPINT();
+		tr.readByteString();
+		tr.readNameList();
+
+		counter.add(encoded.length);
+		return b;
+	}
+}
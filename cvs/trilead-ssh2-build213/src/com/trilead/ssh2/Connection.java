@@ -3,6 +3,7 @@ package com.trilead.ssh2;
 
 import com.trilead.ssh2.auth.AuthenticationManager;
 import com.trilead.ssh2.channel.ChannelManager;
+import com.trilead.ssh2.compression.CompressionFactory;
 import com.trilead.ssh2.crypto.CryptoWishList;
 import com.trilead.ssh2.crypto.cipher.BlockCipherFactory;
 import com.trilead.ssh2.crypto.digest.MAC;
@@ -10,6 +11,7 @@ import com.trilead.ssh2.log.Logger;
 import com.trilead.ssh2.packets.PacketIgnore;
 import com.trilead.ssh2.transport.ClientServerHello;
 import com.trilead.ssh2.transport.KexManager;
+import com.trilead.ssh2.transport.SelectorPool;
 import com.trilead.ssh2.transport.TransportManager;
 import com.trilead.ssh2.util.TimeoutService;
 import com.trilead.ssh2.util.TimeoutService.TimeoutToken;
@@ -106,6 +108,8 @@ public class Connection
 
 	private ProxyData proxyData = null;
 
+	private SelectorPool selectorPool = null;
+
 	private Vector connectionMonitors = new Vector();
 
 	/**
@@ -729,7 +733,8 @@ public class Connection
 
 			try
 			{
-				tm.initialize(cryptoWishList, verifier, dhgexpara, connectTimeout, getOrCreateSecureRND(), proxyData);
+				tm.initialize(cryptoWishList, verifier, dhgexpara, connectTimeout, getOrCreateSecureRND(), proxyData,
+						selectorPool);
 			}
 			catch (SocketTimeoutException se)
 			{
@@ -962,6 +967,93 @@ public class Connection
 		return tm.getConnectionInfo(1);
 	}
 
+	/**
+	 * Returns the number of SSH_MSG_CHANNEL_DATA packets that were framed and
+	 * encrypted in the connection's reusable packet buffer (each one is a
+	 * per-packet buffer allocation that was avoided).
+	 * 
+	 * @return the number of pooled packets sent so far.
+	 */
+	public synchronized long getPooledPacketCount()
+	{
+		if (tm == null)
+			throw new IllegalStateException(
+					"Cannot get statistics of connection, you need to establish a connection first.");
+		return tm.getPooledPacketCount();
+	}
+
+	/**
+	 * Returns the number of payload bytes that were sent through the
+	 * connection's reusable packet buffer.
+	 * 
+	 * @return the number of pooled payload bytes sent so far.
+	 */
+	public synchronized long getPooledPayloadBytes()
+	{
+		if (tm == null)
+			throw new IllegalStateException(
+					"Cannot get statistics of connection, you need to establish a connection first.");
+		return tm.getPooledPayloadBytes();
+	}
+
+	/**
+	 * Returns the number of payload bytes that were sent so far, before
+	 * compression. Compare with {@link #getCompressedBytesSent()} to see
+	 * how well the compression works.
+	 * 
+	 * @return the number of uncompressed payload bytes sent.
+	 */
+	public synchronized long getUncompressedBytesSent()
+	{
+		if (tm == null)
+			throw new IllegalStateException(
+					"Cannot get statistics of connection, you need to establish a connection first.");
+		return tm.getUncompressedBytesSent();
+	}
+
+	/**
+	 * Returns the number of payload bytes that were sent so far, after
+	 * compression (equal to {@link #getUncompressedBytesSent()} as long as no
+	 * compression is active).
+	 * 
+	 * @return the number of compressed payload bytes sent.
+	 */
+	public synchronized long getCompressedBytesSent()
+	{
+		if (tm == null)
+			throw new IllegalStateException(
+					"Cannot get statistics of connection, you need to establish a connection first.");
+		return tm.getCompressedBytesSent();
+	}
+
+	/**
+	 * Returns the number of payload bytes that were received so far, after
+	 * decompression.
+	 * 
+	 * @return the number of uncompressed payload bytes received.
+	 */
+	public synchronized long getUncompressedBytesReceived()
+	{
+		if (tm == null)
+			throw new IllegalStateException(
+					"Cannot get statistics of connection, you need to establish a connection first.");
+		return tm.getUncompressedBytesReceived();
+	}
+
+	/**
+	 * Returns the number of payload bytes that were received so far, as
+	 * they were sent over the wire.
+	 * 
+	 * @return the number of compressed payload bytes received.
+	 */
+	public synchronized long getCompressedBytesReceived()
+	{
+		if (tm == null)
+			throw new IllegalStateException(
+					"Cannot get statistics of connection, you need to establish a connection first.");
+		return tm.getCompressedBytesReceived();
+	}
+
 	/**
 	 * After a successful connect, one has to authenticate oneself. This method
 	 * can be used to tell which authentication methods are supported by the
@@ -1095,6 +1187,30 @@ public class Connection
 		return new Session(cm, getOrCreateSecureRND());
 	}
 
+	/**
+	 * Open a new {@link Session} on this connection with a receive window of
+	 * the given size. The window limits how much data the server may send
+	 * ahead of the reader of the session's stdout/stderr streams; the default
+	 * (used by {@link #openSession()}) is 30000 bytes, which throttles bulk
+	 * transfers over links with a high bandwidth-delay product. Windows of
+	 * several megabytes are fine: the receive buffers only grow as far as they
+	 * are actually filled.
+	 * 
+	 * @param windowSize the receive window in bytes (1 to 64 MB).
+	 * @return A {@link Session} object.
+	 * @throws IOException
+	 */
+	public synchronized Session openSession(int windowSize) throws IOException
+	{
+		if (tm == null)
+			throw new IllegalStateException("Cannot open session, you need to establish a connection first.");
+
+		if (!authenticated)
+			throw new IllegalStateException("Cannot open session, connection is not authenticated.");
+
+		return new Session(cm, getOrCreateSecureRND(), windowSize);
+	}
+
 	/**
 	 * Send an SSH_MSG_IGNORE packet. This method will generate a random data
 	 * attribute (length between 0 (invlusive) and 16 (exclusive) bytes,
@@ -1302,6 +1418,76 @@ public class Connection
 			tm.setTcpNoDelay(enable);
 	}
 
+	/**
+	 * Select the implementation of the ciphers and MACs used for the following key
+	 * exchange operations. By default, the pure-Java implementations of this library
+	 * are used. If enabled, ciphers and MACs are taken from the installed JCE providers
+	 * (<code>javax.crypto</code>), which allows the JVM to use hardware acceleration
+	 * (e.g., AES-NI) and to process whole packets per call. Algorithms the JCE cannot
+	 * supply fall back to the pure-Java implementation.
+	 * <p>
+	 * It only makes sense to call this method before calling {@link #connect() connect()}
+	 * or {@link #forceKeyExchange() forceKeyExchange()}.
+	 * 
+	 * @param enable <code>true</code> to use the JCE implementations.
+	 */
+	public synchronized void setUseJceCrypto(boolean enable)
+	{
+		cryptoWishList.useJceCrypto = enable;
+	}
+
+	/**
+	 * Enable or disable compression of the packet payloads. If enabled, the
+	 * library proposes "zlib@openssh.com" (compression starts once the user has
+	 * been authenticated), "zlib" and "none" for both directions, and the server
+	 * picks one. By default, compression is disabled. Compression mostly pays
+	 * off on slow links; on fast networks it may cost more CPU time than it saves.
+	 * <p>
+	 * It only makes sense to call this method before calling {@link #connect() connect()}
+	 * or {@link #forceKeyExchange() forceKeyExchange()}.
+	 * 
+	 * @param enable <code>true</code> to negotiate compression.
+	 */
+	public synchronized void setCompression(boolean enable)
+	{
+		String[] algos = enable ? CompressionFactory.getDefaultCompressorList() : CompressionFactory
+				.getNoCompressorList();
+
+		cryptoWishList.c2s_comp_algos = algos;
+		cryptoWishList.s2c_comp_algos = algos;
+	}
+
+	/**
+	 * Set the zlib level (1 = fastest, 9 = best compression) used for the data
+	 * sent to the server. The default is 6. Only has an effect if compression
+	 * is enabled with {@link #setCompression(boolean)}, and it only applies to
+	 * the compression stream started by the next key exchange.
+	 * 
+	 * @param level the compression level, between 1 and 9.
+	 */
+	public synchronized void setCompressionLevel(int level)
+	{
+		CompressionFactory.checkCompressionLevel(level);
+
+		cryptoWishList.compressionLevel = level;
+	}
+
+	/**
+	 * Let the given pool receive and dispatch the packets of this connection (non-blocking
+	 * mode), instead of starting a dedicated receive thread. Many connections can share
+	 * one pool, e.g., {@link SelectorPool#getDefault()}. Sending still happens on the
+	 * calling threads. It only makes sense to call this method before calling the
+	 * {@link #connect() connect()} method.
+	 * <p>
+	 * Connections created through a {@link SelfConnectionProxyData} always use a receive thread.
+	 * 
+	 * @param pool the pool to use, or <code>null</code> for a receive thread (the default).
+	 */
+	public synchronized void setSelectorPool(SelectorPool pool)
+	{
+		this.selectorPool = pool;
+	}
+
 	/**
 	 * Used to tell the library that the connection shall be established through
 	 * a proxy server. It only makes sense to call this method before calling
@@ -36,6 +36,17 @@ public class ConnectionInfo
 	 */
 	public String serverToClientMACAlgorithm;
 
+	/**
+	 * The currently used compression algorithm for packets from the client to
+	 * the server ("none", "zlib" or "zlib@openssh.com").
+	 */
+	public String clientToServerCompressionAlgorithm;
+	/**
+	 * The currently used compression algorithm for packets from the server to
+	 * the client.
+	 */
+	public String serverToClientCompressionAlgorithm;
+
 	/**
 	 * The type of the server host key (currently either "ssh-dss" or
 	 * "ssh-rsa").
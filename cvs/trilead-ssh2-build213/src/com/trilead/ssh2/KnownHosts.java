@@ -8,14 +8,19 @@ import com.trilead.ssh2.crypto.digest.MD5;
 import com.trilead.ssh2.crypto.digest.SHA1;
 import com.trilead.ssh2.signature.DSAPublicKey;
 import com.trilead.ssh2.signature.DSASHA1Verify;
+import com.trilead.ssh2.signature.ECDSAPublicKey;
+import com.trilead.ssh2.signature.ECDSASHA2Verify;
 import com.trilead.ssh2.signature.RSAPublicKey;
 import com.trilead.ssh2.signature.RSASHA1Verify;
+import com.trilead.ssh2.transport.KexManager;
 
 import java.io.*;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.SecureRandom;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Vector;
 
@@ -31,6 +36,11 @@ import java.util.Vector;
  * <p>
  * It is a thread safe implementation, therefore, you need only to instantiate one
  * <code>KnownHosts</code> for your whole application.
+ * <p>
+ * Lookups do not scan the whole database: when entries are added, their hostname
+ * patterns are compiled and indexed (plain hostnames in a hash map, hashed
+ * <code>|1|</code> entries in buckets per salt, wildcard patterns in a separate list),
+ * so only a handful of candidate entries have to be checked per lookup.
  * 
  * @author Christian Plattner, plattner@trilead.com
  * @version $Id: KnownHosts.java,v 1.2 2008/04/01 12:38:09 cplattne Exp $
@@ -42,20 +52,154 @@ public class KnownHosts
 	public static final int HOSTKEY_IS_NEW = 1;
 	public static final int HOSTKEY_HAS_CHANGED = 2;
 
+	/**
+	 * A compiled hostname pattern of a known_hosts line.
+	 */
+	private static final class HostPattern
+	{
+		static final int INVALID = 0;
+		static final int EXACT = 1;
+		static final int WILDCARD = 2;
+		static final int HASHED = 3;
+
+		int type = INVALID;
+		boolean negate = false;
+
+		String hostname; /* EXACT: lower case */
+		char[] wildcard; /* WILDCARD: lower case */
+		String saltKey; /* HASHED: base64 of salt */
+		byte[] salt; /* HASHED */
+		String hashKey; /* HASHED: base64 of hash */
+
+		HostPattern(String pattern)
+		{
+			if (pattern == null)
+				return;
+
+			/* In contrast to OpenSSH we also allow negated hash entries (as well as hashed
+			 * entries in lines with multiple entries).
+			 */
+
+			if ((pattern.length() > 0) && (pattern.charAt(0) == '!'))
+			{
+				pattern = pattern.substring(1);
+				negate = true;
+			}
+
+			if (pattern.length() == 0)
+				return;
+
+			if (pattern.charAt(0) == '|')
+			{
+				compileHashed(pattern);
+				return;
+			}
+
+			pattern = pattern.toLowerCase();
+
+			if ((pattern.indexOf('?') != -1) || (pattern.indexOf('*') != -1))
+			{
+				wildcard = pattern.toCharArray();
+				type = WILDCARD;
+			}
+			else
+			{
+				hostname = pattern;
+				type = EXACT;
+			}
+		}
+
+		private void compileHashed(String entry)
+		{
+			if (entry.startsWith("|1|") == false)
+				return;
+
+			int delim_idx = entry.indexOf('|', 3);
+
+			if (delim_idx == -1)
+				return;
+
+			byte[] hash;
+
+			try
+			{
+				salt = Base64.decode(entry.substring(3, delim_idx).toCharArray());
+				hash = Base64.decode(entry.substring(delim_idx + 1).toCharArray());
+			}
+			catch (IOException e)
+			{
+				return;
+			}
+
+			if ((salt.length != 20) || (hash.length != 20))
+				return;
+
+			/* Re-encode, so that the keys are canonical */
+
+			saltKey = new String(Base64.encode(salt));
+			hashKey = new String(Base64.encode(hash));
+			type = HASHED;
+		}
+	}
+
 	private class KnownHostsEntry
 	{
 		String[] patterns;
+		HostPattern[] compiled;
 		Object key;
+		boolean fromBackingFile;
 
 		KnownHostsEntry(String[] patterns, Object key)
 		{
 			this.patterns = patterns;
 			this.key = key;
+
+			compiled = new HostPattern[patterns.length];
+
+			for (int i = 0; i < patterns.length; i++)
+				compiled[i] = new HostPattern(patterns[i]);
 		}
 	}
 
+	/* All entries, in insertion order. All fields below are protected by the lock on "publicKeys". */
+
 	private LinkedList publicKeys = new LinkedList();
 
+	/* lower case hostname (String) -> LinkedList of KnownHostsEntry */
+
+	private HashMap exactIndex = new HashMap();
+
+	/* base64 salt (String) -> HashedBucket */
+
+	private HashMap hashedIndex = new HashMap();
+
+	/* KnownHostsEntry objects with at least one positive wildcard pattern */
+
+	private LinkedList wildcardEntries = new LinkedList();
+
+	/* lower case hostname (String) -> KnownHostsEntry[] of matching entries */
+
+	private HashMap lookupCache = new HashMap();
+
+	private static final int LOOKUP_CACHE_SIZE = 256;
+
+	private File backingFile = null;
+	private long backingFileModified = 0;
+	private long backingFileLength = 0;
+
+	private static final class HashedBucket
+	{
+		final byte[] salt;
+
+		/* base64 hash (String) -> LinkedList of KnownHostsEntry */
+		final HashMap entries = new HashMap();
+
+		HashedBucket(byte[] salt)
+		{
+			this.salt = salt;
+		}
+	}
+
 	public KnownHosts()
 	{
 	}
@@ -70,6 +214,157 @@ public class KnownHosts
 		initialize(knownHosts);
 	}
 
+	/**
+	 * Loads a known_hosts file and watches it for changes: whenever its size or
+	 * modification time differs from the last load, the entries that came from
+	 * the file are replaced with its current contents before the next lookup.
+	 * Entries added with {@link #addHostkey(String[], String, byte[])} or from other
+	 * sources are kept.
+	 * 
+	 * @param knownHosts the known_hosts file
+	 * @param reloadOnChange <code>true</code> to re-read the file when it changes
+	 * @throws IOException
+	 */
+	public KnownHosts(File knownHosts, boolean reloadOnChange) throws IOException
+	{
+		if (reloadOnChange == false)
+		{
+			initialize(knownHosts);
+			return;
+		}
+
+		synchronized (publicKeys)
+		{
+			backingFile = knownHosts;
+			reloadBackingFile();
+		}
+	}
+
+	private static void addToIndex(HashMap index, String key, KnownHostsEntry ke)
+	{
+		LinkedList l = (LinkedList) index.get(key);
+
+		if (l == null)
+		{
+			l = new LinkedList();
+			index.put(key, l);
+		}
+
+		l.add(ke);
+	}
+
+	private void addEntry(KnownHostsEntry ke)
+	{
+		synchronized (publicKeys)
+		{
+			publicKeys.add(ke);
+			indexEntry(ke);
+			lookupCache.clear();
+		}
+	}
+
+	private void indexEntry(KnownHostsEntry ke)
+	{
+		boolean isWildcard = false;
+
+		for (int i = 0; i < ke.compiled.length; i++)
+		{
+			HostPattern hp = ke.compiled[i];
+
+			/* Negated patterns can only veto a match, they never make an entry a candidate */
+
+			if (hp.negate)
+				continue;
+
+			if (hp.type == HostPattern.EXACT)
+			{
+				addToIndex(exactIndex, hp.hostname, ke);
+			}
+			else if (hp.type == HostPattern.HASHED)
+			{
+				HashedBucket hb = (HashedBucket) hashedIndex.get(hp.saltKey);
+
+				if (hb == null)
+				{
+					hb = new HashedBucket(hp.salt);
+					hashedIndex.put(hp.saltKey, hb);
+				}
+
+				addToIndex(hb.entries, hp.hashKey, ke);
+			}
+			else if ((hp.type == HostPattern.WILDCARD) && (isWildcard == false))
+			{
+				wildcardEntries.add(ke);
+				isWildcard = true;
+			}
+		}
+	}
+
+	private void rebuildIndex()
+	{
+		exactIndex.clear();
+		hashedIndex.clear();
+		wildcardEntries.clear();
+		lookupCache.clear();
+
+		Iterator i = publicKeys.iterator();
+
+		while (i.hasNext())
+			indexEntry((KnownHostsEntry) i.next());
+	}
+
+	/* Must be called while holding the lock on "publicKeys" */
+
+	private void reloadBackingFile() throws IOException
+	{
+		Iterator i = publicKeys.iterator();
+
+		while (i.hasNext())
+		{
+			if (((KnownHostsEntry) i.next()).fromBackingFile)
+				i.remove();
+		}
+
+		backingFile.createNewFile();
+
+		backingFileModified = backingFile.lastModified();
+		backingFileLength = backingFile.length();
+
+		LinkedList loaded = new LinkedList();
+		parse(readFile(backingFile), loaded);
+
+		Iterator j = loaded.iterator();
+
+		while (j.hasNext())
+			((KnownHostsEntry) j.next()).fromBackingFile = true;
+
+		publicKeys.addAll(loaded);
+
+		rebuildIndex();
+	}
+
+	private void checkBackingFile()
+	{
+		synchronized (publicKeys)
+		{
+			if (backingFile == null)
+				return;
+
+			if ((backingFile.lastModified() == backingFileModified) && (backingFile.length() == backingFileLength))
+				return;
+
+			try
+			{
+				reloadBackingFile();
+			}
+			catch (IOException ignore)
+			{
+				/* Keep the entries we have, try again on the next lookup */
+				backingFileModified = 0;
+			}
+		}
+	}
+
 	/**
 	 * Adds a single public key entry to the database. Note: this will NOT add the public key
 	 * to any physical file (e.g., "~/.ssh/known_hosts") - use <code>addHostkeyToFile()</code> for that purpose.
@@ -86,23 +381,29 @@ public class KnownHosts
 		if (hostnames == null)
 			throw new IllegalArgumentException("hostnames may not be null");
 
+		addEntry(createEntry(hostnames, serverHostKeyAlgorithm, serverHostKey));
+	}
+
+	private KnownHostsEntry createEntry(String hostnames[], String serverHostKeyAlgorithm, byte[] serverHostKey)
+			throws IOException
+	{
 		if ("ssh-rsa".equals(serverHostKeyAlgorithm))
 		{
 			RSAPublicKey rpk = RSASHA1Verify.decodeSSHRSAPublicKey(serverHostKey);
 
-			synchronized (publicKeys)
-			{
-				publicKeys.add(new KnownHostsEntry(hostnames, rpk));
-			}
+			return new KnownHostsEntry(hostnames, rpk);
 		}
 		else if ("ssh-dss".equals(serverHostKeyAlgorithm))
 		{
 			DSAPublicKey dpk = DSASHA1Verify.decodeSSHDSAPublicKey(serverHostKey);
 
-			synchronized (publicKeys)
-			{
-				publicKeys.add(new KnownHostsEntry(hostnames, dpk));
-			}
+			return new KnownHostsEntry(hostnames, dpk);
+		}
+		else if (ECDSASHA2Verify.ECDSA_SHA2_NISTP256.equals(serverHostKeyAlgorithm))
+		{
+			ECDSAPublicKey epk = ECDSASHA2Verify.decodeSSHECDSAPublicKey(serverHostKey);
+
+			return new KnownHostsEntry(hostnames, epk);
 		}
 		else
 			throw new IOException("Unknwon host key type (" + serverHostKeyAlgorithm + ")");
@@ -179,44 +480,73 @@ public class KnownHosts
 		return dig;
 	}
 
-	private final boolean checkHashed(String entry, String hostname)
+	private final boolean checkHashed(HostPattern hp, String hostname)
+	{
+		byte[] dig = hmacSha1Hash(hp.salt, hostname);
+
+		return hp.hashKey.equals(new String(Base64.encode(dig)));
+	}
+
+	/**
+	 * Finds all entries whose patterns match the given hostname. Uses the indexes
+	 * to find candidates, which are then checked against all their patterns
+	 * (including negated ones).
+	 * 
+	 * Must be called while holding the lock on "publicKeys".
+	 */
+	private KnownHostsEntry[] findEntries(String hostname)
 	{
-		if (entry.startsWith("|1|") == false)
-			return false;
+		hostname = hostname.toLowerCase();
 
-		int delim_idx = entry.indexOf('|', 3);
+		KnownHostsEntry[] cached = (KnownHostsEntry[]) lookupCache.get(hostname);
 
-		if (delim_idx == -1)
-			return false;
+		if (cached != null)
+			return cached;
 
-		String salt_base64 = entry.substring(3, delim_idx);
-		String hash_base64 = entry.substring(delim_idx + 1);
+		LinkedHashSet candidates = new LinkedHashSet();
 
-		byte[] salt = null;
-		byte[] hash = null;
+		LinkedList l = (LinkedList) exactIndex.get(hostname);
 
-		try
+		if (l != null)
+			candidates.addAll(l);
+
+		Iterator i = hashedIndex.values().iterator();
+
+		while (i.hasNext())
 		{
-			salt = Base64.decode(salt_base64.toCharArray());
-			hash = Base64.decode(hash_base64.toCharArray());
+			HashedBucket hb = (HashedBucket) i.next();
+
+			String hashKey = new String(Base64.encode(hmacSha1Hash(hb.salt, hostname)));
+
+			l = (LinkedList) hb.entries.get(hashKey);
+
+			if (l != null)
+				candidates.addAll(l);
 		}
-		catch (IOException e)
+
+		candidates.addAll(wildcardEntries);
+
+		Vector matches = new Vector();
+
+		i = candidates.iterator();
+
+		while (i.hasNext())
 		{
-			return false;
-		}
+			KnownHostsEntry ke = (KnownHostsEntry) i.next();
 
-		SHA1 sha1 = new SHA1();
+			if (hostnameMatches(ke.compiled, hostname))
+				matches.addElement(ke);
+		}
 
-		if (salt.length != sha1.getDigestLength())
-			return false;
+		KnownHostsEntry[] result = new KnownHostsEntry[matches.size()];
+		matches.copyInto(result);
 
-		byte[] dig = hmacSha1Hash(salt, hostname);
+		if (lookupCache.size() >= LOOKUP_CACHE_SIZE)
+			lookupCache.clear();
 
-		for (int i = 0; i < dig.length; i++)
-			if (dig[i] != hash[i])
-				return false;
+		lookupCache.put(hostname, result);
 
-		return true;
+		return result;
 	}
 
 	private int checkKey(String remoteHostname, Object remoteKey)
@@ -225,14 +555,11 @@ public class KnownHosts
 
 		synchronized (publicKeys)
 		{
-			Iterator i = publicKeys.iterator();
-			
-			while (i.hasNext())
-			{
-				KnownHostsEntry ke = (KnownHostsEntry) i.next();
+			KnownHostsEntry[] entries = findEntries(remoteHostname);
 
-				if (hostnameMatches(ke.patterns, remoteHostname) == false)
-					continue;
+			for (int i = 0; i < entries.length; i++)
+			{
+				KnownHostsEntry ke = entries[i];
 
 				boolean res = matchKeys(ke.key, remoteKey);
 
@@ -251,17 +578,10 @@ public class KnownHosts
 
 		synchronized (publicKeys)
 		{
-			Iterator i = publicKeys.iterator();
-
-			while (i.hasNext())
-			{
-				KnownHostsEntry ke = (KnownHostsEntry) i.next();
+			KnownHostsEntry[] entries = findEntries(hostname);
 
-				if (hostnameMatches(ke.patterns, hostname) == false)
-					continue;
-
-				keys.addElement(ke.key);
-			}
+			for (int i = 0; i < entries.length; i++)
+				keys.addElement(entries[i].key);
 		}
 
 		return keys;
@@ -270,17 +590,19 @@ public class KnownHosts
 	/**
 	 * Try to find the preferred order of hostkey algorithms for the given hostname.
 	 * Based on the type of hostkey that is present in the internal database
-	 * (i.e., either <code>ssh-rsa</code> or <code>ssh-dss</code>)
+	 * (i.e., <code>ssh-rsa</code>, <code>ssh-dss</code> or <code>ecdsa-sha2-nistp256</code>)
 	 * an ordered list of hostkey algorithms is returned which can be passed
 	 * to <code>Connection.setServerHostKeyAlgorithms</code>. 
 	 * 
 	 * @param hostname
 	 * @return <code>null</code> if no key for the given hostname is present or
 	 * there are keys of multiple types present for the given hostname. Otherwise,
-	 * an array with hostkey algorithms is returned (i.e., an array of length 2).
+	 * an array with hostkey algorithms is returned, the preferred one first.
 	 */
 	public String[] getPreferredServerHostkeyAlgorithmOrder(String hostname)
 	{
+		checkBackingFile();
+
 		String[] algos = recommendHostkeyAlgorithms(hostname);
 
 		if (algos != null)
@@ -308,77 +630,65 @@ public class KnownHosts
 		return null;
 	}
 
-	private final boolean hostnameMatches(String[] hostpatterns, String hostname)
+	/* "hostname" must be lower case */
+
+	private final boolean hostnameMatches(HostPattern[] hostpatterns, String hostname)
 	{
 		boolean isMatch = false;
-		boolean negate = false;
-
-		hostname = hostname.toLowerCase();
 
 		for (int k = 0; k < hostpatterns.length; k++)
 		{
-			if (hostpatterns[k] == null)
-				continue;
+			HostPattern hp = hostpatterns[k];
 
-			String pattern = null;
+			/* Optimize, no need to check this entry */
 
-			/* In contrast to OpenSSH we also allow negated hash entries (as well as hashed
-			 * entries in lines with multiple entries).
-			 */
+			if ((isMatch) && (hp.negate == false))
+				continue;
 
-			if ((hostpatterns[k].length() > 0) && (hostpatterns[k].charAt(0) == '!'))
-			{
-				pattern = hostpatterns[k].substring(1);
-				negate = true;
-			}
+			boolean matches;
+
+			if (hp.type == HostPattern.EXACT)
+				matches = hp.hostname.equals(hostname);
+			else if (hp.type == HostPattern.WILDCARD)
+				matches = pseudoRegex(hp.wildcard, 0, hostname.toCharArray(), 0);
+			else if (hp.type == HostPattern.HASHED)
+				matches = checkHashed(hp, hostname);
 			else
+				matches = false;
+
+			if (matches)
 			{
-				pattern = hostpatterns[k];
-				negate = false;
+				if (hp.negate)
+					return false;
+				isMatch = true;
 			}
+		}
 
-			/* Optimize, no need to check this entry */
+		return isMatch;
+	}
 
-			if ((isMatch) && (negate == false))
-				continue;
+	private void initialize(char[] knownHostsData) throws IOException
+	{
+		LinkedList entries = new LinkedList();
 
-			/* Now compare */
+		parse(knownHostsData, entries);
 
-			if (pattern.charAt(0) == '|')
+		synchronized (publicKeys)
+		{
+			Iterator i = entries.iterator();
+
+			while (i.hasNext())
 			{
-				if (checkHashed(pattern, hostname))
-				{
-					if (negate)
-						return false;
-					isMatch = true;
-				}
+				KnownHostsEntry ke = (KnownHostsEntry) i.next();
+				publicKeys.add(ke);
+				indexEntry(ke);
 			}
-			else
-			{
-				pattern = pattern.toLowerCase();
 
-				if ((pattern.indexOf('?') != -1) || (pattern.indexOf('*') != -1))
-				{
-					if (pseudoRegex(pattern.toCharArray(), 0, hostname.toCharArray(), 0))
-					{
-						if (negate)
-							return false;
-						isMatch = true;
-					}
-				}
-				else if (pattern.compareTo(hostname) == 0)
-				{
-					if (negate)
-						return false;
-					isMatch = true;
-				}
-			}
+			lookupCache.clear();
 		}
-
-		return isMatch;
 	}
 
-	private void initialize(char[] knownHostsData) throws IOException
+	private void parse(char[] knownHostsData, LinkedList entries) throws IOException
 	{
 		BufferedReader br = new BufferedReader(new CharArrayReader(knownHostsData));
 
@@ -398,26 +708,32 @@ public class KnownHosts
 
 			if (arr.length >= 3)
 			{
-				if ((arr[1].compareTo("ssh-rsa") == 0) || (arr[1].compareTo("ssh-dss") == 0))
+				if ((arr[1].compareTo("ssh-rsa") == 0) || (arr[1].compareTo("ssh-dss") == 0)
+						|| (arr[1].compareTo(ECDSASHA2Verify.ECDSA_SHA2_NISTP256) == 0))
 				{
 					String[] hostnames = arr[0].split(",");
 
 					byte[] msg = Base64.decode(arr[2].toCharArray());
 
-					addHostkey(hostnames, arr[1], msg);
+					entries.add(createEntry(hostnames, arr[1], msg));
 				}
 			}
 		}
 	}
 
 	private void initialize(File knownHosts) throws IOException
+	{
+		knownHosts.createNewFile();
+
+		initialize(readFile(knownHosts));
+	}
+
+	private static char[] readFile(File knownHosts) throws IOException
 	{
 		char[] buff = new char[512];
 
 		CharArrayWriter cw = new CharArrayWriter();
 
-		knownHosts.createNewFile();
-
 		FileReader fr = new FileReader(knownHosts);
 
 		while (true)
@@ -430,7 +746,7 @@ public class KnownHosts
 
 		fr.close();
 
-		initialize(cw.toCharArray());
+		return cw.toCharArray();
 	}
 
 	private final boolean matchKeys(Object key1, Object key2)
@@ -449,6 +765,20 @@ public class KnownHosts
 			return true;
 		}
 
+		if ((key1 instanceof ECDSAPublicKey) && (key2 instanceof ECDSAPublicKey))
+		{
+			ECDSAPublicKey savedECDSAKey = (ECDSAPublicKey) key1;
+			ECDSAPublicKey remoteECDSAKey = (ECDSAPublicKey) key2;
+
+			if (savedECDSAKey.getX().equals(remoteECDSAKey.getX()) == false)
+				return false;
+
+			if (savedECDSAKey.getY().equals(remoteECDSAKey.getY()) == false)
+				return false;
+
+			return true;
+		}
+
 		if ((key1 instanceof DSAPublicKey) && (key2 instanceof DSAPublicKey))
 		{
 			DSAPublicKey savedDSAKey = (DSAPublicKey) key1;
@@ -537,6 +867,8 @@ public class KnownHosts
 				thisAlgo = "ssh-rsa";
 			else if (keys.elementAt(i) instanceof DSAPublicKey)
 				thisAlgo = "ssh-dss";
+			else if (keys.elementAt(i) instanceof ECDSAPublicKey)
+				thisAlgo = ECDSASHA2Verify.ECDSA_SHA2_NISTP256;
 			else
 				continue;
 
@@ -570,10 +902,20 @@ public class KnownHosts
 		 * if he/she wants to accept the new key.
 		 */
 
-		if (preferredAlgo.equals("ssh-rsa"))
-			return new String[] { "ssh-rsa", "ssh-dss" };
+		String[] defaults = KexManager.getDefaultServerHostkeyAlgorithmList();
+
+		Vector algos = new Vector();
+		algos.addElement(preferredAlgo);
+
+		for (int i = 0; i < defaults.length; i++)
+		{
+			if (defaults[i].equals(preferredAlgo) == false)
+				algos.addElement(defaults[i]);
+		}
 
-		return new String[] { "ssh-dss", "ssh-rsa" };
+		String[] res = new String[algos.size()];
+		algos.copyInto(res);
+		return res;
 	}
 
 	/**
@@ -582,7 +924,7 @@ public class KnownHosts
 	 * and the search is repeated using that IP address.
 	 * 
 	 * @param hostname the server's hostname, will be matched with all hostname patterns
-	 * @param serverHostKeyAlgorithm type of hostkey, either <code>ssh-rsa</code> or <code>ssh-dss</code>
+	 * @param serverHostKeyAlgorithm type of hostkey, <code>ssh-rsa</code>, <code>ssh-dss</code> or <code>ecdsa-sha2-nistp256</code>
 	 * @param serverHostKey the key blob
 	 * @return <ul>
 	 *         <li><code>HOSTKEY_IS_OK</code>: the given hostkey matches an entry for the given hostname</li>
@@ -594,6 +936,8 @@ public class KnownHosts
 	 */
 	public int verifyHostkey(String hostname, String serverHostKeyAlgorithm, byte[] serverHostKey) throws IOException
 	{
+		checkBackingFile();
+
 		Object remoteKey = null;
 
 		if ("ssh-rsa".equals(serverHostKeyAlgorithm))
@@ -604,6 +948,10 @@ public class KnownHosts
 		{
 			remoteKey = DSASHA1Verify.decodeSSHDSAPublicKey(serverHostKey);
 		}
+		else if (ECDSASHA2Verify.ECDSA_SHA2_NISTP256.equals(serverHostKeyAlgorithm))
+		{
+			remoteKey = ECDSASHA2Verify.decodeSSHECDSAPublicKey(serverHostKey);
+		}
 		else
 			throw new IllegalArgumentException("Unknown hostkey type " + serverHostKeyAlgorithm);
 
@@ -694,7 +1042,7 @@ public class KnownHosts
 	 * Generates a "raw" fingerprint of a hostkey.
 	 * 
 	 * @param type either "md5" or "sha1"
-	 * @param keyType either "ssh-rsa" or "ssh-dss"
+	 * @param keyType "ssh-rsa", "ssh-dss" or "ecdsa-sha2-nistp256"
 	 * @param hostkey the hostkey
 	 * @return the raw fingerprint
 	 */
@@ -719,6 +1067,9 @@ public class KnownHosts
 		else if ("ssh-dss".equals(keyType))
 		{
 		}
+		else if (ECDSASHA2Verify.ECDSA_SHA2_NISTP256.equals(keyType))
+		{
+		}
 		else
 			throw new IllegalArgumentException("Unknown key type " + keyType);
 
@@ -808,7 +1159,7 @@ public class KnownHosts
 	 * <p>
 	 * Example fingerprint: d0:cb:76:19:99:5a:03:fc:73:10:70:93:f2:44:63:47.
 
-	 * @param keytype either "ssh-rsa" or "ssh-dss"
+	 * @param keytype "ssh-rsa", "ssh-dss" or "ecdsa-sha2-nistp256"
 	 * @param publickey key blob
 	 * @return Hex fingerprint
 	 */
@@ -825,7 +1176,7 @@ public class KnownHosts
 	 * <p>
 	 * Example fingerprint: xofoc-bubuz-cazin-zufyl-pivuk-biduk-tacib-pybur-gonar-hotat-lyxux.
 	 * 
-	 * @param keytype either "ssh-rsa" or "ssh-dss"
+	 * @param keytype "ssh-rsa", "ssh-dss" or "ecdsa-sha2-nistp256"
 	 * @param publickey key data
 	 * @return Bubblebabble fingerprint
 	 */
@@ -10,6 +10,10 @@ import java.io.*;
  * This scp client is thread safe - you can download (and upload) different sets
  * of files concurrently without any troubles. The <code>SCPClient</code> is
  * actually mapping every request to a distinct {@link Session}.
+ * <p>
+ * Large sets of files can be spread over several concurrent sessions with
+ * {@link #putParallel(String[], String, String, int, SCPProgressListener)} and
+ * {@link #getParallel(String[], String, int, SCPProgressListener)}.
  * 
  * @author Christian Plattner, plattner@trilead.com
  * @version $Id: SCPClient.java,v 1.2 2008/04/01 12:38:09 cplattne Exp $
@@ -25,6 +29,58 @@ public class SCPClient
 		String filename;
 	}
 
+	/**
+	 * Shared state of a parallel transfer: the file queue, the aggregated
+	 * progress and the per-file errors.
+	 */
+	class ParallelTransfer
+	{
+		final String[] files;
+		final SCPProgressListener listener;
+		final SCPTransferResult result;
+
+		int nextFile = 0;
+		int filesDone = 0;
+
+		ParallelTransfer(String[] files, SCPProgressListener listener)
+		{
+			this.files = files;
+			this.listener = listener;
+			this.result = new SCPTransferResult(files);
+		}
+
+		synchronized int takeNextFile()
+		{
+			if (nextFile >= files.length)
+				return -1;
+			return nextFile++;
+		}
+
+		void bytesTransferred(String fileName, long fileBytes, int count)
+		{
+			result.addBytes(count);
+
+			if (listener != null)
+				listener.bytesTransferred(fileName, fileBytes, result.getTransferredBytes());
+		}
+
+		void fileFinished(String fileName, Exception error)
+		{
+			int done;
+
+			if (error != null)
+				result.addError(fileName, error);
+
+			synchronized (this)
+			{
+				done = ++filesDone;
+			}
+
+			if (listener != null)
+				listener.fileFinished(fileName, error, done, files.length);
+		}
+	}
+
 	public SCPClient(Connection conn)
 	{
 		if (conn == null)
@@ -149,6 +205,57 @@ public class SCPClient
 		os.flush();
 	}
 
+	private void sendFile(OutputStream os, InputStream is, File f, String remoteName, String mode, byte[] buffer,
+			ParallelTransfer progress, String progressName) throws IOException
+	{
+		long remain = f.length();
+
+		String cline = "C" + mode + " " + remain + " " + remoteName + "\n";
+
+		os.write(cline.getBytes("ISO-8859-1"));
+		os.flush();
+
+		readResponse(is);
+
+		FileInputStream fis = null;
+		long sent = 0;
+
+		try
+		{
+			fis = new FileInputStream(f);
+
+			while (remain > 0)
+			{
+				int trans;
+				if (remain > buffer.length)
+					trans = buffer.length;
+				else
+					trans = (int) remain;
+
+				if (fis.read(buffer, 0, trans) != trans)
+					throw new IOException("Cannot read enough from local file " + f.getPath());
+
+				os.write(buffer, 0, trans);
+
+				remain -= trans;
+				sent += trans;
+
+				if (progress != null)
+					progress.bytesTransferred(progressName, sent, trans);
+			}
+		}
+		finally
+		{
+			if (fis != null)
+				fis.close();
+		}
+
+		os.write(0);
+		os.flush();
+
+		readResponse(is);
+	}
+
 	private void sendFiles(Session sess, String[] files, String[] remoteFiles, String mode) throws IOException
 	{
 		byte[] buffer = new byte[8192];
@@ -161,7 +268,6 @@ public class SCPClient
 		for (int i = 0; i < files.length; i++)
 		{
 			File f = new File(files[i]);
-			long remain = f.length();
 
 			String remoteName;
 
@@ -170,45 +276,7 @@ public class SCPClient
 			else
 				remoteName = f.getName();
 
-			String cline = "C" + mode + " " + remain + " " + remoteName + "\n";
-
-			os.write(cline.getBytes("ISO-8859-1"));
-			os.flush();
-
-			readResponse(is);
-
-			FileInputStream fis = null;
-
-			try
-			{
-				fis = new FileInputStream(f);
-
-				while (remain > 0)
-				{
-					int trans;
-					if (remain > buffer.length)
-						trans = buffer.length;
-					else
-						trans = (int) remain;
-
-					if (fis.read(buffer, 0, trans) != trans)
-						throw new IOException("Cannot read enough from local file " + files[i]);
-
-					os.write(buffer, 0, trans);
-
-					remain -= trans;
-				}
-			}
-			finally
-			{
-				if (fis != null)
-					fis.close();
-			}
-
-			os.write(0);
-			os.flush();
-
-			readResponse(is);
+			sendFile(os, is, f, remoteName, mode, buffer, null, null);
 		}
 
 		os.write("E\n".getBytes("ISO-8859-1"));
@@ -288,6 +356,87 @@ public class SCPClient
 		}
 	}
 
+	private LenNamePair receiveCLine(InputStream is) throws IOException
+	{
+		while (true)
+		{
+			int c = is.read();
+			if (c < 0)
+				throw new IOException("Remote scp terminated unexpectedly.");
+
+			String line = receiveLine(is);
+
+			if (c == 'T')
+			{
+				/* Ignore modification times */
+
+				continue;
+			}
+
+			if ((c == 1) || (c == 2))
+				throw new IOException("Remote SCP error: " + line);
+
+			if (c == 'C')
+				return parseCLine(line);
+
+			throw new IOException("Remote SCP error: " + ((char) c) + line);
+		}
+	}
+
+	private void receiveFile(OutputStream os, InputStream is, String target, byte[] buffer,
+			ParallelTransfer progress, String progressName) throws IOException
+	{
+		LenNamePair lnp = receiveCLine(is);
+
+		os.write(0x0);
+		os.flush();
+
+		File f = new File(target + File.separatorChar + lnp.filename);
+		FileOutputStream fop = null;
+		long received = 0;
+
+		try
+		{
+			fop = new FileOutputStream(f);
+
+			long remain = lnp.length;
+
+			while (remain > 0)
+			{
+				int trans;
+				if (remain > buffer.length)
+					trans = buffer.length;
+				else
+					trans = (int) remain;
+
+				int this_time_received = is.read(buffer, 0, trans);
+
+				if (this_time_received < 0)
+				{
+					throw new IOException("Remote scp terminated connection unexpectedly");
+				}
+
+				fop.write(buffer, 0, this_time_received);
+
+				remain -= this_time_received;
+				received += this_time_received;
+
+				if (progress != null)
+					progress.bytesTransferred(progressName, received, this_time_received);
+			}
+		}
+		finally
+		{
+			if (fop != null)
+				fop.close();
+		}
+
+		readResponse(is);
+
+		os.write(0x0);
+		os.flush();
+	}
+
 	private void receiveFiles(Session sess, String[] files, String target) throws IOException
 	{
 		byte[] buffer = new byte[8192];
@@ -299,79 +448,263 @@ public class SCPClient
 		os.flush();
 
 		for (int i = 0; i < files.length; i++)
+			receiveFile(os, is, target, buffer, null, null);
+	}
+
+	private static void checkMode(String mode)
+	{
+		if (mode.length() != 4)
+			throw new IllegalArgumentException("Invalid mode.");
+
+		for (int i = 0; i < mode.length(); i++)
+			if (Character.isDigit(mode.charAt(i)) == false)
+				throw new IllegalArgumentException("Invalid mode.");
+	}
+
+	/**
+	 * Runs <code>sessions</code> worker threads on the transfer and waits until all files are done.
+	 */
+	private void runWorkers(ParallelTransfer transfer, int sessions, Runnable worker) throws IOException
+	{
+		if (sessions > transfer.files.length)
+			sessions = transfer.files.length;
+
+		Thread[] workers = new Thread[sessions];
+
+		for (int i = 0; i < sessions; i++)
 		{
-			LenNamePair lnp = null;
+			workers[i] = new Thread(worker, "SCP transfer worker " + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
 
-			while (true)
-			{
-				int c = is.read();
-				if (c < 0)
-					throw new IOException("Remote scp terminated unexpectedly.");
+		try
+		{
+			for (int i = 0; i < sessions; i++)
+				workers[i].join();
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException("Interrupted while waiting for the SCP transfer to finish.");
+		}
+	}
 
-				String line = receiveLine(is);
+	/**
+	 * Copy a set of local files to a remote directory, spreading them over up to
+	 * <code>sessions</code> concurrent <code>scp</code> sessions on this connection.
+	 * Every session streams one file at a time; the files are handed out to the
+	 * sessions in the given order. A failure of one file does not stop the transfer,
+	 * it is reported in the returned {@link SCPTransferResult} (and to the listener).
+	 * If a session breaks down, a new one is opened for the following files.
+	 * 
+	 * @param localFiles
+	 *            Paths and names of the local files.
+	 * @param remoteTargetDirectory
+	 *            Remote target directory. Use an empty string to specify the
+	 *            default directory.
+	 * @param mode
+	 *            a four digit string (e.g., 0644, see "man chmod", "man open")
+	 * @param sessions
+	 *            the maximum number of concurrent sessions, must be &gt; 0.
+	 * @param listener
+	 *            receives progress notifications, may be <code>null</code>.
+	 * @return the per-file outcome of the transfer.
+	 * @throws IOException
+	 *            if the calling thread is interrupted while waiting for the transfer.
+	 */
+	public SCPTransferResult putParallel(String[] localFiles, String remoteTargetDirectory, String mode,
+			int sessions, SCPProgressListener listener) throws IOException
+	{
+		if ((localFiles == null) || (remoteTargetDirectory == null) || (mode == null))
+			throw new IllegalArgumentException("Null argument.");
 
-				if (c == 'T')
-				{
-					/* Ignore modification times */
+		checkMode(mode);
 
-					continue;
-				}
+		if (sessions <= 0)
+			throw new IllegalArgumentException("Need at least one session.");
 
-				if ((c == 1) || (c == 2))
-					throw new IOException("Remote SCP error: " + line);
+		for (int i = 0; i < localFiles.length; i++)
+		{
+			if (localFiles[i] == null)
+				throw new IllegalArgumentException("Cannot accept null filename.");
+		}
 
-				if (c == 'C')
+		remoteTargetDirectory = remoteTargetDirectory.trim();
+		remoteTargetDirectory = (remoteTargetDirectory.length() > 0) ? remoteTargetDirectory : ".";
+
+		final String cmd = "scp -t -d " + remoteTargetDirectory;
+		final String fileMode = mode;
+		final ParallelTransfer transfer = new ParallelTransfer(localFiles, listener);
+
+		if (localFiles.length == 0)
+			return transfer.result;
+
+		runWorkers(transfer, sessions, new Runnable()
+		{
+			public void run()
+			{
+				byte[] buffer = new byte[8192];
+
+				Session sess = null;
+				OutputStream os = null;
+				InputStream is = null;
+
+				try
 				{
-					lnp = parseCLine(line);
-					break;
+					while (true)
+					{
+						int i = transfer.takeNextFile();
+
+						if (i < 0)
+							break;
+
+						String localFile = transfer.files[i];
+						File f = new File(localFile);
+
+						if ((f.isFile() == false) || (f.canRead() == false))
+						{
+							transfer.fileFinished(localFile, new IOException("Cannot read local file " + localFile));
+							continue;
+						}
+
+						try
+						{
+							if (sess == null)
+							{
+								sess = conn.openSession();
+								sess.execCommand(cmd);
+
+								os = new BufferedOutputStream(sess.getStdin(), 40000);
+								is = new BufferedInputStream(sess.getStdout(), 512);
+
+								readResponse(is);
+							}
+
+							sendFile(os, is, f, f.getName(), fileMode, buffer, transfer, localFile);
+							transfer.fileFinished(localFile, null);
+						}
+						catch (IOException e)
+						{
+							transfer.fileFinished(localFile, (IOException) new IOException("Error during SCP transfer.")
+									.initCause(e));
+
+							/* The state of the remote scp is unknown, start over with a new session */
+
+							if (sess != null)
+								sess.close();
+							sess = null;
+						}
+					}
 
+					if (sess != null)
+					{
+						os.write("E\n".getBytes("ISO-8859-1"));
+						os.flush();
+					}
+				}
+				catch (IOException ignore)
+				{
+					/* All files of this worker have been reported already */
+				}
+				finally
+				{
+					if (sess != null)
+						sess.close();
 				}
-				throw new IOException("Remote SCP error: " + ((char) c) + line);
 			}
+		});
 
-			os.write(0x0);
-			os.flush();
+		return transfer.result;
+	}
+
+	/**
+	 * Download a set of files from the remote server to a local directory, spreading
+	 * them over up to <code>sessions</code> concurrent <code>scp</code> sessions on this
+	 * connection. Every file is fetched with its own <code>scp -f</code> session, so a
+	 * missing or unreadable remote file only fails that file; failures are reported in
+	 * the returned {@link SCPTransferResult} (and to the listener).
+	 * 
+	 * @param remoteFiles
+	 *            Paths and names of the remote files.
+	 * @param localTargetDirectory
+	 *            Local directory to put the downloaded files.
+	 * @param sessions
+	 *            the maximum number of concurrent sessions, must be &gt; 0.
+	 * @param listener
+	 *            receives progress notifications, may be <code>null</code>.
+	 * @return the per-file outcome of the transfer.
+	 * @throws IOException
+	 *            if the calling thread is interrupted while waiting for the transfer.
+	 */
+	public SCPTransferResult getParallel(String[] remoteFiles, String localTargetDirectory, int sessions,
+			SCPProgressListener listener) throws IOException
+	{
+		if ((remoteFiles == null) || (localTargetDirectory == null))
+			throw new IllegalArgumentException("Null argument.");
 
-			File f = new File(target + File.separatorChar + lnp.filename);
-			FileOutputStream fop = null;
+		if (sessions <= 0)
+			throw new IllegalArgumentException("Need at least one session.");
 
-			try
-			{
-				fop = new FileOutputStream(f);
+		for (int i = 0; i < remoteFiles.length; i++)
+		{
+			if (remoteFiles[i] == null)
+				throw new IllegalArgumentException("Cannot accept null filename.");
+
+			if (remoteFiles[i].trim().length() == 0)
+				throw new IllegalArgumentException("Cannot accept empty filename.");
+		}
 
-				long remain = lnp.length;
+		final String target = localTargetDirectory;
+		final ParallelTransfer transfer = new ParallelTransfer(remoteFiles, listener);
+
+		if (remoteFiles.length == 0)
+			return transfer.result;
+
+		runWorkers(transfer, sessions, new Runnable()
+		{
+			public void run()
+			{
+				byte[] buffer = new byte[8192];
 
-				while (remain > 0)
+				while (true)
 				{
-					int trans;
-					if (remain > buffer.length)
-						trans = buffer.length;
-					else
-						trans = (int) remain;
+					int i = transfer.takeNextFile();
+
+					if (i < 0)
+						break;
 
-					int this_time_received = is.read(buffer, 0, trans);
+					String remoteFile = transfer.files[i];
+					Session sess = null;
 
-					if (this_time_received < 0)
+					try
 					{
-						throw new IOException("Remote scp terminated connection unexpectedly");
-					}
+						sess = conn.openSession();
+						sess.execCommand("scp -f " + remoteFile.trim());
+
+						OutputStream os = new BufferedOutputStream(sess.getStdin(), 512);
+						InputStream is = new BufferedInputStream(sess.getStdout(), 40000);
 
-					fop.write(buffer, 0, this_time_received);
+						os.write(0x0);
+						os.flush();
 
-					remain -= this_time_received;
+						receiveFile(os, is, target, buffer, transfer, remoteFile);
+						transfer.fileFinished(remoteFile, null);
+					}
+					catch (IOException e)
+					{
+						transfer.fileFinished(remoteFile, (IOException) new IOException("Error during SCP transfer.")
+								.initCause(e));
+					}
+					finally
+					{
+						if (sess != null)
+							sess.close();
+					}
 				}
 			}
-			finally
-			{
-				if (fop != null)
-					fop.close();
-			}
-
-			readResponse(is);
+		});
 
-			os.write(0x0);
-			os.flush();
-		}
+		return transfer.result;
 	}
 
 	/**
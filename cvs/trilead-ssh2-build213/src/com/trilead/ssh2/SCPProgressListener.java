@@ -0,0 +1,32 @@
+package com.trilead.ssh2;
+
+/**
+ * A <code>SCPProgressListener</code> is notified about the progress of a parallel
+ * transfer started with {@link SCPClient#putParallel(String[], String, String, int, SCPProgressListener)}
+ * or {@link SCPClient#getParallel(String[], String, int, SCPProgressListener)}.
+ * <p>
+ * The methods are invoked by the worker threads of the transfer, possibly
+ * concurrently. Implementations must be thread safe and should return quickly,
+ * since the calling worker does not transfer data in the meantime.
+ */
+public interface SCPProgressListener
+{
+	/**
+	 * Called after a chunk of file data has been transferred.
+	 * 
+	 * @param fileName the local (for uploads) or remote (for downloads) name of the file.
+	 * @param fileBytes bytes of this file transferred so far.
+	 * @param totalBytes bytes transferred so far by all sessions of the transfer.
+	 */
+	public void bytesTransferred(String fileName, long fileBytes, long totalBytes);
+
+	/**
+	 * Called when a file is done, successfully or not.
+	 * 
+	 * @param fileName the local (for uploads) or remote (for downloads) name of the file.
+	 * @param error <code>null</code> if the file was transferred, otherwise the reason of the failure.
+	 * @param filesDone number of files that are done (including this one).
+	 * @param filesTotal number of files of the transfer.
+	 */
+	public void fileFinished(String fileName, Exception error, int filesDone, int filesTotal);
+}
@@ -0,0 +1,73 @@
+package com.trilead.ssh2;
+
+import java.util.LinkedHashMap;
+
+/**
+ * The outcome of a parallel SCP transfer, see
+ * {@link SCPClient#putParallel(String[], String, String, int, SCPProgressListener)} and
+ * {@link SCPClient#getParallel(String[], String, int, SCPProgressListener)}.
+ * A failure of one file does not stop the transfer of the others, the
+ * failures are collected here instead.
+ */
+public class SCPTransferResult
+{
+	final String[] files;
+	final LinkedHashMap errors = new LinkedHashMap();
+	long transferredBytes = 0;
+
+	SCPTransferResult(String[] files)
+	{
+		this.files = files;
+	}
+
+	synchronized void addError(String file, Exception e)
+	{
+		errors.put(file, e);
+	}
+
+	synchronized void addBytes(long count)
+	{
+		transferredBytes += count;
+	}
+
+	/**
+	 * @return <code>true</code> if all files were transferred.
+	 */
+	public synchronized boolean isSuccessful()
+	{
+		return errors.isEmpty();
+	}
+
+	/**
+	 * @return the files that could not be transferred, in the order in which they failed.
+	 */
+	public synchronized String[] getFailedFiles()
+	{
+		return (String[]) errors.keySet().toArray(new String[errors.size()]);
+	}
+
+	/**
+	 * @param file a file name as passed to the transfer method.
+	 * @return the reason why the file could not be transferred, <code>null</code> if it was transferred.
+	 */
+	public synchronized Exception getError(String file)
+	{
+		return (Exception) errors.get(file);
+	}
+
+	/**
+	 * @return the total number of file data bytes transferred by all sessions.
+	 */
+	public synchronized long getTransferredBytes()
+	{
+		return transferredBytes;
+	}
+
+	/**
+	 * @return the number of files of the transfer.
+	 */
+	public int getFileCount()
+	{
+		return files.length;
+	}
+}
@@ -10,6 +10,7 @@ import com.trilead.ssh2.sftp.Packet;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.TreeMap;
 import java.util.Vector;
 
 
@@ -70,6 +71,8 @@ public class SFTPv3Client
 
 	int next_request_id = 1000;
 
+	int maxOutstandingRequests = 16;
+
 	String charsetName = null;
 
 	/**
@@ -166,6 +169,38 @@ public class SFTPv3Client
 		return charsetName;
 	}
 
+	/**
+	 * Set the number of SSH_FXP_READ/SSH_FXP_WRITE requests that
+	 * {@link #download(SFTPv3FileHandle, long, OutputStream)} and
+	 * {@link #upload(InputStream, SFTPv3FileHandle, long)} keep in flight
+	 * before waiting for a reply. Each request carries up to 32768 bytes, so the
+	 * window should be large enough to cover the bandwidth-delay product of the link.
+	 * A value of 1 gives the same request/reply lockstep as {@link #read} and {@link #write}.
+	 * 
+	 * @see #getMaxOutstandingRequests()
+	 * 
+	 * @param maxOutstandingRequests number of outstanding requests, must be &gt; 0 (default 16)
+	 */
+	public void setMaxOutstandingRequests(int maxOutstandingRequests)
+	{
+		if (maxOutstandingRequests <= 0)
+			throw new IllegalArgumentException("maxOutstandingRequests must be positive");
+
+		this.maxOutstandingRequests = maxOutstandingRequests;
+	}
+
+	/**
+	 * The size of the outstanding-request window used for pipelined transfers.
+	 * 
+	 * @see #setMaxOutstandingRequests(int)
+	 * 
+	 * @return the number of requests kept in flight
+	 */
+	public int getMaxOutstandingRequests()
+	{
+		return maxOutstandingRequests;
+	}
+
 	private final void checkHandleValidAndOpen(SFTPv3FileHandle handle) throws IOException
 	{
 		if (handle.client != this)
@@ -1358,6 +1393,299 @@ public class SFTPv3Client
 		}
 	}
 
+	/**
+	 * A pending SSH_FXP_READ or SSH_FXP_WRITE request of a pipelined transfer.
+	 */
+	private static final class OutstandingRequest
+	{
+		final long offset;
+		final int len;
+
+		OutstandingRequest(long offset, int len)
+		{
+			this.offset = offset;
+			this.len = len;
+		}
+	}
+
+	private final int sendReadRequest(SFTPv3FileHandle handle, long fileOffset, int len) throws IOException
+	{
+		int req_id = generateNextRequestID();
+
+		TypesWriter tw = new TypesWriter();
+		tw.writeString(handle.fileHandle, 0, handle.fileHandle.length);
+		tw.writeUINT64(fileOffset);
+		tw.writeUINT32(len);
+
+		sendMessage(Packet.SSH_FXP_READ, req_id, tw.getBytes());
+
+		return req_id;
+	}
+
+	/**
+	 * Download the contents of a file, starting at <code>fileOffset</code>, into an output stream.
+	 * Unlike {@link #read(SFTPv3FileHandle, long, byte[], int, int)}, this method keeps up to
+	 * {@link #getMaxOutstandingRequests()} SSH_FXP_READ requests in flight. Replies are matched
+	 * by their request id (the server may answer out of order) and written to the stream in
+	 * file order.
+	 * 
+	 * @param handle a SFTPv3FileHandle handle
+	 * @param fileOffset offset (in bytes) in the file where to start reading
+	 * @param out the destination stream, it is neither flushed nor closed
+	 * @return the number of bytes written to <code>out</code>
+	 * @throws IOException
+	 */
+	public long download(SFTPv3FileHandle handle, long fileOffset, OutputStream out) throws IOException
+	{
+		checkHandleValidAndOpen(handle);
+
+		if (out == null)
+			throw new IllegalArgumentException("the out argument may not be null");
+
+		HashMap outstanding = new HashMap();
+		TreeMap received = new TreeMap();
+
+		long readOffset = fileOffset;
+		long writeOffset = fileOffset;
+		long eofOffset = Long.MAX_VALUE;
+		SFTPException failure = null;
+
+		if (debug != null)
+		{
+			debug.println("Starting pipelined download (window " + maxOutstandingRequests + ")...");
+			debug.flush();
+		}
+
+		while (true)
+		{
+			while ((eofOffset == Long.MAX_VALUE) && (failure == null) && (outstanding.size() < maxOutstandingRequests))
+			{
+				int req_id = sendReadRequest(handle, readOffset, 32768);
+				outstanding.put(new Integer(req_id), new OutstandingRequest(readOffset, 32768));
+				readOffset += 32768;
+			}
+
+			if (outstanding.size() == 0)
+				break;
+
+			byte[] resp = receiveMessage(34000);
+
+			TypesReader tr = new TypesReader(resp);
+
+			int t = tr.readByte();
+
+			int rep_id = tr.readUINT32();
+			OutstandingRequest req = (OutstandingRequest) outstanding.remove(new Integer(rep_id));
+			if (req == null)
+				throw new IOException("The server sent an invalid id field.");
+
+			if (t == Packet.SSH_FXP_DATA)
+			{
+				int readLen = tr.readUINT32();
+
+				if ((readLen < 0) || (readLen > req.len))
+					throw new IOException("The server sent an invalid length field.");
+
+				byte[] data = new byte[readLen];
+				tr.readBytes(data, 0, readLen);
+
+				if (readLen == 0)
+				{
+					/* No progress, asking again could loop forever: treat it like SSH_FX_EOF */
+
+					if (req.offset < eofOffset)
+						eofOffset = req.offset;
+					continue;
+				}
+
+				received.put(new Long(req.offset), data);
+
+				long end = req.offset + readLen;
+
+				/* Short read: ask for the rest, the server tells us if it really was EOF */
+
+				if ((readLen < req.len) && (end < eofOffset) && (failure == null))
+				{
+					int req_id = sendReadRequest(handle, end, req.len - readLen);
+					outstanding.put(new Integer(req_id), new OutstandingRequest(end, req.len - readLen));
+				}
+			}
+			else if (t == Packet.SSH_FXP_STATUS)
+			{
+				int errorCode = tr.readUINT32();
+
+				if (errorCode == ErrorCodes.SSH_FX_EOF)
+				{
+					if (req.offset < eofOffset)
+						eofOffset = req.offset;
+				}
+				else if (failure == null)
+				{
+					/* Keep reading until all outstanding replies are consumed */
+					failure = new SFTPException(tr.readString(), errorCode);
+				}
+			}
+			else
+				throw new IOException("The SFTP server sent an unexpected packet type (" + t + ")");
+
+			while (received.size() > 0)
+			{
+				Long first = (Long) received.firstKey();
+
+				if (first.longValue() != writeOffset)
+					break;
+
+				byte[] data = (byte[]) received.remove(first);
+				out.write(data);
+				writeOffset += data.length;
+			}
+		}
+
+		if (failure != null)
+			throw failure;
+
+		if (received.size() > 0)
+			throw new IOException("The server sent non-contiguous data (missing data at offset " + writeOffset + ").");
+
+		if (debug != null)
+		{
+			debug.println("Pipelined download finished (" + (writeOffset - fileOffset) + " bytes).");
+			debug.flush();
+		}
+
+		return writeOffset - fileOffset;
+	}
+
+	/**
+	 * Download the contents of a file into an output stream.
+	 * Same as {@link #download(SFTPv3FileHandle, long, OutputStream) download(handle, 0, out)}.
+	 * 
+	 * @param handle a SFTPv3FileHandle handle
+	 * @param out the destination stream, it is neither flushed nor closed
+	 * @return the number of bytes written to <code>out</code>
+	 * @throws IOException
+	 */
+	public long download(SFTPv3FileHandle handle, OutputStream out) throws IOException
+	{
+		return download(handle, 0, out);
+	}
+
+	/**
+	 * Upload the contents of an input stream into a file, starting at <code>fileOffset</code>.
+	 * Unlike {@link #write(SFTPv3FileHandle, long, byte[], int, int)}, this method keeps up to
+	 * {@link #getMaxOutstandingRequests()} SSH_FXP_WRITE requests in flight and collects the
+	 * status replies (which may arrive in any order) as they come in.
+	 * 
+	 * @param in the source stream, it is read until EOF but not closed
+	 * @param handle a SFTPv3FileHandle handle
+	 * @param fileOffset offset (in bytes) in the file where to start writing
+	 * @return the number of bytes written to the file
+	 * @throws IOException
+	 */
+	public long upload(InputStream in, SFTPv3FileHandle handle, long fileOffset) throws IOException
+	{
+		checkHandleValidAndOpen(handle);
+
+		if (in == null)
+			throw new IllegalArgumentException("the in argument may not be null");
+
+		HashMap outstanding = new HashMap();
+		byte[] buffer = new byte[32768];
+
+		long writeOffset = fileOffset;
+		boolean eof = false;
+		SFTPException failure = null;
+
+		if (debug != null)
+		{
+			debug.println("Starting pipelined upload (window " + maxOutstandingRequests + ")...");
+			debug.flush();
+		}
+
+		while (true)
+		{
+			while (!eof && (failure == null) && (outstanding.size() < maxOutstandingRequests))
+			{
+				int len = 0;
+
+				while (len < buffer.length)
+				{
+					int count = in.read(buffer, len, buffer.length - len);
+					if (count < 0)
+					{
+						eof = true;
+						break;
+					}
+					len += count;
+				}
+
+				if (len == 0)
+					break;
+
+				int req_id = generateNextRequestID();
+
+				TypesWriter tw = new TypesWriter();
+				tw.writeString(handle.fileHandle, 0, handle.fileHandle.length);
+				tw.writeUINT64(writeOffset);
+				tw.writeString(buffer, 0, len);
+
+				sendMessage(Packet.SSH_FXP_WRITE, req_id, tw.getBytes());
+
+				outstanding.put(new Integer(req_id), new OutstandingRequest(writeOffset, len));
+				writeOffset += len;
+			}
+
+			if (outstanding.size() == 0)
+				break;
+
+			byte[] resp = receiveMessage(34000);
+
+			TypesReader tr = new TypesReader(resp);
+
+			int t = tr.readByte();
+
+			int rep_id = tr.readUINT32();
+			if (outstanding.remove(new Integer(rep_id)) == null)
+				throw new IOException("The server sent an invalid id field.");
+
+			if (t != Packet.SSH_FXP_STATUS)
+				throw new IOException("The SFTP server sent an unexpected packet type (" + t + ")");
+
+			int errorCode = tr.readUINT32();
+
+			if ((errorCode != ErrorCodes.SSH_FX_OK) && (failure == null))
+			{
+				/* Keep reading until all outstanding replies are consumed */
+				failure = new SFTPException(tr.readString(), errorCode);
+			}
+		}
+
+		if (failure != null)
+			throw failure;
+
+		if (debug != null)
+		{
+			debug.println("Pipelined upload finished (" + (writeOffset - fileOffset) + " bytes).");
+			debug.flush();
+		}
+
+		return writeOffset - fileOffset;
+	}
+
+	/**
+	 * Upload the contents of an input stream into a file.
+	 * Same as {@link #upload(InputStream, SFTPv3FileHandle, long) upload(in, handle, 0)}.
+	 * 
+	 * @param in the source stream, it is read until EOF but not closed
+	 * @param handle a SFTPv3FileHandle handle
+	 * @return the number of bytes written to the file
+	 * @throws IOException
+	 */
+	public long upload(InputStream in, SFTPv3FileHandle handle) throws IOException
+	{
+		return upload(in, handle, 0);
+	}
+
 	/**
 	 * Close a file.
 	 * 
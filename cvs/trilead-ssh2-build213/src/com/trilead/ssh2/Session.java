@@ -41,6 +41,13 @@ public class Session
 		this.rnd = rnd;
 	}
 
+	Session(ChannelManager cm, SecureRandom rnd, int windowSize) throws IOException
+	{
+		this.cm = cm;
+		this.cn = cm.openSessionChannel(windowSize);
+		this.rnd = rnd;
+	}
+
 	/**
 	 * Basically just a wrapper for lazy people - identical to calling
 	 * <code>requestPTY("dumb", 0, 0, 0, 0, null)</code>.
@@ -42,6 +42,10 @@ public class Channel
 
 	static final int CHANNEL_BUFFER_SIZE = 30000;
 
+	/* Upper limit for configurable windows, the window field is a signed int */
+
+	static final int MAX_WINDOW_SIZE = 64 * 1024 * 1024;
+
 	/*
 	 * To achieve correctness, the following rules have to be respected when
 	 * accessing this object:
@@ -98,6 +102,13 @@ public class Channel
 
 	final byte[] msgWindowAdjust = new byte[9];
 
+	/*
+	 * Header (type, recipient channel, data length) of SSH_MSG_CHANNEL_DATA.
+	 * May only be used while holding the channelSendLock
+	 */
+
+	final byte[] msgDataHeader = new byte[9];
+
 	// If you access (read or write) any of the following fields, then you have
 	// to synchronize on the channel.
 
@@ -117,13 +128,12 @@ public class Channel
 	int localMaxPacketSize = -1;
 	int remoteMaxPacketSize = -1;
 
-	final byte[] stdoutBuffer = new byte[CHANNEL_BUFFER_SIZE];
-	final byte[] stderrBuffer = new byte[CHANNEL_BUFFER_SIZE];
+	/* The size of our receive window, i.e., the capacity of the stdout/stderr buffers */
 
-	int stdoutReadpos = 0;
-	int stdoutWritepos = 0;
-	int stderrReadpos = 0;
-	int stderrWritepos = 0;
+	final int windowSize;
+
+	final ChannelBuffer stdoutBuffer;
+	final ChannelBuffer stderrBuffer;
 
 	boolean EOF = false;
 
@@ -145,9 +155,21 @@ public class Channel
 
 	public Channel(ChannelManager cm)
 	{
+		this(cm, CHANNEL_BUFFER_SIZE);
+	}
+
+	public Channel(ChannelManager cm, int windowSize)
+	{
+		if ((windowSize <= 0) || (windowSize > MAX_WINDOW_SIZE))
+			throw new IllegalArgumentException("Illegal channel window size (" + windowSize + ")");
+
 		this.cm = cm;
 
-		this.localWindow = CHANNEL_BUFFER_SIZE;
+		this.windowSize = windowSize;
+		this.stdoutBuffer = new ChannelBuffer(windowSize);
+		this.stderrBuffer = new ChannelBuffer(windowSize);
+
+		this.localWindow = windowSize;
 		this.localMaxPacketSize = 35000 - 1024; // leave enough slack
 
 		this.stdinStream = new ChannelOutputStream(this);
@@ -0,0 +1,98 @@
+package com.trilead.ssh2.channel;
+
+/**
+ * A ring buffer for the data received on a channel (stdout or stderr).
+ * Data is never moved around when it is consumed. The backing array starts
+ * small and grows (up to the capacity, i.e., the channel's window size) only
+ * when the peer actually sends that much data ahead of the reader, so large
+ * windows do not cost memory for idle streams.
+ * <p>
+ * Not thread safe - it is only accessed while holding the lock on the {@link Channel}.
+ */
+final class ChannelBuffer
+{
+	static final int INITIAL_SIZE = 32 * 1024;
+
+	private final int capacity;
+	private byte[] buffer;
+	private int readpos = 0;
+	private int count = 0;
+
+	ChannelBuffer(int capacity)
+	{
+		this.capacity = capacity;
+		this.buffer = new byte[Math.min(capacity, INITIAL_SIZE)];
+	}
+
+	int available()
+	{
+		return count;
+	}
+
+	int free()
+	{
+		return capacity - count;
+	}
+
+	void write(byte[] src, int off, int len)
+	{
+		if (len > capacity - count)
+			throw new IllegalStateException("Channel buffer overflow (" + len + " > " + (capacity - count) + ")");
+
+		ensureSize(count + len);
+
+		int writepos = readpos + count;
+
+		if (writepos >= buffer.length)
+			writepos -= buffer.length;
+
+		int first = Math.min(len, buffer.length - writepos);
+
+		System.arraycopy(src, off, buffer, writepos, first);
+		System.arraycopy(src, off + first, buffer, 0, len - first);
+
+		count += len;
+	}
+
+	int read(byte[] dst, int off, int len)
+	{
+		int copylen = (count > len) ? len : count;
+
+		int first = Math.min(copylen, buffer.length - readpos);
+
+		System.arraycopy(buffer, readpos, dst, off, first);
+		System.arraycopy(buffer, 0, dst, off + first, copylen - first);
+
+		readpos += copylen;
+
+		if (readpos >= buffer.length)
+			readpos -= buffer.length;
+
+		count -= copylen;
+
+		if (count == 0)
+			readpos = 0;
+
+		return copylen;
+	}
+
+	private void ensureSize(int needed)
+	{
+		if (needed <= buffer.length)
+			return;
+
+		int newSize = buffer.length;
+
+		while (newSize < needed)
+			newSize = (newSize > capacity / 2) ? capacity : newSize * 2;
+
+		byte[] tmp = new byte[newSize];
+		int oldCount = count;
+
+		read(tmp, 0, oldCount);
+
+		buffer = tmp;
+		readpos = 0;
+		count = oldCount;
+	}
+}
@@ -355,7 +355,6 @@ public class ChannelManager implements MessageHandler
 		while (len > 0)
 		{
 			int thislen = 0;
-			byte[] msg;
 
 			synchronized (c)
 			{
@@ -396,8 +395,14 @@ public class ChannelManager implements MessageHandler
 					thislen = estimatedMaxDataLen;
 
 				c.remoteWindow -= thislen;
+			}
+
+			synchronized (c.channelSendLock)
+			{
+				if (c.closeMessageSent == true)
+					throw new IOException("SSH channel is closed. (" + c.getReasonClosed() + ")");
 
-				msg = new byte[1 + 8 + thislen];
+				byte[] msg = c.msgDataHeader;
 
 				msg[0] = Packets.SSH_MSG_CHANNEL_DATA;
 				msg[1] = (byte) (c.remoteID >> 24);
@@ -409,15 +414,9 @@ public class ChannelManager implements MessageHandler
 				msg[7] = (byte) (thislen >> 8);
 				msg[8] = (byte) (thislen);
 
-				System.arraycopy(buffer, pos, msg, 9, thislen);
-			}
+				/* The payload is copied once, straight into the transport's packet buffer */
 
-			synchronized (c.channelSendLock)
-			{
-				if (c.closeMessageSent == true)
-					throw new IOException("SSH channel is closed. (" + c.getReasonClosed() + ")");
-
-				tm.sendMessage(msg);
+				tm.sendMessage(msg, 9, buffer, pos, thislen);
 			}
 
 			pos += thislen;
@@ -548,7 +547,12 @@ public class ChannelManager implements MessageHandler
 
 	public Channel openSessionChannel() throws IOException
 	{
-		Channel c = new Channel(this);
+		return openSessionChannel(Channel.CHANNEL_BUFFER_SIZE);
+	}
+
+	public Channel openSessionChannel(int windowSize) throws IOException
+	{
+		Channel c = new Channel(this, windowSize);
 
 		synchronized (c)
 		{
@@ -836,8 +840,7 @@ public class ChannelManager implements MessageHandler
 
 			c.localWindow -= len;
 
-			System.arraycopy(msg, 13, c.stderrBuffer, c.stderrWritepos, len);
-			c.stderrWritepos += len;
+			c.stderrBuffer.write(msg, 13, len);
 
 			c.notifyAll();
 		}
@@ -866,8 +869,8 @@ public class ChannelManager implements MessageHandler
 			{
 				int current_cond = 0;
 
-				int stdoutAvail = c.stdoutWritepos - c.stdoutReadpos;
-				int stderrAvail = c.stderrWritepos - c.stderrReadpos;
+				int stdoutAvail = c.stdoutBuffer.available();
+				int stderrAvail = c.stderrBuffer.available();
 
 				if (stdoutAvail > 0)
 					current_cond = current_cond | ChannelCondition.STDOUT_DATA;
@@ -927,9 +930,9 @@ public class ChannelManager implements MessageHandler
 			int avail;
 
 			if (extended)
-				avail = c.stderrWritepos - c.stderrReadpos;
+				avail = c.stderrBuffer.available();
 			else
-				avail = c.stdoutWritepos - c.stdoutReadpos;
+				avail = c.stdoutBuffer.available();
 
 			return ((avail > 0) ? avail : (c.EOF ? -1 : 0));
 		}
@@ -954,8 +957,8 @@ public class ChannelManager implements MessageHandler
 				 * channel is already closed.
 				 */
 
-				stdoutAvail = c.stdoutWritepos - c.stdoutReadpos;
-				stderrAvail = c.stderrWritepos - c.stderrReadpos;
+				stdoutAvail = c.stdoutBuffer.available();
+				stderrAvail = c.stderrBuffer.available();
 
 				if ((!extended) && (stdoutAvail != 0))
 					break;
@@ -980,41 +983,21 @@ public class ChannelManager implements MessageHandler
 			/* OK, there is some data. Return it. */
 
 			if (!extended)
-			{
-				copylen = (stdoutAvail > len) ? len : stdoutAvail;
-				System.arraycopy(c.stdoutBuffer, c.stdoutReadpos, target, off, copylen);
-				c.stdoutReadpos += copylen;
-
-				if (c.stdoutReadpos != c.stdoutWritepos)
-
-					System.arraycopy(c.stdoutBuffer, c.stdoutReadpos, c.stdoutBuffer, 0, c.stdoutWritepos
-							- c.stdoutReadpos);
-
-				c.stdoutWritepos -= c.stdoutReadpos;
-				c.stdoutReadpos = 0;
-			}
+				copylen = c.stdoutBuffer.read(target, off, len);
 			else
-			{
-				copylen = (stderrAvail > len) ? len : stderrAvail;
-				System.arraycopy(c.stderrBuffer, c.stderrReadpos, target, off, copylen);
-				c.stderrReadpos += copylen;
-
-				if (c.stderrReadpos != c.stderrWritepos)
-
-					System.arraycopy(c.stderrBuffer, c.stderrReadpos, c.stderrBuffer, 0, c.stderrWritepos
-							- c.stderrReadpos);
-
-				c.stderrWritepos -= c.stderrReadpos;
-				c.stderrReadpos = 0;
-			}
+				copylen = c.stderrBuffer.read(target, off, len);
 
 			if (c.state != Channel.STATE_OPEN)
 				return copylen;
 
-			if (c.localWindow < ((Channel.CHANNEL_BUFFER_SIZE + 1) / 2))
+			/*
+			 * Batch window adjustments: only tell the peer about freed space once
+			 * at least half of the window has been consumed.
+			 */
+
+			if (c.localWindow < ((c.windowSize + 1) / 2))
 			{
-				int minFreeSpace = Math.min(Channel.CHANNEL_BUFFER_SIZE - c.stdoutWritepos, Channel.CHANNEL_BUFFER_SIZE
-						- c.stderrWritepos);
+				int minFreeSpace = Math.min(c.stdoutBuffer.free(), c.stderrBuffer.free());
 
 				increment = minFreeSpace - c.localWindow;
 				c.localWindow = minFreeSpace;
@@ -1090,8 +1073,7 @@ public class ChannelManager implements MessageHandler
 
 			c.localWindow -= len;
 
-			System.arraycopy(msg, 9, c.stdoutBuffer, c.stdoutWritepos, len);
-			c.stdoutWritepos += len;
+			c.stdoutBuffer.write(msg, 9, len);
 
 			c.notifyAll();
 		}
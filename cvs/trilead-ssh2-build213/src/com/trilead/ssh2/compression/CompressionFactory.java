@@ -0,0 +1,81 @@
+package com.trilead.ssh2.compression;
+
+/**
+ * CompressionFactory. Knows the payload compression methods of the transport layer:
+ * <code>zlib</code> (RFC 4253), <code>zlib@openssh.com</code> (the same stream, but
+ * only started after the user has been authenticated) and <code>none</code>.
+ */
+public class CompressionFactory
+{
+	public static final String NONE = "none";
+
+	public static final String ZLIB = "zlib";
+
+	public static final String ZLIB_OPENSSH = "zlib@openssh.com";
+
+	public static final int DEFAULT_LEVEL = 6;
+
+	public static String[] getDefaultCompressorList()
+	{
+		return new String[] { ZLIB_OPENSSH, ZLIB, NONE };
+	}
+
+	public static String[] getNoCompressorList()
+	{
+		return new String[] { NONE };
+	}
+
+	public static void checkCompressorList(String[] algos)
+	{
+		for (int i = 0; i < algos.length; i++)
+		{
+			if (NONE.equals(algos[i]) || ZLIB.equals(algos[i]) || ZLIB_OPENSSH.equals(algos[i]))
+				continue;
+
+			throw new IllegalArgumentException("Unknown compression algorithm '" + algos[i] + "'");
+		}
+	}
+
+	public static void checkCompressionLevel(int level)
+	{
+		if (level < 1 || level > 9)
+			throw new IllegalArgumentException("Compression level must be between 1 and 9 (" + level + ")");
+	}
+
+	/**
+	 * @return <code>true</code> if the method must not be used before the user
+	 *         authentication has succeeded.
+	 */
+	public static boolean isDelayed(String type)
+	{
+		return ZLIB_OPENSSH.equals(type);
+	}
+
+	/**
+	 * @return a new compressor, or <code>null</code> for <code>none</code>.
+	 */
+	public static Compressor createCompressor(String type, int level)
+	{
+		if (NONE.equals(type))
+			return null;
+
+		if (ZLIB.equals(type) || ZLIB_OPENSSH.equals(type))
+			return new Compressor(type, level);
+
+		throw new IllegalArgumentException("Unknown compression algorithm '" + type + "'");
+	}
+
+	/**
+	 * @return a new decompressor, or <code>null</code> for <code>none</code>.
+	 */
+	public static Decompressor createDecompressor(String type)
+	{
+		if (NONE.equals(type))
+			return null;
+
+		if (ZLIB.equals(type) || ZLIB_OPENSSH.equals(type))
+			return new Decompressor(type);
+
+		throw new IllegalArgumentException("Unknown compression algorithm '" + type + "'");
+	}
+}
@@ -0,0 +1,105 @@
+package com.trilead.ssh2.compression;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compressor. One zlib stream per direction; every packet payload is terminated
+ * with a sync flush, so the peer can decompress it without waiting for more data.
+ * The compressed payload is left in an internal buffer which grows as needed.
+ */
+public class Compressor
+{
+	private final String type;
+
+	private final Deflater deflater;
+
+	private byte[] buffer = new byte[4096];
+
+	private int pos;
+
+	Compressor(String type, int level)
+	{
+		CompressionFactory.checkCompressionLevel(level);
+
+		this.type = type;
+		this.deflater = new Deflater(level);
+	}
+
+	public String getType()
+	{
+		return type;
+	}
+
+	public boolean isDelayed()
+	{
+		return CompressionFactory.isDelayed(type);
+	}
+
+	/**
+	 * Compresses <code>head[0..headlen)</code> followed by
+	 * <code>body[off..off+len)</code> as one payload.
+	 * 
+	 * @return the length of the compressed payload, see {@link #getBuffer()}.
+	 */
+	public int compress(byte[] head, int headlen, byte[] body, int off, int len)
+	{
+		pos = 0;
+
+		if (headlen > 0)
+			deflate(head, 0, headlen, Deflater.NO_FLUSH);
+
+		deflate(body, off, len, Deflater.SYNC_FLUSH);
+
+		return pos;
+	}
+
+	/**
+	 * @return the length of the compressed payload, see {@link #getBuffer()}.
+	 */
+	public int compress(byte[] message, int off, int len)
+	{
+		pos = 0;
+
+		deflate(message, off, len, Deflater.SYNC_FLUSH);
+
+		return pos;
+	}
+
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	private void deflate(byte[] input, int off, int len, int flush)
+	{
+		deflater.setInput(input, off, len);
+
+		while (true)
+		{
+			if (pos == buffer.length)
+			{
+				byte[] tmp = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, tmp, 0, pos);
+				buffer = tmp;
+			}
+
+			pos += deflater.deflate(buffer, pos, buffer.length - pos, flush);
+
+			if (flush == Deflater.NO_FLUSH)
+			{
+				if (deflater.needsInput())
+					break;
+			}
+			else if (pos < buffer.length)
+			{
+				/* A flush is complete once the output did not fill the buffer */
+				break;
+			}
+		}
+	}
+
+	public void close()
+	{
+		deflater.end();
+	}
+}
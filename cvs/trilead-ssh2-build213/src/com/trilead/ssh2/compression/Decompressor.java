@@ -0,0 +1,74 @@
+package com.trilead.ssh2.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompressor. Counterpart of {@link Compressor}, keeps the zlib stream of one
+ * direction across packets.
+ */
+public class Decompressor
+{
+	private final String type;
+
+	private final Inflater inflater = new Inflater();
+
+	Decompressor(String type)
+	{
+		this.type = type;
+	}
+
+	public String getType()
+	{
+		return type;
+	}
+
+	public boolean isDelayed()
+	{
+		return CompressionFactory.isDelayed(type);
+	}
+
+	/**
+	 * Decompresses one packet payload.
+	 * 
+	 * @return the length of the decompressed payload in <code>out</code>.
+	 * @throws IOException if the data is corrupt or does not fit into
+	 *             <code>out[outoff..outoff+outlen)</code>.
+	 */
+	public int decompress(byte[] in, int off, int len, byte[] out, int outoff, int outlen) throws IOException
+	{
+		inflater.setInput(in, off, len);
+
+		int pos = 0;
+
+		try
+		{
+			while (true)
+			{
+				int n = inflater.inflate(out, outoff + pos, outlen - pos);
+				pos += n;
+
+				if (pos == outlen)
+					throw new IOException("Decompressed payload too large (more than " + outlen + " bytes)");
+
+				if (inflater.needsInput())
+					break;
+
+				if (n == 0 && (inflater.finished() || inflater.needsDictionary()))
+					throw new IOException("Remote sent a corrupt compressed payload.");
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw (IOException) new IOException("Remote sent a corrupt compressed payload.").initCause(e);
+		}
+
+		return pos;
+	}
+
+	public void close()
+	{
+		inflater.end();
+	}
+}
@@ -1,6 +1,7 @@
 
 package com.trilead.ssh2.crypto;
 
+import com.trilead.ssh2.compression.CompressionFactory;
 import com.trilead.ssh2.crypto.cipher.BlockCipherFactory;
 import com.trilead.ssh2.crypto.digest.MAC;
 import com.trilead.ssh2.transport.KexManager;
@@ -20,4 +21,8 @@ public class CryptoWishList
 	public String[] s2c_enc_algos = BlockCipherFactory.getDefaultCipherList();
 	public String[] c2s_mac_algos = MAC.getMacList();
 	public String[] s2c_mac_algos = MAC.getMacList();
+	public String[] c2s_comp_algos = CompressionFactory.getNoCompressorList();
+	public String[] s2c_comp_algos = CompressionFactory.getNoCompressorList();
+	public int compressionLevel = CompressionFactory.DEFAULT_LEVEL;
+	public boolean useJceCrypto = false;
 }
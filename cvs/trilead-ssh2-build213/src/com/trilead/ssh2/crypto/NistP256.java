@@ -0,0 +1,107 @@
+package com.trilead.ssh2.crypto;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.EllipticCurve;
+
+/**
+ * The NIST P-256 curve (secp256r1) as used by <code>ecdh-sha2-nistp256</code> and
+ * <code>ecdsa-sha2-nistp256</code> (RFC 5656), with the SEC1 point encoding used
+ * on the wire. The arithmetic is left to the JCE.
+ */
+public class NistP256
+{
+	public static final String IDENTIFIER = "nistp256";
+
+	public static final int FIELD_SIZE = 32;
+
+	private static ECParameterSpec params;
+
+	private static boolean initialized = false;
+
+	/**
+	 * @return the curve parameters, or <code>null</code> if the JCE does not know the curve.
+	 */
+	public static synchronized ECParameterSpec getParameters()
+	{
+		if (initialized == false)
+		{
+			try
+			{
+				AlgorithmParameters ap = AlgorithmParameters.getInstance("EC");
+				ap.init(new ECGenParameterSpec("secp256r1"));
+				params = (ECParameterSpec) ap.getParameterSpec(ECParameterSpec.class);
+			}
+			catch (GeneralSecurityException e)
+			{
+				params = null;
+			}
+			initialized = true;
+		}
+		return params;
+	}
+
+	public static boolean isSupported()
+	{
+		return getParameters() != null;
+	}
+
+	/**
+	 * Encodes a point in uncompressed form (0x04 || X || Y).
+	 */
+	public static byte[] encodePoint(ECPoint w)
+	{
+		byte[] res = new byte[1 + 2 * FIELD_SIZE];
+		res[0] = 0x04;
+		copyUnsigned(w.getAffineX(), res, 1);
+		copyUnsigned(w.getAffineY(), res, 1 + FIELD_SIZE);
+		return res;
+	}
+
+	private static void copyUnsigned(BigInteger v, byte[] dst, int off)
+	{
+		byte[] b = v.toByteArray();
+		int skip = (b.length > FIELD_SIZE) ? b.length - FIELD_SIZE : 0;
+		int len = b.length - skip;
+		System.arraycopy(b, skip, dst, off + FIELD_SIZE - len, len);
+	}
+
+	/**
+	 * Decodes an uncompressed point and checks that it lies on the curve.
+	 * 
+	 * @throws IllegalArgumentException if the encoding is invalid or the point is not on the curve.
+	 */
+	public static ECPoint decodePoint(byte[] encoded)
+	{
+		if ((encoded.length != 1 + 2 * FIELD_SIZE) || (encoded[0] != 0x04))
+			throw new IllegalArgumentException("Invalid or unsupported EC point encoding");
+
+		byte[] tmp = new byte[FIELD_SIZE];
+
+		System.arraycopy(encoded, 1, tmp, 0, FIELD_SIZE);
+		BigInteger x = new BigInteger(1, tmp);
+		System.arraycopy(encoded, 1 + FIELD_SIZE, tmp, 0, FIELD_SIZE);
+		BigInteger y = new BigInteger(1, tmp);
+
+		EllipticCurve curve = getParameters().getCurve();
+		BigInteger p = ((ECFieldFp) curve.getField()).getP();
+
+		if ((x.compareTo(p) >= 0) || (y.compareTo(p) >= 0))
+			throw new IllegalArgumentException("EC point coordinates out of range");
+
+		/* y^2 = x^3 + ax + b (mod p) */
+
+		BigInteger lhs = y.multiply(y).mod(p);
+		BigInteger rhs = x.multiply(x).add(curve.getA()).multiply(x).add(curve.getB()).mod(p);
+
+		if (lhs.equals(rhs) == false)
+			throw new IllegalArgumentException("EC point is not on the curve");
+
+		return new ECPoint(x, y);
+	}
+}
@@ -1,6 +1,7 @@
 
 package com.trilead.ssh2.crypto.cipher;
 
+import java.security.GeneralSecurityException;
 import java.util.Vector;
 
 /**
@@ -17,13 +18,15 @@ public class BlockCipherFactory
 		int blocksize;
 		int keysize;
 		String cipherClass;
+		String jceAlgorithm;
 
-		public CipherEntry(String type, int blockSize, int keySize, String cipherClass)
+		public CipherEntry(String type, int blockSize, int keySize, String cipherClass, String jceAlgorithm)
 		{
 			this.type = type;
 			this.blocksize = blockSize;
 			this.keysize = keySize;
 			this.cipherClass = cipherClass;
+			this.jceAlgorithm = jceAlgorithm;
 		}
 	}
 
@@ -33,18 +36,18 @@ public class BlockCipherFactory
 	{
 		/* Higher Priority First */
 
-		ciphers.addElement(new CipherEntry("aes256-ctr", 16, 32, "com.trilead.ssh2.crypto.cipher.AES"));
-		ciphers.addElement(new CipherEntry("aes192-ctr", 16, 24, "com.trilead.ssh2.crypto.cipher.AES"));
-		ciphers.addElement(new CipherEntry("aes128-ctr", 16, 16, "com.trilead.ssh2.crypto.cipher.AES"));
-		ciphers.addElement(new CipherEntry("blowfish-ctr", 8, 16, "com.trilead.ssh2.crypto.cipher.BlowFish"));
+		ciphers.addElement(new CipherEntry("aes256-ctr", 16, 32, "com.trilead.ssh2.crypto.cipher.AES", "AES"));
+		ciphers.addElement(new CipherEntry("aes192-ctr", 16, 24, "com.trilead.ssh2.crypto.cipher.AES", "AES"));
+		ciphers.addElement(new CipherEntry("aes128-ctr", 16, 16, "com.trilead.ssh2.crypto.cipher.AES", "AES"));
+		ciphers.addElement(new CipherEntry("blowfish-ctr", 8, 16, "com.trilead.ssh2.crypto.cipher.BlowFish", "Blowfish"));
 
-		ciphers.addElement(new CipherEntry("aes256-cbc", 16, 32, "com.trilead.ssh2.crypto.cipher.AES"));
-		ciphers.addElement(new CipherEntry("aes192-cbc", 16, 24, "com.trilead.ssh2.crypto.cipher.AES"));
-		ciphers.addElement(new CipherEntry("aes128-cbc", 16, 16, "com.trilead.ssh2.crypto.cipher.AES"));
-		ciphers.addElement(new CipherEntry("blowfish-cbc", 8, 16, "com.trilead.ssh2.crypto.cipher.BlowFish"));
+		ciphers.addElement(new CipherEntry("aes256-cbc", 16, 32, "com.trilead.ssh2.crypto.cipher.AES", "AES"));
+		ciphers.addElement(new CipherEntry("aes192-cbc", 16, 24, "com.trilead.ssh2.crypto.cipher.AES", "AES"));
+		ciphers.addElement(new CipherEntry("aes128-cbc", 16, 16, "com.trilead.ssh2.crypto.cipher.AES", "AES"));
+		ciphers.addElement(new CipherEntry("blowfish-cbc", 8, 16, "com.trilead.ssh2.crypto.cipher.BlowFish", "Blowfish"));
 		
-		ciphers.addElement(new CipherEntry("3des-ctr", 8, 24, "com.trilead.ssh2.crypto.cipher.DESede"));
-		ciphers.addElement(new CipherEntry("3des-cbc", 8, 24, "com.trilead.ssh2.crypto.cipher.DESede"));
+		ciphers.addElement(new CipherEntry("3des-ctr", 8, 24, "com.trilead.ssh2.crypto.cipher.DESede", "DESede"));
+		ciphers.addElement(new CipherEntry("3des-cbc", 8, 24, "com.trilead.ssh2.crypto.cipher.DESede", "DESede"));
 	}
 
 	public static String[] getDefaultCipherList()
@@ -66,6 +69,23 @@ public class BlockCipherFactory
 
 	public static BlockCipher createCipher(String type, boolean encrypt, byte[] key, byte[] iv)
 	{
+		return createCipher(type, encrypt, key, iv, false);
+	}
+
+	/**
+	 * Creates a cipher for the given SSH algorithm name. If <code>useJce</code> is set,
+	 * the cipher is taken from the installed JCE providers; if the JCE cannot supply it
+	 * (e.g., restricted key lengths), the pure-Java implementation is used instead.
+	 */
+	public static BlockCipher createCipher(String type, boolean encrypt, byte[] key, byte[] iv, boolean useJce)
+	{
+		if (useJce)
+		{
+			BlockCipher bc = createJceCipher(type, encrypt, key, iv);
+			if (bc != null)
+				return bc;
+		}
+
 		try
 		{
 			CipherEntry ce = getEntry(type);
@@ -90,6 +110,29 @@ public class BlockCipherFactory
 		}
 	}
 
+	private static BlockCipher createJceCipher(String type, boolean encrypt, byte[] key, byte[] iv)
+	{
+		CipherEntry ce = getEntry(type);
+
+		String mode;
+
+		if (type.endsWith("-cbc"))
+			mode = "CBC";
+		else if (type.endsWith("-ctr"))
+			mode = "CTR";
+		else
+			return null;
+
+		try
+		{
+			return new JceBlockCipher(ce.jceAlgorithm, mode, encrypt, key, iv);
+		}
+		catch (GeneralSecurityException e)
+		{
+			return null;
+		}
+	}
+
 	private static CipherEntry getEntry(String type)
 	{
 		for (int i = 0; i < ciphers.size(); i++)
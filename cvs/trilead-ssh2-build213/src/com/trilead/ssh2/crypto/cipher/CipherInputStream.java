@@ -62,6 +62,22 @@ public class CipherInputStream
 		return thiscopy;
 	}
 
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	/**
+	 * @return the number of bytes that can be read without blocking: decrypted bytes
+	 *         of the current block, plus buffered and available input.
+	 */
+	public int available() throws IOException
+	{
+		int buffered = (input_buffer_size > input_buffer_pos) ? input_buffer_size - input_buffer_pos : 0;
+
+		return (blockSize - pos) + buffered + bi.available();
+	}
+
 	public void changeCipher(BlockCipher bc)
 	{
 		this.currentCipher = bc;
@@ -98,10 +114,57 @@ public class CipherInputStream
 		return read(dst, 0, dst.length);
 	}
 
+	/*
+	 * If the cipher can handle several blocks at once, read all complete blocks
+	 * directly into the destination and decrypt them there in one go. The bytes
+	 * left of the current block are handed out first, the length of a packet is
+	 * read by itself and always leaves the rest of its block behind.
+	 */
+	private int readBlocksInPlace(byte[] dst, int off, int len) throws IOException
+	{
+		int n = 0;
+		while (n < len)
+		{
+			int cnt = internal_read(dst, off + n, len - n);
+			if (cnt < 0)
+				throw new IOException("Cannot read full block, EOF reached.");
+			n += cnt;
+		}
+
+		try
+		{
+			((MultiBlockCipher) currentCipher).transformBlocks(dst, off, dst, off, len);
+		}
+		catch (Exception e)
+		{
+			throw new IOException("Error while decrypting block.");
+		}
+		return len;
+	}
+
 	public int read(byte[] dst, int off, int len) throws IOException
 	{
 		int count = 0;
 
+		if ((pos < blockSize) && (len > 0))
+		{
+			int copy = Math.min(blockSize - pos, len);
+			System.arraycopy(buffer, pos, dst, off, copy);
+			pos += copy;
+			off += copy;
+			len -= copy;
+			count += copy;
+		}
+
+		if ((len >= blockSize) && (currentCipher instanceof MultiBlockCipher))
+		{
+			int bulk = len - (len % blockSize);
+			readBlocksInPlace(dst, off, bulk);
+			off += bulk;
+			len -= bulk;
+			count += bulk;
+		}
+
 		while (len > 0)
 		{
 			if (pos >= blockSize)
@@ -126,6 +126,50 @@ public class CipherOutputStream
 			writeBlock();
 	}
 
+	/**
+	 * Encrypts <code>len</code> bytes of <code>buf</code> in place and writes them out.
+	 * The stream must be block aligned and <code>len</code> must be a multiple of the
+	 * block size. Large packets bypass the internal output buffer.
+	 */
+	public void writeInPlace(byte[] buf, int off, int len) throws IOException
+	{
+		if (pos != 0)
+			throw new IOException("Cannot encrypt in place since crypto buffer is not aligned.");
+
+		if ((len % blockSize) != 0)
+			throw new IOException("Cannot encrypt in place, length " + len + " is not a multiple of the block size.");
+
+		try
+		{
+			if (currentCipher instanceof MultiBlockCipher)
+			{
+				((MultiBlockCipher) currentCipher).transformBlocks(buf, off, buf, off, len);
+			}
+			else
+			{
+				for (int i = 0; i < len; i += blockSize)
+					currentCipher.transformBlock(buf, off + i, buf, off + i);
+			}
+		}
+		catch (Exception e)
+		{
+			throw (IOException) new IOException("Error while encrypting block.").initCause(e);
+		}
+
+		if (len < BUFF_SIZE)
+		{
+			internal_write(buf, off, len);
+			return;
+		}
+
+		if (out_buffer_pos > 0)
+		{
+			bo.write(out_buffer, 0, out_buffer_pos);
+			out_buffer_pos = 0;
+		}
+		bo.write(buf, off, len);
+	}
+
 	public void writePlain(int b) throws IOException
 	{
 		if (pos != 0)
@@ -0,0 +1,80 @@
+package com.trilead.ssh2.crypto.cipher;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * A block cipher in CBC or CTR mode backed by a <code>javax.crypto.Cipher</code>.
+ * Unlike the pure-Java {@link CBCMode}/{@link CTRMode} wrappers, this lets the JVM
+ * use hardware acceleration (e.g., AES-NI) and handles a whole packet per call.
+ * <p>
+ * The cipher is keyed in the constructor, {@link #init(boolean, byte[])} does nothing.
+ */
+public class JceBlockCipher implements MultiBlockCipher
+{
+	final Cipher cipher;
+	final int blockSize;
+
+	/*
+	 * Packets are transformed in place. Given overlapping ranges, the JCE copies
+	 * the input to a new array on every call, so the output is written to this
+	 * buffer instead and copied back.
+	 */
+	byte[] out = new byte[0];
+
+	public JceBlockCipher(String algorithm, String mode, boolean encrypt, byte[] key, byte[] iv)
+			throws GeneralSecurityException
+	{
+		cipher = Cipher.getInstance(algorithm + "/" + mode + "/NoPadding");
+		cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, new SecretKeySpec(key, algorithm),
+				new IvParameterSpec(iv));
+		blockSize = cipher.getBlockSize();
+
+		if (blockSize != iv.length)
+			throw new IllegalArgumentException("IV must be " + blockSize + " bytes long! (currently " + iv.length
+					+ ")");
+	}
+
+	public void init(boolean forEncryption, byte[] key)
+	{
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public void transformBlock(byte[] src, int srcoff, byte[] dst, int dstoff)
+	{
+		transformBlocks(src, srcoff, dst, dstoff, blockSize);
+	}
+
+	public void transformBlocks(byte[] src, int srcoff, byte[] dst, int dstoff, int len)
+	{
+		int n;
+
+		try
+		{
+			if (src == dst && srcoff < dstoff + len && dstoff < srcoff + len)
+			{
+				if (out.length < len)
+					out = new byte[len];
+				n = cipher.update(src, srcoff, len, out, 0);
+				System.arraycopy(out, 0, dst, dstoff, n);
+			}
+			else
+			{
+				n = cipher.update(src, srcoff, len, dst, dstoff);
+			}
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw (IllegalStateException) new IllegalStateException("Cipher failure: " + e.getMessage()).initCause(e);
+		}
+
+		if (n != len)
+			throw new IllegalStateException("Cipher did not process whole blocks (" + n + " of " + len + " bytes).");
+	}
+}
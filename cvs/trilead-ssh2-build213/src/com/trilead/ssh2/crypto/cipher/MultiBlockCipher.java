@@ -0,0 +1,11 @@
+package com.trilead.ssh2.crypto.cipher;
+
+/**
+ * A {@link BlockCipher} that can transform several consecutive blocks
+ * in one call (e.g., a whole packet). <code>src</code> and <code>dst</code>
+ * may be the same array at the same offset.
+ */
+public interface MultiBlockCipher extends BlockCipher
+{
+	public void transformBlocks(byte[] src, int srcoff, byte[] dst, int dstoff, int len);
+}
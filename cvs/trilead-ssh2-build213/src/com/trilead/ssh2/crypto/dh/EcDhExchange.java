@@ -0,0 +1,255 @@
+package com.trilead.ssh2.crypto.dh;
+
+import com.trilead.ssh2.crypto.NistP256;
+import com.trilead.ssh2.crypto.digest.HashForSSH2Types;
+import com.trilead.ssh2.log.Logger;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import javax.crypto.KeyAgreement;
+
+/**
+ * Elliptic curve key exchange: <code>curve25519-sha256</code> (RFC 8731, also
+ * known as <code>curve25519-sha256@libssh.org</code>) and <code>ecdh-sha2-nistp256</code>
+ * (RFC 5656). Both need a single round trip and are much cheaper than the
+ * <code>BigInteger.modPow</code> of the classic groups. The curve arithmetic is
+ * taken from the JCE (X25519 needs Java 11 or newer).
+ */
+public class EcDhExchange
+{
+	private static final Logger log = Logger.getLogger(EcDhExchange.class);
+
+	public static final String CURVE25519 = "curve25519-sha256";
+	public static final String CURVE25519_LIBSSH = "curve25519-sha256@libssh.org";
+	public static final String NISTP256 = "ecdh-sha2-nistp256";
+
+	/* DER prefix of an X.509 SubjectPublicKeyInfo holding a raw X25519 key */
+
+	private static final byte[] X25519_SPKI_PREFIX = new byte[] { 0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65,
+			0x6e, 0x03, 0x21, 0x00 };
+
+	private static final int X25519_KEY_SIZE = 32;
+
+	private static Boolean x25519Supported;
+
+	boolean curve25519;
+
+	KeyPair keyPair;
+
+	/* Client public */
+
+	byte[] e;
+
+	/* Server public */
+
+	byte[] f;
+
+	/* Shared secret */
+
+	BigInteger k;
+
+	public EcDhExchange()
+	{
+	}
+
+	public static boolean isKexAlgorithm(String kexAlgorithm)
+	{
+		return CURVE25519.equals(kexAlgorithm) || CURVE25519_LIBSSH.equals(kexAlgorithm)
+				|| NISTP256.equals(kexAlgorithm);
+	}
+
+	/**
+	 * @return <code>true</code> if the JCE of this JVM implements the curve of the algorithm.
+	 */
+	public static boolean isSupported(String kexAlgorithm)
+	{
+		if (NISTP256.equals(kexAlgorithm))
+			return NistP256.isSupported();
+
+		if (CURVE25519.equals(kexAlgorithm) || CURVE25519_LIBSSH.equals(kexAlgorithm))
+			return isX25519Supported();
+
+		return false;
+	}
+
+	private static synchronized boolean isX25519Supported()
+	{
+		if (x25519Supported == null)
+		{
+			try
+			{
+				KeyPairGenerator.getInstance("X25519");
+				KeyAgreement.getInstance("X25519");
+				x25519Supported = Boolean.TRUE;
+			}
+			catch (GeneralSecurityException e)
+			{
+				x25519Supported = Boolean.FALSE;
+			}
+		}
+		return x25519Supported.booleanValue();
+	}
+
+	public void init(String kexAlgorithm, SecureRandom rnd)
+	{
+		k = null;
+		f = null;
+
+		try
+		{
+			if (CURVE25519.equals(kexAlgorithm) || CURVE25519_LIBSSH.equals(kexAlgorithm))
+			{
+				curve25519 = true;
+
+				KeyPairGenerator kpg = KeyPairGenerator.getInstance("X25519");
+				kpg.initialize(255, rnd);
+				keyPair = kpg.generateKeyPair();
+
+				byte[] spki = keyPair.getPublic().getEncoded();
+
+				if (spki.length != X25519_SPKI_PREFIX.length + X25519_KEY_SIZE)
+					throw new IllegalStateException("Unexpected X25519 public key encoding");
+
+				e = new byte[X25519_KEY_SIZE];
+				System.arraycopy(spki, X25519_SPKI_PREFIX.length, e, 0, X25519_KEY_SIZE);
+			}
+			else if (NISTP256.equals(kexAlgorithm))
+			{
+				curve25519 = false;
+
+				KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+				kpg.initialize(NistP256.getParameters(), rnd);
+				keyPair = kpg.generateKeyPair();
+
+				e = NistP256.encodePoint(((ECPublicKey) keyPair.getPublic()).getW());
+			}
+			else
+				throw new IllegalArgumentException("Unknown ECDH kex algorithm " + kexAlgorithm);
+		}
+		catch (GeneralSecurityException ex)
+		{
+			throw (IllegalArgumentException) new IllegalArgumentException("Cannot initialize " + kexAlgorithm + ": "
+					+ ex.getMessage()).initCause(ex);
+		}
+	}
+
+	/**
+	 * @return Returns the client's ephemeral public key (Q_C).
+	 * @throws IllegalStateException
+	 */
+	public byte[] getE()
+	{
+		if (e == null)
+			throw new IllegalStateException("EcDhExchange not initialized!");
+
+		return e;
+	}
+
+	/**
+	 * @return Returns the shared secret k.
+	 * @throws IllegalStateException
+	 */
+	public BigInteger getK()
+	{
+		if (k == null)
+			throw new IllegalStateException("Shared secret not yet known, need f first!");
+
+		return k;
+	}
+
+	/**
+	 * @param f the server's ephemeral public key (Q_S)
+	 * @throws IllegalArgumentException if the key is invalid
+	 */
+	public void setF(byte[] f)
+	{
+		if (e == null)
+			throw new IllegalStateException("EcDhExchange not initialized!");
+
+		byte[] secret;
+
+		try
+		{
+			PublicKey serverKey;
+			KeyAgreement ka;
+
+			if (curve25519)
+			{
+				if (f.length != X25519_KEY_SIZE)
+					throw new IllegalArgumentException("Invalid f specified!");
+
+				byte[] spki = new byte[X25519_SPKI_PREFIX.length + X25519_KEY_SIZE];
+				System.arraycopy(X25519_SPKI_PREFIX, 0, spki, 0, X25519_SPKI_PREFIX.length);
+				System.arraycopy(f, 0, spki, X25519_SPKI_PREFIX.length, X25519_KEY_SIZE);
+
+				serverKey = KeyFactory.getInstance("X25519").generatePublic(new X509EncodedKeySpec(spki));
+				ka = KeyAgreement.getInstance("X25519");
+			}
+			else
+			{
+				serverKey = KeyFactory.getInstance("EC").generatePublic(
+						new ECPublicKeySpec(NistP256.decodePoint(f), NistP256.getParameters()));
+				ka = KeyAgreement.getInstance("ECDH");
+			}
+
+			ka.init(keyPair.getPrivate());
+			ka.doPhase(serverKey, true);
+			secret = ka.generateSecret();
+		}
+		catch (GeneralSecurityException ex)
+		{
+			throw (IllegalArgumentException) new IllegalArgumentException("Invalid f specified!").initCause(ex);
+		}
+		catch (IllegalStateException ex)
+		{
+			/* The JCE rejects X25519 points of small order this way */
+			throw (IllegalArgumentException) new IllegalArgumentException("Invalid f specified!").initCause(ex);
+		}
+
+		boolean allZero = true;
+
+		for (int i = 0; i < secret.length; i++)
+		{
+			if (secret[i] != 0)
+				allZero = false;
+		}
+
+		if (allZero)
+			throw new IllegalArgumentException("Invalid f specified!");
+
+		this.f = f;
+		this.k = new BigInteger(1, secret);
+	}
+
+	public byte[] calculateH(byte[] clientversion, byte[] serverversion, byte[] clientKexPayload,
+			byte[] serverKexPayload, byte[] hostKey) throws UnsupportedEncodingException
+	{
+		HashForSSH2Types hash = new HashForSSH2Types("SHA-256");
+
+		if (log.isEnabled())
+		{
+			log.log(90, "Client: '" + new String(clientversion, "ISO-8859-1") + "'");
+			log.log(90, "Server: '" + new String(serverversion, "ISO-8859-1") + "'");
+		}
+
+		hash.updateByteString(clientversion);
+		hash.updateByteString(serverversion);
+		hash.updateByteString(clientKexPayload);
+		hash.updateByteString(serverKexPayload);
+		hash.updateByteString(hostKey);
+		hash.updateByteString(e);
+		hash.updateByteString(f);
+		hash.updateBigInt(k);
+
+		return hash.getDigest();
+	}
+}
@@ -28,6 +28,10 @@ public class HashForSSH2Types
 		{
 			md = new MD5();
 		}
+		else if (type.equals("SHA-256"))
+		{
+			md = new JceDigest("SHA-256");
+		}
 		else
 			throw new IllegalArgumentException("Unknown algorithm " + type);
 	}
@@ -0,0 +1,69 @@
+package com.trilead.ssh2.crypto.digest;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A {@link Digest} backed by a <code>java.security.MessageDigest</code>, used for
+ * the hashes this library has no own implementation of (e.g., SHA-256).
+ */
+public class JceDigest implements Digest
+{
+	final MessageDigest md;
+
+	public JceDigest(String algorithm)
+	{
+		try
+		{
+			md = MessageDigest.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw (IllegalArgumentException) new IllegalArgumentException("Unknown algorithm " + algorithm)
+					.initCause(e);
+		}
+	}
+
+	public int getDigestLength()
+	{
+		return md.getDigestLength();
+	}
+
+	public void update(byte b)
+	{
+		md.update(b);
+	}
+
+	public void update(byte[] b)
+	{
+		md.update(b);
+	}
+
+	public void update(byte[] b, int off, int len)
+	{
+		md.update(b, off, len);
+	}
+
+	public void reset()
+	{
+		md.reset();
+	}
+
+	public void digest(byte[] out)
+	{
+		digest(out, 0);
+	}
+
+	public void digest(byte[] out, int off)
+	{
+		try
+		{
+			md.digest(out, off, md.getDigestLength());
+		}
+		catch (DigestException e)
+		{
+			throw (IllegalStateException) new IllegalStateException("Digest failure: " + e.getMessage()).initCause(e);
+		}
+	}
+}
@@ -1,6 +1,10 @@
 
 package com.trilead.ssh2.crypto.digest;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
 /**
  * MAC.
  * 
@@ -12,6 +16,11 @@ public final class MAC
 	Digest mac;
 	int size;
 
+	/* Set instead of "mac" if the JCE implementation is used */
+	Mac jceMac;
+	byte[] jceSeq;
+	byte[] jceOut;
+
 	public final static String[] getMacList()
 	{
 		/* Higher Priority First */
@@ -40,6 +49,18 @@ public final class MAC
 
 	public MAC(String type, byte[] key)
 	{
+		this(type, key, false);
+	}
+
+	/**
+	 * @param useJce use the <code>javax.crypto.Mac</code> implementation (falls back
+	 *        to the pure-Java HMAC if it is not available).
+	 */
+	public MAC(String type, byte[] key, boolean useJce)
+	{
+		if (useJce && initJce(type, key))
+			return;
+
 		if (type.equals("hmac-sha1"))
 		{
 			mac = new HMAC(new SHA1(), key, 20);
@@ -62,8 +83,62 @@ public final class MAC
 		size = mac.getDigestLength();
 	}
 
+	private boolean initJce(String type, byte[] key)
+	{
+		String algorithm;
+
+		if (type.equals("hmac-sha1"))
+		{
+			algorithm = "HmacSHA1";
+			size = 20;
+		}
+		else if (type.equals("hmac-sha1-96"))
+		{
+			algorithm = "HmacSHA1";
+			size = 12;
+		}
+		else if (type.equals("hmac-md5"))
+		{
+			algorithm = "HmacMD5";
+			size = 16;
+		}
+		else if (type.equals("hmac-md5-96"))
+		{
+			algorithm = "HmacMD5";
+			size = 12;
+		}
+		else
+			throw new IllegalArgumentException("Unkown algorithm " + type);
+
+		try
+		{
+			jceMac = Mac.getInstance(algorithm);
+			jceMac.init(new SecretKeySpec(key, algorithm));
+		}
+		catch (GeneralSecurityException e)
+		{
+			jceMac = null;
+			return false;
+		}
+
+		jceSeq = new byte[4];
+		jceOut = new byte[jceMac.getMacLength()];
+		return true;
+	}
+
 	public final void initMac(int seq)
 	{
+		if (jceMac != null)
+		{
+			jceMac.reset();
+			jceSeq[0] = (byte) (seq >> 24);
+			jceSeq[1] = (byte) (seq >> 16);
+			jceSeq[2] = (byte) (seq >> 8);
+			jceSeq[3] = (byte) (seq);
+			jceMac.update(jceSeq, 0, 4);
+			return;
+		}
+
 		mac.reset();
 		mac.update((byte) (seq >> 24));
 		mac.update((byte) (seq >> 16));
@@ -73,12 +148,29 @@ public final class MAC
 
 	public final void update(byte[] packetdata, int off, int len)
 	{
-		mac.update(packetdata, off, len);
+		if (jceMac != null)
+			jceMac.update(packetdata, off, len);
+		else
+			mac.update(packetdata, off, len);
 	}
 
 	public final void getMac(byte[] out, int off)
 	{
-		mac.digest(out, off);
+		if (jceMac == null)
+		{
+			mac.digest(out, off);
+			return;
+		}
+
+		try
+		{
+			jceMac.doFinal(jceOut, 0);
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw (IllegalStateException) new IllegalStateException("MAC failure: " + e.getMessage()).initCause(e);
+		}
+		System.arraycopy(jceOut, 0, out, off, size);
 	}
 
 	public final int size()
@@ -0,0 +1,28 @@
+package com.trilead.ssh2.packets;
+
+/**
+ * PacketKexEcDhInit (RFC 5656, also used by curve25519-sha256).
+ */
+public class PacketKexEcDhInit
+{
+	byte[] payload;
+
+	byte[] publicKey;
+
+	public PacketKexEcDhInit(byte[] publicKey)
+	{
+		this.publicKey = publicKey;
+	}
+
+	public byte[] getPayload()
+	{
+		if (payload == null)
+		{
+			TypesWriter tw = new TypesWriter();
+			tw.writeByte(Packets.SSH_MSG_KEX_ECDH_INIT);
+			tw.writeString(publicKey, 0, publicKey.length);
+			payload = tw.getBytes();
+		}
+		return payload;
+	}
+}
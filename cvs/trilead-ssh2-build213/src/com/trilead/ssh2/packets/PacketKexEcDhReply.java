@@ -0,0 +1,50 @@
+package com.trilead.ssh2.packets;
+
+import java.io.IOException;
+
+/**
+ * PacketKexEcDhReply (RFC 5656, also used by curve25519-sha256).
+ */
+public class PacketKexEcDhReply
+{
+	byte[] payload;
+
+	byte[] hostKey;
+	byte[] publicKey;
+	byte[] signature;
+
+	public PacketKexEcDhReply(byte payload[], int off, int len) throws IOException
+	{
+		this.payload = new byte[len];
+		System.arraycopy(payload, off, this.payload, 0, len);
+
+		TypesReader tr = new TypesReader(payload, off, len);
+
+		int packet_type = tr.readByte();
+
+		if (packet_type != Packets.SSH_MSG_KEX_ECDH_REPLY)
+			throw new IOException("This is not a SSH_MSG_KEX_ECDH_REPLY! (" + packet_type + ")");
+
+		hostKey = tr.readByteString();
+		publicKey = tr.readByteString();
+		signature = tr.readByteString();
+
+		if (tr.remain() != 0)
+			throw new IOException("PADDING IN SSH_MSG_KEX_ECDH_REPLY!");
+	}
+
+	public byte[] getHostKey()
+	{
+		return hostKey;
+	}
+
+	public byte[] getPublicKey()
+	{
+		return publicKey;
+	}
+
+	public byte[] getSignature()
+	{
+		return signature;
+	}
+}
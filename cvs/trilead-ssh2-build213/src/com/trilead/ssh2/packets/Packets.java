@@ -22,6 +22,9 @@ public class Packets
 	public static final int SSH_MSG_KEXDH_INIT = 30;
 	public static final int SSH_MSG_KEXDH_REPLY = 31;
 
+	public static final int SSH_MSG_KEX_ECDH_INIT = 30;
+	public static final int SSH_MSG_KEX_ECDH_REPLY = 31;
+
 	public static final int SSH_MSG_KEX_DH_GEX_REQUEST_OLD = 30;
 	public static final int SSH_MSG_KEX_DH_GEX_REQUEST = 34;
 	public static final int SSH_MSG_KEX_DH_GEX_GROUP = 31;
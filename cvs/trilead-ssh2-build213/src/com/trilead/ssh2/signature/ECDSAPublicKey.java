@@ -0,0 +1,28 @@
+package com.trilead.ssh2.signature;
+
+import java.math.BigInteger;
+
+/**
+ * ECDSAPublicKey (currently always on the NIST P-256 curve).
+ */
+public class ECDSAPublicKey
+{
+	BigInteger x;
+	BigInteger y;
+
+	public ECDSAPublicKey(BigInteger x, BigInteger y)
+	{
+		this.x = x;
+		this.y = y;
+	}
+
+	public BigInteger getX()
+	{
+		return x;
+	}
+
+	public BigInteger getY()
+	{
+		return y;
+	}
+}
@@ -0,0 +1,167 @@
+package com.trilead.ssh2.signature;
+
+import com.trilead.ssh2.crypto.NistP256;
+import com.trilead.ssh2.log.Logger;
+import com.trilead.ssh2.packets.TypesReader;
+import com.trilead.ssh2.packets.TypesWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+
+/**
+ * ECDSASHA2Verify. Verification of <code>ecdsa-sha2-nistp256</code> host key
+ * signatures (RFC 5656), using the JCE.
+ */
+public class ECDSASHA2Verify
+{
+	private static final Logger log = Logger.getLogger(ECDSASHA2Verify.class);
+
+	public static final String ECDSA_SHA2_NISTP256 = "ecdsa-sha2-nistp256";
+
+	public static ECDSAPublicKey decodeSSHECDSAPublicKey(byte[] key) throws IOException
+	{
+		TypesReader tr = new TypesReader(key);
+
+		String key_format = tr.readString();
+
+		if (key_format.equals(ECDSA_SHA2_NISTP256) == false)
+			throw new IllegalArgumentException("This is not a " + ECDSA_SHA2_NISTP256 + " public key");
+
+		String curve = tr.readString();
+
+		if (curve.equals(NistP256.IDENTIFIER) == false)
+			throw new IOException("Unexpected curve in ECDSA public key (" + curve + ")");
+
+		byte[] q = tr.readByteString();
+
+		if (tr.remain() != 0)
+			throw new IOException("Padding in ECDSA public key!");
+
+		ECPoint w;
+
+		try
+		{
+			w = NistP256.decodePoint(q);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw (IOException) new IOException("Invalid ECDSA public key.").initCause(e);
+		}
+
+		return new ECDSAPublicKey(w.getAffineX(), w.getAffineY());
+	}
+
+	public static byte[] encodeSSHECDSAPublicKey(ECDSAPublicKey pk) throws IOException
+	{
+		TypesWriter tw = new TypesWriter();
+
+		byte[] q = NistP256.encodePoint(new ECPoint(pk.getX(), pk.getY()));
+
+		tw.writeString(ECDSA_SHA2_NISTP256);
+		tw.writeString(NistP256.IDENTIFIER);
+		tw.writeString(q, 0, q.length);
+
+		return tw.getBytes();
+	}
+
+	public static ECDSASignature decodeSSHECDSASignature(byte[] sig) throws IOException
+	{
+		TypesReader tr = new TypesReader(sig);
+
+		String sig_format = tr.readString();
+
+		if (sig_format.equals(ECDSA_SHA2_NISTP256) == false)
+			throw new IOException("Peer sent wrong signature format");
+
+		byte[] blob = tr.readByteString();
+
+		if (tr.remain() != 0)
+			throw new IOException("Padding in ECDSA signature!");
+
+		TypesReader br = new TypesReader(blob);
+
+		BigInteger r = br.readMPINT();
+		BigInteger s = br.readMPINT();
+
+		if (br.remain() != 0)
+			throw new IOException("Padding in ECDSA signature blob!");
+
+		if (log.isEnabled())
+		{
+			log.log(80, "Decoding " + ECDSA_SHA2_NISTP256 + " signature (r: " + r.bitLength() + " bits, s: "
+					+ s.bitLength() + " bits)");
+		}
+
+		return new ECDSASignature(r, s);
+	}
+
+	public static boolean verifySignature(byte[] message, ECDSASignature ds, ECDSAPublicKey dpk) throws IOException
+	{
+		BigInteger n = NistP256.getParameters().getOrder();
+
+		if ((ds.getR().signum() <= 0) || (ds.getR().compareTo(n) >= 0) || (ds.getS().signum() <= 0)
+				|| (ds.getS().compareTo(n) >= 0))
+		{
+			log.log(20, "ecdsa signature: r or s out of range");
+			return false;
+		}
+
+		try
+		{
+			PublicKey pk = KeyFactory.getInstance("EC").generatePublic(
+					new ECPublicKeySpec(new ECPoint(dpk.getX(), dpk.getY()), NistP256.getParameters()));
+
+			Signature verifier = Signature.getInstance("SHA256withECDSA");
+			verifier.initVerify(pk);
+			verifier.update(message);
+
+			return verifier.verify(encodeDERSignature(ds));
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw (IOException) new IOException("ECDSA signature verification failed.").initCause(e);
+		}
+	}
+
+	/* SEQUENCE { INTEGER r, INTEGER s }, as expected by the JCE */
+
+	private static byte[] encodeDERSignature(ECDSASignature ds)
+	{
+		byte[] r = ds.getR().toByteArray();
+		byte[] s = ds.getS().toByteArray();
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		int content_len = (1 + derLengthSize(r.length) + r.length) + (1 + derLengthSize(s.length) + s.length);
+
+		os.write(0x30);
+		writeDERLength(os, content_len);
+		os.write(0x02);
+		writeDERLength(os, r.length);
+		os.write(r, 0, r.length);
+		os.write(0x02);
+		writeDERLength(os, s.length);
+		os.write(s, 0, s.length);
+
+		return os.toByteArray();
+	}
+
+	private static int derLengthSize(int len)
+	{
+		return (len < 0x80) ? 1 : 2;
+	}
+
+	private static void writeDERLength(ByteArrayOutputStream os, int len)
+	{
+		if (len >= 0x80)
+			os.write(0x81);
+		os.write(len);
+	}
+}
@@ -0,0 +1,28 @@
+package com.trilead.ssh2.signature;
+
+import java.math.BigInteger;
+
+/**
+ * ECDSASignature.
+ */
+public class ECDSASignature
+{
+	BigInteger r;
+	BigInteger s;
+
+	public ECDSASignature(BigInteger r, BigInteger s)
+	{
+		this.r = r;
+		this.s = s;
+	}
+
+	public BigInteger getR()
+	{
+		return r;
+	}
+
+	public BigInteger getS()
+	{
+		return s;
+	}
+}
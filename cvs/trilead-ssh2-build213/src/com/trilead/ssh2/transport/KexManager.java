@@ -6,10 +6,12 @@ import com.trilead.ssh2.DHGexParameters;
 import com.trilead.ssh2.ServerHostKeyVerifier;
 import com.trilead.ssh2.crypto.CryptoWishList;
 import com.trilead.ssh2.crypto.KeyMaterial;
+import com.trilead.ssh2.crypto.NistP256;
 import com.trilead.ssh2.crypto.cipher.BlockCipher;
 import com.trilead.ssh2.crypto.cipher.BlockCipherFactory;
 import com.trilead.ssh2.crypto.dh.DhExchange;
 import com.trilead.ssh2.crypto.dh.DhGroupExchange;
+import com.trilead.ssh2.crypto.dh.EcDhExchange;
 import com.trilead.ssh2.crypto.digest.MAC;
 import com.trilead.ssh2.log.Logger;
 import com.trilead.ssh2.packets.*;
@@ -17,6 +19,7 @@ import com.trilead.ssh2.signature.*;
 
 import java.io.IOException;
 import java.security.SecureRandom;
+import java.util.Vector;
 
 
 /**
@@ -245,7 +248,7 @@ public class KexManager
 			int enc_sc_key_len = BlockCipherFactory.getKeySize(kxs.np.enc_algo_server_to_client);
 			int enc_sc_block_len = BlockCipherFactory.getBlockSize(kxs.np.enc_algo_server_to_client);
 
-			km = KeyMaterial.create("SHA1", kxs.H, kxs.K, sessionId, enc_cs_key_len, enc_cs_block_len, mac_cs_key_len,
+			km = KeyMaterial.create(getKexHashAlgorithm(kxs.np.kex_algo), kxs.H, kxs.K, sessionId, enc_cs_key_len, enc_cs_block_len, mac_cs_key_len,
 					enc_sc_key_len, enc_sc_block_len, mac_sc_key_len);
 		}
 		catch (IllegalArgumentException e)
@@ -273,9 +276,10 @@ public class KexManager
 		try
 		{
 			cbc = BlockCipherFactory.createCipher(kxs.np.enc_algo_client_to_server, true, km.enc_key_client_to_server,
-					km.initial_iv_client_to_server);
+					km.initial_iv_client_to_server, nextKEXcryptoWishList.useJceCrypto);
 
-			mac = new MAC(kxs.np.mac_algo_client_to_server, km.integrity_key_client_to_server);
+			mac = new MAC(kxs.np.mac_algo_client_to_server, km.integrity_key_client_to_server,
+					nextKEXcryptoWishList.useJceCrypto);
 
 		}
 		catch (IllegalArgumentException e1)
@@ -283,12 +287,34 @@ public class KexManager
 			throw new IOException("Fatal error during MAC startup!");
 		}
 
+		try
+		{
+			tm.changeSendCompression(kxs.np.comp_algo_client_to_server, nextKEXcryptoWishList.compressionLevel);
+		}
+		catch (IllegalArgumentException e1)
+		{
+			throw new IOException("Fatal error during compression startup!");
+		}
+
 		tm.changeSendCipher(cbc, mac);
 		tm.kexFinished();
 	}
 
+	private static String getKexHashAlgorithm(String kexAlgorithm)
+	{
+		if (EcDhExchange.isKexAlgorithm(kexAlgorithm))
+			return "SHA-256";
+
+		return "SHA1";
+	}
+
 	public static final String[] getDefaultServerHostkeyAlgorithmList()
 	{
+		/* ECDSA keys go last, so that known_hosts files with RSA/DSA keys keep working */
+
+		if (NistP256.isSupported())
+			return new String[] { "ssh-rsa", "ssh-dss", ECDSASHA2Verify.ECDSA_SHA2_NISTP256 };
+
 		return new String[] { "ssh-rsa", "ssh-dss" };
 	}
 
@@ -296,21 +322,47 @@ public class KexManager
 	{
 		for (int i = 0; i < algos.length; i++)
 		{
-			if (("ssh-rsa".equals(algos[i]) == false) && ("ssh-dss".equals(algos[i]) == false))
-				throw new IllegalArgumentException("Unknown server host key algorithm '" + algos[i] + "'");
+			if ("ssh-rsa".equals(algos[i]) || "ssh-dss".equals(algos[i]))
+				continue;
+
+			if (ECDSASHA2Verify.ECDSA_SHA2_NISTP256.equals(algos[i]) && NistP256.isSupported())
+				continue;
+
+			throw new IllegalArgumentException("Unknown server host key algorithm '" + algos[i] + "'");
 		}
 	}
 
 	public static final String[] getDefaultKexAlgorithmList()
 	{
-		return new String[] { "diffie-hellman-group-exchange-sha1", "diffie-hellman-group14-sha1",
-				"diffie-hellman-group1-sha1" };
+		/* Elliptic curves first: one round trip and far less CPU than modPow */
+
+		Vector list = new Vector();
+
+		if (EcDhExchange.isSupported(EcDhExchange.CURVE25519))
+		{
+			list.addElement(EcDhExchange.CURVE25519);
+			list.addElement(EcDhExchange.CURVE25519_LIBSSH);
+		}
+
+		if (EcDhExchange.isSupported(EcDhExchange.NISTP256))
+			list.addElement(EcDhExchange.NISTP256);
+
+		list.addElement("diffie-hellman-group-exchange-sha1");
+		list.addElement("diffie-hellman-group14-sha1");
+		list.addElement("diffie-hellman-group1-sha1");
+
+		String[] res = new String[list.size()];
+		list.copyInto(res);
+		return res;
 	}
 
 	public static final void checkKexAlgorithmList(String[] algos)
 	{
 		for (int i = 0; i < algos.length; i++)
 		{
+			if (EcDhExchange.isKexAlgorithm(algos[i]) && EcDhExchange.isSupported(algos[i]))
+				continue;
+
 			if ("diffie-hellman-group-exchange-sha1".equals(algos[i]))
 				continue;
 
@@ -346,6 +398,16 @@ public class KexManager
 			return DSASHA1Verify.verifySignature(kxs.H, ds, dpk);
 		}
 
+		if (kxs.np.server_host_key_algo.equals(ECDSASHA2Verify.ECDSA_SHA2_NISTP256))
+		{
+			ECDSASignature es = ECDSASHA2Verify.decodeSSHECDSASignature(sig);
+			ECDSAPublicKey epk = ECDSASHA2Verify.decodeSSHECDSAPublicKey(hostkey);
+
+			log.log(50, "Verifying " + ECDSASHA2Verify.ECDSA_SHA2_NISTP256 + " signature");
+
+			return ECDSASHA2Verify.verifySignature(kxs.H, es, epk);
+		}
+
 		throw new IOException("Unknown server host key algorithm '" + kxs.np.server_host_key_algo + "'");
 	}
 
@@ -440,6 +502,25 @@ public class KexManager
 				return;
 			}
 
+			if (EcDhExchange.isKexAlgorithm(kxs.np.kex_algo))
+			{
+				kxs.ecdhx = new EcDhExchange();
+
+				try
+				{
+					kxs.ecdhx.init(kxs.np.kex_algo, rnd);
+				}
+				catch (IllegalArgumentException e)
+				{
+					throw (IOException) new IOException("KEX error.").initCause(e);
+				}
+
+				PacketKexEcDhInit kp = new PacketKexEcDhInit(kxs.ecdhx.getE());
+				tm.sendKexMessage(kp.getPayload());
+				kxs.state = 1;
+				return;
+			}
+
 			throw new IllegalStateException("Unkown KEX method!");
 		}
 
@@ -454,9 +535,10 @@ public class KexManager
 			try
 			{
 				cbc = BlockCipherFactory.createCipher(kxs.np.enc_algo_server_to_client, false,
-						km.enc_key_server_to_client, km.initial_iv_server_to_client);
+						km.enc_key_server_to_client, km.initial_iv_server_to_client, nextKEXcryptoWishList.useJceCrypto);
 
-				mac = new MAC(kxs.np.mac_algo_server_to_client, km.integrity_key_server_to_client);
+				mac = new MAC(kxs.np.mac_algo_server_to_client, km.integrity_key_server_to_client,
+						nextKEXcryptoWishList.useJceCrypto);
 
 			}
 			catch (IllegalArgumentException e1)
@@ -464,6 +546,15 @@ public class KexManager
 				throw new IOException("Fatal error during MAC startup!");
 			}
 
+			try
+			{
+				tm.changeRecvCompression(kxs.np.comp_algo_server_to_client);
+			}
+			catch (IllegalArgumentException e1)
+			{
+				throw new IOException("Fatal error during compression startup!");
+			}
+
 			tm.changeRecvCipher(cbc, mac);
 
 			ConnectionInfo sci = new ConnectionInfo();
@@ -476,6 +567,8 @@ public class KexManager
 			sci.serverToClientCryptoAlgorithm = kxs.np.enc_algo_server_to_client;
 			sci.clientToServerMACAlgorithm = kxs.np.mac_algo_client_to_server;
 			sci.serverToClientMACAlgorithm = kxs.np.mac_algo_server_to_client;
+			sci.clientToServerCompressionAlgorithm = kxs.np.comp_algo_client_to_server;
+			sci.serverToClientCompressionAlgorithm = kxs.np.comp_algo_server_to_client;
 			sci.serverHostKeyAlgorithm = kxs.np.server_host_key_algo;
 			sci.serverHostKey = kxs.hostkey;
 
@@ -610,6 +703,57 @@ public class KexManager
 			}
 		}
 
+		if (EcDhExchange.isKexAlgorithm(kxs.np.kex_algo))
+		{
+			if (kxs.state == 1)
+			{
+				PacketKexEcDhReply ecdhr = new PacketKexEcDhReply(msg, 0, msglen);
+
+				kxs.hostkey = ecdhr.getHostKey();
+
+				if (verifier != null)
+				{
+					boolean vres = false;
+
+					try
+					{
+						vres = verifier.verifyServerHostKey(hostname, port, kxs.np.server_host_key_algo, kxs.hostkey);
+					}
+					catch (Exception e)
+					{
+						throw (IOException) new IOException(
+								"The server hostkey was not accepted by the verifier callback.").initCause(e);
+					}
+
+					if (vres == false)
+						throw new IOException("The server hostkey was not accepted by the verifier callback");
+				}
+
+				try
+				{
+					kxs.ecdhx.setF(ecdhr.getPublicKey());
+
+					kxs.H = kxs.ecdhx.calculateH(csh.getClientString(), csh.getServerString(),
+							kxs.localKEX.getPayload(), kxs.remoteKEX.getPayload(), ecdhr.getHostKey());
+				}
+				catch (IllegalArgumentException e)
+				{
+					throw (IOException) new IOException("KEX error.").initCause(e);
+				}
+
+				boolean res = verifySignature(ecdhr.getSignature(), kxs.hostkey);
+
+				if (res == false)
+					throw new IOException("Hostkey signature sent by remote is wrong!");
+
+				kxs.K = kxs.ecdhx.getK();
+
+				finishKex();
+				kxs.state = -1;
+				return;
+			}
+		}
+
 		throw new IllegalStateException("Unkown KEX method! (" + kxs.np.kex_algo + ")");
 	}
 }
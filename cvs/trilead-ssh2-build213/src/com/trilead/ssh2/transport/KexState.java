@@ -4,6 +4,7 @@ package com.trilead.ssh2.transport;
 import com.trilead.ssh2.DHGexParameters;
 import com.trilead.ssh2.crypto.dh.DhExchange;
 import com.trilead.ssh2.crypto.dh.DhGroupExchange;
+import com.trilead.ssh2.crypto.dh.EcDhExchange;
 import com.trilead.ssh2.packets.PacketKexInit;
 
 import java.math.BigInteger;
@@ -28,5 +29,6 @@ public class KexState
 	
 	public DhExchange dhx;
 	public DhGroupExchange dhgx;
+	public EcDhExchange ecdhx;
 	public DHGexParameters dhgexParameters;
 }
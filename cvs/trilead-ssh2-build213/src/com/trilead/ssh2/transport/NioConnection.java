@@ -0,0 +1,121 @@
+package com.trilead.ssh2.transport;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The state of one connection that is served by a {@link SelectorPool}. All methods
+ * except {@link #start(SelectorPool)} and {@link #shutdown()} run on the selector thread.
+ */
+final class NioConnection
+{
+	final TransportManager tm;
+	final SocketChannel channel;
+	final NioInputStream in = new NioInputStream();
+
+	SelectorPool pool;
+	volatile SelectorPool.SelectorThread thread;
+	SelectionKey key;
+
+	boolean finished = false;
+
+	/* Guarded by this, set when shutdown() comes before start() */
+	private boolean closed = false;
+
+	NioConnection(TransportManager tm, SocketChannel channel)
+	{
+		this.tm = tm;
+		this.channel = channel;
+	}
+
+	synchronized void start(SelectorPool pool) throws IOException
+	{
+		if (closed)
+			throw new IOException("The connection was closed before it was registered.");
+
+		this.pool = pool;
+		this.thread = pool.register(this);
+	}
+
+	boolean isSelectorThread()
+	{
+		return Thread.currentThread() == thread;
+	}
+
+	void readable(byte[] msg)
+	{
+		try
+		{
+			int n = in.fill(channel);
+
+			tm.receiveAvailableMessages(msg);
+
+			in.compact();
+
+			if (n < 0)
+				throw new IOException("The peer closed the connection.");
+		}
+		catch (IOException e)
+		{
+			failed(e);
+		}
+	}
+
+	void failed(IOException e)
+	{
+		tm.close(e, false);
+		finish();
+	}
+
+	private void finish()
+	{
+		if (finished)
+			return;
+
+		finished = true;
+
+		if (key != null)
+		{
+			key.cancel();
+			thread.registered.removeElement(this);
+		}
+
+		pool.unregister(thread);
+
+		tm.receiveFinished();
+	}
+
+	/**
+	 * Called when the connection was closed by our side; the handlers are told on
+	 * the selector thread, after any message that is being dispatched right now.
+	 */
+	void shutdown()
+	{
+		synchronized (this)
+		{
+			if (thread == null)
+			{
+				/* Never registered (e.g., the key exchange failed), no handler was told anything */
+				closed = true;
+
+				try
+				{
+					channel.close();
+				}
+				catch (IOException ignore)
+				{
+				}
+				return;
+			}
+		}
+
+		thread.execute(new Runnable()
+		{
+			public void run()
+			{
+				finish();
+			}
+		});
+	}
+}
@@ -0,0 +1,115 @@
+package com.trilead.ssh2.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The input side of a connection in non-blocking mode. The selector thread fills the
+ * buffer with whatever the channel has to offer, and then consumes complete packets
+ * through the {@link TransportConnection}. Reading never blocks: the transport only
+ * reads once {@link TransportConnection#isMessageAvailable()} said the whole packet is
+ * here, so running out of data is an error.
+ * <p>
+ * Only used by the selector thread of the connection.
+ */
+final class NioInputStream extends InputStream
+{
+	static final int INITIAL_SIZE = 16 * 1024;
+
+	byte[] buffer = new byte[INITIAL_SIZE];
+	int start = 0;
+	int end = 0;
+
+	boolean eof = false;
+
+	/**
+	 * Reads from the channel until it has nothing more to offer.
+	 * 
+	 * @return the number of bytes read, or -1 if the peer closed the connection.
+	 */
+	int fill(SocketChannel channel) throws IOException
+	{
+		int total = 0;
+
+		while (true)
+		{
+			if (end == buffer.length)
+			{
+				if (start > 0)
+				{
+					System.arraycopy(buffer, start, buffer, 0, end - start);
+					end -= start;
+					start = 0;
+				}
+				else
+				{
+					byte[] tmp = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, tmp, 0, end);
+					buffer = tmp;
+				}
+			}
+
+			int n = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+
+			if (n < 0)
+			{
+				eof = true;
+				return (total > 0) ? total : -1;
+			}
+
+			if (n == 0)
+				return total;
+
+			end += n;
+			total += n;
+		}
+	}
+
+	/**
+	 * Gives memory back once a burst of data has been consumed.
+	 */
+	void compact()
+	{
+		if (start == end)
+		{
+			start = end = 0;
+
+			if (buffer.length > INITIAL_SIZE)
+				buffer = new byte[INITIAL_SIZE];
+		}
+	}
+
+	public int available()
+	{
+		return end - start;
+	}
+
+	public int read() throws IOException
+	{
+		if (start == end)
+			return eof ? -1 : wouldBlock();
+
+		return buffer[start++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (len == 0)
+			return 0;
+
+		if (start == end)
+			return eof ? -1 : wouldBlock();
+
+		int n = Math.min(len, end - start);
+		System.arraycopy(buffer, start, b, off, n);
+		start += n;
+		return n;
+	}
+
+	private int wouldBlock() throws IOException
+	{
+		throw new IOException("Assertion error: read on the non-blocking transport would block.");
+	}
+}
@@ -0,0 +1,95 @@
+package com.trilead.ssh2.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The output side of a connection in non-blocking mode. Senders write directly to the
+ * channel; only if the socket buffer is full (i.e., the peer does not read) they wait
+ * for the channel to become writable again, using a private selector that is opened
+ * on first use. That way a stalled connection never holds up a selector thread that
+ * serves other connections (unless it is the thread doing the write itself, e.g.,
+ * during key exchange).
+ * <p>
+ * Writes are serialized by the callers (the send lock of the {@link TransportManager}).
+ */
+final class NioOutputStream extends OutputStream
+{
+	final SocketChannel channel;
+
+	Selector writeSelector;
+
+	boolean closed = false;
+
+	final byte[] single = new byte[1];
+
+	NioOutputStream(SocketChannel channel)
+	{
+		this.channel = channel;
+	}
+
+	public void write(int b) throws IOException
+	{
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+
+		while (bb.hasRemaining())
+		{
+			if (channel.write(bb) == 0)
+				awaitWritable();
+		}
+	}
+
+	private void awaitWritable() throws IOException
+	{
+		Selector sel;
+
+		synchronized (this)
+		{
+			if (closed)
+				throw new IOException("The connection is closed.");
+
+			if (writeSelector == null)
+			{
+				writeSelector = Selector.open();
+				channel.register(writeSelector, SelectionKey.OP_WRITE);
+			}
+
+			sel = writeSelector;
+		}
+
+		try
+		{
+			sel.select();
+			sel.selectedKeys().clear();
+		}
+		catch (ClosedSelectorException e)
+		{
+			throw (IOException) new IOException("The connection is closed.").initCause(e);
+		}
+	}
+
+	/**
+	 * Closes the private selector, a sender waiting in it gives up.
+	 */
+	public void close() throws IOException
+	{
+		synchronized (this)
+		{
+			closed = true;
+
+			if (writeSelector != null)
+				writeSelector.close();
+		}
+	}
+}
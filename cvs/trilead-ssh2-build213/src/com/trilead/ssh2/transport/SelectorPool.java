@@ -0,0 +1,280 @@
+package com.trilead.ssh2.transport;
+
+import com.trilead.ssh2.log.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * A small set of selector threads that receive and dispatch the packets of many
+ * connections in non-blocking mode, instead of one receive thread per connection.
+ * Connections are spread over the threads (the least busy thread gets the next one);
+ * threads are started on demand and are daemon threads.
+ * <p>
+ * Message handlers run on the selector thread of their connection, so they must not
+ * block - the same rule that applies to the receive thread in blocking mode.
+ * 
+ * @see com.trilead.ssh2.Connection#setSelectorPool(SelectorPool)
+ */
+public class SelectorPool
+{
+	private static final Logger log = Logger.getLogger(SelectorPool.class);
+
+	private static SelectorPool defaultPool;
+
+	private final SelectorThread[] threads;
+
+	private int startedThreads = 0;
+
+	/**
+	 * @param maxThreads the maximum number of selector threads.
+	 */
+	public SelectorPool(int maxThreads)
+	{
+		if (maxThreads < 1)
+			throw new IllegalArgumentException("maxThreads must be positive");
+
+		threads = new SelectorThread[maxThreads];
+	}
+
+	/**
+	 * @return a shared pool with at most as many threads as there are processors (and not more than 4).
+	 */
+	public static synchronized SelectorPool getDefault()
+	{
+		if (defaultPool == null)
+			defaultPool = new SelectorPool(Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+		return defaultPool;
+	}
+
+	synchronized SelectorThread register(final NioConnection conn) throws IOException
+	{
+		SelectorThread st = null;
+
+		for (int i = 0; i < startedThreads; i++)
+		{
+			if ((st == null) || (threads[i].connections < st.connections))
+				st = threads[i];
+		}
+
+		if (((st == null) || (st.connections > 0)) && (startedThreads < threads.length))
+		{
+			st = new SelectorThread(startedThreads);
+			threads[startedThreads++] = st;
+			st.start();
+		}
+
+		st.connections++;
+
+		final SelectorThread target = st;
+
+		target.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					conn.key = conn.channel.register(target.selector, SelectionKey.OP_READ, conn);
+					target.registered.addElement(conn);
+				}
+				catch (IOException e)
+				{
+					conn.failed(e);
+				}
+			}
+		});
+
+		return target;
+	}
+
+	synchronized void unregister(SelectorThread st)
+	{
+		st.connections--;
+	}
+
+	/**
+	 * @return the number of selector threads that have been started.
+	 */
+	public synchronized int getThreadCount()
+	{
+		return startedThreads;
+	}
+
+	/**
+	 * @return the number of connections that are currently served by this pool.
+	 */
+	public synchronized int getConnectionCount()
+	{
+		int res = 0;
+
+		for (int i = 0; i < startedThreads; i++)
+			res += threads[i].connections;
+
+		return res;
+	}
+
+	/**
+	 * @return the number of registrations, shutdowns and other tasks that wait for a
+	 *         selector thread.
+	 */
+	public synchronized int getPendingTaskCount()
+	{
+		int res = 0;
+
+		for (int i = 0; i < startedThreads; i++)
+			res += threads[i].tasks.size();
+
+		return res;
+	}
+
+	/**
+	 * @return the number of received bytes that wait for the rest of their packet.
+	 */
+	public synchronized long getBufferedInputBytes()
+	{
+		long res = 0;
+
+		for (int i = 0; i < startedThreads; i++)
+			res += threads[i].bufferedBytes;
+
+		return res;
+	}
+
+	/**
+	 * @return the number of asynchronous replies (e.g., to global requests) that
+	 *         wait to be sent, over all connections of this pool.
+	 */
+	public synchronized int getQueuedAsynchronousMessages()
+	{
+		int res = 0;
+
+		for (int i = 0; i < startedThreads; i++)
+			res += threads[i].queuedAsynchronousMessages();
+
+		return res;
+	}
+
+	/**
+	 * A thread with its own selector. It registers connections, reads whatever
+	 * arrives and dispatches the complete packets.
+	 */
+	static final class SelectorThread extends Thread
+	{
+		final Selector selector;
+
+		final Vector tasks = new Vector();
+
+		/* Shared receive buffer, the handlers copy what they need */
+		final byte[] msg = new byte[35000];
+
+		/* Guarded by the pool */
+		int connections = 0;
+
+		/* The connections whose channel is registered, only changed by this thread */
+		final Vector registered = new Vector();
+
+		volatile long bufferedBytes = 0;
+
+		SelectorThread(int number) throws IOException
+		{
+			super("Trilead SSH-2 selector " + number);
+			selector = Selector.open();
+			setDaemon(true);
+		}
+
+		void execute(Runnable task)
+		{
+			tasks.addElement(task);
+			selector.wakeup();
+		}
+
+		int queuedAsynchronousMessages()
+		{
+			int res = 0;
+
+			synchronized (registered)
+			{
+				for (int i = 0; i < registered.size(); i++)
+					res += ((NioConnection) registered.elementAt(i)).tm.getAsynchronousQueueSize();
+			}
+
+			return res;
+		}
+
+		public void run()
+		{
+			int selectFailures = 0;
+
+			while (true)
+			{
+				while (tasks.size() > 0)
+				{
+					Runnable task = (Runnable) tasks.remove(0);
+
+					try
+					{
+						task.run();
+					}
+					catch (RuntimeException e)
+					{
+						log.log(10, "Selector task failed: " + e.getMessage());
+					}
+				}
+
+				try
+				{
+					selector.select();
+					selectFailures = 0;
+				}
+				catch (IOException e)
+				{
+					/* Back off, so that a persistent failure does not spin */
+					selectFailures++;
+					log.log(10, "Selector failed (" + selectFailures + " times): " + e.getMessage());
+
+					try
+					{
+						Thread.sleep(Math.min(1000, 10L << Math.min(selectFailures, 7)));
+					}
+					catch (InterruptedException ignore)
+					{
+					}
+					continue;
+				}
+
+				Iterator it = selector.selectedKeys().iterator();
+
+				while (it.hasNext())
+				{
+					SelectionKey key = (SelectionKey) it.next();
+					it.remove();
+
+					NioConnection conn = (NioConnection) key.attachment();
+
+					try
+					{
+						if (key.isValid() && key.isReadable())
+							conn.readable(msg);
+					}
+					catch (RuntimeException e)
+					{
+						/* Keep serving the other connections of this thread */
+						log.log(10, "Closing a connection after an unexpected error: " + e.getMessage());
+						conn.failed((IOException) new IOException("Unexpected error: " + e.getMessage()).initCause(e));
+					}
+				}
+
+				long buffered = 0;
+
+				for (int i = 0; i < registered.size(); i++)
+					buffered += ((NioConnection) registered.elementAt(i)).in.available();
+
+				bufferedBytes = buffered;
+			}
+		}
+	}
+}
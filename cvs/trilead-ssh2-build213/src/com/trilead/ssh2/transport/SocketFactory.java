@@ -12,10 +12,20 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 public class SocketFactory {
     public static Socket open(final String hostname, final int port, final ProxyData proxyData, final int connectTimeout) throws IOException {
-        final Socket sock = new Socket();
+        return open(hostname, port, proxyData, connectTimeout, false);
+    }
+
+    /**
+     * @param withChannel create the socket through a {@link SocketChannel}, so that it can be
+     *                    switched to non-blocking mode after the handshake
+     */
+    public static Socket open(final String hostname, final int port, final ProxyData proxyData, final int connectTimeout,
+                              final boolean withChannel) throws IOException {
+        final Socket sock = withChannel ? SocketChannel.open().socket() : new Socket();
         if (proxyData == null)
         {
             InetAddress addr = TransportManager.createInetAddress(hostname);
@@ -1,6 +1,9 @@
 
 package com.trilead.ssh2.transport;
 
+import com.trilead.ssh2.compression.CompressionFactory;
+import com.trilead.ssh2.compression.Compressor;
+import com.trilead.ssh2.compression.Decompressor;
 import com.trilead.ssh2.crypto.cipher.BlockCipher;
 import com.trilead.ssh2.crypto.cipher.CipherInputStream;
 import com.trilead.ssh2.crypto.cipher.CipherOutputStream;
@@ -63,6 +66,40 @@ public class TransportConnection
 
 	boolean recv_packet_header_present = false;
 
+	/*
+	 * Packets sent via sendMessage(byte[], int, byte[], int, int) are framed, padded,
+	 * MAC'd and encrypted in this buffer. It only grows, and is only used while
+	 * the TransportManager holds its send lock.
+	 */
+
+	byte[] send_packet_buffer = new byte[0];
+
+	long send_pooled_packets = 0;
+
+	long send_pooled_bytes = 0;
+
+	/*
+	 * Payload compression, one zlib stream per direction. A delayed method
+	 * (zlib@openssh.com) only becomes active once SSH_MSG_USERAUTH_SUCCESS
+	 * has been received; the send side checks the flag under the send lock.
+	 */
+
+	Compressor send_comp;
+
+	Decompressor recv_comp;
+
+	byte[] recv_comp_buffer = new byte[0];
+
+	volatile boolean authenticated = false;
+
+	long send_raw_bytes = 0;
+
+	long send_compressed_bytes = 0;
+
+	volatile long recv_raw_bytes = 0;
+
+	volatile long recv_compressed_bytes = 0;
+
 	ClientServerHello csh;
 
 	final SecureRandom rnd;
@@ -102,6 +139,45 @@ public class TransportConnection
 			send_padd_blocksize = 8;
 	}
 
+	/**
+	 * Switches the compression of outgoing payloads to <code>type</code>. As
+	 * done by OpenSSH, a running zlib stream is kept across re-keying if the
+	 * method does not change.
+	 */
+	public void changeSendCompression(String type, int level)
+	{
+		if (send_comp != null)
+		{
+			if (send_comp.getType().equals(type))
+				return;
+			send_comp.close();
+		}
+
+		send_comp = CompressionFactory.createCompressor(type, level);
+	}
+
+	public void changeRecvCompression(String type)
+	{
+		if (recv_comp != null)
+		{
+			if (recv_comp.getType().equals(type))
+				return;
+			recv_comp.close();
+		}
+
+		recv_comp = CompressionFactory.createDecompressor(type);
+	}
+
+	private boolean isActive(Compressor comp)
+	{
+		return (comp != null) && (authenticated || !comp.isDelayed());
+	}
+
+	private boolean isActive(Decompressor comp)
+	{
+		return (comp != null) && (authenticated || !comp.isDelayed());
+	}
+
 	public void sendMessage(byte[] message) throws IOException
 	{
 		sendMessage(message, 0, message.length, 0);
@@ -118,7 +194,7 @@ public class TransportConnection
 		return 5 + 4 + (send_padd_blocksize - 1) + send_mac_buffer.length;
 	}
 
-	public void sendMessage(byte[] message, int off, int len, int padd) throws IOException
+	private int computePacketLength(int len, int padd)
 	{
 		if (padd < 4)
 			padd = 4;
@@ -137,8 +213,11 @@ public class TransportConnection
 		if (packet_len < 16)
 			packet_len = 16;
 
-		int padd_len = packet_len - (5 + len);
+		return packet_len;
+	}
 
+	private void fillPadding(int padd_len)
+	{
 		if (useRandomPadding)
 		{
 			for (int i = 0; i < padd_len; i = i + 4)
@@ -168,6 +247,28 @@ public class TransportConnection
 			 * consist of zeros only.
 			 */
 		}
+	}
+
+	public void sendMessage(byte[] message, int off, int len, int padd) throws IOException
+	{
+		int type = message[off] & 0xff;
+
+		send_raw_bytes += len;
+
+		if (isActive(send_comp))
+		{
+			len = send_comp.compress(message, off, len);
+			message = send_comp.getBuffer();
+			off = 0;
+		}
+
+		send_compressed_bytes += len;
+
+		int packet_len = computePacketLength(len, padd);
+
+		int padd_len = packet_len - (5 + len);
+
+		fillPadding(padd_len);
 
 		send_packet_header_buffer[0] = (byte) ((packet_len - 4) >> 24);
 		send_packet_header_buffer[1] = (byte) ((packet_len - 4) >> 16);
@@ -194,10 +295,140 @@ public class TransportConnection
 
 		if (log.isEnabled())
 		{
-			log.log(90, "Sent " + Packets.getMessageName(message[off] & 0xff) + " " + len + " bytes payload");
+			log.log(90, "Sent " + Packets.getMessageName(type) + " " + len + " bytes payload");
+		}
+
+		send_seq_number++;
+	}
+
+	/**
+	 * Sends a message whose payload is <code>head[0..headlen)</code> followed by
+	 * <code>body[off..off+len)</code>. The packet is assembled, MAC'd and encrypted
+	 * in a reusable per-connection buffer, so no garbage is created per packet.
+	 */
+	public void sendMessage(byte[] head, int headlen, byte[] body, int off, int len) throws IOException
+	{
+		int payload_len = headlen + len;
+
+		byte[] comp_buffer = null;
+
+		send_raw_bytes += payload_len;
+
+		if (isActive(send_comp))
+		{
+			payload_len = send_comp.compress(head, headlen, body, off, len);
+			comp_buffer = send_comp.getBuffer();
+		}
+
+		send_compressed_bytes += payload_len;
+
+		int packet_len = computePacketLength(payload_len, 0);
+
+		int padd_len = packet_len - (5 + payload_len);
+
+		if (send_packet_buffer.length < packet_len)
+			send_packet_buffer = new byte[packet_len];
+
+		byte[] packet = send_packet_buffer;
+
+		fillPadding(padd_len);
+
+		packet[0] = (byte) ((packet_len - 4) >> 24);
+		packet[1] = (byte) ((packet_len - 4) >> 16);
+		packet[2] = (byte) ((packet_len - 4) >> 8);
+		packet[3] = (byte) ((packet_len - 4));
+		packet[4] = (byte) padd_len;
+
+		if (comp_buffer != null)
+		{
+			System.arraycopy(comp_buffer, 0, packet, 5, payload_len);
+		}
+		else
+		{
+			System.arraycopy(head, 0, packet, 5, headlen);
+			System.arraycopy(body, off, packet, 5 + headlen, len);
+		}
+		System.arraycopy(send_padding_buffer, 0, packet, 5 + payload_len, padd_len);
+
+		if (send_mac != null)
+		{
+			send_mac.initMac(send_seq_number);
+			send_mac.update(packet, 0, packet_len);
+			send_mac.getMac(send_mac_buffer, 0);
+		}
+
+		cos.writeInPlace(packet, 0, packet_len);
+
+		if (send_mac != null)
+			cos.writePlain(send_mac_buffer, 0, send_mac_buffer.length);
+
+		cos.flush();
+
+		if (log.isEnabled())
+		{
+			log.log(90, "Sent " + Packets.getMessageName(head[0] & 0xff) + " " + payload_len + " bytes payload");
 		}
 
 		send_seq_number++;
+
+		send_pooled_packets++;
+		send_pooled_bytes += payload_len;
+	}
+
+	public long getPooledPacketCount()
+	{
+		return send_pooled_packets;
+	}
+
+	public long getPooledPayloadBytes()
+	{
+		return send_pooled_bytes;
+	}
+
+	public long getUncompressedBytesSent()
+	{
+		return send_raw_bytes;
+	}
+
+	public long getCompressedBytesSent()
+	{
+		return send_compressed_bytes;
+	}
+
+	public long getUncompressedBytesReceived()
+	{
+		return recv_raw_bytes;
+	}
+
+	public long getCompressedBytesReceived()
+	{
+		return recv_compressed_bytes;
+	}
+
+	/**
+	 * Checks, without blocking, whether the next packet has been received completely
+	 * (used by the non-blocking transport, whose input stream never blocks). May
+	 * decrypt and consume the first block of the next packet.
+	 */
+	public boolean isMessageAvailable() throws IOException
+	{
+		if (recv_packet_header_present == false)
+		{
+			/* At a packet boundary no decrypted bytes are pending, we need a full block */
+
+			if (cis.available() < cis.getBlockSize())
+				return false;
+
+			peekNextMessageLength();
+		}
+
+		int packet_length = ((recv_packet_header_buffer[0] & 0xff) << 24)
+				| ((recv_packet_header_buffer[1] & 0xff) << 16) | ((recv_packet_header_buffer[2] & 0xff) << 8)
+				| ((recv_packet_header_buffer[3] & 0xff));
+
+		int remaining = (4 + packet_length - 5) + ((recv_mac != null) ? recv_mac_buffer.length : 0);
+
+		return cis.available() >= remaining;
 	}
 
 	public int peekNextMessageLength() throws IOException
@@ -273,6 +504,26 @@ public class TransportConnection
 
 		recv_seq_number++;
 
+		recv_compressed_bytes += payload_length;
+
+		if (isActive(recv_comp))
+		{
+			if (recv_comp_buffer.length < len)
+				recv_comp_buffer = new byte[len];
+
+			payload_length = recv_comp.decompress(buffer, off, payload_length, recv_comp_buffer, 0, len);
+
+			System.arraycopy(recv_comp_buffer, 0, buffer, off, payload_length);
+		}
+
+		recv_raw_bytes += payload_length;
+
+		if ((payload_length > 0) && (buffer[off] == Packets.SSH_MSG_USERAUTH_SUCCESS))
+		{
+			/* Delayed compression starts with the next packet in both directions */
+			authenticated = true;
+		}
+
 		if (log.isEnabled())
 		{
 			log.log(90, "Received " + Packets.getMessageName(buffer[off] & 0xff) + " " + payload_length
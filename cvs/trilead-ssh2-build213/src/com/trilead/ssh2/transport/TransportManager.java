@@ -1,6 +1,11 @@
 
 package com.trilead.ssh2.transport;
 
+import com.trilead.ssh2.ConnectionInfo;
+import com.trilead.ssh2.ConnectionMonitor;
+import com.trilead.ssh2.DHGexParameters;
+import com.trilead.ssh2.ProxyData;
+import com.trilead.ssh2.ServerHostKeyVerifier;
 import com.trilead.ssh2.crypto.Base64;
 import com.trilead.ssh2.crypto.CryptoWishList;
 import com.trilead.ssh2.crypto.cipher.BlockCipher;
@@ -15,6 +20,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 import java.security.SecureRandom;
 import java.util.Vector;
 
@@ -130,6 +136,11 @@ public class TransportManager
 
 	Thread receiveThread;
 
+	/* Non-blocking mode only */
+
+	NioConnection nio;
+	NioOutputStream nioOut;
+
 	Vector connectionMonitors = new Vector();
 	boolean monitorsWereInformed = false;
     private ClientServerHello myCsh;
@@ -250,6 +261,19 @@ public class TransportManager
 			{
 			}
 
+			/* A sender waiting for the non-blocking channel to become writable gives up */
+
+			if (nioOut != null)
+			{
+				try
+				{
+					nioOut.close();
+				}
+				catch (IOException ignore)
+				{
+				}
+			}
+
 			/* OK, whoever tried to send data, should now agree that
 			 * there is no point in further waiting =)
 			 * It is safe now to aquire the semaphore.
@@ -288,6 +312,9 @@ public class TransportManager
 			connectionSemaphore.notifyAll();
 		}
 
+		if (nio != null)
+			nio.shutdown();
+
 		/* No check if we need to inform the monitors */
 
 		Vector monitors = null;
@@ -324,10 +351,21 @@ public class TransportManager
 
     public void initialize(CryptoWishList cwl, ServerHostKeyVerifier verifier, DHGexParameters dhgex,
 			int connectTimeout, SecureRandom rnd, ProxyData proxyData) throws IOException
+	{
+		initialize(cwl, verifier, dhgex, connectTimeout, rnd, proxyData, null);
+	}
+
+	/**
+	 * @param selectorPool if not <code>null</code>, the packets are received by this pool
+	 *            instead of a dedicated receive thread (if the socket has a channel, i.e.,
+	 *            unless it was created by a {@link com.trilead.ssh2.SelfConnectionProxyData}).
+	 */
+	public void initialize(CryptoWishList cwl, ServerHostKeyVerifier verifier, DHGexParameters dhgex,
+			int connectTimeout, SecureRandom rnd, ProxyData proxyData, SelectorPool selectorPool) throws IOException
 	{
 		/* First, establish the TCP connection to the SSH-2 server */
 
-        sock = SocketFactory.open(hostname, port, proxyData, connectTimeout);
+		sock = SocketFactory.open(hostname, port, proxyData, connectTimeout, selectorPool != null);
 
 		/* Parse the server line and say hello - important: this information is later needed for the
 		 * key exchange (to stop man-in-the-middle attacks) - that is why we wrap it into an object
@@ -336,6 +374,28 @@ public class TransportManager
 
 		myCsh = new ClientServerHello(sock.getInputStream(), sock.getOutputStream());
 
+		if ((selectorPool != null) && (sock.getChannel() != null))
+		{
+			/* The hello is read byte by byte, so nothing beyond it has been consumed */
+
+			SocketChannel channel = sock.getChannel();
+			channel.configureBlocking(false);
+
+			nioOut = new NioOutputStream(channel);
+			nio = new NioConnection(this, channel);
+
+			tc = new TransportConnection(nio.in, nioOut, rnd);
+
+			km = new KexManager(this, myCsh, cwl, hostname, port, verifier, rnd);
+			km.initiateKEX(cwl, dhgex);
+
+			nio.start(selectorPool);
+			return;
+		}
+
+		if (selectorPool != null)
+			log.log(20, "The socket has no channel, falling back to a receive thread");
+
 		tc = new TransportConnection(sock.getInputStream(), sock.getOutputStream(), rnd);
 
 		km = new KexManager(this, myCsh, cwl, hostname, port, verifier, rnd);
@@ -360,30 +420,7 @@ public class TransportManager
 				if (log.isEnabled())
 					log.log(50, "Receive thread: back from receiveLoop");
 
-				/* Tell all handlers that it is time to say goodbye */
-
-				if (km != null)
-				{
-					try
-					{
-						km.handleMessage(null, 0);
-					}
-					catch (IOException e)
-					{
-					}
-				}
-
-				for (int i = 0; i < messageHandlers.size(); i++)
-				{
-					HandlerEntry he = (HandlerEntry) messageHandlers.elementAt(i);
-					try
-					{
-						he.mh.handleMessage(null, 0);
-					}
-					catch (Exception ignore)
-					{
-					}
-				}
+				receiveFinished();
 			}
 		});
 
@@ -391,6 +428,51 @@ public class TransportManager
 		receiveThread.start();
 	}
 
+	/**
+	 * Tell all handlers that it is time to say goodbye.
+	 */
+	void receiveFinished()
+	{
+		if (km != null)
+		{
+			try
+			{
+				km.handleMessage(null, 0);
+			}
+			catch (IOException e)
+			{
+			}
+		}
+
+		for (int i = 0; i < messageHandlers.size(); i++)
+		{
+			HandlerEntry he = (HandlerEntry) messageHandlers.elementAt(i);
+			try
+			{
+				he.mh.handleMessage(null, 0);
+			}
+			catch (Exception ignore)
+			{
+			}
+		}
+	}
+
+	private boolean isReceiverThread()
+	{
+		if (nio != null)
+			return nio.isSelectorThread();
+
+		return Thread.currentThread() == receiveThread;
+	}
+
+	int getAsynchronousQueueSize()
+	{
+		synchronized (asynchronousQueue)
+		{
+			return asynchronousQueue.size();
+		}
+	}
+
 	public void registerMessageHandler(MessageHandler mh, int low, int high)
 	{
 		HandlerEntry he = new HandlerEntry();
@@ -467,6 +549,16 @@ public class TransportManager
 		tc.changeSendCipher(bc, mac);
 	}
 
+	public void changeRecvCompression(String type)
+	{
+		tc.changeRecvCompression(type);
+	}
+
+	public void changeSendCompression(String type, int level)
+	{
+		tc.changeSendCompression(type, level);
+	}
+
 	public void sendAsynchronousMessage(byte[] msg) throws IOException
 	{
 		synchronized (asynchronousQueue)
@@ -505,7 +597,7 @@ public class TransportManager
 
 	public void sendMessage(byte[] msg) throws IOException
 	{
-		if (Thread.currentThread() == receiveThread)
+		if (isReceiverThread())
 			throw new IOException("Assertion error: sendMessage may never be invoked by the receiver thread!");
 
 		synchronized (connectionSemaphore)
@@ -542,117 +634,241 @@ public class TransportManager
 		}
 	}
 
-	public void receiveLoop() throws IOException
+	/**
+	 * Same as {@link #sendMessage(byte[])}, but the payload is given as a small header
+	 * followed by a slice of a (typically large) data buffer. The packet is built in a
+	 * buffer owned by the {@link TransportConnection}, avoiding per-packet allocations.
+	 */
+	public void sendMessage(byte[] head, int headlen, byte[] body, int off, int len) throws IOException
 	{
-		byte[] msg = new byte[35000];
+		if (isReceiverThread())
+			throw new IOException("Assertion error: sendMessage may never be invoked by the receiver thread!");
 
-		while (true)
+		synchronized (connectionSemaphore)
 		{
-			int msglen = tc.receiveMessage(msg, 0, msg.length);
-
-			int type = msg[0] & 0xff;
-
-			if (type == Packets.SSH_MSG_IGNORE)
-				continue;
-
-			if (type == Packets.SSH_MSG_DEBUG)
+			while (true)
 			{
-				if (log.isEnabled())
+				if (connectionClosed)
 				{
-					TypesReader tr = new TypesReader(msg, 0, msglen);
-					tr.readByte();
-					tr.readBoolean();
-					StringBuffer debugMessageBuffer = new StringBuffer();
-					debugMessageBuffer.append(tr.readString("UTF-8"));
-
-					for (int i = 0; i < debugMessageBuffer.length(); i++)
-					{
-						char c = debugMessageBuffer.charAt(i);
+					throw (IOException) new IOException("Sorry, this connection is closed.")
+							.initCause(reasonClosedCause);
+				}
 
-						if ((c >= 32) && (c <= 126))
-							continue;
-						debugMessageBuffer.setCharAt(i, '\uFFFD');
-					}
+				if (flagKexOngoing == false)
+					break;
 
-					log.log(50, "DEBUG Message from remote: '" + debugMessageBuffer.toString() + "'");
+				try
+				{
+					connectionSemaphore.wait();
+				}
+				catch (InterruptedException e)
+				{
 				}
-				continue;
 			}
 
-			if (type == Packets.SSH_MSG_UNIMPLEMENTED)
+			try
 			{
-				throw new IOException("Peer sent UNIMPLEMENTED message, that should not happen.");
+				tc.sendMessage(head, headlen, body, off, len);
 			}
-
-			if (type == Packets.SSH_MSG_DISCONNECT)
+			catch (IOException e)
 			{
-				TypesReader tr = new TypesReader(msg, 0, msglen);
-				tr.readByte();
-				int reason_code = tr.readUINT32();
-				StringBuffer reasonBuffer = new StringBuffer();
-				reasonBuffer.append(tr.readString("UTF-8"));
+				close(e, false);
+				throw e;
+			}
+		}
+	}
 
-				/*
-				 * Do not get fooled by servers that send abnormal long error
-				 * messages
-				 */
+	/**
+	 * @return the number of packets that were sent through the pooled packet buffer,
+	 *         i.e., the number of per-packet buffer allocations that were avoided.
+	 */
+	public long getPooledPacketCount()
+	{
+		synchronized (connectionSemaphore)
+		{
+			return tc.getPooledPacketCount();
+		}
+	}
 
-				if (reasonBuffer.length() > 255)
-				{
-					reasonBuffer.setLength(255);
-					reasonBuffer.setCharAt(254, '.');
-					reasonBuffer.setCharAt(253, '.');
-					reasonBuffer.setCharAt(252, '.');
-				}
+	/**
+	 * @return the number of payload bytes that were sent through the pooled packet buffer.
+	 */
+	public long getPooledPayloadBytes()
+	{
+		synchronized (connectionSemaphore)
+		{
+			return tc.getPooledPayloadBytes();
+		}
+	}
 
-				/*
-				 * Also, check that the server did not send charcaters that may
-				 * screw up the receiver -> restrict to reasonable US-ASCII
-				 * subset -> "printable characters" (ASCII 32 - 126). Replace
-				 * all others with 0xFFFD (UNICODE replacement character).
-				 */
+	/**
+	 * @return the number of payload bytes handed to the transport for sending,
+	 *         before compression.
+	 */
+	public long getUncompressedBytesSent()
+	{
+		synchronized (connectionSemaphore)
+		{
+			return tc.getUncompressedBytesSent();
+		}
+	}
 
-				for (int i = 0; i < reasonBuffer.length(); i++)
+	/**
+	 * @return the number of payload bytes sent, after compression.
+	 */
+	public long getCompressedBytesSent()
+	{
+		synchronized (connectionSemaphore)
+		{
+			return tc.getCompressedBytesSent();
+		}
+	}
+
+	/**
+	 * @return the number of payload bytes received, after decompression.
+	 */
+	public long getUncompressedBytesReceived()
+	{
+		return tc.getUncompressedBytesReceived();
+	}
+
+	/**
+	 * @return the number of payload bytes received, as they came over the wire.
+	 */
+	public long getCompressedBytesReceived()
+	{
+		return tc.getCompressedBytesReceived();
+	}
+
+	public void receiveLoop() throws IOException
+	{
+		byte[] msg = new byte[35000];
+
+		while (true)
+		{
+			int msglen = tc.receiveMessage(msg, 0, msg.length);
+
+			dispatchMessage(msg, msglen);
+		}
+	}
+
+	/**
+	 * Non-blocking mode: handles all packets that have been received completely.
+	 */
+	void receiveAvailableMessages(byte[] msg) throws IOException
+	{
+		while (tc.isMessageAvailable())
+		{
+			int msglen = tc.receiveMessage(msg, 0, msg.length);
+
+			dispatchMessage(msg, msglen);
+		}
+	}
+
+	private void dispatchMessage(byte[] msg, int msglen) throws IOException
+	{
+		int type = msg[0] & 0xff;
+
+		if (type == Packets.SSH_MSG_IGNORE)
+			return;
+
+		if (type == Packets.SSH_MSG_DEBUG)
+		{
+			if (log.isEnabled())
+			{
+				TypesReader tr = new TypesReader(msg, 0, msglen);
+				tr.readByte();
+				tr.readBoolean();
+				StringBuffer debugMessageBuffer = new StringBuffer();
+				debugMessageBuffer.append(tr.readString("UTF-8"));
+
+				for (int i = 0; i < debugMessageBuffer.length(); i++)
 				{
-					char c = reasonBuffer.charAt(i);
+					char c = debugMessageBuffer.charAt(i);
 
 					if ((c >= 32) && (c <= 126))
 						continue;
-					reasonBuffer.setCharAt(i, '\uFFFD');
+					debugMessageBuffer.setCharAt(i, '\uFFFD');
 				}
 
-				throw new IOException("Peer sent DISCONNECT message (reason code " + reason_code + "): "
-						+ reasonBuffer.toString());
+				log.log(50, "DEBUG Message from remote: '" + debugMessageBuffer.toString() + "'");
 			}
+			return;
+		}
+
+		if (type == Packets.SSH_MSG_UNIMPLEMENTED)
+		{
+			throw new IOException("Peer sent UNIMPLEMENTED message, that should not happen.");
+		}
+
+		if (type == Packets.SSH_MSG_DISCONNECT)
+		{
+			TypesReader tr = new TypesReader(msg, 0, msglen);
+			tr.readByte();
+			int reason_code = tr.readUINT32();
+			StringBuffer reasonBuffer = new StringBuffer();
+			reasonBuffer.append(tr.readString("UTF-8"));
 
 			/*
-			 * Is it a KEX Packet?
+			 * Do not get fooled by servers that send abnormal long error
+			 * messages
 			 */
 
-			if ((type == Packets.SSH_MSG_KEXINIT) || (type == Packets.SSH_MSG_NEWKEYS)
-					|| ((type >= 30) && (type <= 49)))
+			if (reasonBuffer.length() > 255)
 			{
-				km.handleMessage(msg, msglen);
-				continue;
+				reasonBuffer.setLength(255);
+				reasonBuffer.setCharAt(254, '.');
+				reasonBuffer.setCharAt(253, '.');
+				reasonBuffer.setCharAt(252, '.');
 			}
 
-			MessageHandler mh = null;
+			/*
+			 * Also, check that the server did not send charcaters that may
+			 * screw up the receiver -> restrict to reasonable US-ASCII
+			 * subset -> "printable characters" (ASCII 32 - 126). Replace
+			 * all others with 0xFFFD (UNICODE replacement character).
+			 */
 
-			for (int i = 0; i < messageHandlers.size(); i++)
+			for (int i = 0; i < reasonBuffer.length(); i++)
 			{
-				HandlerEntry he = (HandlerEntry) messageHandlers.elementAt(i);
-				if ((he.low <= type) && (type <= he.high))
-				{
-					mh = he.mh;
-					break;
-				}
+				char c = reasonBuffer.charAt(i);
+
+				if ((c >= 32) && (c <= 126))
+					continue;
+				reasonBuffer.setCharAt(i, '\uFFFD');
 			}
 
-			if (mh == null)
-				throw new IOException("Unexpected SSH message (type " + type + ")");
+			throw new IOException("Peer sent DISCONNECT message (reason code " + reason_code + "): "
+					+ reasonBuffer.toString());
+		}
+
+		/*
+		 * Is it a KEX Packet?
+		 */
 
-			mh.handleMessage(msg, msglen);
+		if ((type == Packets.SSH_MSG_KEXINIT) || (type == Packets.SSH_MSG_NEWKEYS)
+				|| ((type >= 30) && (type <= 49)))
+		{
+			km.handleMessage(msg, msglen);
+			return;
 		}
+
+		MessageHandler mh = null;
+
+		for (int i = 0; i < messageHandlers.size(); i++)
+		{
+			HandlerEntry he = (HandlerEntry) messageHandlers.elementAt(i);
+			if ((he.low <= type) && (type <= he.high))
+			{
+				mh = he.mh;
+				break;
+			}
+		}
+
+		if (mh == null)
+			throw new IOException("Unexpected SSH message (type " + type + ")");
+
+		mh.handleMessage(msg, msglen);
 	}
 
     public ClientServerHello getClientServerHello() {